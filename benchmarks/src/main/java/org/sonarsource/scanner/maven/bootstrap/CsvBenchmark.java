@@ -0,0 +1,79 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link MavenUtils#joinAsCsv}, {@link MavenUtils#splitAsCsv} and {@link Csv#count} on library-like values, where one path in ten contains
+ * a comma and has to be quoted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvBenchmark {
+
+  @Param({"10", "1000", "20000"})
+  public int values;
+
+  private List<String> paths;
+  private String joined;
+
+  @Setup
+  public void setUp() {
+    paths = new ArrayList<>(values);
+    for (int i = 0; i < values; i++) {
+      String separator = i % 10 == 0 ? "," : "-";
+      paths.add("/home/user/.m2/repository/org/example/library-" + i + "/1.0/library" + separator + i + "-1.0.jar");
+    }
+    joined = MavenUtils.joinAsCsv(paths);
+  }
+
+  @Benchmark
+  public String joinAsCsv() {
+    return MavenUtils.joinAsCsv(paths);
+  }
+
+  @Benchmark
+  public List<String> splitAsCsv() {
+    return MavenUtils.splitAsCsv(joined);
+  }
+
+  @Benchmark
+  public int countCsv() {
+    return Csv.count(joined);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link MavenPlugin#getPlugin} and {@link MavenPlugin#getParameter} for the three settings read per module, on a
+ * project declaring the looked up plugins last, both in the build section and in pluginManagement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MavenPluginBenchmark {
+
+  @Param({"5", "50"})
+  public int declaredPlugins;
+
+  private MavenProject project;
+
+  @Setup
+  public void setUp() {
+    Build build = new Build();
+    PluginManagement pluginManagement = new PluginManagement();
+    for (int i = 0; i < declaredPlugins; i++) {
+      build.addPlugin(plugin("org.example", "plugin-" + i, "setting", "value"));
+      pluginManagement.addPlugin(plugin("org.example", "plugin-" + i, "managed", "value"));
+    }
+    build.addPlugin(plugin(MavenUtils.GROUP_ID_APACHE_MAVEN, "maven-war-plugin", "warSourceDirectory", "src/main/webapp"));
+    build.addPlugin(plugin(MavenUtils.GROUP_ID_APACHE_MAVEN, "maven-surefire-plugin", "reportsDirectory", "target/reports"));
+    pluginManagement.addPlugin(plugin(MavenUtils.GROUP_ID_APACHE_MAVEN, "maven-surefire-plugin", "forkCount", "2"));
+    pluginManagement.addPlugin(plugin(MavenUtils.GROUP_ID_CODEHAUS_MOJO, "findbugs-maven-plugin", "excludeFilterFile", "findbugs.xml"));
+    build.setPluginManagement(pluginManagement);
+    Model model = new Model();
+    model.setBuild(build);
+    project = new MavenProject(model);
+  }
+
+  @Benchmark
+  public int moduleSettings() {
+    return length(MavenUtils.getPluginSetting(project, MavenUtils.GROUP_ID_APACHE_MAVEN, "maven-war-plugin", "warSourceDirectory", null))
+      + length(MavenUtils.getPluginSetting(project, MavenUtils.GROUP_ID_APACHE_MAVEN, "maven-surefire-plugin", "reportsDirectory", null))
+      + length(MavenUtils.getPluginSetting(project, MavenUtils.GROUP_ID_CODEHAUS_MOJO, "findbugs-maven-plugin", "excludeFilterFile", null));
+  }
+
+  @Benchmark
+  public int moduleSettingsWithIndex() {
+    MavenPluginIndex plugins = MavenPluginIndex.of(project);
+    return length(MavenUtils.getPluginSetting(plugins, MavenUtils.GROUP_ID_APACHE_MAVEN, "maven-war-plugin", "warSourceDirectory", null))
+      + length(MavenUtils.getPluginSetting(plugins, MavenUtils.GROUP_ID_APACHE_MAVEN, "maven-surefire-plugin", "reportsDirectory", null))
+      + length(MavenUtils.getPluginSetting(plugins, MavenUtils.GROUP_ID_CODEHAUS_MOJO, "findbugs-maven-plugin", "excludeFilterFile", null));
+  }
+
+  private static int length(String value) {
+    return value == null ? 0 : value.length();
+  }
+
+  private static Plugin plugin(String groupId, String artifactId, String setting, String value) {
+    Xpp3Dom node = new Xpp3Dom(setting);
+    node.setValue(value);
+    Xpp3Dom configuration = new Xpp3Dom("configuration");
+    configuration.addChild(node);
+    Plugin plugin = new Plugin();
+    plugin.setGroupId(groupId);
+    plugin.setArtifactId(artifactId);
+    plugin.setConfiguration(configuration);
+    return plugin;
+  }
+}
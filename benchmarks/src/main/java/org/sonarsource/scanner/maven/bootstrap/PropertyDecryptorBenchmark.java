@@ -0,0 +1,98 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.plexus.components.cipher.DefaultPlexusCipher;
+import org.sonatype.plexus.components.cipher.PlexusCipherException;
+import org.sonatype.plexus.components.sec.dispatcher.DefaultSecDispatcher;
+
+/**
+ * {@link PropertyDecryptor#decryptProperties} with the Maven security dispatcher, on a property map shaped like the
+ * one of a large reactor: mostly module-prefixed {@code sonar.*} paths, and a few encrypted values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertyDecryptorBenchmark {
+
+  private static final String MASTER_PASSWORD = "master-password";
+
+  @Param({"100", "10000", "100000"})
+  public int properties;
+
+  private Path securitySettings;
+  private PropertyDecryptor decryptor;
+  private Map<String, String> input;
+
+  @Setup
+  public void setUp() throws IOException, PlexusCipherException {
+    DefaultPlexusCipher cipher = new DefaultPlexusCipher();
+    securitySettings = Files.createTempFile("settings-security", ".xml");
+    Files.write(securitySettings, ("<settingsSecurity><master>"
+      + cipher.encryptAndDecorate(MASTER_PASSWORD, DefaultSecDispatcher.SYSTEM_PROPERTY_SEC_LOCATION)
+      + "</master></settingsSecurity>").getBytes(StandardCharsets.UTF_8));
+    decryptor = new PropertyDecryptor(new SilentLog(), new DefaultSecDispatcher(cipher, Map.of(), securitySettings.toString()));
+
+    String encrypted = cipher.encryptAndDecorate("secret", MASTER_PASSWORD);
+    input = new HashMap<>();
+    for (int i = 0; i < properties; i++) {
+      String prefix = "org.example:module-" + i + ".";
+      if (i % 1000 == 0) {
+        input.put("sonar.password." + i, encrypted);
+      } else if (i % 2 == 0) {
+        input.put(prefix + "sonar.sources", "/home/user/project/module-" + i + "/src/main/java");
+      } else {
+        input.put("maven.property." + i, "value-" + i);
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(securitySettings);
+  }
+
+  @Benchmark
+  public Map<String, String> decryptProperties() {
+    return decryptor.decryptProperties(input);
+  }
+}
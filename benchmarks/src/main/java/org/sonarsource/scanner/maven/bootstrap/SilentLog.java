@@ -0,0 +1,108 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Discards everything, so that logging does not end up in measurements.
+ */
+final class SilentLog implements Log {
+
+  @Override
+  public boolean isDebugEnabled() {
+    return false;
+  }
+
+  @Override
+  public void debug(CharSequence content) {
+    // discarded
+  }
+
+  @Override
+  public void debug(CharSequence content, Throwable error) {
+    // discarded
+  }
+
+  @Override
+  public void debug(Throwable error) {
+    // discarded
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return false;
+  }
+
+  @Override
+  public void info(CharSequence content) {
+    // discarded
+  }
+
+  @Override
+  public void info(CharSequence content, Throwable error) {
+    // discarded
+  }
+
+  @Override
+  public void info(Throwable error) {
+    // discarded
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return false;
+  }
+
+  @Override
+  public void warn(CharSequence content) {
+    // discarded
+  }
+
+  @Override
+  public void warn(CharSequence content, Throwable error) {
+    // discarded
+  }
+
+  @Override
+  public void warn(Throwable error) {
+    // discarded
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return false;
+  }
+
+  @Override
+  public void error(CharSequence content) {
+    // discarded
+  }
+
+  @Override
+  public void error(CharSequence content, Throwable error) {
+    // discarded
+  }
+
+  @Override
+  public void error(Throwable error) {
+    // discarded
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SourceCollector} crawling a generated tree made of source directories already covered by the analysis,
+ * build directories to ignore and extra files to collect.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SourceCollectorBenchmark {
+
+  private static final int FILES_PER_DIRECTORY = 20;
+
+  @Param({"10", "100", "1000"})
+  public int directories;
+
+  private Path root;
+  private Set<Path> existingSources;
+
+  @Setup
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("source-collector");
+    existingSources = new HashSet<>();
+    for (int i = 0; i < directories; i++) {
+      Path module = root.resolve("module-" + i);
+      Path sources = Files.createDirectories(module.resolve("src/main/java"));
+      existingSources.add(sources);
+      Path scripts = Files.createDirectories(module.resolve("src/main/scripts/nested"));
+      Path build = Files.createDirectories(module.resolve("target/classes"));
+      for (int j = 0; j < FILES_PER_DIRECTORY; j++) {
+        Files.createFile(sources.resolve("Source" + j + ".java"));
+        Files.createFile(scripts.resolve("script" + j + ".sh"));
+        Files.createFile(build.resolve("Source" + j + ".class"));
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Benchmark
+  public Set<Path> collect() throws IOException {
+    SourceCollector collector = new SourceCollector(existingSources, Set.of(), Set.of(), false);
+    Files.walkFileTree(root, collector);
+    return collector.getCollectedSources();
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Main class of the engine jar served by {@link StandInSonarQubeServer}. It follows the protocol of the scanner engine
+ * launched by the scanner library: the analysis properties are read as JSON from the standard input, logs are written as
+ * JSON to the standard output, and the exit code tells whether the analysis succeeded. Instead of analyzing, it downloads
+ * the plugins of the server and uploads the properties as the report.
+ * <p>
+ * Only depends on the JDK, as it is the only class of the jar.
+ * </p>
+ */
+public final class StandInScannerEngine {
+
+  // Unrolled loops with possessive quantifiers, as an alternation in a repetition overflows the stack on long values
+  private static final String JSON_STRING = "([^\"\\\\]*+(?:\\\\.[^\"\\\\]*+)*+)";
+  private static final Pattern PROPERTY = Pattern.compile("\\{\"key\":\"" + JSON_STRING + "\",\"value\":\"" + JSON_STRING + "\"}");
+  private static final Pattern PLUGIN_KEY = Pattern.compile("\"key\":\"([^\"]*)\"");
+
+  private StandInScannerEngine() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    byte[] input = System.in.readAllBytes();
+    Map<String, String> properties = parseProperties(new String(input, StandardCharsets.UTF_8));
+    String hostUrl = properties.get("sonar.host.url");
+    if (hostUrl == null) {
+      log("ERROR", "sonar.host.url is missing");
+      System.exit(1);
+    }
+    log("INFO", "Stand-in engine received " + properties.size() + " properties");
+
+    String plugins = new String(get(hostUrl + "/api/plugins/installed"), StandardCharsets.UTF_8);
+    Matcher pluginKeys = PLUGIN_KEY.matcher(plugins);
+    int downloaded = 0;
+    while (pluginKeys.find()) {
+      get(hostUrl + "/api/plugins/download?plugin=" + pluginKeys.group(1));
+      downloaded++;
+    }
+    log("INFO", "Downloaded " + downloaded + " plugins");
+
+    String taskId = new String(post(hostUrl + "/api/ce/submit", input), StandardCharsets.UTF_8);
+    String workDir = properties.get("sonar.working.directory");
+    if (workDir != null) {
+      Path reportTask = Paths.get(workDir, "report-task.txt");
+      Files.createDirectories(reportTask.getParent());
+      Files.write(reportTask, ("serverUrl=" + hostUrl + "\nceTaskId=" + taskId + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    log("INFO", "Uploaded a report of " + input.length + " bytes");
+  }
+
+  static Map<String, String> parseProperties(String json) {
+    Map<String, String> properties = new HashMap<>();
+    Matcher matcher = PROPERTY.matcher(json);
+    while (matcher.find()) {
+      properties.put(unescape(matcher.group(1)), unescape(matcher.group(2)));
+    }
+    return properties;
+  }
+
+  private static String unescape(String text) {
+    StringBuilder unescaped = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c != '\\' || i + 1 == text.length()) {
+        unescaped.append(c);
+        continue;
+      }
+      char next = text.charAt(++i);
+      switch (next) {
+        case 'u':
+          unescaped.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+          i += 4;
+          break;
+        case 'n':
+          unescaped.append('\n');
+          break;
+        case 'r':
+          unescaped.append('\r');
+          break;
+        case 't':
+          unescaped.append('\t');
+          break;
+        default:
+          unescaped.append(next);
+      }
+    }
+    return unescaped.toString();
+  }
+
+  private static byte[] get(String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    try (InputStream body = connection.getInputStream()) {
+      return body.readAllBytes();
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static byte[] post(String url, byte[] content) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setFixedLengthStreamingMode(content.length);
+    try (OutputStream body = connection.getOutputStream()) {
+      body.write(content);
+    }
+    try (InputStream response = connection.getInputStream()) {
+      return response.readAllBytes();
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static void log(String level, String message) {
+    System.out.println("{\"level\":\"" + level + "\",\"message\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}");
+  }
+}
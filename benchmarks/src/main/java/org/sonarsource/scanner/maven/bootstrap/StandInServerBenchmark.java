@@ -0,0 +1,133 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Bootstrap and analysis against a {@link StandInSonarQubeServer}, end to end on one machine: server version check,
+ * engine download when the cache is cold, conversion of a synthetic reactor, launch of the engine and upload of the report.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StandInServerBenchmark {
+
+  private static final int PLUGIN_BYTES = 1024 * 1024;
+
+  @Param({"0", "50"})
+  public long latencyMillis;
+
+  @Param({"1", "50"})
+  public int engineMegabytes;
+
+  @Param({"20"})
+  public int plugins;
+
+  @Param({"100", "1000"})
+  public int modules;
+
+  private StandInSonarQubeServer server;
+  private SyntheticReactor reactor;
+  private Path userHomes;
+  private Path warmUserHome;
+
+  @Setup
+  public void setUp() throws IOException {
+    server = new StandInSonarQubeServer(latencyMillis, engineMegabytes * 1024 * 1024, plugins, PLUGIN_BYTES);
+    reactor = SyntheticReactor.create(modules, 50);
+    userHomes = Files.createTempDirectory("stand-in-user-homes");
+    warmUserHome = Files.createDirectories(userHomes.resolve("warm"));
+    try (var facade = bootstrapper(warmUserHome).bootstrap().getEngineFacade()) {
+      // Only fills the cache of the engine
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to bootstrap against the stand-in server", e);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    server.close();
+    reactor.close();
+    try (Stream<Path> paths = Files.walk(userHomes)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Benchmark
+  public ScannerEngineBootstrapResult bootstrapWithColdCache() throws Exception {
+    return bootstrap(Files.createTempDirectory(userHomes, "cold"));
+  }
+
+  @Benchmark
+  public ScannerEngineBootstrapResult bootstrapWithWarmCache() throws Exception {
+    return bootstrap(warmUserHome);
+  }
+
+  /**
+   * What the sonar goal does once the plugin is loaded: bootstrap, conversion, engine launch and upload.
+   */
+  @Benchmark
+  public void analyze() throws MojoExecutionException {
+    SilentLog log = new SilentLog();
+    new ScannerBootstrapper(log, reactor.newSession(), bootstrapper(warmUserHome), reactor.newConverter(), new PropertyDecryptor(log, s -> s)).execute();
+  }
+
+  private ScannerEngineBootstrapResult bootstrap(Path userHome) throws Exception {
+    ScannerEngineBootstrapResult result = bootstrapper(userHome).bootstrap();
+    result.getEngineFacade().close();
+    return result;
+  }
+
+  private ScannerEngineBootstrapper bootstrapper(Path userHome) {
+    return ScannerEngineBootstrapper.create("ScannerMaven", "benchmark")
+      .setBootstrapProperty(ScannerProperties.HOST_URL, server.url())
+      .setBootstrapProperty(ScannerProperties.SONAR_USER_HOME, userHome.toString())
+      .setBootstrapProperty(ScannerProperties.SKIP_JRE_PROVISIONING, "true")
+      .setBootstrapProperty(ScannerProperties.JAVA_EXECUTABLE_PATH, Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * A local HTTP server implementing the web services the scanner library calls to bootstrap a scanner engine on
+ * SonarQube 10.6+, so that the bootstrap and analysis overhead of the plugin can be measured on one machine:
+ * <ul>
+ *   <li>{@code /api/v2/analysis/version} and {@code /api/server/version}</li>
+ *   <li>{@code /api/v2/analysis/engine}, the metadata then the content of a {@link StandInScannerEngine} jar</li>
+ *   <li>{@code /api/v2/analysis/jres}, without any JRE: provisioning has to be skipped</li>
+ *   <li>{@code /api/plugins/installed} and {@code /api/plugins/download}, called by the engine</li>
+ *   <li>{@code /api/ce/submit}, receiving the report uploaded by the engine</li>
+ * </ul>
+ * Every response is delayed by the configured latency, and the engine and plugin payloads have the configured sizes.
+ */
+final class StandInSonarQubeServer implements AutoCloseable {
+
+  static final String VERSION = "10.8.0.100000";
+  static final String ENGINE_FILE_NAME = "sonar-scanner-engine-shaded.jar";
+  private static final String OCTET_STREAM = "application/octet-stream";
+
+  private final HttpServer server;
+  private final long latencyMillis;
+  private final int plugins;
+  private final byte[] engineJar;
+  private final String engineSha256;
+  private final byte[] pluginJar;
+  private final Map<String, AtomicLong> requestsByPath = new ConcurrentHashMap<>();
+  private final AtomicLong uploadedBytes = new AtomicLong();
+
+  /**
+   * @param engineBytes minimum size of the engine jar, which is padded with random content
+   */
+  StandInSonarQubeServer(long latencyMillis, int engineBytes, int plugins, int pluginBytes) throws IOException {
+    this.latencyMillis = latencyMillis;
+    this.plugins = plugins;
+    this.engineJar = engineJar(engineBytes);
+    this.engineSha256 = sha256(engineJar);
+    this.pluginJar = new byte[pluginBytes];
+    new Random(0).nextBytes(pluginJar);
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "stand-in-sonarqube");
+      thread.setDaemon(true);
+      return thread;
+    }));
+    server.start();
+  }
+
+  String url() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  long requests(String path) {
+    AtomicLong count = requestsByPath.get(path);
+    return count == null ? 0 : count.get();
+  }
+
+  long uploadedBytes() {
+    return uploadedBytes.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    ((ExecutorService) server.getExecutor()).shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      String path = exchange.getRequestURI().getPath();
+      requestsByPath.computeIfAbsent(path, p -> new AtomicLong()).incrementAndGet();
+      byte[] request = exchange.getRequestBody().readAllBytes();
+      if (latencyMillis > 0) {
+        Thread.sleep(latencyMillis);
+      }
+      switch (path) {
+        case "/api/v2/analysis/version":
+        case "/api/server/version":
+          respond(exchange, "text/plain", VERSION.getBytes(StandardCharsets.UTF_8));
+          break;
+        case "/api/v2/analysis/engine":
+          String accept = exchange.getRequestHeaders().getFirst("Accept");
+          if (accept != null && accept.contains(OCTET_STREAM)) {
+            respond(exchange, OCTET_STREAM, engineJar);
+          } else {
+            respond(exchange, "application/json", ("{\"filename\":\"" + ENGINE_FILE_NAME + "\",\"sha256\":\"" + engineSha256 + "\"}").getBytes(StandardCharsets.UTF_8));
+          }
+          break;
+        case "/api/v2/analysis/jres":
+          respond(exchange, "application/json", "[]".getBytes(StandardCharsets.UTF_8));
+          break;
+        case "/api/plugins/installed":
+          respond(exchange, "application/json", installedPlugins());
+          break;
+        case "/api/plugins/download":
+          respond(exchange, OCTET_STREAM, pluginJar);
+          break;
+        case "/api/ce/submit":
+          uploadedBytes.addAndGet(request.length);
+          respond(exchange, "text/plain", ("task-" + requests(path)).getBytes(StandardCharsets.UTF_8));
+          break;
+        default:
+          exchange.sendResponseHeaders(404, -1);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private byte[] installedPlugins() {
+    StringBuilder json = new StringBuilder("{\"plugins\":[");
+    for (int i = 0; i < plugins; i++) {
+      json.append(i == 0 ? "" : ",").append("{\"key\":\"plugin").append(i).append("\",\"filename\":\"plugin").append(i).append(".jar\"}");
+    }
+    return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  /**
+   * A runnable jar made of {@link StandInScannerEngine}, padded with a stored entry of random content.
+   */
+  static byte[] engineJar(int minimumBytes) throws IOException {
+    String className = StandInScannerEngine.class.getName().replace('.', '/') + ".class";
+    byte[] classBytes;
+    try (InputStream input = StandInScannerEngine.class.getClassLoader().getResourceAsStream(className)) {
+      if (input == null) {
+        throw new IllegalStateException("Unable to find " + className);
+      }
+      classBytes = input.readAllBytes();
+    }
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, StandInScannerEngine.class.getName());
+    ByteArrayOutputStream jar = new ByteArrayOutputStream(Math.max(minimumBytes, 4096));
+    try (JarOutputStream output = new JarOutputStream(jar, manifest)) {
+      output.putNextEntry(new JarEntry(className));
+      output.write(classBytes);
+      output.closeEntry();
+      int padding = Math.max(0, minimumBytes - classBytes.length);
+      if (padding > 0) {
+        byte[] content = new byte[padding];
+        new Random(0).nextBytes(content);
+        JarEntry entry = new JarEntry("padding.bin");
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(padding);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+        output.putNextEntry(entry);
+        output.write(content);
+        output.closeEntry();
+      }
+    }
+    return jar.toByteArray();
+  }
+
+  private static String sha256(byte[] content) {
+    try {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+        hex.append(String.format(Locale.ROOT, "%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
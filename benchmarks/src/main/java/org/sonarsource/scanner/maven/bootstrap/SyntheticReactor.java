@@ -0,0 +1,187 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.LifecycleExecutor;
+import org.apache.maven.lifecycle.MavenExecutionPlan;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * A reactor laid out on disk: a root aggregator, intermediate aggregators of at most {@link #MODULES_PER_AGGREGATOR}
+ * modules, and jar modules with existing source, output and library paths.
+ */
+final class SyntheticReactor implements AutoCloseable {
+
+  static final int MODULES_PER_AGGREGATOR = 50;
+
+  private final Path baseDir;
+  private final List<MavenProject> projects = new ArrayList<>();
+  private final MavenProject root;
+
+  private SyntheticReactor(Path baseDir, int modules, int librariesPerModule) throws IOException {
+    this.baseDir = baseDir;
+    List<File> libraries = createLibraries(baseDir.resolve("repository"), librariesPerModule);
+    root = project(baseDir.resolve("root"), "root", "pom", libraries);
+    projects.add(root);
+    MavenProject parent = root;
+    for (int i = 0; i < modules; i++) {
+      if (modules > MODULES_PER_AGGREGATOR && i % MODULES_PER_AGGREGATOR == 0) {
+        String name = "aggregator-" + (i / MODULES_PER_AGGREGATOR);
+        parent = project(root.getBasedir().toPath().resolve(name), name, "pom", libraries);
+        root.getModules().add(name);
+        projects.add(parent);
+      }
+      String name = "module-" + i;
+      MavenProject module = project(parent.getBasedir().toPath().resolve(name), name, "jar", libraries);
+      parent.getModules().add(name);
+      projects.add(module);
+    }
+  }
+
+  static SyntheticReactor create(int modules, int librariesPerModule) {
+    try {
+      return new SyntheticReactor(Files.createTempDirectory("synthetic-reactor"), modules, librariesPerModule);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  List<MavenProject> projects() {
+    return projects;
+  }
+
+  MavenProject root() {
+    return root;
+  }
+
+  Path baseDir() {
+    return root.getBasedir().toPath();
+  }
+
+  /**
+   * A session of the reactor, as when the build is started from the root aggregator.
+   */
+  MavenSession newSession() {
+    MavenSession session = new MavenSession(null, null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+    root.setExecutionRoot(true);
+    session.setProjects(projects);
+    return session;
+  }
+
+  /**
+   * A converter whose compiler resolution finds no compiler execution, so that only the conversion itself is measured.
+   */
+  MavenProjectConverter newConverter() {
+    MavenSession session = new MavenSession(null, null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+    LifecycleExecutor lifecycleExecutor = (LifecycleExecutor) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {LifecycleExecutor.class},
+      (proxy, method, args) -> {
+        if ("calculateExecutionPlan".equals(method.getName())) {
+          return new MavenExecutionPlan(Collections.emptyList(), null);
+        }
+        throw new UnsupportedOperationException(method.getName());
+      });
+    SilentLog log = new SilentLog();
+    MavenCompilerResolver compilerResolver = new MavenCompilerResolver(session, lifecycleExecutor, log, (moduleSession, execution) -> Optional.empty());
+    return new MavenProjectConverter(log, compilerResolver, Collections.emptyMap());
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (Stream<Path> paths = Files.walk(baseDir)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static List<File> createLibraries(Path repository, int count) throws IOException {
+    List<File> libraries = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Path jar = repository.resolve("org/example/library-" + i + "/1.0/library-" + i + "-1.0.jar");
+      Files.createDirectories(jar.getParent());
+      libraries.add(Files.createFile(jar).toFile());
+    }
+    return libraries;
+  }
+
+  private static MavenProject project(Path basedir, String artifactId, String packaging, List<File> libraries) throws IOException {
+    Files.createDirectories(basedir.resolve("src/main/java"));
+    Files.createDirectories(basedir.resolve("src/test/java"));
+    Files.createDirectories(basedir.resolve("target/classes"));
+    Files.createDirectories(basedir.resolve("target/test-classes"));
+    Path pomFile = Files.createFile(basedir.resolve("pom.xml"));
+
+    Model model = new Model();
+    model.setGroupId("org.example");
+    model.setArtifactId(artifactId);
+    model.setVersion("1.0-SNAPSHOT");
+    model.setName(artifactId);
+    model.setPackaging(packaging);
+    model.setProperties(new Properties());
+    Build build = new Build();
+    build.setDirectory(basedir.resolve("target").toString());
+    build.setOutputDirectory(basedir.resolve("target/classes").toString());
+    build.setTestOutputDirectory(basedir.resolve("target/test-classes").toString());
+    model.setBuild(build);
+
+    MavenProject project = new MavenProject(model);
+    project.setFile(pomFile.toFile());
+    project.addCompileSourceRoot(basedir.resolve("src/main/java").toString());
+    project.addTestCompileSourceRoot(basedir.resolve("src/test/java").toString());
+    project.setArtifacts(artifacts(libraries));
+    return project;
+  }
+
+  private static Set<Artifact> artifacts(List<File> libraries) {
+    DefaultArtifactHandler handler = new DefaultArtifactHandler("jar");
+    handler.setAddedToClasspath(true);
+    Set<Artifact> artifacts = new LinkedHashSet<>();
+    for (int i = 0; i < libraries.size(); i++) {
+      DefaultArtifact artifact = new DefaultArtifact("org.example", "library-" + i, "1.0", Artifact.SCOPE_COMPILE, "jar", null, handler);
+      artifact.setFile(libraries.get(i));
+      artifact.setResolved(true);
+      artifacts.add(artifact);
+    }
+    return artifacts;
+  }
+}
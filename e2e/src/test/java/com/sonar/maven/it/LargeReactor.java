@@ -0,0 +1,185 @@
+/*
+ * SonarSource :: E2E :: SonarQube Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.sonar.maven.it;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates a reactor too large to be committed in {@code projects}: a shared parent inherited by every module, a group of
+ * library modules every leaf depends on, and leaves nested under several levels of aggregators, each leaf also depending
+ * on the previous leaf of its aggregator so that classpaths grow transitively. Every jar module has one Java class and
+ * one HTML page in its resources, which are only analyzed when {@code sonar.maven.scanAll} is enabled.
+ */
+public final class LargeReactor {
+
+  public static final String GROUP_ID = "org.sonarsource.maven.its.large";
+  public static final String ROOT_ARTIFACT_ID = "large-reactor";
+  public static final String PROJECT_KEY = GROUP_ID + ":" + ROOT_ARTIFACT_ID;
+  private static final String VERSION = "1.0-SNAPSHOT";
+
+  private final Path baseDir;
+  private final int leaves;
+  private final int depth;
+  private final int libraries;
+  private int aggregators;
+  private int generatedLeaves;
+  private Path lastLeaf;
+  private int lastLeafDependencies;
+
+  /**
+   * @param leaves    number of jar modules nested under the aggregators
+   * @param depth     number of aggregator levels between the root and the leaves
+   * @param libraries number of jar modules every leaf depends on
+   */
+  public LargeReactor(Path baseDir, int leaves, int depth, int libraries) {
+    this.baseDir = baseDir;
+    this.leaves = leaves;
+    this.depth = depth;
+    this.libraries = libraries;
+  }
+
+  public Path generate() {
+    try {
+      write(baseDir.resolve("parent/pom.xml"), pom("parent", "pom", "", List.of(), List.of()));
+      List<String> libraryIds = new ArrayList<>();
+      for (int i = 0; i < libraries; i++) {
+        String artifactId = "library-" + i;
+        jarModule(baseDir.resolve("libraries").resolve(artifactId), artifactId, "../../parent/pom.xml", List.of());
+        libraryIds.add(artifactId);
+      }
+      write(baseDir.resolve("libraries/pom.xml"), pom("libraries", "pom", "../parent/pom.xml", libraryIds, List.of()));
+      aggregators = 0;
+      generatedLeaves = 0;
+      int fanOut = (int) Math.ceil(Math.pow(leaves, 1.0 / depth));
+      aggregator(baseDir.resolve("modules"), "modules", "../parent/pom.xml", 1, fanOut, libraryIds);
+      write(baseDir.resolve("pom.xml"), pom(ROOT_ARTIFACT_ID, "pom", "parent/pom.xml", List.of("parent", "libraries", "modules"), List.of()));
+      return baseDir;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return all the modules of the reactor, including the root, the shared parent and the aggregators
+   */
+  public int modules() {
+    return 3 + libraries + aggregators + generatedLeaves;
+  }
+
+  public int jarModules() {
+    return libraries + generatedLeaves;
+  }
+
+  public Path lastLeaf() {
+    return lastLeaf;
+  }
+
+  /**
+   * @return the number of modules on the classpath of {@link #lastLeaf()}
+   */
+  public int lastLeafDependencies() {
+    return lastLeafDependencies;
+  }
+
+  private void aggregator(Path dir, String artifactId, String parentPath, int level, int fanOut, List<String> libraryIds) throws IOException {
+    aggregators++;
+    String childParentPath = "../" + parentPath;
+    List<String> modules = new ArrayList<>();
+    String previousLeaf = null;
+    for (int i = 0; i < fanOut && generatedLeaves < leaves; i++) {
+      String childId = artifactId + "-" + i;
+      if (level < depth) {
+        aggregator(dir.resolve(childId), childId, childParentPath, level + 1, fanOut, libraryIds);
+      } else {
+        List<String> dependencies = new ArrayList<>(libraryIds);
+        if (previousLeaf != null) {
+          dependencies.add(previousLeaf);
+        }
+        jarModule(dir.resolve(childId), childId, childParentPath, dependencies);
+        generatedLeaves++;
+        previousLeaf = childId;
+        lastLeaf = dir.resolve(childId);
+        // The libraries, the previous leaves of the aggregator being transitive dependencies
+        lastLeafDependencies = libraries + i;
+      }
+      modules.add(childId);
+    }
+    write(dir.resolve("pom.xml"), pom(artifactId, "pom", parentPath, modules, List.of()));
+  }
+
+  private static void jarModule(Path dir, String artifactId, String parentPath, List<String> dependencies) throws IOException {
+    String className = "C" + artifactId.replace("-", "_");
+    write(dir.resolve("pom.xml"), pom(artifactId, "jar", parentPath, List.of(), dependencies));
+    write(dir.resolve("src/main/java/org/example/" + className + ".java"),
+      "package org.example;\n\npublic class " + className + " {\n  public int value() {\n    return " + artifactId.length() + ";\n  }\n}\n");
+    write(dir.resolve("src/main/resources/" + artifactId + ".html"), "<!DOCTYPE html>\n<html lang=\"en\"><head><title>" + artifactId + "</title></head><body></body></html>\n");
+  }
+
+  private static String pom(String artifactId, String packaging, String parentPath, List<String> modules, List<String> dependencies) {
+    StringBuilder pom = new StringBuilder()
+      .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+      .append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"")
+      .append(" xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/maven-v4_0_0.xsd\">\n")
+      .append("  <modelVersion>4.0.0</modelVersion>\n");
+    if (!parentPath.isEmpty()) {
+      pom.append("  <parent>\n")
+        .append("    <groupId>").append(GROUP_ID).append("</groupId>\n")
+        .append("    <artifactId>parent</artifactId>\n")
+        .append("    <version>").append(VERSION).append("</version>\n")
+        .append("    <relativePath>").append(parentPath).append("</relativePath>\n")
+        .append("  </parent>\n");
+    } else {
+      pom.append("  <groupId>").append(GROUP_ID).append("</groupId>\n")
+        .append("  <version>").append(VERSION).append("</version>\n")
+        .append("  <properties>\n")
+        .append("    <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n")
+        .append("    <maven.compiler.release>11</maven.compiler.release>\n")
+        .append("  </properties>\n");
+    }
+    pom.append("  <artifactId>").append(artifactId).append("</artifactId>\n")
+      .append("  <packaging>").append(packaging).append("</packaging>\n");
+    if (!modules.isEmpty()) {
+      pom.append("  <modules>\n");
+      modules.forEach(module -> pom.append("    <module>").append(module).append("</module>\n"));
+      pom.append("  </modules>\n");
+    }
+    if (!dependencies.isEmpty()) {
+      pom.append("  <dependencies>\n");
+      dependencies.forEach(dependency -> pom.append("    <dependency>\n")
+        .append("      <groupId>").append(GROUP_ID).append("</groupId>\n")
+        .append("      <artifactId>").append(dependency).append("</artifactId>\n")
+        .append("      <version>").append(VERSION).append("</version>\n")
+        .append("    </dependency>\n"));
+      pom.append("  </dependencies>\n");
+    }
+    return pom.append("</project>\n").toString();
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
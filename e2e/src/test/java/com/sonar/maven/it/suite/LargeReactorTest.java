@@ -0,0 +1,130 @@
+/*
+ * SonarSource :: E2E :: SonarQube Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package com.sonar.maven.it.suite;
+
+import com.sonar.maven.it.LargeReactor;
+import com.sonar.orchestrator.build.MavenBuild;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Analysis of a generated reactor of thousands of modules, failing when the plugin side of the analysis, that is everything
+ * but the scanner engine, exceeds its wall clock or heap budget. The size of the reactor can be changed with the
+ * {@code largeReactor.leaves}, {@code largeReactor.depth} and {@code largeReactor.libraries} system properties.
+ */
+class LargeReactorTest extends AbstractMavenTest {
+
+  private static final long PLUGIN_WALL_CLOCK_BUDGET_MS = 120_000;
+  private static final long PLUGIN_PEAK_HEAP_BUDGET_BYTES = 1024L * 1024 * 1024;
+  private static final String METRICS_REPORT = "target/sonar/scanner-maven-metrics.json";
+
+  private static LargeReactor reactor;
+  private static Path baseDir;
+
+  @BeforeAll
+  static void generate() {
+    baseDir = Paths.get("target/large-reactor").toAbsolutePath();
+    reactor = new LargeReactor(baseDir, Integer.getInteger("largeReactor.leaves", 2000), Integer.getInteger("largeReactor.depth", 4),
+      Integer.getInteger("largeReactor.libraries", 20));
+    reactor.generate();
+  }
+
+  @Test
+  void large_reactor_is_converted_within_budget() throws IOException {
+    executeBuildAndAssertWithCE(build());
+
+    JSONObject metrics = metricsReport();
+    assertThat(counter(metrics, "modules")).isEqualTo(reactor.modules());
+    assertWithinBudget(metrics);
+    assertThat(getMeasureAsInteger(LargeReactor.PROJECT_KEY, "files")).isEqualTo(reactor.modules() + reactor.jarModules()); // pom.xml + Java class
+
+    Properties dumped = dumpedSensorProperties();
+    assertThat(dumped.getProperty("sonar.projectKey")).isEqualTo(LargeReactor.PROJECT_KEY);
+    assertThat(dumped.getProperty("sonar.java.libraries").split(",")).hasSize(reactor.lastLeafDependencies());
+    assertThat(dumped.getProperty("sonar.sources")).contains(reactor.lastLeaf().resolve("src/main/java").toString());
+  }
+
+  @Test
+  void large_reactor_with_scan_all_is_crawled_within_budget() throws IOException {
+    executeBuildAndAssertWithCE(build().setProperty("sonar.maven.scanAll", "true"));
+
+    JSONObject metrics = metricsReport();
+    assertThat(counter(metrics, "modules")).isEqualTo(reactor.modules());
+    assertThat(counter(metrics, "directoriesCrawled")).isPositive();
+    assertWithinBudget(metrics);
+    // pom.xml + Java class + HTML page collected by scanAll
+    assertThat(getMeasureAsInteger(LargeReactor.PROJECT_KEY, "files")).isEqualTo(reactor.modules() + 2 * reactor.jarModules());
+  }
+
+  private static MavenBuild build() {
+    return MavenBuild.create(baseDir.resolve("pom.xml").toFile())
+      .setGoals("compile " + sonarGoal())
+      .setProperty("sonar.maven.metrics", "true")
+      .setEnvironmentVariable("MAVEN_OPTS", "-Xmx2g")
+      .setEnvironmentVariable("DUMP_SENSOR_PROPERTIES", "sonar.projectKey,sonar.java.libraries,sonar.sources")
+      .setTimeoutSeconds(3600);
+  }
+
+  private static void assertWithinBudget(JSONObject metrics) {
+    JSONObject phases = (JSONObject) metrics.get("phases");
+    // Module conversion includes the compiler plan calculation and the classpath probing
+    double pluginMs = 0;
+    for (String phase : new String[] {"envLoadingMs", "globalPropertiesMs", "moduleConversionMs", "decryptionMs", "scanAllMs"}) {
+      pluginMs += ((Number) phases.get(phase)).doubleValue();
+    }
+    long peakHeap = counter(metrics, "peakHeapBytes");
+    assertThat(pluginMs)
+      .withFailMessage("The plugin side of the analysis took %.0f ms, more than the budget of %d ms:%n%s", pluginMs, PLUGIN_WALL_CLOCK_BUDGET_MS, metrics)
+      .isLessThan(PLUGIN_WALL_CLOCK_BUDGET_MS);
+    assertThat(peakHeap)
+      .withFailMessage("The heap peaked at %d MB, more than the budget of %d MB:%n%s", peakHeap >> 20, PLUGIN_PEAK_HEAP_BUDGET_BYTES >> 20, metrics)
+      .isPositive()
+      .isLessThan(PLUGIN_PEAK_HEAP_BUDGET_BYTES);
+  }
+
+  private static long counter(JSONObject metrics, String key) {
+    return ((Number) ((JSONObject) metrics.get("counters")).get(key)).longValue();
+  }
+
+  private static JSONObject metricsReport() throws IOException {
+    try (Reader reader = Files.newBufferedReader(baseDir.resolve(METRICS_REPORT), StandardCharsets.UTF_8)) {
+      return (JSONObject) JSONValue.parse(reader);
+    }
+  }
+
+  private static Properties dumpedSensorProperties() throws IOException {
+    Properties props = new Properties();
+    try (Reader reader = Files.newBufferedReader(reactor.lastLeaf().resolve("target/sonar/dumpSensor.system.properties"), StandardCharsets.ISO_8859_1)) {
+      props.load(reader);
+    }
+    return props;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.sonarsource.scanner.lib.EnvironmentConfig;
+import org.sonarsource.scanner.lib.ScannerProperties;
+import org.sonarsource.scanner.maven.bootstrap.QualityGateAwait;
+import org.sonarsource.scanner.maven.bootstrap.ScannerBootstrapperFactory;
+
+/**
+ * Wait for the server to process the analysis report uploaded by the sonar goal, then fail the build if the quality
+ * gate fails. Used with {@code sonar.maven.deferQualityGate}, so that the steps of the build between the two goals run
+ * while the server processes the report.
+ *
+ * @since 5.8
+ */
+@Mojo(name = "await", aggregator = true)
+public class SonarAwaitMojo extends AbstractSonarMojo {
+
+  /**
+   * File written by the sonar goal. Defaults to the one in the working directory of the analysis.
+   */
+  @Parameter(property = "sonar.maven.await.reportTaskFile")
+  private File reportTaskFile;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (shouldDelayExecution()) {
+      getLog().info("Delaying the wait for the quality gate to the end of multi-module project");
+      return;
+    }
+
+    Map<String, String> envProps = EnvironmentConfig.load(environmentVariables);
+    ScannerBootstrapperFactory bootstrapperFactory = createBootstrapperFactory(envProps, createPropertyDecryptor());
+    Map<String, String> globalProperties = bootstrapperFactory.createGlobalProperties();
+    if (isSkip(globalProperties)) {
+      return;
+    }
+
+    new QualityGateAwait(getLog(), globalProperties, serverUrl -> {
+      Map<String, String> httpProperties = new HashMap<>(globalProperties);
+      httpProperties.put(ScannerProperties.HOST_URL, serverUrl);
+      return bootstrapperFactory.createHttpClient(httpProperties);
+    }).await(reportTaskFile(globalProperties));
+  }
+
+  private Path reportTaskFile(Map<String, String> globalProperties) {
+    if (reportTaskFile != null) {
+      return reportTaskFile.toPath();
+    }
+    return QualityGateAwait.reportTaskFile(globalProperties, Paths.get(getSession().getTopLevelProject().getBuild().getDirectory(), "sonar"));
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven;
+
+import java.util.Map;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.sonarsource.scanner.lib.EnvironmentConfig;
+import org.sonarsource.scanner.maven.bootstrap.AnalysisDiagnostics;
+import org.sonarsource.scanner.maven.bootstrap.PropertyDecryptor;
+import org.sonarsource.scanner.maven.bootstrap.ScannerMetrics;
+
+/**
+ * Report the expected cost of the analysis and its scaling hotspots, with recommendations, without contacting the server.
+ *
+ * @since 5.8
+ */
+@Mojo(name = "doctor", requiresDependencyResolution = ResolutionScope.TEST, aggregator = true)
+public class SonarDoctorMojo extends AbstractSonarMojo {
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (shouldDelayExecution()) {
+      getLog().info("Delaying the diagnostics of the analysis to the end of multi-module project");
+      return;
+    }
+
+    ScannerMetrics metrics = new ScannerMetrics();
+    Map<String, String> envProps = EnvironmentConfig.load(environmentVariables);
+    PropertyDecryptor propertyDecryptor = createPropertyDecryptor();
+    Map<String, String> globalProperties = createBootstrapperFactory(envProps, propertyDecryptor).createGlobalProperties();
+    if (isSkip(globalProperties)) {
+      return;
+    }
+    metrics.configure(globalProperties);
+
+    new AnalysisDiagnostics(getLog(), createPropertiesCollector(envProps, propertyDecryptor, metrics), metrics).diagnose();
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven;
+
+import java.util.Map;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.sonarsource.scanner.lib.EnvironmentConfig;
+import org.sonarsource.scanner.maven.bootstrap.AnalysisPropertiesExport;
+import org.sonarsource.scanner.maven.bootstrap.PropertyDecryptor;
+import org.sonarsource.scanner.maven.bootstrap.ScannerMetrics;
+
+/**
+ * Compute the analysis properties and write them to the working directory, without contacting the server.
+ * Sensitive values, such as tokens and passwords, are redacted.
+ *
+ * @since 5.8
+ */
+@Mojo(name = "properties", requiresDependencyResolution = ResolutionScope.TEST, aggregator = true)
+public class SonarPropertiesMojo extends AbstractSonarMojo {
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (shouldDelayExecution()) {
+      getLog().info("Delaying the export of the analysis properties to the end of multi-module project");
+      return;
+    }
+
+    ScannerMetrics metrics = new ScannerMetrics();
+    Map<String, String> envProps = EnvironmentConfig.load(environmentVariables);
+    PropertyDecryptor propertyDecryptor = createPropertyDecryptor();
+    Map<String, String> globalProperties = createBootstrapperFactory(envProps, propertyDecryptor).createGlobalProperties();
+    if (isSkip(globalProperties)) {
+      return;
+    }
+    metrics.configure(globalProperties);
+
+    new AnalysisPropertiesExport(getLog(), createPropertiesCollector(envProps, propertyDecryptor, metrics), metrics).export();
+  }
+}
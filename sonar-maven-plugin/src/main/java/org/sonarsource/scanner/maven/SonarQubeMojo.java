@@ -21,64 +21,32 @@ package org.sonarsource.scanner.maven;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.lifecycle.LifecycleExecutor;
 import org.apache.maven.model.Plugin;
 import org.apache.maven.model.PluginManagement;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
-import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
-import org.apache.maven.rtinfo.RuntimeInformation;
-import org.apache.maven.toolchain.ToolchainManager;
 import org.sonarsource.scanner.lib.EnvironmentConfig;
 import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
-import org.sonarsource.scanner.lib.ScannerProperties;
-import org.sonarsource.scanner.maven.bootstrap.Maven3ToolchainResolver;
-import org.sonarsource.scanner.maven.bootstrap.MavenCompilerResolver;
-import org.sonarsource.scanner.maven.bootstrap.MavenProjectConverter;
+import org.sonarsource.scanner.maven.bootstrap.AnalysisPropertiesCollector;
+import org.sonarsource.scanner.maven.bootstrap.ForkedAnalysis;
 import org.sonarsource.scanner.maven.bootstrap.PropertyDecryptor;
 import org.sonarsource.scanner.maven.bootstrap.ScannerBootstrapper;
 import org.sonarsource.scanner.maven.bootstrap.ScannerBootstrapperFactory;
-import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+import org.sonarsource.scanner.maven.bootstrap.ScannerMetrics;
 
 /**
  * Analyze project. SonarQube server must be started.
  */
 @Mojo(name = "sonar", requiresDependencyResolution = ResolutionScope.TEST, aggregator = true)
 
-public class SonarQubeMojo extends AbstractMojo {
-
-  // Visible for testing
-  Map<String, String> environmentVariables = new HashMap<>(System.getenv());
-  @Parameter(defaultValue = "${session}", required = true, readonly = true)
-  private MavenSession session;
-  /**
-   * Set this to 'true' to skip analysis.
-   *
-   * @since 2.3
-   */
-  @Parameter(alias = "sonar.skip", property = "sonar.skip", defaultValue = "false")
-  private boolean skip;
-  @Component
-  private LifecycleExecutor lifecycleExecutor;
-  @Component(hint = "mng-4384")
-  private SecDispatcher securityDispatcher;
-  @Component
-  private RuntimeInformation runtimeInformation;
-  @Parameter(defaultValue = "${mojoExecution}", required = true, readonly = true)
-  private MojoExecution mojoExecution;
-  @Component
-  private ToolchainManager toolchainManager;
+public class SonarQubeMojo extends AbstractSonarMojo {
 
   @VisibleForTesting
   static boolean isPluginVersionDefinedInTheProject(MavenProject project, String groupId, String artifactId) {
@@ -105,31 +73,44 @@ public class SonarQubeMojo extends AbstractMojo {
 
     warnAboutUnspecifiedSonarPluginVersion();
 
+    ScannerMetrics metrics = new ScannerMetrics();
+    long start = metrics.start();
     Map<String, String> envProps = EnvironmentConfig.load(environmentVariables);
+    metrics.stop(ScannerMetrics.Phase.ENV_LOADING, start);
 
-    MavenCompilerResolver mavenCompilerResolver = new MavenCompilerResolver(session, lifecycleExecutor, getLog(), new Maven3ToolchainResolver(session, getLog(), toolchainManager));
-    MavenProjectConverter mavenProjectConverter = new MavenProjectConverter(getLog(), mavenCompilerResolver, envProps);
+    PropertyDecryptor propertyDecryptor = createPropertyDecryptor();
 
-    PropertyDecryptor propertyDecryptor = new PropertyDecryptor(getLog(), securityDispatcher);
+    AnalysisPropertiesCollector propertiesCollector = createPropertiesCollector(envProps, propertyDecryptor, metrics);
 
-    ScannerBootstrapperFactory bootstrapperFactory = new ScannerBootstrapperFactory(getLog(), runtimeInformation, mojoExecution, session, envProps, propertyDecryptor);
+    ScannerBootstrapperFactory bootstrapperFactory = createBootstrapperFactory(envProps, propertyDecryptor, propertiesCollector.getMavenCompilerResolver());
 
-    if (isSkip(bootstrapperFactory.createGlobalProperties())) {
+    start = metrics.start();
+    Map<String, String> globalProperties = bootstrapperFactory.createGlobalProperties();
+    metrics.stop(ScannerMetrics.Phase.GLOBAL_PROPERTIES, start);
+    if (isSkip(globalProperties)) {
       return;
     }
+    metrics.configure(globalProperties);
 
+    ForkedAnalysis forkedAnalysis = bootstrapperFactory.createForkedAnalysis(globalProperties);
+    if (forkedAnalysis != null) {
+      forkedAnalysis.execute(propertiesCollector, metrics);
+      return;
+    }
     ScannerEngineBootstrapper engineBootstrapper = bootstrapperFactory.create();
-    ScannerBootstrapper scannerBootstrapper = new ScannerBootstrapper(getLog(), session, engineBootstrapper, mavenProjectConverter, propertyDecryptor);
+    ScannerBootstrapper scannerBootstrapper = new ScannerBootstrapper(getLog(), getSession(), engineBootstrapper, propertiesCollector, metrics,
+      bootstrapperFactory.createEngineCacheKey(globalProperties));
     scannerBootstrapper.execute();
   }
 
   private void warnAboutUnspecifiedSonarPluginVersion() {
+    MojoExecution mojoExecution = getMojoExecution();
     String effectivePluginVersion = mojoExecution.getVersion();
     String groupId = mojoExecution.getGroupId();
     String artifactId = mojoExecution.getArtifactId();
     Plugin plugin = mojoExecution.getPlugin();
-    MavenProject project = session.getTopLevelProject();
-    List<String> goals = session.getGoals();
+    MavenProject project = getSession().getTopLevelProject();
+    List<String> goals = getSession().getGoals();
     boolean requiredArgumentsAreNotNull = !Arrays.asList(effectivePluginVersion, groupId, artifactId, plugin, project, goals).contains(null);
     if (requiredArgumentsAreNotNull) {
       String invalidPluginVersion = null;
@@ -145,67 +126,4 @@ public class SonarQubeMojo extends AbstractMojo {
       }
     }
   }
-
-  /**
-   * Should scanner be delayed?
-   *
-   * @return true if goal is attached to phase and not last in a multi-module project
-   */
-  private boolean shouldDelayExecution() {
-    return !isDetachedGoal() && !isLastProjectInReactor();
-  }
-
-  /**
-   * Is this execution a 'detached' goal run from the cli.  e.g. mvn sonar:sonar
-   * <p>
-   * See <a href="https://maven.apache.org/guides/mini/guide-default-execution-ids.html#Default_executionIds_for_Implied_Executions">
-   * Default executionIds for Implied Executions</a>
-   * for explanation of command line execution id.
-   *
-   * @return true if this execution is from the command line
-   */
-  private boolean isDetachedGoal() {
-    return "default-cli".equals(mojoExecution.getExecutionId());
-  }
-
-  /**
-   * Is this project the last project in the reactor?
-   *
-   * @return true if last project (including only project)
-   */
-  private boolean isLastProjectInReactor() {
-    List<MavenProject> sortedProjects = session.getProjectDependencyGraph().getSortedProjects();
-
-    MavenProject lastProject = sortedProjects.isEmpty()
-      ? session.getCurrentProject()
-      : sortedProjects.get(sortedProjects.size() - 1);
-
-    if (getLog().isDebugEnabled()) {
-      getLog().debug("Current project: '" + session.getCurrentProject().getName() +
-        "', Last project to execute based on dependency graph: '" + lastProject.getName() + "'");
-    }
-
-    return session.getCurrentProject().equals(lastProject);
-  }
-
-  private boolean isSkip(Map<String, String> properties) {
-    if (skip) {
-      getLog().info("sonar.skip = true: Skipping analysis");
-      return true;
-    }
-
-    if ("true".equalsIgnoreCase(properties.get(ScannerProperties.SKIP))) {
-      getLog().info("SonarQube Scanner analysis skipped");
-      return true;
-    }
-    return false;
-  }
-
-  MavenSession getSession() {
-    return session;
-  }
-
-  MojoExecution getMojoExecution() {
-    return mojoExecution;
-  }
 }
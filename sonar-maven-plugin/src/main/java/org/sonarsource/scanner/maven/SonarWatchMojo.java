@@ -0,0 +1,69 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven;
+
+import java.time.Duration;
+import java.util.Map;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.sonarsource.scanner.lib.EnvironmentConfig;
+import org.sonarsource.scanner.maven.bootstrap.ContinuousAnalysis;
+import org.sonarsource.scanner.maven.bootstrap.MavenProjectConverter;
+import org.sonarsource.scanner.maven.bootstrap.PropertyDecryptor;
+import org.sonarsource.scanner.maven.bootstrap.ScannerBootstrapperFactory;
+import org.sonarsource.scanner.maven.bootstrap.ScannerMetrics;
+
+/**
+ * Analyze the project, then analyze it again each time its sources, tests or compiled classes change, with the same
+ * scanner engine. Meant for local feedback: the properties are computed once, so changes to the poms require a restart.
+ *
+ * @since 5.8
+ */
+@Mojo(name = "watch", requiresDependencyResolution = ResolutionScope.TEST, aggregator = true)
+public class SonarWatchMojo extends AbstractSonarMojo {
+
+  /**
+   * Delay without file change to wait for before analyzing again, in milliseconds.
+   */
+  @Parameter(property = "sonar.maven.watch.debounceMillis", defaultValue = "1000")
+  private long debounceMillis;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (shouldDelayExecution()) {
+      getLog().info("Delaying the watch of the project to the end of multi-module project");
+      return;
+    }
+
+    Map<String, String> envProps = EnvironmentConfig.load(environmentVariables);
+    PropertyDecryptor propertyDecryptor = createPropertyDecryptor();
+    MavenProjectConverter mavenProjectConverter = createMavenProjectConverter(envProps, new ScannerMetrics());
+    ScannerBootstrapperFactory bootstrapperFactory = createBootstrapperFactory(envProps, propertyDecryptor, mavenProjectConverter.getMavenCompilerResolver());
+    Map<String, String> globalProperties = bootstrapperFactory.createGlobalProperties();
+    if (isSkip(globalProperties)) {
+      return;
+    }
+
+    new ContinuousAnalysis(getLog(), getSession(), bootstrapperFactory.create(), mavenProjectConverter, propertyDecryptor,
+      Duration.ofMillis(debounceMillis)).run();
+  }
+}
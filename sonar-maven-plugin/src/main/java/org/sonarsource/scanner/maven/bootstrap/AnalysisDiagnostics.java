@@ -0,0 +1,340 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.sonarsource.scanner.lib.AnalysisProperties;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Computes the analysis properties as the sonar goal does, without bootstrapping the scanner engine nor contacting the server,
+ * and reports what makes the analysis of the project expensive, with recommendations.
+ */
+public class AnalysisDiagnostics {
+
+  static final int TOP_ENTRIES = 10;
+  static final int MANY_MODULES = 200;
+  static final int DEEP_HIERARCHY = 5;
+  static final int MANY_LIBRARIES = 300;
+  static final long LARGE_CLASSPATH_BYTES = 500L * 1024 * 1024;
+  static final long LARGE_PROPERTIES_BYTES = 10L * 1024 * 1024;
+  static final long SLOW_PLAN_MILLIS = 500;
+  static final int CROWDED_DIRECTORY_FILES = 5_000;
+
+  private static final String MODULES = "sonar.modules";
+  private static final String MODULE_KEY = "sonar.moduleKey";
+  private static final long MEGABYTE = 1024L * 1024;
+
+  private final Log log;
+  private final AnalysisPropertiesCollector propertiesCollector;
+  private final MavenProjectConverter mavenProjectConverter;
+  private final ScannerMetrics metrics;
+
+  public AnalysisDiagnostics(Log log, AnalysisPropertiesCollector propertiesCollector, ScannerMetrics metrics) {
+    this.log = log;
+    this.propertiesCollector = propertiesCollector;
+    this.mavenProjectConverter = propertiesCollector.getMavenProjectConverter();
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return the recommendations, also written to the log
+   */
+  public List<String> diagnose() throws MojoExecutionException {
+    long start = metrics.start();
+    Map<String, String> properties = propertiesCollector.collectProperties();
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    List<String> recommendations = new ArrayList<>();
+
+    List<ModuleStats> modules = new ArrayList<>();
+    collectModules(properties, "", 0, modules);
+    reportModules(modules, elapsedMillis, recommendations);
+    reportPropertiesSize(properties, recommendations);
+    reportCompilerPlans(recommendations);
+    reportCrawl(properties, recommendations);
+
+    if (recommendations.isEmpty()) {
+      log.info("No scaling hotspot detected");
+    } else {
+      log.info("Recommendations:");
+      recommendations.forEach(recommendation -> log.info("  - " + recommendation));
+    }
+    return recommendations;
+  }
+
+  private static void collectModules(Map<String, String> properties, String prefix, int depth, List<ModuleStats> modules) {
+    ModuleStats module = new ModuleStats(properties.getOrDefault(prefix + MODULE_KEY, prefix), depth);
+    for (Path library : paths(properties.get(prefix + MavenProjectConverter.JAVA_PROJECT_MAIN_LIBRARIES))) {
+      module.addLibrary(library);
+    }
+    for (Path library : paths(properties.get(prefix + MavenProjectConverter.JAVA_PROJECT_TEST_LIBRARIES))) {
+      module.addLibrary(library);
+    }
+    for (Path source : paths(properties.get(prefix + AnalysisProperties.PROJECT_SOURCE_DIRS))) {
+      module.addSourceRoot(source);
+    }
+    for (Path test : paths(properties.get(prefix + AnalysisProperties.PROJECT_TEST_DIRS))) {
+      module.addSourceRoot(test);
+    }
+    modules.add(module);
+    String children = properties.get(prefix + MODULES);
+    if (children != null && !children.isEmpty()) {
+      for (String child : MavenUtils.splitAsCsv(children)) {
+        collectModules(properties, prefix + child + ".", depth + 1, modules);
+      }
+    }
+  }
+
+  private static List<Path> paths(@Nullable String csv) {
+    if (csv == null || csv.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return MavenUtils.splitAsCsv(csv).stream()
+      .filter(path -> !path.isEmpty())
+      .map(Paths::get)
+      .collect(Collectors.toList());
+  }
+
+  private void reportModules(List<ModuleStats> modules, long elapsedMillis, List<String> recommendations) {
+    int maxDepth = modules.stream().mapToInt(ModuleStats::getDepth).max().orElse(0);
+    long classpathBytes = modules.stream().mapToLong(ModuleStats::getClasspathBytes).sum();
+    long files = modules.stream().mapToLong(ModuleStats::getFiles).sum();
+    log.info(String.format(Locale.ROOT, "Computed the analysis properties of %d module(s) in %d ms, hierarchy depth: %d", modules.size(), elapsedMillis, maxDepth));
+    log.info(String.format(Locale.ROOT, "Classpath: %d MB, source files: %d", classpathBytes / MEGABYTE, files));
+
+    List<ModuleStats> largest = modules.stream()
+      .sorted(Comparator.comparingLong(ModuleStats::getClasspathBytes).reversed())
+      .limit(TOP_ENTRIES)
+      .collect(Collectors.toList());
+    log.info("Largest modules:");
+    largest.forEach(module -> log.info(String.format(Locale.ROOT, "  %s: %d librar%s (%d MB), %d source root(s), %d file(s)", module.getKey(), module.getLibraries(),
+      module.getLibraries() == 1 ? "y" : "ies", module.getClasspathBytes() / MEGABYTE, module.getSourceRoots(), module.getFiles())));
+
+    if (modules.size() > MANY_MODULES) {
+      recommendations.add(String.format(Locale.ROOT, "The reactor has %d modules: analyze independent parts as separate projects with %s", modules.size(),
+        MavenScannerProperties.ANALYSIS_ROOTS));
+    }
+    if (maxDepth > DEEP_HIERARCHY) {
+      recommendations.add(String.format(Locale.ROOT, "The module hierarchy is %d levels deep: flatten it to reduce the properties and the paths handled per module",
+        maxDepth));
+    }
+    List<String> manyLibraries = modules.stream()
+      .filter(module -> module.getLibraries() > MANY_LIBRARIES)
+      .map(ModuleStats::getKey)
+      .collect(Collectors.toList());
+    if (!manyLibraries.isEmpty()) {
+      recommendations.add(String.format(Locale.ROOT, "%d module(s) have more than %d libraries, such as %s: review their dependencies, every library is read by the "
+        + "engine", manyLibraries.size(), MANY_LIBRARIES, manyLibraries.get(0)));
+    }
+    if (classpathBytes > LARGE_CLASSPATH_BYTES) {
+      recommendations.add(String.format(Locale.ROOT, "The classpath of the analysis is %d MB: give the engine more memory with %s, or enable %s",
+        classpathBytes / MEGABYTE, ScannerProperties.SCANNER_JAVA_OPTS, MavenScannerProperties.AUTO_TUNE));
+    }
+  }
+
+  private void reportPropertiesSize(Map<String, String> properties, List<String> recommendations) {
+    long bytes = 0;
+    for (Map.Entry<String, String> entry : properties.entrySet()) {
+      // key=value\n
+      bytes += entry.getKey().getBytes(StandardCharsets.UTF_8).length + 2L;
+      bytes += entry.getValue() == null ? 0 : entry.getValue().getBytes(StandardCharsets.UTF_8).length;
+    }
+    log.info(String.format(Locale.ROOT, "Analysis properties: %d properties, %d KB", properties.size(), bytes / 1024));
+    if (bytes > LARGE_PROPERTIES_BYTES) {
+      recommendations.add(String.format(Locale.ROOT, "The analysis properties weigh %d MB: prefer source directories to lists of files in %s and %s",
+        bytes / MEGABYTE, AnalysisProperties.PROJECT_SOURCE_DIRS, AnalysisProperties.PROJECT_TEST_DIRS));
+    }
+  }
+
+  private void reportCompilerPlans(List<String> recommendations) {
+    MavenCompilerResolver compilerResolver = mavenProjectConverter.getMavenCompilerResolver();
+    Set<String> heterogeneous = compilerResolver.getHeterogeneousModules();
+    if (!heterogeneous.isEmpty()) {
+      log.info("Heterogeneous compiler configurations: " + String.join(", ", new TreeSet<>(heterogeneous)));
+      recommendations.add(String.format(Locale.ROOT, "%d module(s) have heterogeneous compiler configurations: align their executions or set sonar.java.source "
+        + "and sonar.java.jdkHome explicitly", heterogeneous.size()));
+    }
+    List<Map.Entry<String, Long>> slowest = compilerResolver.getPlanNanosByModule().entrySet().stream()
+      .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+      .limit(TOP_ENTRIES)
+      .collect(Collectors.toList());
+    if (slowest.isEmpty()) {
+      return;
+    }
+    log.info("Slowest compiler plan calculations:");
+    slowest.forEach(entry -> log.info(String.format(Locale.ROOT, "  %s: %d ms", entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()))));
+    List<String> slowPlans = slowest.stream()
+      .filter(entry -> TimeUnit.NANOSECONDS.toMillis(entry.getValue()) > SLOW_PLAN_MILLIS)
+      .map(Map.Entry::getKey)
+      .collect(Collectors.toList());
+    if (!slowPlans.isEmpty()) {
+      recommendations.add(String.format(Locale.ROOT, "The execution plan of %s takes more than %d ms to calculate: review the build extensions and lifecycle "
+        + "mappings of these modules", String.join(", ", slowPlans), SLOW_PLAN_MILLIS));
+    }
+  }
+
+  private void reportCrawl(Map<String, String> properties, List<String> recommendations) throws MojoExecutionException {
+    String baseDir = properties.get(AnalysisProperties.PROJECT_BASEDIR);
+    if (baseDir == null) {
+      return;
+    }
+    Map<Path, Integer> filesByDirectory;
+    try {
+      filesByDirectory = crawl(Paths.get(baseDir), mavenProjectConverter.getSkippedBasedDirs(), AnalysisPropertiesCollector.existingSources(properties));
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to crawl " + baseDir, e);
+    }
+    List<Map.Entry<Path, Integer>> largest = filesByDirectory.entrySet().stream()
+      .sorted(Map.Entry.<Path, Integer>comparingByValue().reversed())
+      .limit(TOP_ENTRIES)
+      .collect(Collectors.toList());
+    log.info(String.format(Locale.ROOT, "A crawl of %s walks %d directories, the largest being:", baseDir, filesByDirectory.size()));
+    largest.forEach(entry -> log.info(String.format(Locale.ROOT, "  %s: %d file(s)", entry.getKey(), entry.getValue())));
+    boolean scanAll = Boolean.parseBoolean(propertiesCollector.getProperty(MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES));
+    if (scanAll && !largest.isEmpty() && largest.get(0).getValue() > CROWDED_DIRECTORY_FILES) {
+      recommendations.add(String.format(Locale.ROOT, "%s contains %d files and is crawled by %s: exclude it with sonar.exclusions or move it to a hidden "
+        + "directory", largest.get(0).getKey(), largest.get(0).getValue(), MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES));
+    }
+  }
+
+  /**
+   * Same directories as the ones visited by {@link SourceCollector}, that is all but the hidden, build output and skipped
+   * ones, and the ones covered by the source and test roots.
+   */
+  static Map<Path, Integer> crawl(Path baseDir, Set<Path> skippedDirs, Set<Path> existingSources) throws IOException {
+    Map<Path, Integer> filesByDirectory = new HashMap<>();
+    PathTrie coveredPaths = PathTrie.of(existingSources);
+    Files.walkFileTree(baseDir, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (coveredPaths.containsSelfOrAncestor(dir)) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        if (!dir.equals(baseDir)) {
+          String name = dir.getFileName().toString();
+          if (name.startsWith(".") || SourceCollector.EXCLUDED_DIRECTORIES.contains(name.toLowerCase(Locale.ROOT)) || skippedDirs.contains(dir)) {
+            return FileVisitResult.SKIP_SUBTREE;
+          }
+        }
+        filesByDirectory.put(dir, 0);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        filesByDirectory.merge(file.getParent(), 1, Integer::sum);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException exc) {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return filesByDirectory;
+  }
+
+  static final class ModuleStats {
+    private final String key;
+    private final int depth;
+    private int libraries;
+    private long classpathBytes;
+    private int sourceRoots;
+    private long files;
+
+    ModuleStats(String key, int depth) {
+      this.key = key;
+      this.depth = depth;
+    }
+
+    void addLibrary(Path library) {
+      libraries++;
+      try {
+        if (Files.isRegularFile(library)) {
+          classpathBytes += Files.size(library);
+        }
+      } catch (IOException e) {
+        // Not readable, the engine will fail on it anyway
+      }
+    }
+
+    void addSourceRoot(Path root) {
+      if (Files.isRegularFile(root)) {
+        files++;
+        return;
+      }
+      sourceRoots++;
+      if (Files.isDirectory(root)) {
+        try (Stream<Path> walk = Files.walk(root)) {
+          files += walk.filter(Files::isRegularFile).count();
+        } catch (IOException | UncheckedIOException e) {
+          // Partially counted
+        }
+      }
+    }
+
+    String getKey() {
+      return key;
+    }
+
+    int getDepth() {
+      return depth;
+    }
+
+    int getLibraries() {
+      return libraries;
+    }
+
+    long getClasspathBytes() {
+      return classpathBytes;
+    }
+
+    int getSourceRoots() {
+      return sourceRoots;
+    }
+
+    long getFiles() {
+      return files;
+    }
+  }
+}
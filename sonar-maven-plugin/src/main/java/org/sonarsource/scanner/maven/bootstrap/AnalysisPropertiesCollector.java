@@ -0,0 +1,204 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.annotation.CheckForNull;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.sonarsource.scanner.lib.AnalysisProperties;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Computes the analysis properties of the reactor: conversion of the modules, decryption, and the optional collection of
+ * all the sources, auto-tuning and deferral of the quality gate. It neither bootstraps the scanner engine nor contacts the server.
+ */
+public class AnalysisPropertiesCollector {
+
+  static final String QUALITY_GATE_WAIT = "sonar.qualitygate.wait";
+  private static final Pattern REPORT_PROPERTY_PATTERN = Pattern.compile("^sonar\\..*[rR]eportPaths?$");
+
+  private final Log log;
+  private final MavenSession session;
+  private final MavenProjectConverter mavenProjectConverter;
+  private final PropertyDecryptor propertyDecryptor;
+  private final ScannerMetrics metrics;
+
+  public AnalysisPropertiesCollector(Log log, MavenSession session, MavenProjectConverter mavenProjectConverter, PropertyDecryptor propertyDecryptor,
+    ScannerMetrics metrics) {
+    this.log = log;
+    this.session = session;
+    this.mavenProjectConverter = mavenProjectConverter;
+    this.propertyDecryptor = propertyDecryptor;
+    this.metrics = metrics;
+  }
+
+  MavenProjectConverter getMavenProjectConverter() {
+    return mavenProjectConverter;
+  }
+
+  public MavenCompilerResolver getMavenCompilerResolver() {
+    return mavenProjectConverter.getMavenCompilerResolver();
+  }
+
+  /**
+   * @return the value given on the command line, or else in the top level pom, or else in the environment
+   */
+  @CheckForNull
+  String getProperty(String key) {
+    Properties userProperties = new Properties();
+    MavenUtils.putRelevant(session.getUserProperties(), userProperties);
+    return MavenProjectConverter.getPropertyByKey(key, findTopLevelProject(), userProperties, mavenProjectConverter.getEnvProperties());
+  }
+
+  /**
+   * @return the properties of the whole reactor, as one project
+   */
+  public Map<String, String> collectProperties() throws MojoExecutionException {
+    return collectProperties(session.getProjects(), findTopLevelProject());
+  }
+
+  MavenProject findTopLevelProject() {
+    for (MavenProject project : session.getProjects()) {
+      if (project.isExecutionRoot()) {
+        return project;
+      }
+    }
+    throw new IllegalStateException("Maven session does not declare a top level project");
+  }
+
+  /**
+   * @return the properties of the project rooted at the given module, made of the given modules
+   */
+  Map<String, String> collectProperties(List<MavenProject> sortedProjects, MavenProject topLevelProject)
+    throws MojoExecutionException {
+    metrics.startHeapSampling();
+    Properties userProperties = new Properties();
+    MavenUtils.putRelevant(session.getUserProperties(), userProperties);
+    Map<String, String> props = mavenProjectConverter.configure(sortedProjects, topLevelProject, userProperties);
+    long decryptionStart = metrics.start();
+    ScannerEvents.DecryptionEvent decryptionEvent = new ScannerEvents.DecryptionEvent();
+    decryptionEvent.begin();
+    props.putAll(propertyDecryptor.decryptProperties(props));
+    metrics.stop(ScannerMetrics.Phase.DECRYPTION, decryptionStart);
+    decryptionEvent.propertyCount = props.size();
+    decryptionEvent.commit();
+    if (shouldCollectAllSources(userProperties)) {
+      log.info("Parameter " + MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES + " is enabled. The scanner will attempt to collect additional sources.");
+      if (mavenProjectConverter.isSourceDirsOverridden()) {
+        log.warn(notCollectingAdditionalSourcesBecauseOf(AnalysisProperties.PROJECT_SOURCE_DIRS));
+      } else if (mavenProjectConverter.isTestDirsOverridden()) {
+        log.warn(notCollectingAdditionalSourcesBecauseOf(AnalysisProperties.PROJECT_TEST_DIRS));
+      } else {
+        boolean shouldCollectJavaAndKotlinSources = isUserDefinedJavaBinaries(userProperties);
+        long scanAllStart = metrics.start();
+        collectAllSources(props, shouldCollectJavaAndKotlinSources);
+        metrics.stop(ScannerMetrics.Phase.SCAN_ALL, scanAllStart);
+      }
+    }
+
+    if (Boolean.parseBoolean(getProperty(MavenScannerProperties.AUTO_TUNE))) {
+      if (getProperty(ScannerProperties.SCANNER_JAVA_OPTS) == null && !props.containsKey(ScannerProperties.SCANNER_JAVA_OPTS)) {
+        props.put(ScannerProperties.SCANNER_JAVA_OPTS, new EngineAutoTuning(log).javaOpts(sortedProjects.size(), props));
+      } else {
+        log.info("Parameter " + MavenScannerProperties.AUTO_TUNE + " is enabled but " + ScannerProperties.SCANNER_JAVA_OPTS + " is set, the scanner engine is not auto-tuned.");
+      }
+    }
+
+    if (Boolean.parseBoolean(getProperty(MavenScannerProperties.DEFER_QUALITY_GATE)) && Boolean.parseBoolean(props.get(QUALITY_GATE_WAIT))) {
+      // The report is uploaded without waiting for its processing, the sonar:await goal enforces the quality gate later
+      props.put(QUALITY_GATE_WAIT, "false");
+      log.info("The quality gate is not awaited by the analysis, run the sonar:await goal to enforce it");
+    }
+
+    metrics.set(ScannerMetrics.Counter.PROPERTIES, props.size());
+    metrics.sampleHeap();
+    return props;
+  }
+
+  private static boolean shouldCollectAllSources(Properties userProperties) {
+    return Boolean.parseBoolean(userProperties.getProperty(MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES));
+  }
+
+  private static String notCollectingAdditionalSourcesBecauseOf(String overriddenProperty) {
+    return "Parameter " + MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES + " is enabled but " +
+      "the scanner will not collect additional sources because " + overriddenProperty + " has been overridden.";
+  }
+
+  private static Set<Path> excludedReportFiles(Map<String, String> props) {
+    Set<Path> reportFiles = new PathTrie();
+    for (Map.Entry<String, String> property : props.entrySet()) {
+      if (REPORT_PROPERTY_PATTERN.matcher(property.getKey()).matches()) {
+        Csv.forEach(property.getValue(), path -> reportFiles.add(Paths.get(path).toAbsolutePath().normalize()));
+      }
+    }
+    return reportFiles;
+  }
+
+  /**
+   * Files and folders covered by sonar.sources and sonar.tests (and sonar.exclusions) as computed by the MavenConverter,
+   * combining all the sonar.sources at the top-level and by module.
+   */
+  static PathTrie existingSources(Map<String, String> props) {
+    PathTrie existingSources = new PathTrie();
+    for (Map.Entry<String, String> property : props.entrySet()) {
+      String key = property.getKey();
+      if ((key.endsWith(AnalysisProperties.PROJECT_SOURCE_DIRS) || key.endsWith(AnalysisProperties.PROJECT_TEST_DIRS)) && !property.getValue().isEmpty()) {
+        Csv.forEach(property.getValue(), path -> existingSources.add(Paths.get(path)));
+      }
+    }
+    return existingSources;
+  }
+
+  @VisibleForTesting
+  void collectAllSources(Map<String, String> props, boolean shouldCollectJavaAndKotlinSources) {
+    String projectBasedir = props.get(AnalysisProperties.PROJECT_BASEDIR);
+    // Crawl the FS for files we want
+    try {
+      SourceCollector visitor = new SourceCollector(existingSources(props), mavenProjectConverter.getSkippedBasedDirs(), excludedReportFiles(props), shouldCollectJavaAndKotlinSources,
+        metrics);
+      visitor.collect(Paths.get(projectBasedir));
+      List<String> mergedSources = new ArrayList<>();
+      Csv.forEach(props.get(AnalysisProperties.PROJECT_SOURCE_DIRS), mergedSources::add);
+      for (Path file : visitor.getCollectedSources()) {
+        mergedSources.add(file.toAbsolutePath().toString());
+      }
+      props.put(AnalysisProperties.PROJECT_SOURCE_DIRS, Csv.join(mergedSources));
+    } catch (IOException e) {
+      log.warn(e);
+    }
+  }
+
+  private static boolean isUserDefinedJavaBinaries(Properties userProperties) {
+    return userProperties.containsKey(MavenProjectConverter.JAVA_PROJECT_MAIN_LIBRARIES) &&
+      userProperties.containsKey(MavenProjectConverter.JAVA_PROJECT_MAIN_BINARY_DIRS);
+  }
+}
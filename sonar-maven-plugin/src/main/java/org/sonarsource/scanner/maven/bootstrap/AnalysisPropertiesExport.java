@@ -0,0 +1,120 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.sonarsource.scanner.lib.AnalysisProperties;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Computes the analysis properties as the sonar goal does, without bootstrapping the scanner engine nor contacting the server,
+ * and writes them sorted by key, with sensitive values redacted, so that two exports can be compared.
+ */
+public class AnalysisPropertiesExport {
+
+  static final String FILE_NAME = "sonar-analysis.properties";
+  static final String REDACTED = "<redacted>";
+
+  private final Log log;
+  private final AnalysisPropertiesCollector propertiesCollector;
+  private final ScannerMetrics metrics;
+
+  public AnalysisPropertiesExport(Log log, AnalysisPropertiesCollector propertiesCollector, ScannerMetrics metrics) {
+    this.log = log;
+    this.propertiesCollector = propertiesCollector;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return the written file
+   */
+  public Path export() throws MojoExecutionException {
+    long start = metrics.start();
+    Map<String, String> properties = propertiesCollector.collectProperties();
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    String workDir = properties.get(ScannerProperties.WORK_DIR);
+    Path file = workDir != null ? Paths.get(workDir, FILE_NAME) : Paths.get(properties.get(AnalysisProperties.PROJECT_BASEDIR), FILE_NAME);
+    try {
+      Files.createDirectories(file.getParent());
+      try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        for (Map.Entry<String, String> entry : new TreeMap<>(properties).entrySet()) {
+          String value = MavenUtils.isSensitive(entry.getKey()) ? REDACTED : entry.getValue();
+          writer.write(escape(entry.getKey(), true) + "=" + escape(value, false) + "\n");
+        }
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to write the analysis properties to " + file, e);
+    }
+    log.info(String.format("Computed %d analysis properties of %d module(s) in %d ms, written to %s", properties.size(), metrics.count(ScannerMetrics.Counter.MODULES),
+      elapsedMillis, file));
+    metrics.report(log, workDir);
+    return file;
+  }
+
+  /**
+   * Same escaping as {@link java.util.Properties#store(Writer, String)}, except for non-ASCII characters which are kept as is
+   * in the UTF-8 file. {@code Properties#store} can't be used because of the timestamp it writes.
+   */
+  static String escape(String text, boolean isKey) {
+    StringBuilder escaped = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '\\':
+          escaped.append("\\\\");
+          break;
+        case '\t':
+          escaped.append("\\t");
+          break;
+        case '\n':
+          escaped.append("\\n");
+          break;
+        case '\r':
+          escaped.append("\\r");
+          break;
+        case '\f':
+          escaped.append("\\f");
+          break;
+        case ' ':
+          escaped.append(i == 0 || isKey ? "\\ " : " ");
+          break;
+        case '=':
+        case ':':
+        case '#':
+        case '!':
+          escaped.append('\\').append(c);
+          break;
+        default:
+          escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+}
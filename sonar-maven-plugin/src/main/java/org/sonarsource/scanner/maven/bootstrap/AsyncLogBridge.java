@@ -0,0 +1,162 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Forwards the log of the scanner engine to the Maven {@link Log} from a dedicated thread, so that the engine output
+ * is not slowed down by the console of Maven.
+ * <p>
+ * Messages are written in batches and in the order they were received, through a ring buffer of {@code capacity}
+ * messages. When it is full, debug messages are dropped and the other levels wait for a free slot, so the memory used
+ * by a slow console stays bounded. Pending messages are flushed and the drops reported on {@link #close()}.
+ * </p>
+ */
+class AsyncLogBridge implements AutoCloseable {
+
+  static final int DEFAULT_CAPACITY = 8192;
+  private static final int BATCH_SIZE = 256;
+
+  private enum Level {
+    DEBUG, INFO, WARN, ERROR
+  }
+
+  private static final class Message {
+    private static final Message END = new Message(Level.INFO, "");
+
+    private final Level level;
+    private final String text;
+
+    private Message(Level level, String text) {
+      this.level = level;
+      this.text = text;
+    }
+  }
+
+  private final Log log;
+  private final BlockingQueue<Message> ring;
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread drainer;
+
+  AsyncLogBridge(Log log) {
+    this(log, DEFAULT_CAPACITY);
+  }
+
+  AsyncLogBridge(Log log, int capacity) {
+    this.log = log;
+    this.ring = new ArrayBlockingQueue<>(capacity);
+    this.drainer = new Thread(this::drainUntilClosed, "sonar-engine-log");
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+  }
+
+  void debug(String message) {
+    if (!ring.offer(new Message(Level.DEBUG, message))) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  void info(String message) {
+    put(new Message(Level.INFO, message));
+  }
+
+  void warn(String message) {
+    put(new Message(Level.WARN, message));
+  }
+
+  void error(String message) {
+    put(new Message(Level.ERROR, message));
+  }
+
+  long getDropped() {
+    return dropped.get();
+  }
+
+  private void put(Message message) {
+    try {
+      ring.put(message);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      // Interrupted build: the message is written directly rather than lost
+      write(message);
+    }
+  }
+
+  /**
+   * Blocks until messages are available, then writes them by batches until {@link Message#END}.
+   */
+  private void drainUntilClosed() {
+    List<Message> batch = new ArrayList<>(BATCH_SIZE);
+    try {
+      while (true) {
+        batch.add(ring.take());
+        ring.drainTo(batch, BATCH_SIZE - 1);
+        for (Message message : batch) {
+          if (message == Message.END) {
+            return;
+          }
+          write(message);
+        }
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void write(Message message) {
+    switch (message.level) {
+      case DEBUG:
+        log.debug(message.text);
+        break;
+      case WARN:
+        log.warn(message.text);
+        break;
+      case ERROR:
+        log.error(message.text);
+        break;
+      default:
+        log.info(message.text);
+    }
+  }
+
+  /**
+   * Waits for the pending messages to be written, then reports the dropped ones.
+   */
+  @Override
+  public void close() {
+    try {
+      ring.put(Message.END);
+      drainer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      drainer.interrupt();
+    }
+    if (dropped.get() > 0) {
+      log.warn(dropped.get() + " debug messages of the scanner engine were dropped because the Maven console could not keep up");
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.util.List;
+import java.util.Optional;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.sonarsource.scanner.maven.bootstrap.MavenCompilerResolver.CompilerExecution;
+
+/**
+ * Reads the maven-compiler-plugin executions of a module from its effective model, without calculating its execution
+ * plan.
+ * <p>
+ * The only implementation reads the immutable model of the Maven 4 API. It is a Java 17 class of the multi-release
+ * jar, so it is looked up by name and only used when the running Maven and JVM provide that API.
+ * </p>
+ */
+interface CompilerModelReader {
+
+  String MAVEN_4_IMPLEMENTATION = "org.sonarsource.scanner.maven.bootstrap.Maven4CompilerModelReader";
+
+  /**
+   * @return the compiler executions bound up to the test-compile phase, in the order of the execution plan; or empty
+   * when the model alone does not give the configuration the execution plan would give, for example when a parameter
+   * falls back to a default value of the plugin descriptor
+   */
+  Optional<List<CompilerExecution>> read(MavenProject pom);
+
+  static Optional<CompilerModelReader> forSession(MavenSession session) {
+    try {
+      Class<?> implementation = Class.forName(MAVEN_4_IMPLEMENTATION, true, CompilerModelReader.class.getClassLoader());
+      return Optional.ofNullable((CompilerModelReader) implementation.getMethod("create", MavenSession.class).invoke(null, session));
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // Maven 3, or a JVM older than Java 17
+      return Optional.empty();
+    }
+  }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.sonarsource.scanner.lib.AnalysisProperties;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
+import org.sonarsource.scanner.lib.ScannerEngineFacade;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Analyzes the reactor again each time its sources, tests or compiled classes change, until the thread is interrupted.
+ * <p>
+ * The properties are computed and the engine is bootstrapped once: adding a module or changing a pom requires a restart.
+ * Bursts of changes, like a build writing many classes, are merged in one analysis by waiting for the file system to be
+ * quiet for the debounce delay.
+ * </p>
+ * <p>
+ * The source, test and binary directories are watched with their subdirectories, except the working directories of the
+ * analysis and the build directories of the modules which are not themselves watched. Source files listed directly,
+ * like the poms, are watched alone: the events of their parent directory about other files are ignored.
+ * </p>
+ */
+public class ContinuousAnalysis {
+
+  private final Log log;
+  private final MavenSession session;
+  private final ScannerEngineBootstrapper scannerEngineBootstrapper;
+  private final AnalysisPropertiesCollector propertiesCollector;
+  private final Duration debounce;
+  private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+  // Directories watched with their subdirectories
+  private final Set<Path> recursiveDirectories = new HashSet<>();
+  // Names of the files watched alone, by parent directory
+  private final Map<Path, Set<String>> watchedFiles = new HashMap<>();
+  private Set<Path> recursiveRoots = Set.of();
+  private Set<Path> workDirectories = Set.of();
+  private Set<Path> buildDirectories = Set.of();
+
+  public ContinuousAnalysis(Log log, MavenSession session, ScannerEngineBootstrapper scannerEngineBootstrapper, MavenProjectConverter mavenProjectConverter,
+    PropertyDecryptor propertyDecryptor, Duration debounce) {
+    this.log = log;
+    this.session = session;
+    this.scannerEngineBootstrapper = scannerEngineBootstrapper;
+    this.propertiesCollector = new AnalysisPropertiesCollector(log, session, mavenProjectConverter, propertyDecryptor, new ScannerMetrics());
+    this.debounce = debounce;
+  }
+
+  public void run() throws MojoExecutionException {
+    Map<String, String> properties = propertiesCollector.collectProperties();
+    try (ScannerEngineBootstrapResult bootstrapResult = scannerEngineBootstrapper.bootstrap()) {
+      if (!bootstrapResult.isSuccessful()) {
+        throw new MojoExecutionException("The scanner bootstrapping has failed! See the logs for more details.");
+      }
+      try (ScannerEngineFacade engineFacade = bootstrapResult.getEngineFacade();
+        WatchService watchService = FileSystems.getDefault().newWatchService()) {
+        analyze(engineFacade, properties);
+        watch(watchService, properties);
+        log.info(String.format("Watching %d directories and %d files for changes, press Ctrl+C to stop", recursiveDirectories.size(),
+          watchedFiles.values().stream().mapToInt(Set::size).sum()));
+        while (true) {
+          Set<Path> changes = awaitChanges(watchService);
+          log.info(String.format("Detected changes in %d files, analyzing again", changes.size()));
+          analyze(engineFacade, properties);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      Thread.currentThread().interrupt();
+      log.info("Stopped watching for changes");
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to watch the sources for changes", e);
+    } catch (MojoExecutionException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  private void analyze(ScannerEngineFacade engineFacade, Map<String, String> properties) {
+    long start = System.nanoTime();
+    // A failed analysis does not stop the watch, the next change may fix it
+    if (engineFacade.analyze(properties)) {
+      log.info(String.format("Analysis done in %d ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    } else {
+      log.error("The scanner analysis has failed! See the logs for more details.");
+    }
+  }
+
+  @VisibleForTesting
+  void watch(WatchService watchService, Map<String, String> properties) throws IOException {
+    recursiveRoots = watchedRoots(properties);
+    workDirectories = workDirectories(properties);
+    buildDirectories = buildDirectories();
+    for (Path root : recursiveRoots) {
+      register(watchService, root);
+    }
+    for (Path file : watchedFiles(properties)) {
+      Path parent = file.getParent();
+      if (!isWatchedRecursively(parent)) {
+        watchedFiles.computeIfAbsent(parent, dir -> new HashSet<>()).add(file.getFileName().toString());
+        registerDirectory(watchService, parent);
+      }
+    }
+  }
+
+  /**
+   * Directories of the sources, tests and compiled classes of all the modules, watched with their subdirectories.
+   */
+  @VisibleForTesting
+  static Set<Path> watchedRoots(Map<String, String> properties) {
+    Set<Path> roots = new TreeSet<>();
+    forEachWatchedPath(properties, path -> {
+      if (Files.isDirectory(path)) {
+        roots.add(path);
+      }
+    });
+    return roots;
+  }
+
+  /**
+   * Source files listed directly, like the poms, watched without the other files of their directory.
+   */
+  @VisibleForTesting
+  static Set<Path> watchedFiles(Map<String, String> properties) {
+    Set<Path> files = new TreeSet<>();
+    forEachWatchedPath(properties, path -> {
+      if (Files.isRegularFile(path)) {
+        files.add(path);
+      }
+    });
+    return files;
+  }
+
+  private static void forEachWatchedPath(Map<String, String> properties, Consumer<Path> consumer) {
+    properties.forEach((key, value) -> {
+      if (value != null && (key.endsWith(AnalysisProperties.PROJECT_SOURCE_DIRS) || key.endsWith(AnalysisProperties.PROJECT_TEST_DIRS)
+        || key.endsWith(MavenProjectConverter.JAVA_PROJECT_MAIN_BINARY_DIRS) || key.endsWith(MavenProjectConverter.JAVA_PROJECT_TEST_BINARY_DIRS))) {
+        for (String path : MavenUtils.splitAsCsv(value)) {
+          consumer.accept(Paths.get(path).toAbsolutePath().normalize());
+        }
+      }
+    });
+  }
+
+  /**
+   * Working directories of the analysis, of the root and of each module.
+   */
+  @VisibleForTesting
+  static Set<Path> workDirectories(Map<String, String> properties) {
+    Set<Path> workDirectories = new HashSet<>();
+    properties.forEach((key, value) -> {
+      if (value != null && key.endsWith(ScannerProperties.WORK_DIR)) {
+        workDirectories.add(Paths.get(value).toAbsolutePath().normalize());
+      }
+    });
+    return workDirectories;
+  }
+
+  private Set<Path> buildDirectories() {
+    Set<Path> buildDirectories = new HashSet<>();
+    for (MavenProject project : session.getProjects()) {
+      Build build = project.getBuild();
+      if (build != null && build.getDirectory() != null) {
+        buildDirectories.add(Paths.get(build.getDirectory()).toAbsolutePath().normalize());
+      }
+    }
+    return buildDirectories;
+  }
+
+  /**
+   * The working directories are always ignored, as the analysis writes to them. A build directory is only ignored
+   * outside of the roots it contains, like its directory of compiled classes.
+   */
+  private boolean isExcluded(Path path) {
+    if (workDirectories.stream().anyMatch(path::startsWith)) {
+      return true;
+    }
+    return buildDirectories.stream()
+      .anyMatch(buildDir -> path.startsWith(buildDir) && recursiveRoots.stream().noneMatch(root -> root.startsWith(buildDir) && path.startsWith(root)));
+  }
+
+  private boolean isWatchedRecursively(Path path) {
+    return recursiveRoots.stream().anyMatch(path::startsWith) && !isExcluded(path);
+  }
+
+  @VisibleForTesting
+  Set<Path> getWatchedDirectories() {
+    return new HashSet<>(watchedDirectories.values());
+  }
+
+  private void register(WatchService watchService, Path root) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        if (isExcluded(dir)) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        if (recursiveDirectories.add(dir)) {
+          registerDirectory(watchService, dir);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void registerDirectory(WatchService watchService, Path dir) throws IOException {
+    if (!watchedDirectories.containsValue(dir)) {
+      WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+      watchedDirectories.put(key, dir);
+    }
+  }
+
+  /**
+   * Blocks until at least one file changed, then until no file changed during the debounce delay.
+   *
+   * @return the changed files
+   */
+  @VisibleForTesting
+  Set<Path> awaitChanges(WatchService watchService) throws InterruptedException, IOException {
+    Set<Path> changes = new HashSet<>();
+    WatchKey key = watchService.take();
+    while (key != null) {
+      collectChanges(watchService, key, changes);
+      key = changes.isEmpty() ? watchService.take() : watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    return changes;
+  }
+
+  private void collectChanges(WatchService watchService, WatchKey key, Set<Path> changes) throws IOException {
+    Path dir = watchedDirectories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        continue;
+      }
+      Path changed = dir.resolve((Path) event.context());
+      if (isChangeOfWatchedFile(dir, changed)) {
+        changes.add(changed);
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && recursiveDirectories.contains(dir) && Files.isDirectory(changed)) {
+          register(watchService, changed);
+        }
+      }
+    }
+    if (!key.reset()) {
+      watchedDirectories.remove(key);
+      recursiveDirectories.remove(dir);
+    }
+  }
+
+  private boolean isChangeOfWatchedFile(Path dir, Path changed) {
+    if (recursiveDirectories.contains(dir)) {
+      // The analysis writes to its working directory, which must not trigger another analysis
+      return !isExcluded(changed);
+    }
+    Set<String> files = watchedFiles.get(dir);
+    return files != null && files.contains(changed.getFileName().toString());
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Comma separated values of properties such as {@code sonar.sources} or {@code sonar.java.libraries}, where values
+ * containing a comma are wrapped in double quotes. Values are read one at a time with a {@link Cursor}, without the
+ * intermediate lists of {@link MavenUtils#splitAsCsv(String)}.
+ * <p>
+ * Values are read exactly as {@link MavenUtils#splitAsCsv(String)} always did:
+ * <ul>
+ *   <li>without any double quote, like {@link String#split(String)}: trailing empty values are dropped</li>
+ *   <li>otherwise, the characters between a closing quote and the next comma are ignored, and so is a last value of a
+ *   single character</li>
+ * </ul>
+ * </p>
+ */
+final class Csv {
+
+  private Csv() {
+    // utility class with only static methods
+  }
+
+  /**
+   * Joins the values in a single buffer, sized upfront from their lengths, quotes and separators.
+   */
+  static String join(Collection<String> values) {
+    if (values.isEmpty()) {
+      return "";
+    }
+    int length = values.size() - 1;
+    for (String value : values) {
+      length += needsQuotes(value) ? (value.length() + 2) : value.length();
+    }
+    StringBuilder joined = new StringBuilder(length);
+    boolean first = true;
+    for (String value : values) {
+      if (!first) {
+        joined.append(',');
+      }
+      first = false;
+      if (needsQuotes(value)) {
+        joined.append('"').append(value).append('"');
+      } else {
+        joined.append(value);
+      }
+    }
+    return joined.toString();
+  }
+
+  static void forEach(String joined, Consumer<String> action) {
+    Cursor cursor = new Cursor(joined);
+    while (cursor.next()) {
+      action.accept(cursor.value());
+    }
+  }
+
+  /**
+   * @return the number of values, without extracting them
+   */
+  static int count(String joined) {
+    Cursor cursor = new Cursor(joined);
+    int count = 0;
+    while (cursor.next()) {
+      count++;
+    }
+    return count;
+  }
+
+  private static boolean needsQuotes(String value) {
+    return value.indexOf(',') != -1;
+  }
+
+  /**
+   * Reads the values in a single pass. Each call to {@link #next()} moves to the next value, whose bounds in the joined
+   * string are given by {@link #start()} and {@link #end()}.
+   */
+  static final class Cursor {
+
+    private final String joined;
+    private final boolean quoted;
+    private final int limit;
+    private int position;
+    private int start;
+    private int end;
+    private boolean done;
+
+    Cursor(String joined) {
+      this.joined = joined;
+      this.quoted = joined.indexOf('"') != -1;
+      if (quoted) {
+        limit = joined.length();
+      } else {
+        int withoutTrailingCommas = joined.length();
+        while (withoutTrailingCommas > 0 && joined.charAt(withoutTrailingCommas - 1) == ',') {
+          withoutTrailingCommas--;
+        }
+        limit = withoutTrailingCommas;
+        // The empty string is one empty value, while a string made of commas has no value
+        done = limit == 0 && !joined.isEmpty();
+      }
+    }
+
+    boolean next() {
+      if (done) {
+        return false;
+      }
+      return quoted ? nextQuoted() : nextUnquoted();
+    }
+
+    private boolean nextUnquoted() {
+      start = position;
+      int comma = joined.indexOf(',', start);
+      if (comma == -1 || comma >= limit) {
+        end = limit;
+        done = true;
+      } else {
+        end = comma;
+        position = comma + 1;
+      }
+      return true;
+    }
+
+    private boolean nextQuoted() {
+      if (position + 1 >= limit) {
+        done = true;
+        return false;
+      }
+      if (joined.charAt(position) == '"') {
+        int closingQuote = joined.indexOf('"', position + 1);
+        if (closingQuote == -1) {
+          throw new IllegalArgumentException("Missing closing double quote at index " + position + " of: " + joined);
+        }
+        start = position + 1;
+        end = closingQuote;
+        int comma = joined.indexOf(',', closingQuote);
+        if (comma == -1) {
+          done = true;
+        } else {
+          position = comma + 1;
+        }
+      } else {
+        start = position;
+        int comma = joined.indexOf(',', position);
+        end = comma == -1 ? limit : comma;
+        position = end + 1;
+      }
+      return true;
+    }
+
+    int start() {
+      return start;
+    }
+
+    int end() {
+      return end;
+    }
+
+    String value() {
+      return joined.substring(start, end);
+    }
+  }
+}
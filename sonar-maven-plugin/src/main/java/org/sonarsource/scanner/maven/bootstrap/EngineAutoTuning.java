@@ -0,0 +1,191 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.logging.Log;
+import org.sonarsource.scanner.lib.AnalysisProperties;
+
+/**
+ * Sizes the JVM of the scanner engine from the size of the reactor and from the CPU and memory limits of the
+ * container, when {@code sonar.maven.autoTune} is enabled.
+ * <p>
+ * The heap grows with the number of modules, source paths (directories, and files collected by
+ * {@code sonar.maven.scanAll}) and libraries, and is capped at half of the memory limit, as the Maven JVM runs in the
+ * same container, but never below the minimum heap. The processor count seen by the engine grows with the number of modules, up to the CPU limit.
+ * </p>
+ */
+class EngineAutoTuning {
+
+  static final String CGROUP_ROOT = "/sys/fs/cgroup";
+  // Names of the cgroup v1 CPU controller directory, depending on how the controllers are mounted
+  private static final List<String> CGROUP_V1_CPU_DIRECTORIES = List.of("cpu", "cpu,cpuacct", "cpuacct,cpu");
+
+  private static final long MB = 1024L * 1024;
+  private static final long MIN_HEAP_MB = 512;
+  private static final long MAX_HEAP_MB = 8192;
+  private static final long BASE_HEAP_MB = 384;
+  private static final long HEAP_PER_MODULE_MB = 4;
+  private static final long HEAP_PER_100_SOURCE_PATHS_MB = 16;
+  private static final long HEAP_PER_100_LIBRARIES_MB = 32;
+  private static final int MODULES_PER_PROCESSOR = 4;
+  // Limits of cgroup v1 above this value mean "unlimited"
+  private static final long UNLIMITED_THRESHOLD = Long.MAX_VALUE / 2;
+
+  private final Log log;
+  private final ContainerLimits limits;
+
+  EngineAutoTuning(Log log) {
+    this(log, ContainerLimits.read(Path.of(CGROUP_ROOT), Runtime.getRuntime().availableProcessors()));
+  }
+
+  @VisibleForTesting
+  EngineAutoTuning(Log log, ContainerLimits limits) {
+    this.log = log;
+    this.limits = limits;
+  }
+
+  /**
+   * @return the Java options of the scanner engine for the analysis described by {@code properties}
+   */
+  String javaOpts(int modules, Map<String, String> properties) {
+    int sourcePaths = 0;
+    Set<String> libraries = new HashSet<>();
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      String key = property.getKey();
+      if (key.endsWith(AnalysisProperties.PROJECT_SOURCE_DIRS) || key.endsWith(AnalysisProperties.PROJECT_TEST_DIRS)) {
+        sourcePaths += Csv.count(property.getValue());
+      } else if (key.endsWith(MavenProjectConverter.JAVA_PROJECT_MAIN_LIBRARIES) || key.endsWith(MavenProjectConverter.JAVA_PROJECT_TEST_LIBRARIES)) {
+        Csv.forEach(property.getValue(), libraries::add);
+      }
+    }
+    long heapMb = heapMb(modules, sourcePaths, libraries.size());
+    int processors = Math.min(limits.processors, Math.max(2, ceilDiv(modules, MODULES_PER_PROCESSOR)));
+    String javaOpts = "-Xmx" + heapMb + "m -XX:ActiveProcessorCount=" + processors;
+    log.info(String.format("Auto-tuned the scanner engine for %d modules, %d source paths and %d libraries (limits: %s): %s",
+      modules, sourcePaths, libraries.size(), limits, javaOpts));
+    return javaOpts;
+  }
+
+  private long heapMb(int modules, int sourcePaths, int libraries) {
+    long estimate = BASE_HEAP_MB
+      + modules * HEAP_PER_MODULE_MB
+      + ceilDiv(sourcePaths, 100) * HEAP_PER_100_SOURCE_PATHS_MB
+      + ceilDiv(libraries, 100) * HEAP_PER_100_LIBRARIES_MB;
+    long heapMb = Math.min(Math.max(estimate, MIN_HEAP_MB), MAX_HEAP_MB);
+    if (limits.memoryBytes != null) {
+      heapMb = Math.max(Math.min(heapMb, limits.memoryBytes / MB / 2), MIN_HEAP_MB);
+    }
+    return heapMb;
+  }
+
+  private static int ceilDiv(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+
+  /**
+   * CPU and memory limits of the cgroup of the Maven process, with cgroup v2 or v1 layouts.
+   */
+  static class ContainerLimits {
+    final int processors;
+    @Nullable
+    final Long memoryBytes;
+
+    ContainerLimits(int processors, @Nullable Long memoryBytes) {
+      this.processors = processors;
+      this.memoryBytes = memoryBytes;
+    }
+
+    static ContainerLimits read(Path cgroupRoot, int availableProcessors) {
+      Double cpus;
+      Long memory;
+      List<String> cpuMax = readTokens(cgroupRoot.resolve("cpu.max"));
+      if (cpuMax != null) {
+        // cgroup v2: "<quota> <period>" or "max <period>"
+        cpus = cpuMax.size() == 2 ? ratio(cpuMax.get(0), cpuMax.get(1)) : null;
+        memory = readLimit(cgroupRoot.resolve("memory.max"));
+      } else {
+        cpus = null;
+        for (String cpuDirectory : CGROUP_V1_CPU_DIRECTORIES) {
+          List<String> quota = readTokens(cgroupRoot.resolve(cpuDirectory).resolve("cpu.cfs_quota_us"));
+          List<String> period = readTokens(cgroupRoot.resolve(cpuDirectory).resolve("cpu.cfs_period_us"));
+          if (quota != null && period != null) {
+            cpus = ratio(quota.get(0), period.get(0));
+            break;
+          }
+        }
+        memory = readLimit(cgroupRoot.resolve("memory").resolve("memory.limit_in_bytes"));
+      }
+      int processors = cpus == null ? availableProcessors : Math.max(1, Math.min(availableProcessors, (int) Math.ceil(cpus)));
+      return new ContainerLimits(processors, memory);
+    }
+
+    @CheckForNull
+    private static Double ratio(String quota, String period) {
+      try {
+        long quotaValue = Long.parseLong(quota);
+        long periodValue = Long.parseLong(period);
+        return quotaValue > 0 && periodValue > 0 ? ((double) quotaValue / periodValue) : null;
+      } catch (NumberFormatException e) {
+        // "max"
+        return null;
+      }
+    }
+
+    @CheckForNull
+    private static Long readLimit(Path file) {
+      List<String> tokens = readTokens(file);
+      if (tokens == null) {
+        return null;
+      }
+      try {
+        long limit = Long.parseLong(tokens.get(0));
+        return limit > 0 && limit < UNLIMITED_THRESHOLD ? limit : null;
+      } catch (NumberFormatException e) {
+        // "max"
+        return null;
+      }
+    }
+
+    @CheckForNull
+    private static List<String> readTokens(Path file) {
+      try {
+        String content = Files.readString(file).trim();
+        return content.isEmpty() ? null : List.of(content.split("\\s+"));
+      } catch (IOException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return processors + " CPUs, " + (memoryBytes == null ? "no memory limit" : (memoryBytes / MB + " MB"));
+    }
+  }
+}
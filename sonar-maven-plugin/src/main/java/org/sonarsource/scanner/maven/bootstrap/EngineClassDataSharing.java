@@ -0,0 +1,162 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.TreeMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.logging.Log;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Application class-data sharing (AppCDS) archive of the scanner engine JVM, enabled by {@code sonar.maven.engineCds}.
+ * <p>
+ * The archive is stored in {@code <sonar.userHome>/cache/appcds}, keyed by the Java executable and version running the
+ * engine, and by the server and its version, which determine the engine and the analyzer plugins. With Java 19+, the
+ * JVM creates and validates the archive itself ({@code -XX:+AutoCreateSharedArchive}). With older JREs, the archive is
+ * dumped at the exit of the first analysis ({@code -XX:ArchiveClassesAtExit}) and mapped by the next ones
+ * ({@code -XX:SharedArchiveFile}); archives without a valid header or older than {@value #MAX_AGE_DAYS} days, which may
+ * not match the plugins of the server anymore, are regenerated.
+ * </p>
+ */
+class EngineClassDataSharing {
+
+  static final int MAX_AGE_DAYS = 7;
+  private static final int MIN_DYNAMIC_ARCHIVE_JAVA_VERSION = 13;
+  private static final int MIN_AUTO_CREATE_JAVA_VERSION = 19;
+  // Magic numbers of static and dynamic CDS archives, in the native byte order
+  private static final int STATIC_ARCHIVE_MAGIC = 0xf00baba2;
+  private static final int DYNAMIC_ARCHIVE_MAGIC = 0xf00baba8;
+
+  private final Log log;
+  private final Clock clock;
+
+  EngineClassDataSharing(Log log) {
+    this(log, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  EngineClassDataSharing(Log log, Clock clock) {
+    this.log = log;
+    this.clock = clock;
+  }
+
+  /**
+   * @param bootstrapProperties bootstrap properties of the engine, with the defaults of the scanner library
+   * @param serverVersion version of SonarQube Server, or null for SonarQube Cloud
+   * @return the JVM options of the engine, or null if no archive can be used
+   */
+  @CheckForNull
+  String javaOpts(Map<String, String> bootstrapProperties, @Nullable String serverVersion) {
+    String userHome = bootstrapProperties.get(ScannerProperties.SONAR_USER_HOME);
+    if (userHome == null) {
+      log.debug("Class-data sharing of the scanner engine is disabled: unknown " + ScannerProperties.SONAR_USER_HOME);
+      return null;
+    }
+    String javaExecutable = bootstrapProperties.get(ScannerProperties.JAVA_EXECUTABLE_PATH);
+    // The provisioned JRE is chosen by the server, it is at least Java 17
+    OptionalInt javaVersion = javaExecutable == null ? OptionalInt.empty() : javaVersionOf(Paths.get(javaExecutable));
+    if (javaExecutable != null && (javaVersion.isEmpty() || javaVersion.getAsInt() < MIN_DYNAMIC_ARCHIVE_JAVA_VERSION)) {
+      log.info("Class-data sharing of the scanner engine is disabled: Java " + MIN_DYNAMIC_ARCHIVE_JAVA_VERSION + "+ is required to run " + javaExecutable);
+      return null;
+    }
+
+    Path archive = archive(Paths.get(userHome), bootstrapProperties, javaExecutable, javaVersion, serverVersion);
+    try {
+      Files.createDirectories(archive.getParent());
+    } catch (IOException e) {
+      log.warn("Class-data sharing of the scanner engine is disabled: unable to create " + archive.getParent(), e);
+      return null;
+    }
+    if (javaVersion.isPresent() && javaVersion.getAsInt() >= MIN_AUTO_CREATE_JAVA_VERSION) {
+      log.info("Using the class-data sharing archive of the scanner engine " + archive);
+      return "-XX:SharedArchiveFile=" + archive + " -XX:+AutoCreateSharedArchive";
+    }
+    if (isUsable(archive)) {
+      log.info("Using the class-data sharing archive of the scanner engine " + archive);
+      return "-XX:SharedArchiveFile=" + archive;
+    }
+    try {
+      Files.deleteIfExists(archive);
+    } catch (IOException e) {
+      log.warn("Class-data sharing of the scanner engine is disabled: unable to delete " + archive, e);
+      return null;
+    }
+    log.info("Creating the class-data sharing archive of the scanner engine " + archive);
+    return "-XX:ArchiveClassesAtExit=" + archive;
+  }
+
+  private static Path archive(Path userHome, Map<String, String> bootstrapProperties, @Nullable String javaExecutable, OptionalInt javaVersion,
+    @Nullable String serverVersion) {
+    Map<String, String> key = new TreeMap<>();
+    key.put("java", Objects.toString(javaExecutable, "provisioned"));
+    key.put("javaVersion", javaVersion.isPresent() ? String.valueOf(javaVersion.getAsInt()) : "provisioned");
+    key.put("host", Objects.toString(bootstrapProperties.get(ScannerProperties.HOST_URL), "cloud"));
+    key.put("engine", Objects.toString(bootstrapProperties.get(ScannerProperties.SCANNER_ENGINE_JAR_PATH), "provisioned"));
+    key.put("serverVersion", Objects.toString(serverVersion, "cloud"));
+    return userHome.resolve("cache").resolve("appcds").resolve(ScannerEngineCache.Key.sha256(key).substring(0, 16) + ".jsa");
+  }
+
+  private boolean isUsable(Path archive) {
+    try {
+      if (!Files.isRegularFile(archive)) {
+        return false;
+      }
+      Instant modified = Files.getLastModifiedTime(archive).toInstant();
+      if (modified.plus(Duration.ofDays(MAX_AGE_DAYS)).isBefore(clock.instant())) {
+        log.debug("The class-data sharing archive " + archive + " is older than " + MAX_AGE_DAYS + " days");
+        return false;
+      }
+      byte[] header = new byte[4];
+      try (InputStream input = Files.newInputStream(archive)) {
+        if (input.readNBytes(header, 0, 4) != 4) {
+          return false;
+        }
+      }
+      int magic = ByteBuffer.wrap(header).order(ByteOrder.nativeOrder()).getInt();
+      if (magic != STATIC_ARCHIVE_MAGIC && magic != DYNAMIC_ARCHIVE_MAGIC) {
+        log.warn("The class-data sharing archive " + archive + " is corrupt, it is regenerated");
+        return false;
+      }
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static OptionalInt javaVersionOf(Path javaExecutable) {
+    Path bin = javaExecutable.toAbsolutePath().getParent();
+    return bin == null || bin.getParent() == null ? OptionalInt.empty() : ScannerJreSelector.javaVersion(bin.getParent());
+  }
+}
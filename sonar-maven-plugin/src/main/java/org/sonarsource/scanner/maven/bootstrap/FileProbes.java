@@ -0,0 +1,244 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.annotation.CheckForNull;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Existence checks and canonicalization of the files and directories of a reactor. They are blocking calls which take
+ * milliseconds each on network file systems, so the paths known upfront are checked concurrently by
+ * {@link #prefetch(Collection)} and canonicalized concurrently by {@link #prefetchCanonicalFiles(Collection)}, and every
+ * path is checked or canonicalized at most once.
+ * <p>
+ * The checks run on virtual threads when the Maven JVM provides them (Java 21+), on a small pool of platform threads
+ * otherwise, at most {@value MavenScannerProperties#IO_CONCURRENCY} at a time. A concurrency of 1 checks each path when
+ * it is first needed, in the calling thread.
+ * </p>
+ */
+final class FileProbes implements AutoCloseable {
+
+  static final int DEFAULT_VIRTUAL_THREAD_CONCURRENCY = 64;
+  static final int DEFAULT_PLATFORM_THREAD_CONCURRENCY = 8;
+
+  @CheckForNull
+  private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = virtualThreadPerTaskExecutorFactory();
+
+  private final int concurrency;
+  private final ScannerMetrics metrics;
+  private final Predicate<File> probe;
+  private final Canonicalizer canonicalizer;
+  private final Map<File, Boolean> existing = new ConcurrentHashMap<>();
+  private final Map<File, File> canonicalFiles = new ConcurrentHashMap<>();
+  private final Map<File, Boolean> directories = new ConcurrentHashMap<>();
+  @CheckForNull
+  private ExecutorService executor;
+
+  FileProbes(int concurrency, ScannerMetrics metrics) {
+    this(concurrency, metrics, File::exists);
+  }
+
+  @VisibleForTesting
+  FileProbes(int concurrency, ScannerMetrics metrics, Predicate<File> probe) {
+    this(concurrency, metrics, probe, File::getCanonicalFile);
+  }
+
+  @VisibleForTesting
+  FileProbes(int concurrency, ScannerMetrics metrics, Predicate<File> probe, Canonicalizer canonicalizer) {
+    this.concurrency = concurrency;
+    this.metrics = metrics;
+    this.probe = probe;
+    this.canonicalizer = canonicalizer;
+  }
+
+  @FunctionalInterface
+  interface Canonicalizer {
+    File canonicalFile(File file) throws IOException;
+  }
+
+  static boolean supportsVirtualThreads() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  static int defaultConcurrency() {
+    return supportsVirtualThreads() ? DEFAULT_VIRTUAL_THREAD_CONCURRENCY : DEFAULT_PLATFORM_THREAD_CONCURRENCY;
+  }
+
+  static int parseConcurrency(String value) throws MojoExecutionException {
+    try {
+      int concurrency = Integer.parseInt(value.trim());
+      if (concurrency > 0) {
+        return concurrency;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new MojoExecutionException("The value of " + MavenScannerProperties.IO_CONCURRENCY + " must be a positive integer: " + value);
+  }
+
+  /**
+   * Checks the paths which are not known yet, and waits for all the checks to complete.
+   */
+  void prefetch(Collection<File> files) {
+    runConcurrently(files, existing::containsKey, this::exists);
+  }
+
+  /**
+   * Canonicalizes the paths which are not known yet, checks whether their canonical paths are directories, and waits
+   * for all of them to complete.
+   */
+  void prefetchCanonicalFiles(Collection<File> files) {
+    runConcurrently(files, canonicalFiles::containsKey, file -> {
+      try {
+        isDirectory(canonicalFile(file));
+      } catch (IOException e) {
+        // Reported when the path is canonicalized again
+      }
+    });
+  }
+
+  private void runConcurrently(Collection<File> files, Predicate<File> known, Consumer<File> task) {
+    if (concurrency <= 1) {
+      return;
+    }
+    Semaphore permits = new Semaphore(concurrency);
+    List<Future<?>> probes = new ArrayList<>();
+    try {
+      for (File file : files) {
+        if (known.test(file)) {
+          continue;
+        }
+        permits.acquire();
+        probes.add(executor().submit(() -> {
+          try {
+            task.accept(file);
+          } finally {
+            permits.release();
+          }
+        }));
+      }
+      for (Future<?> probe : probes) {
+        await(probe);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void await(Future<?> probe) throws InterruptedException {
+    try {
+      probe.get();
+    } catch (ExecutionException e) {
+      // The path is checked again when needed
+    }
+  }
+
+  boolean exists(File file) {
+    Boolean exists = existing.get(file);
+    if (exists == null) {
+      metrics.increment(ScannerMetrics.Counter.STAT_CALLS);
+      exists = probe.test(file);
+      existing.put(file, exists);
+    }
+    return exists;
+  }
+
+  File canonicalFile(File file) throws IOException {
+    File canonical = canonicalFiles.get(file);
+    if (canonical == null) {
+      metrics.increment(ScannerMetrics.Counter.STAT_CALLS);
+      canonical = canonicalizer.canonicalFile(file);
+      canonicalFiles.put(file, canonical);
+    }
+    return canonical;
+  }
+
+  boolean isDirectory(File file) {
+    Boolean directory = directories.get(file);
+    if (directory == null) {
+      metrics.increment(ScannerMetrics.Counter.STAT_CALLS);
+      directory = file.isDirectory();
+      directories.put(file, directory);
+    }
+    return directory;
+  }
+
+  private ExecutorService executor() {
+    if (executor == null) {
+      executor = newExecutor(concurrency);
+    }
+    return executor;
+  }
+
+  static ExecutorService newExecutor(int concurrency) {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+      try {
+        return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+      } catch (Throwable e) {
+        // Falls back to platform threads
+      }
+    }
+    AtomicInteger threadCount = new AtomicInteger();
+    return Executors.newFixedThreadPool(concurrency, runnable -> {
+      Thread thread = new Thread(runnable, "sonar-file-probe-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Looked up rather than linked, as the plugin is compiled for Java 11.
+   */
+  @CheckForNull
+  private static MethodHandle virtualThreadPerTaskExecutorFactory() {
+    try {
+      return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Runs the bootstrap and the analysis in a child JVM, so that the Maven JVM does not have to be sized for the analysis.
+ * <p>
+ * Properties are handed over through files readable only by the current user, and deleted once the child JVM exits.
+ * The output of the child JVM is logged through the Maven {@link Log}, at the level of its {@code [LEVEL]} prefix.
+ * </p>
+ */
+public class ForkedAnalysis {
+
+  static final String BOOTSTRAP_PROPERTIES = "bootstrap.properties";
+  static final String ANALYSIS_PROPERTIES = "analysis.properties";
+  static final String SYSTEM_PROPERTIES = "system.properties";
+  private static final List<String> FORWARDED_SYSTEM_PROPERTY_PREFIXES = List.of("http.", "https.", "socksProxy", "javax.net.ssl.");
+
+  private final Log log;
+  private final Map<String, String> bootstrapProperties;
+  private final String app;
+  private final String version;
+  @Nullable
+  private final String jvmArgs;
+  private final String mainClass;
+
+  public ForkedAnalysis(Log log, Map<String, String> bootstrapProperties, String app, String version, @Nullable String jvmArgs) {
+    this(log, bootstrapProperties, app, version, jvmArgs, ForkedAnalysisMain.class.getName());
+  }
+
+  @VisibleForTesting
+  ForkedAnalysis(Log log, Map<String, String> bootstrapProperties, String app, String version, @Nullable String jvmArgs, String mainClass) {
+    this.log = log;
+    this.bootstrapProperties = bootstrapProperties;
+    this.app = app;
+    this.version = version;
+    this.jvmArgs = jvmArgs;
+    this.mainClass = mainClass;
+  }
+
+  /**
+   * Collects the properties in this JVM, then bootstraps the engine and runs the analysis in a child JVM.
+   */
+  public void execute(AnalysisPropertiesCollector propertiesCollector, ScannerMetrics metrics) throws MojoExecutionException {
+    ScannerBootstrapper.logEnvironmentInformation(log);
+    checkSupportedParameters(propertiesCollector);
+    String workDir = null;
+    WorkDirRelocation relocation = WorkDirRelocation.forAnalysis(log, propertiesCollector);
+    try {
+      Map<String, String> properties = propertiesCollector.collectProperties();
+      relocation.relocate(properties);
+      workDir = properties.get(ScannerProperties.WORK_DIR);
+      long analyzeStart = metrics.start();
+      analyze(properties, workDir);
+      metrics.stop(ScannerMetrics.Phase.ANALYZE, analyzeStart);
+    } finally {
+      relocation.close();
+      metrics.report(log, relocation.originalOf(workDir));
+    }
+  }
+
+  /**
+   * The child JVM analyzes the reactor as a single project, with an engine of its own.
+   */
+  private void checkSupportedParameters(AnalysisPropertiesCollector propertiesCollector) throws MojoExecutionException {
+    String analysisRoots = propertiesCollector.getProperty(MavenScannerProperties.ANALYSIS_ROOTS);
+    if (analysisRoots != null && !analysisRoots.isBlank()) {
+      throw new MojoExecutionException("Parameter " + MavenScannerProperties.ANALYSIS_ROOTS + " is not supported with " + MavenScannerProperties.FORK);
+    }
+    for (String parameter : List.of(MavenScannerProperties.ENGINE_CDS, MavenScannerProperties.ENGINE_REUSE)) {
+      if (Boolean.parseBoolean(propertiesCollector.getProperty(parameter))) {
+        log.warn("Parameter " + parameter + " is ignored with " + MavenScannerProperties.FORK + ", the engine is bootstrapped by the child JVM");
+      }
+    }
+  }
+
+  /**
+   * Bootstraps the scanner engine and runs the analysis in a child JVM, using the given directory for the exchanged files.
+   */
+  public void analyze(Map<String, String> analysisProperties, @Nullable String workDir) throws MojoExecutionException {
+    List<String> arguments = splitArguments(jvmArgs);
+    Path exchangeDir = null;
+    try {
+      exchangeDir = createExchangeDirectory(workDir);
+      Path bootstrapFile = write(exchangeDir.resolve(BOOTSTRAP_PROPERTIES), bootstrapProperties);
+      Path analysisFile = write(exchangeDir.resolve(ANALYSIS_PROPERTIES), analysisProperties);
+      Path systemFile = write(exchangeDir.resolve(SYSTEM_PROPERTIES), forwardedSystemProperties());
+      int exitCode = run(command(arguments, bootstrapFile, analysisFile, systemFile), arguments);
+      checkExitCode(exitCode);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to run the analysis in a forked JVM", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while waiting for the forked analysis", e);
+    } finally {
+      deleteQuietly(exchangeDir);
+    }
+  }
+
+  private static Path createExchangeDirectory(@Nullable String workDir) throws IOException {
+    if (workDir == null) {
+      return Files.createTempDirectory("sonar-maven-fork");
+    }
+    Path parent = Paths.get(workDir);
+    Files.createDirectories(parent);
+    return Files.createTempDirectory(parent, "fork");
+  }
+
+  private static Path write(Path file, Map<String, String> properties) throws IOException {
+    createPrivateFile(file);
+    Properties props = new Properties();
+    props.putAll(properties);
+    try (OutputStream out = Files.newOutputStream(file)) {
+      props.store(out, null);
+    }
+    return file;
+  }
+
+  /**
+   * Creates a file readable and writable only by its owner, before any secret is written to it. The fork is refused
+   * when the file system can restrict neither the POSIX permissions nor the ACL of the file.
+   */
+  @VisibleForTesting
+  static void createPrivateFile(Path file) throws IOException {
+    Set<String> views = file.getFileSystem().supportedFileAttributeViews();
+    if (views.contains("posix")) {
+      Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } else if (views.contains("acl")) {
+      Files.createFile(file);
+      AclFileAttributeView view = Files.getFileAttributeView(file, AclFileAttributeView.class);
+      AclEntry ownerOnly = AclEntry.newBuilder()
+        .setType(AclEntryType.ALLOW)
+        .setPrincipal(view.getOwner())
+        .setPermissions(EnumSet.allOf(AclEntryPermission.class))
+        .build();
+      view.setAcl(List.of(ownerOnly));
+    } else {
+      throw new IOException("The access to " + file + " can't be restricted to the current user");
+    }
+  }
+
+  private static Map<String, String> forwardedSystemProperties() {
+    Properties system = System.getProperties();
+    return system.stringPropertyNames().stream()
+      .filter(key -> FORWARDED_SYSTEM_PROPERTY_PREFIXES.stream().anyMatch(key::startsWith))
+      .collect(Collectors.toMap(key -> key, system::getProperty));
+  }
+
+  /**
+   * Splits the value of {@value MavenScannerProperties#FORK_JVM_ARGS} on whitespaces, except in single or double quotes,
+   * which are removed.
+   */
+  @VisibleForTesting
+  static List<String> splitArguments(@Nullable String arguments) throws MojoExecutionException {
+    List<String> split = new ArrayList<>();
+    if (arguments == null) {
+      return split;
+    }
+    StringBuilder current = new StringBuilder();
+    boolean inArgument = false;
+    char quote = 0;
+    for (int i = 0; i < arguments.length(); i++) {
+      char c = arguments.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else {
+          current.append(c);
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+        inArgument = true;
+      } else if (Character.isWhitespace(c)) {
+        if (inArgument) {
+          split.add(current.toString());
+          current.setLength(0);
+          inArgument = false;
+        }
+      } else {
+        current.append(c);
+        inArgument = true;
+      }
+    }
+    if (quote != 0) {
+      throw new MojoExecutionException("Missing closing quote in " + MavenScannerProperties.FORK_JVM_ARGS + ": " + arguments);
+    }
+    if (inArgument) {
+      split.add(current.toString());
+    }
+    return split;
+  }
+
+  private List<String> command(List<String> arguments, Path bootstrapFile, Path analysisFile, Path systemFile) {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(arguments);
+    command.add("-Dorg.slf4j.simpleLogger.defaultLogLevel=" + (log.isDebugEnabled() ? "debug" : "info"));
+    command.add("-Dorg.slf4j.simpleLogger.showThreadName=false");
+    command.add("-Dorg.slf4j.simpleLogger.showLogName=false");
+    command.add("-Dorg.slf4j.simpleLogger.levelInBrackets=true");
+    command.add("-Dorg.slf4j.simpleLogger.logFile=System.out");
+    command.add("-Dstyle.color=never");
+    command.add("-cp");
+    command.add(classpath());
+    command.add(mainClass);
+    command.add(bootstrapFile.toString());
+    command.add(analysisFile.toString());
+    command.add(systemFile.toString());
+    command.add(app);
+    command.add(version);
+    return command;
+  }
+
+  private int run(List<String> command, List<String> arguments) throws IOException, InterruptedException {
+    if (log.isDebugEnabled()) {
+      log.debug("Forking the analysis with JVM arguments " + arguments);
+    }
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    try {
+      process.getOutputStream().close();
+      // The child JVM blocks when its output is not read, so the slow Maven console is written from another thread
+      try (AsyncLogBridge bridge = new AsyncLogBridge(log);
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = output.readLine()) != null) {
+          logLine(bridge, line);
+        }
+      }
+      return process.waitFor();
+    } finally {
+      // Interrupted build or failure to log the output: the child JVM must not outlive the build
+      if (process.isAlive()) {
+        process.destroyForcibly();
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static void logLine(AsyncLogBridge bridge, String line) {
+    if (line.startsWith("[DEBUG] ")) {
+      bridge.debug(line.substring(8));
+    } else if (line.startsWith("[INFO] ")) {
+      bridge.info(line.substring(7));
+    } else if (line.startsWith("[WARN] ")) {
+      bridge.warn(line.substring(7));
+    } else if (line.startsWith("[WARNING] ")) {
+      bridge.warn(line.substring(10));
+    } else if (line.startsWith("[ERROR] ")) {
+      bridge.error(line.substring(8));
+    } else {
+      bridge.info(line);
+    }
+  }
+
+  private static void checkExitCode(int exitCode) throws MojoExecutionException {
+    switch (exitCode) {
+      case ForkedAnalysisMain.SUCCESS:
+        return;
+      case ForkedAnalysisMain.ANALYSIS_FAILED:
+        throw new MojoExecutionException("The scanner analysis has failed! See the logs for more details.");
+      case ForkedAnalysisMain.BOOTSTRAP_FAILED:
+        throw new MojoExecutionException("The scanner bootstrapping has failed! See the logs for more details.");
+      case ForkedAnalysisMain.UNSUPPORTED_SERVER:
+        throw new MojoExecutionException(ScannerBootstrapper.UNSUPPORTED_BELOW_SONARQUBE_56_MESSAGE);
+      default:
+        throw new MojoExecutionException("The forked analysis exited with code " + exitCode + ". See the logs for more details.");
+    }
+  }
+
+  /**
+   * Classpath of the plugin, completed with the SLF4J binding of Maven so that the scanner library logs are not lost.
+   */
+  private static String classpath() {
+    Set<String> entries = new LinkedHashSet<>();
+    ClassLoader pluginClassLoader = ForkedAnalysis.class.getClassLoader();
+    if (pluginClassLoader instanceof URLClassLoader) {
+      for (URL url : ((URLClassLoader) pluginClassLoader).getURLs()) {
+        addLocation(entries, url);
+      }
+    } else {
+      entries.addAll(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+    }
+    Class<?> loggerFactory = org.slf4j.LoggerFactory.getILoggerFactory().getClass();
+    addCodeSource(entries, org.slf4j.LoggerFactory.class);
+    addCodeSource(entries, loggerFactory);
+    addCodeSource(entries, loggerFactory.getClassLoader(), "org.apache.maven.shared.utils.logging.MessageUtils");
+    return String.join(File.pathSeparator, entries);
+  }
+
+  private static void addCodeSource(Set<String> entries, @Nullable ClassLoader classLoader, String className) {
+    try {
+      addCodeSource(entries, Class.forName(className, false, classLoader));
+    } catch (ClassNotFoundException | LinkageError e) {
+      // Optional dependency of the logger
+    }
+  }
+
+  private static void addCodeSource(Set<String> entries, Class<?> clazz) {
+    CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+    if (codeSource != null && codeSource.getLocation() != null) {
+      addLocation(entries, codeSource.getLocation());
+    }
+  }
+
+  private static void addLocation(Set<String> entries, URL url) {
+    try {
+      entries.add(Paths.get(url.toURI()).toString());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      // Not a file, the child JVM could not use it
+    }
+  }
+
+  private static void deleteQuietly(@Nullable Path dir) {
+    if (dir == null) {
+      return;
+    }
+    try (var files = Files.walk(dir)) {
+      files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> path.toFile().delete());
+    } catch (IOException e) {
+      // Best effort, the directory is in the working directory of the analysis
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.BiFunction;
+import javax.annotation.Nullable;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
+import org.sonarsource.scanner.lib.ScannerEngineFacade;
+
+/**
+ * Entry point of the child JVM started by {@link ForkedAnalysis}.
+ * <p>
+ * Arguments: bootstrap properties file, analysis properties file, system properties file, application name and version.
+ * </p>
+ */
+public final class ForkedAnalysisMain {
+
+  static final int SUCCESS = 0;
+  static final int ANALYSIS_FAILED = 1;
+  static final int BOOTSTRAP_FAILED = 2;
+  static final int UNSUPPORTED_SERVER = 3;
+  static final int ERROR = 4;
+
+  private ForkedAnalysisMain() {
+    /* Only the main method is meant to be used */
+  }
+
+  public static void main(String[] args) {
+    System.exit(run(args, ScannerEngineBootstrapper::create));
+  }
+
+  static int run(String[] args, BiFunction<String, String, ScannerEngineBootstrapper> bootstrapperFactory) {
+    if (args.length != 5) {
+      System.out.println("[ERROR] Usage: ForkedAnalysisMain <bootstrap properties> <analysis properties> <system properties> <app> <version>");
+      return ERROR;
+    }
+    try {
+      Map<String, String> bootstrapProperties = load(args[0]);
+      Map<String, String> analysisProperties = load(args[1]);
+      load(args[2]).forEach(System::setProperty);
+      ScannerEngineBootstrapper bootstrapper = bootstrapperFactory.apply(args[3], args[4]).addBootstrapProperties(bootstrapProperties);
+      try (ScannerEngineBootstrapResult bootstrapResult = bootstrapper.bootstrap()) {
+        if (!bootstrapResult.isSuccessful()) {
+          return BOOTSTRAP_FAILED;
+        }
+        try (ScannerEngineFacade engineFacade = bootstrapResult.getEngineFacade()) {
+          if (!engineFacade.isSonarQubeCloud() && isPriorTo56(engineFacade.getServerVersion())) {
+            return UNSUPPORTED_SERVER;
+          }
+          return engineFacade.analyze(analysisProperties) ? SUCCESS : ANALYSIS_FAILED;
+        }
+      }
+    } catch (Exception e) {
+      System.out.println("[ERROR] " + e.getMessage());
+      e.printStackTrace(System.out);
+      return ERROR;
+    }
+  }
+
+  /**
+   * Maven classes, such as {@code ComparableVersion}, are not available in the child JVM.
+   */
+  static boolean isPriorTo56(@Nullable String serverVersion) {
+    if (serverVersion == null) {
+      return true;
+    }
+    String[] parts = serverVersion.split("\\.");
+    try {
+      int major = Integer.parseInt(parts[0]);
+      int minor = parts.length > 1 ? Integer.parseInt(parts[1].replaceAll("\\D.*", "")) : 0;
+      return major < 5 || (major == 5 && minor < 6);
+    } catch (NumberFormatException e) {
+      return true;
+    }
+  }
+
+  private static Map<String, String> load(String file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(Paths.get(file))) {
+      properties.load(in);
+    }
+    Map<String, String> map = new HashMap<>();
+    properties.stringPropertyNames().forEach(key -> map.put(key, properties.getProperty(key)));
+    return map;
+  }
+}
@@ -19,51 +19,55 @@
  */
 package org.sonarsource.scanner.maven.bootstrap;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import org.apache.maven.execution.MavenSession;
-import org.apache.maven.plugin.MojoExecution;
-import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.toolchain.Toolchain;
 import org.apache.maven.toolchain.ToolchainManager;
-import org.codehaus.plexus.configuration.PlexusConfiguration;
-import org.codehaus.plexus.configuration.xml.XmlPlexusConfiguration;
-import org.codehaus.plexus.util.xml.Xpp3Dom;
 
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 import static org.sonarsource.scanner.maven.bootstrap.MavenCompilerResolver.toJdkHomeFromJavacExec;
-import static org.sonarsource.scanner.maven.bootstrap.MavenUtils.convertString;
 
+/**
+ * Resolves the JDK used by a compiler execution from the Maven toolchains.
+ * <p>
+ * An instance is meant to live as long as the session: toolchains matching a given {@code jdkToolchain} requirement,
+ * and the JDK home of each toolchain, are resolved once and reused for all the modules of the reactor.
+ * </p>
+ */
 public class Maven3ToolchainResolver implements ToolchainResolver {
 
-  private final MavenSession session;
-  private final Log log;
+  // getToolchains method only added in Maven 3.3.1, so it is looked up once and called through a handle
+  @Nullable
+  private static final MethodHandle GET_TOOLCHAINS = findGetToolchains();
+
   private final ToolchainManager toolchainManager;
+  private final Map<Map<String, String>, List<Toolchain>> toolchainsByRequirements = new HashMap<>();
+  private final Map<Toolchain, Optional<Path>> jdkHomeByToolchain = new IdentityHashMap<>();
 
-  public Maven3ToolchainResolver(MavenSession session, Log log, ToolchainManager toolchainManager) {
-    this.session = session;
-    this.log = log;
+  public Maven3ToolchainResolver(ToolchainManager toolchainManager) {
     this.toolchainManager = toolchainManager;
   }
 
   @Override
-  public Optional<Path> getJdkHomeFromToolchains(MojoExecution compilerExecution) {
+  public Optional<Path> getJdkHomeFromToolchains(MavenSession moduleSession, Map<String, String> jdkToolchain) {
 
     // Inspired by
     // https://github.com/apache/maven-compiler-plugin/blob/dc4a5635ba4eb2ba5e461fa53b2c47c58d7fa397/src/main/java/org/apache/maven/plugin/compiler/AbstractCompilerMojo.java#L1418
     Toolchain tc = null;
 
     // Maven 3.3.1 has plugin execution scoped Toolchain Support
-    Optional<Map<String, String>> jdkToolchain = getMapConfiguration(compilerExecution, "jdkToolchain");
-    if (jdkToolchain.isPresent() && !jdkToolchain.get().isEmpty()) {
-      List<Toolchain> tcs = collectMatchingToolchains(jdkToolchain.get());
+    if (!jdkToolchain.isEmpty()) {
+      List<Toolchain> tcs = toolchainsByRequirements.computeIfAbsent(jdkToolchain, requirements -> collectMatchingToolchains(moduleSession, requirements));
       if (!tcs.isEmpty()) {
         tc = tcs.get(0);
       }
@@ -71,40 +75,47 @@ public class Maven3ToolchainResolver implements ToolchainResolver {
 
     // Fallback on the global jdk toolchain
     if (tc == null) {
-      tc = toolchainManager.getToolchainFromBuildContext("jdk", session);
+      tc = toolchainManager.getToolchainFromBuildContext("jdk", moduleSession);
     }
 
     if (tc != null) {
-      String javacToUse = tc.findTool("javac");
-      if (isNotEmpty(javacToUse)) {
-        return toJdkHomeFromJavacExec(javacToUse);
-      }
+      return jdkHomeByToolchain.computeIfAbsent(tc, Maven3ToolchainResolver::toJdkHome);
     }
 
     return Optional.empty();
   }
 
+  private static Optional<Path> toJdkHome(Toolchain tc) {
+    String javacToUse = tc.findTool("javac");
+    if (isNotEmpty(javacToUse)) {
+      return toJdkHomeFromJavacExec(javacToUse);
+    }
+    return Optional.empty();
+  }
+
   @SuppressWarnings("unchecked")
-  private List<Toolchain> collectMatchingToolchains(Map<String, String> jdkToolchain) {
-    // getToolchains method only added in Maven 3.3.1, so use reflection
+  private List<Toolchain> collectMatchingToolchains(MavenSession session, Map<String, String> jdkToolchain) {
+    if (GET_TOOLCHAINS == null) {
+      return Collections.emptyList();
+    }
     try {
-      Method getToolchainsMethod = toolchainManager.getClass().getMethod("getToolchains", MavenSession.class, String.class, Map.class);
-      return (List<Toolchain>) getToolchainsMethod.invoke(toolchainManager, session, "jdk", jdkToolchain);
-    } catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+      return (List<Toolchain>) GET_TOOLCHAINS.invoke(toolchainManager, session, "jdk", jdkToolchain);
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
       // ignore
       return Collections.emptyList();
     }
   }
 
-  private Optional<Map<String, String>> getMapConfiguration(MojoExecution exec, String parameterName) {
-    Xpp3Dom configuration = exec.getConfiguration();
-    PlexusConfiguration pomConfiguration = new XmlPlexusConfiguration(configuration);
-    PlexusConfiguration config = pomConfiguration.getChild(parameterName, false);
-    if (config == null) {
-      return Optional.empty();
+  @Nullable
+  private static MethodHandle findGetToolchains() {
+    try {
+      return MethodHandles.publicLookup().findVirtual(ToolchainManager.class, "getToolchains",
+        MethodType.methodType(List.class, MavenSession.class, String.class, Map.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
     }
-    return Optional.of(Stream.of(config.getChildren())
-      .collect(Collectors.toMap(PlexusConfiguration::getName, c -> convertString(session, log, exec, config.getChild(c.getName(), false)))));
   }
 
 }
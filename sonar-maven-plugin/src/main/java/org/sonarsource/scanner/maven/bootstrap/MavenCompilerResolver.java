@@ -23,11 +23,17 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.maven.execution.MavenSession;
@@ -52,23 +58,35 @@ public class MavenCompilerResolver {
   private final Log log;
   private final ToolchainResolver toolchainResolver;
   private final LifecycleExecutor lifecycleExecutor;
+  @Nullable
+  private final CompilerModelReader modelReader;
+  private final Map<String, Optional<Path>> jdkHomeByExecutable = new HashMap<>();
+  private final Set<String> heterogeneousModules = ConcurrentHashMap.newKeySet();
+  private final Map<String, Long> planNanosByModule = new ConcurrentHashMap<>();
+  private final Map<String, Optional<MavenCompilerConfiguration>> configurationByModule = new ConcurrentHashMap<>();
 
   public MavenCompilerResolver(MavenSession session, LifecycleExecutor lifecycleExecutor, Log log, ToolchainResolver toolchainResolver) {
+    this(session, lifecycleExecutor, log, toolchainResolver, CompilerModelReader.forSession(session).orElse(null));
+  }
+
+  MavenCompilerResolver(MavenSession session, LifecycleExecutor lifecycleExecutor, Log log, ToolchainResolver toolchainResolver,
+    @Nullable CompilerModelReader modelReader) {
     this.session = session;
     this.lifecycleExecutor = lifecycleExecutor;
     this.log = log;
     this.toolchainResolver = toolchainResolver;
+    this.modelReader = modelReader;
   }
 
-  private static int defaultCompileFirstThenCompileFirst(MojoExecution a, MojoExecution b) {
+  private static int defaultCompileFirstThenCompileFirst(CompilerExecution a, CompilerExecution b) {
     // Favor default-compile, as this is the one likely to best represent the "main" compiler execution
-    if (DEFAULT_COMPILE_EXECUTION_ID.equals(a.getExecutionId())) {
+    if (DEFAULT_COMPILE_EXECUTION_ID.equals(a.executionId)) {
       return -1;
-    } else if (DEFAULT_COMPILE_EXECUTION_ID.equals(b.getExecutionId())) {
+    } else if (DEFAULT_COMPILE_EXECUTION_ID.equals(b.executionId)) {
       return 1;
     } else {
       // compile is before testCompile
-      return a.getGoal().compareTo(b.getGoal());
+      return a.goal.compareTo(b.goal);
     }
   }
 
@@ -94,6 +112,16 @@ public class MavenCompilerResolver {
     return Optional.empty();
   }
 
+  /**
+   * The runtime JDK does not change during the build, so its javac is only looked up once per JVM.
+   */
+  private static final class RuntimeJdk {
+    private static final Optional<Path> JDK_HOME = getJavacExecutableFromRuntimeJdk().flatMap(MavenCompilerResolver::toJdkHomeFromJavacExec);
+
+    private RuntimeJdk() {
+    }
+  }
+
   /**
    * Inspired from https://github.com/codehaus-plexus/plexus-compiler/blob/3300ad47ea45a3c3b9f815acc0973020b21486cd/plexus-compilers/plexus-compiler-javac/src/main/java/org/codehaus/plexus/compiler/javac/JavacCompiler.java#L999
    */
@@ -129,24 +157,62 @@ public class MavenCompilerResolver {
     return Optional.of(javacExe.toAbsolutePath().toString());
   }
 
+  /**
+   * Under Maven 4, the compiler executions are read from the immutable effective model of the module when it gives the
+   * same configuration as the execution plan. Otherwise the execution plan is calculated on a copy of the session whose
+   * current project is {@code pom}, rather than by switching the current project of the shared session: other modules
+   * may be built concurrently, as with the multithreaded builder of Maven 3 or the concurrent builder of Maven 4.
+   * <p>
+   * The configuration of a module is resolved once per resolver.
+   * </p>
+   */
   public Optional<MavenCompilerConfiguration> extractConfiguration(MavenProject pom) {
-    MavenProject oldProject = session.getCurrentProject();
+    String moduleId = pom.getGroupId() + ":" + pom.getArtifactId();
+    Optional<MavenCompilerConfiguration> configuration = configurationByModule.get(moduleId);
+    if (configuration == null) {
+      configuration = resolveConfiguration(pom, moduleId);
+      configurationByModule.putIfAbsent(moduleId, configuration);
+    }
+    return configuration;
+  }
+
+  /**
+   * @return the JDK the first module of the reactor which isn't an aggregator is compiled with, if any
+   */
+  public Optional<Path> getReactorJdkHome() {
+    return session.getProjects().stream()
+      .filter(pom -> !"pom".equals(pom.getPackaging()))
+      .map(this::extractConfiguration)
+      .flatMap(Optional::stream)
+      .map(MavenCompilerConfiguration::getJdkHome)
+      .flatMap(Optional::stream)
+      .findFirst();
+  }
+
+  private Optional<MavenCompilerConfiguration> resolveConfiguration(MavenProject pom, String moduleId) {
+    long start = System.nanoTime();
+    ScannerEvents.CompilerPlanEvent event = new ScannerEvents.CompilerPlanEvent();
+    event.begin();
     try {
-      // Switch to the project for which we try to resolve the configuration.
-      session.setCurrentProject(pom);
-      List<MojoExecution> allCompilerExecutions = lifecycleExecutor.calculateExecutionPlan(session, true, TEST_COMPILE_PHASE)
-        .getMojoExecutions()
-        .stream()
-        .filter(MavenCompilerResolver::isMavenCompilerGoal)
+      MavenSession moduleSession = session.clone();
+      moduleSession.setCurrentProject(pom);
+      Optional<List<CompilerExecution>> fromModel = readModel(pom);
+      event.fromModel = fromModel.isPresent();
+      List<CompilerExecution> allCompilerExecutions = fromModel.isPresent() ? fromModel.get() : readExecutionPlan(moduleSession);
+      allCompilerExecutions = allCompilerExecutions.stream()
         .sorted(MavenCompilerResolver::defaultCompileFirstThenCompileFirst)
         .collect(Collectors.toList());
+      event.compilerExecutions = allCompilerExecutions.size();
       if (allCompilerExecutions.isEmpty()) {
         return Optional.empty();
       }
-      List<MavenCompilerConfiguration> allCompilerConfigurations = allCompilerExecutions.stream().map(this::extractConfiguration).collect(Collectors.toList());
+      List<MavenCompilerConfiguration> allCompilerConfigurations = allCompilerExecutions.stream()
+        .map(execution -> toConfiguration(moduleSession, execution))
+        .collect(Collectors.toList());
       MavenCompilerConfiguration first = allCompilerConfigurations.get(0);
 
       if (!allCompilerConfigurations.stream().allMatch(config -> MavenCompilerConfiguration.same(config, first))) {
+        heterogeneousModules.add(moduleId);
         log.warn("Heterogeneous compiler configuration has been detected. Using compiler configuration from execution: '" + first.getExecutionId() + "'");
       }
 
@@ -156,50 +222,127 @@ public class MavenCompilerResolver {
       log.warn("Failed to collect configuration from the maven-compiler-plugin", e);
       return Optional.empty();
     } finally {
-      session.setCurrentProject(oldProject);
+      planNanosByModule.put(moduleId, System.nanoTime() - start);
+      if (event.shouldCommit()) {
+        event.moduleId = moduleId;
+        event.commit();
+      }
     }
 
   }
 
-  private MavenCompilerConfiguration extractConfiguration(MojoExecution compilerExecution) {
-    MavenCompilerConfiguration result = new MavenCompilerConfiguration(compilerExecution.getExecutionId());
-    result.release = getStringConfiguration(compilerExecution, "release");
-    result.target = getStringConfiguration(compilerExecution, "target");
-    result.source = getStringConfiguration(compilerExecution, "source");
-    result.enablePreview = getStringConfiguration(compilerExecution, "enablePreview");
-    result.jdkHome = getJdkHome(compilerExecution);
+  private Optional<List<CompilerExecution>> readModel(MavenProject pom) {
+    if (modelReader == null) {
+      return Optional.empty();
+    }
+    try {
+      return modelReader.read(pom);
+    } catch (LinkageError e) {
+      // The Maven 4 API the reader is compiled against changed: the execution plan still gives the configuration
+      log.debug("Unable to read the maven-compiler-plugin configuration from the model: " + e);
+      return Optional.empty();
+    }
+  }
+
+  private List<CompilerExecution> readExecutionPlan(MavenSession moduleSession) throws Exception {
+    return lifecycleExecutor.calculateExecutionPlan(moduleSession, true, TEST_COMPILE_PHASE)
+      .getMojoExecutions()
+      .stream()
+      .filter(MavenCompilerResolver::isMavenCompilerGoal)
+      .map(execution -> new CompilerExecution(execution.getExecutionId(), execution.getGoal(),
+        getStringConfiguration(moduleSession, execution, "release"),
+        getStringConfiguration(moduleSession, execution, "target"),
+        getStringConfiguration(moduleSession, execution, "source"),
+        getStringConfiguration(moduleSession, execution, "enablePreview"),
+        getStringConfiguration(moduleSession, execution, "executable"),
+        getMapConfiguration(moduleSession, execution, "jdkToolchain")))
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * @return the modules, as groupId:artifactId, whose compiler executions don't share the same configuration
+   */
+  public Set<String> getHeterogeneousModules() {
+    return Collections.unmodifiableSet(heterogeneousModules);
+  }
+
+  /**
+   * @return the time spent calculating the execution plan of each module, as groupId:artifactId
+   */
+  public Map<String, Long> getPlanNanosByModule() {
+    return Collections.unmodifiableMap(planNanosByModule);
+  }
+
+  private MavenCompilerConfiguration toConfiguration(MavenSession moduleSession, CompilerExecution compilerExecution) {
+    MavenCompilerConfiguration result = new MavenCompilerConfiguration(compilerExecution.executionId);
+    result.release = compilerExecution.release;
+    result.target = compilerExecution.target;
+    result.source = compilerExecution.source;
+    result.enablePreview = compilerExecution.enablePreview;
+    result.jdkHome = getJdkHome(moduleSession, compilerExecution);
     return result;
   }
 
-  private Optional<String> getStringConfiguration(MojoExecution exec, String parameterName) {
+  private Optional<String> getStringConfiguration(MavenSession moduleSession, MojoExecution exec, String parameterName) {
     Xpp3Dom configuration = exec.getConfiguration();
     PlexusConfiguration pomConfiguration = new XmlPlexusConfiguration(configuration);
     PlexusConfiguration config = pomConfiguration.getChild(parameterName, false);
     if (config == null) {
       return Optional.empty();
     }
-    return Optional.ofNullable(convertString(session, log, exec, config));
+    return Optional.ofNullable(convertString(moduleSession, log, exec, config));
   }
 
-  private Optional<Path> getJdkHome(MojoExecution compilerExecution) {
+  private Map<String, String> getMapConfiguration(MavenSession moduleSession, MojoExecution exec, String parameterName) {
+    Xpp3Dom configuration = exec.getConfiguration();
+    PlexusConfiguration pomConfiguration = new XmlPlexusConfiguration(configuration);
+    PlexusConfiguration config = pomConfiguration.getChild(parameterName, false);
+    if (config == null) {
+      return Collections.emptyMap();
+    }
+    return Stream.of(config.getChildren())
+      .collect(Collectors.toMap(PlexusConfiguration::getName, c -> convertString(moduleSession, log, exec, config.getChild(c.getName(), false))));
+  }
 
-    Optional<String> executable = getStringConfiguration(compilerExecution, "executable");
-    if (executable.isPresent()) {
-      return toJdkHomeFromJavacExec(executable.get());
+  private Optional<Path> getJdkHome(MavenSession moduleSession, CompilerExecution compilerExecution) {
+
+    if (compilerExecution.executable.isPresent()) {
+      return jdkHomeByExecutable.computeIfAbsent(compilerExecution.executable.get(), MavenCompilerResolver::toJdkHomeFromJavacExec);
     }
 
-    Optional<Path> jdkHomeFromToolchain = toolchainResolver.getJdkHomeFromToolchains(compilerExecution);
+    Optional<Path> jdkHomeFromToolchain = toolchainResolver.getJdkHomeFromToolchains(moduleSession, compilerExecution.jdkToolchain);
     if (jdkHomeFromToolchain.isPresent()) {
       return jdkHomeFromToolchain;
     }
 
     // Like m-compiler-p, last fallback is to compile with the runtime JDK
-    Optional<String> runtimeCompiler = getJavacExecutableFromRuntimeJdk();
-    if (runtimeCompiler.isPresent()) {
-      return toJdkHomeFromJavacExec(runtimeCompiler.get());
-    }
+    return RuntimeJdk.JDK_HOME;
+  }
 
-    return Optional.empty();
+  /**
+   * Configuration of a maven-compiler-plugin execution, with the expressions evaluated for the module.
+   */
+  static final class CompilerExecution {
+    private final String executionId;
+    private final String goal;
+    private final Optional<String> release;
+    private final Optional<String> target;
+    private final Optional<String> source;
+    private final Optional<String> enablePreview;
+    private final Optional<String> executable;
+    private final Map<String, String> jdkToolchain;
+
+    CompilerExecution(String executionId, String goal, Optional<String> release, Optional<String> target, Optional<String> source,
+      Optional<String> enablePreview, Optional<String> executable, Map<String, String> jdkToolchain) {
+      this.executionId = executionId;
+      this.goal = goal;
+      this.release = release;
+      this.target = target;
+      this.source = source;
+      this.enablePreview = enablePreview;
+      this.executable = executable;
+      this.jdkToolchain = jdkToolchain;
+    }
   }
 
   public static class MavenCompilerConfiguration {
@@ -19,13 +19,10 @@
  */
 package org.sonarsource.scanner.maven.bootstrap;
 
-import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.CheckForNull;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.maven.model.Plugin;
-import org.apache.maven.model.PluginManagement;
-import org.apache.maven.model.ReportPlugin;
-import org.apache.maven.model.Reporting;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 
@@ -36,6 +33,8 @@ import org.codehaus.plexus.util.xml.Xpp3Dom;
  */
 public class MavenPlugin {
 
+  private static final Map<String, KeySegment[]> KEY_PATHS = new ConcurrentHashMap<>();
+
   private final Xpp3Dom configuration;
 
   /**
@@ -43,7 +42,7 @@ public class MavenPlugin {
    *
    * @param configuration the plugin
    */
-  private MavenPlugin(Object configuration) {
+  MavenPlugin(Object configuration) {
     this.configuration = (Xpp3Dom) configuration;
   }
 
@@ -58,30 +57,16 @@ public class MavenPlugin {
     return node == null ? null : node.getValue();
   }
 
-  private static int getIndex(String key) {
-    // parsing index-syntax (e.g. item[1])
-    if (key.matches(".*?\\[\\d+\\]")) {
-      return Integer.parseInt(StringUtils.substringBetween(key, "[", "]"));
-    }
-    // for down-compatibility of api we fallback to default 0
-    return 0;
-  }
-
-  private static String removeIndexSnippet(String key) {
-    return StringUtils.substringBefore(key, "[");
-  }
-
   @CheckForNull
   private Xpp3Dom findNodeWith(String key) {
-    String[] keyParts = key.split("/");
     Xpp3Dom node = configuration;
-    for (String keyPart : keyParts) {
-
-      if (node.getChildren(removeIndexSnippet(keyPart)).length <= getIndex(keyPart)) {
+    for (KeySegment segment : KEY_PATHS.computeIfAbsent(key, MavenPlugin::parseKeyPath)) {
+      Xpp3Dom[] children = node.getChildren(segment.name);
+      if (children.length <= segment.index) {
         return null;
       }
 
-      node = node.getChildren(removeIndexSnippet(keyPart))[getIndex(keyPart)];
+      node = children[segment.index];
       if (node == null) {
         return null;
       }
@@ -89,10 +74,52 @@ public class MavenPlugin {
     return node;
   }
 
+  private static KeySegment[] parseKeyPath(String key) {
+    String[] keyParts = key.split("/");
+    KeySegment[] segments = new KeySegment[keyParts.length];
+    for (int i = 0; i < keyParts.length; i++) {
+      segments[i] = new KeySegment(removeIndexSnippet(keyParts[i]), getIndex(keyParts[i]));
+    }
+    return segments;
+  }
+
+  private static int getIndex(String key) {
+    // parsing index-syntax (e.g. item[1])
+    if (endsWithIndex(key)) {
+      return Integer.parseInt(StringUtils.substringBetween(key, "[", "]"));
+    }
+    // for down-compatibility of api we fallback to default 0
+    return 0;
+  }
+
+  /**
+   * Same as matching {@code .*?\[\d+\]}, without going through the regex engine.
+   */
+  private static boolean endsWithIndex(String key) {
+    int closing = key.length() - 1;
+    int opening = key.lastIndexOf('[');
+    if (closing < 0 || key.charAt(closing) != ']' || opening < 0 || opening + 1 == closing) {
+      return false;
+    }
+    for (int i = opening + 1; i < closing; i++) {
+      char c = key.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String removeIndexSnippet(String key) {
+    return StringUtils.substringBefore(key, "[");
+  }
+
   /**
    * Returns a plugin from a pom based on its group id and artifact id
    * <p>
-   * It searches in the build section, then the reporting section and finally the pluginManagement section
+   * It searches in the build section, then the reporting section and finally the pluginManagement section.
+   * The project model is left untouched. When several settings are read from the same project, prefer building
+   * a {@link MavenPluginIndex} once and querying it.
    * </p>
    *
    * @param pom the project pom
@@ -102,71 +129,17 @@ public class MavenPlugin {
    */
   @CheckForNull
   public static MavenPlugin getPlugin(MavenProject pom, String groupId, String artifactId) {
-    Object pluginConfiguration = null;
-
-    // look for plugin in <build> section
-    Plugin plugin = getPlugin(pom.getBuildPlugins(), groupId, artifactId);
-
-    if (plugin != null) {
-      pluginConfiguration = plugin.getConfiguration();
-    } else {
-      // look for plugin in reporting
-      Reporting reporting = pom.getModel().getReporting();
-      if (reporting != null) {
-        ReportPlugin reportPlugin = getReportPlugin(reporting.getPlugins(), groupId, artifactId);
-        if (reportPlugin != null) {
-          pluginConfiguration = reportPlugin.getConfiguration();
-        }
-      }
-    }
-
-    // look for plugin in <pluginManagement> section
-    PluginManagement pluginManagement = pom.getPluginManagement();
-    if (pluginManagement != null) {
-      Plugin pluginFromManagement = getPlugin(pluginManagement.getPlugins(), groupId, artifactId);
-      if (pluginFromManagement != null) {
-        Object pluginConfigFromManagement = pluginFromManagement.getConfiguration();
-        if (pluginConfiguration == null) {
-          pluginConfiguration = pluginConfigFromManagement;
-        } else if (pluginConfigFromManagement != null) {
-          Xpp3Dom.mergeXpp3Dom((Xpp3Dom) pluginConfiguration, (Xpp3Dom) pluginConfigFromManagement);
-        }
-      }
-    }
-
-    if (pluginConfiguration != null) {
-      return new MavenPlugin(pluginConfiguration);
-    }
-    return null;
-
-  }
-
-  @CheckForNull
-  private static Plugin getPlugin(Collection<Plugin> plugins, String groupId, String artifactId) {
-    for (Plugin plugin : plugins) {
-      if (isEqual(plugin, groupId, artifactId)) {
-        return plugin;
-      }
-    }
-    return null;
+    return MavenPluginIndex.of(pom).getPlugin(groupId, artifactId);
   }
 
-  private static boolean isEqual(Plugin plugin, String groupId, String artifactId) {
-    return plugin.getArtifactId().equals(artifactId) && plugin.getGroupId().equals(groupId);
-  }
+  private static final class KeySegment {
+    private final String name;
+    private final int index;
 
-  @CheckForNull
-  private static ReportPlugin getReportPlugin(Collection<ReportPlugin> plugins, String groupId, String artifactId) {
-    for (ReportPlugin plugin : plugins) {
-      if (isEqual(plugin, groupId, artifactId)) {
-        return plugin;
-      }
+    private KeySegment(String name, int index) {
+      this.name = name;
+      this.index = index;
     }
-    return null;
-  }
-
-  private static boolean isEqual(ReportPlugin plugin, String groupId, String artifactId) {
-    return plugin.getArtifactId().equals(artifactId) && plugin.getGroupId().equals(groupId);
   }
 
 }
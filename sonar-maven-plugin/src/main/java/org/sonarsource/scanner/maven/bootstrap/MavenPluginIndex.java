@@ -0,0 +1,112 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import javax.annotation.CheckForNull;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.model.ReportPlugin;
+import org.apache.maven.model.Reporting;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Read-only view of the plugin configurations of a project, keyed by {@code groupId:artifactId}.
+ * <p>
+ * The build, reporting and pluginManagement sections are indexed once, and the effective configuration of a plugin
+ * is merged on first access then reused. Merging happens on a copy, so the project model is never modified.
+ * An index is not thread-safe and is meant to be built once per module.
+ * </p>
+ */
+final class MavenPluginIndex {
+
+  private final Map<String, Plugin> buildPlugins;
+  private final Map<String, ReportPlugin> reportPlugins;
+  private final Map<String, Plugin> managedPlugins;
+  private final Map<String, Optional<MavenPlugin>> resolvedPlugins = new HashMap<>();
+
+  private MavenPluginIndex(Map<String, Plugin> buildPlugins, Map<String, ReportPlugin> reportPlugins, Map<String, Plugin> managedPlugins) {
+    this.buildPlugins = buildPlugins;
+    this.reportPlugins = reportPlugins;
+    this.managedPlugins = managedPlugins;
+  }
+
+  static MavenPluginIndex of(MavenProject pom) {
+    Reporting reporting = pom.getModel().getReporting();
+    PluginManagement pluginManagement = pom.getPluginManagement();
+    return new MavenPluginIndex(
+      index(pom.getBuildPlugins(), Plugin::getGroupId, Plugin::getArtifactId),
+      reporting == null ? Map.of() : index(reporting.getPlugins(), ReportPlugin::getGroupId, ReportPlugin::getArtifactId),
+      pluginManagement == null ? Map.of() : index(pluginManagement.getPlugins(), Plugin::getGroupId, Plugin::getArtifactId));
+  }
+
+  /**
+   * Same lookup order as {@link MavenPlugin#getPlugin(MavenProject, String, String)}: build section, then reporting section,
+   * with the pluginManagement configuration merged underneath.
+   */
+  @CheckForNull
+  MavenPlugin getPlugin(String groupId, String artifactId) {
+    return resolvedPlugins.computeIfAbsent(key(groupId, artifactId), this::resolve).orElse(null);
+  }
+
+  private Optional<MavenPlugin> resolve(String key) {
+    Object pluginConfiguration = null;
+
+    Plugin plugin = buildPlugins.get(key);
+    if (plugin != null) {
+      pluginConfiguration = plugin.getConfiguration();
+    } else {
+      ReportPlugin reportPlugin = reportPlugins.get(key);
+      if (reportPlugin != null) {
+        pluginConfiguration = reportPlugin.getConfiguration();
+      }
+    }
+
+    Plugin pluginFromManagement = managedPlugins.get(key);
+    if (pluginFromManagement != null) {
+      Object pluginConfigFromManagement = pluginFromManagement.getConfiguration();
+      if (pluginConfiguration == null) {
+        pluginConfiguration = pluginConfigFromManagement;
+      } else if (pluginConfigFromManagement != null) {
+        pluginConfiguration = Xpp3Dom.mergeXpp3Dom(new Xpp3Dom((Xpp3Dom) pluginConfiguration), (Xpp3Dom) pluginConfigFromManagement);
+      }
+    }
+
+    return Optional.ofNullable(pluginConfiguration).map(MavenPlugin::new);
+  }
+
+  private static <T> Map<String, T> index(Collection<T> plugins, Function<T, String> groupId, Function<T, String> artifactId) {
+    Map<String, T> index = new HashMap<>();
+    for (T plugin : plugins) {
+      // the first declaration wins, as with a linear scan
+      index.putIfAbsent(key(groupId.apply(plugin), artifactId.apply(plugin)), plugin);
+    }
+    return index;
+  }
+
+  private static String key(String groupId, String artifactId) {
+    return groupId + ":" + artifactId;
+  }
+}
@@ -27,8 +27,9 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -43,6 +44,7 @@ import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.model.Build;
 import org.apache.maven.model.CiManagement;
 import org.apache.maven.model.IssueManagement;
 import org.apache.maven.model.Scm;
@@ -99,9 +101,9 @@ public class MavenProjectConverter {
 
   private static final String GROOVY_PROJECT_MAIN_BINARY_DIRS = "sonar.groovy.binaries";
 
-  private static final String JAVA_PROJECT_TEST_BINARY_DIRS = "sonar.java.test.binaries";
+  static final String JAVA_PROJECT_TEST_BINARY_DIRS = "sonar.java.test.binaries";
 
-  private static final String JAVA_PROJECT_TEST_LIBRARIES = "sonar.java.test.libraries";
+  static final String JAVA_PROJECT_TEST_LIBRARIES = "sonar.java.test.libraries";
 
   private static final String SUREFIRE_REPORTS_PATH_DEPRECATED_PROPERTY = "sonar.junit.reportsPath";
   // Since SonarJava 4.11
@@ -126,7 +128,11 @@ public class MavenProjectConverter {
 
   private final MavenCompilerResolver mavenCompilerResolver;
 
-  private final Set<Path> skippedBasedDirs = new HashSet<>();
+  private final ScannerMetrics metrics;
+
+  private final Set<Path> skippedBasedDirs = new PathTrie();
+
+  private FileProbes fileProbes;
 
   private boolean sourceDirsIsOverridden = false;
   private boolean testDirsIsOverridden = false;
@@ -138,13 +144,22 @@ public class MavenProjectConverter {
   private MavenProject root;
 
   public MavenProjectConverter(Log log, MavenCompilerResolver mavenCompilerResolver, Map<String, String> envProperties) {
+    this(log, mavenCompilerResolver, envProperties, new ScannerMetrics());
+  }
+
+  public MavenProjectConverter(Log log, MavenCompilerResolver mavenCompilerResolver, Map<String, String> envProperties, ScannerMetrics metrics) {
     this.log = log;
     this.mavenCompilerResolver = mavenCompilerResolver;
     this.envProperties = envProperties;
+    this.metrics = metrics;
+  }
+
+  public MavenCompilerResolver getMavenCompilerResolver() {
+    return mavenCompilerResolver;
   }
 
   public Set<Path> getSkippedBasedDirs() {
-    return skippedBasedDirs;
+    return Collections.unmodifiableSet(skippedBasedDirs);
   }
 
   public boolean isSourceDirsOverridden() {
@@ -170,16 +185,23 @@ public class MavenProjectConverter {
    * @throws MojoExecutionException if an error occurs during project configuration or property generation
    */
   Map<String, String> configure(List<MavenProject> mavenProjects, MavenProject root, Properties userProperties) throws MojoExecutionException {
+    // The same converter computes the properties of each project when the reactor has several analysis roots
+    skippedBasedDirs.clear();
+    sourceDirsIsOverridden = false;
+    testDirsIsOverridden = false;
     this.userProperties = userProperties;
     this.specifiedProjectKey = specifiedProjectKey(userProperties, root);
     Map<MavenProject, Map<String, String>> propsByModule = new LinkedHashMap<>();
 
-    try {
+    try (FileProbes probes = new FileProbes(ioConcurrency(userProperties, root), metrics)) {
       this.root = root;
+      this.fileProbes = probes;
+      prefetchFileProbes(mavenProjects);
       configureModules(mavenProjects, propsByModule);
       Map<String, String> props = new HashMap<>();
       props.put(AnalysisProperties.PROJECT_KEY, getArtifactKey(root));
-      Path topLevelDir = rebuildModuleHierarchy(props, propsByModule, root, "");
+      ModuleIndex moduleIndex = new ModuleIndex(propsByModule.keySet(), probes);
+      Path topLevelDir = rebuildModuleHierarchy(props, propsByModule, moduleIndex, root, "");
       props.put(AnalysisProperties.PROJECT_BASEDIR, topLevelDir.toString());
       if (!propsByModule.isEmpty()) {
         throw new IllegalStateException(UNABLE_TO_DETERMINE_PROJECT_STRUCTURE_EXCEPTION_MESSAGE + " \""
@@ -190,11 +212,62 @@ public class MavenProjectConverter {
       throw new IllegalStateException("Cannot configure project", e);
     } finally {
       this.root = null;
+      this.fileProbes = null;
+    }
+  }
+
+  private static int ioConcurrency(Properties userProperties, MavenProject root) throws MojoExecutionException {
+    String value = userProperties.getProperty(MavenScannerProperties.IO_CONCURRENCY, root.getProperties().getProperty(MavenScannerProperties.IO_CONCURRENCY));
+    return value == null ? FileProbes.defaultConcurrency() : FileProbes.parseConcurrency(value);
+  }
+
+  /**
+   * Checks upfront, and concurrently, the paths that the conversion of each module checks one after the other, and
+   * canonicalizes the poms and module paths that the rebuild of the module hierarchy looks up.
+   */
+  private void prefetchFileProbes(List<MavenProject> mavenProjects) {
+    long start = metrics.start();
+    List<File> paths = new ArrayList<>();
+    List<File> modulePaths = new ArrayList<>();
+    for (MavenProject pom : mavenProjects) {
+      if (!"true".equals(pom.getModel().getProperties().getProperty("sonar.skip"))) {
+        addProbedPaths(pom, paths);
+        modulePaths.add(pom.getFile());
+        pom.getModules().forEach(module -> modulePaths.add(new File(pom.getBasedir(), module)));
+      }
+    }
+    fileProbes.prefetch(paths);
+    fileProbes.prefetchCanonicalFiles(modulePaths);
+    metrics.stop(ScannerMetrics.Phase.MODULE_CONVERSION, start);
+  }
+
+  private static void addProbedPaths(MavenProject pom, List<File> paths) {
+    File basedir = pom.getBasedir();
+    Build build = pom.getBuild();
+    addResolved(Arrays.asList(build.getOutputDirectory(), build.getTestOutputDirectory(), new File(basedir.getAbsolutePath(), "src/main/webapp").getAbsolutePath(),
+      new File(basedir, ".github").getAbsolutePath()), basedir, paths);
+    if (build.getDirectory() != null) {
+      addResolved(Collections.singletonList(build.getDirectory() + File.separator + "surefire-reports"), basedir, paths);
+    }
+    addResolved(getPathsToPoms(pom), basedir, paths);
+    addResolved(pom.getCompileSourceRoots(), basedir, paths);
+    addResolved(pom.getTestCompileSourceRoots(), basedir, paths);
+    try {
+      addResolved(pom.getCompileClasspathElements(), basedir, paths);
+      addResolved(pom.getTestClasspathElements(), basedir, paths);
+    } catch (DependencyResolutionRequiredException e) {
+      // Reported when converting the module
+    }
+  }
+
+  private static void addResolved(@Nullable Collection<String> candidates, File basedir, List<File> paths) {
+    if (candidates != null) {
+      paths.addAll(resolvePaths(candidates, basedir));
     }
   }
 
   private static Path rebuildModuleHierarchy(Map<String, String> properties, Map<MavenProject, Map<String, String>> propsByModule,
-    MavenProject current, String prefix)
+    ModuleIndex moduleIndex, MavenProject current, String prefix)
     throws IOException {
     Map<String, String> currentProps = propsByModule.get(current);
     if (currentProps == null) {
@@ -211,10 +284,10 @@ public class MavenProjectConverter {
     List<String> moduleIds = new ArrayList<>();
     for (String modulePathStr : current.getModules()) {
       File modulePath = new File(current.getBasedir(), modulePathStr);
-      MavenProject module = findMavenProject(modulePath, propsByModule.keySet());
+      MavenProject module = moduleIndex.find(modulePath, propsByModule.keySet());
       if (module != null) {
         String moduleId = module.getGroupId() + ":" + module.getArtifactId();
-        Path topLevelModuleDir = rebuildModuleHierarchy(properties, propsByModule, module, prefix + moduleId + ".");
+        Path topLevelModuleDir = rebuildModuleHierarchy(properties, propsByModule, moduleIndex, module, prefix + moduleId + ".");
         moduleIds.add(moduleId);
         if (!topLevelModuleDir.startsWith(topLevelDir)) {
           // Find common prefix
@@ -254,30 +327,54 @@ public class MavenProjectConverter {
         log.info("Module " + pom + " skipped by property 'sonar.skip'");
         continue;
       }
+      long start = metrics.start();
+      long librariesBefore = metrics.count(ScannerMetrics.Counter.LIBRARIES);
+      ScannerEvents.ModuleConversionEvent event = new ScannerEvents.ModuleConversionEvent();
+      event.begin();
       propsByModule.put(pom, computeSonarQubeProperties(pom));
+      String moduleId = getArtifactKey(pom);
+      metrics.stopModule(moduleId, start);
+      if (event.shouldCommit()) {
+        event.moduleId = moduleId;
+        event.libraryCount = metrics.count(ScannerMetrics.Counter.LIBRARIES) - librariesBefore;
+        event.commit();
+      }
     }
   }
 
-  private static MavenProject findMavenProject(final File modulePath, Collection<MavenProject> modules)
-    throws IOException {
-
-    File canonical = modulePath.getCanonicalFile();
-    if (canonical.isDirectory()) {
-      File pom = new File(canonical, "pom.xml");
-      for (MavenProject module : modules) {
-        if (module.getFile().getCanonicalFile().equals(pom) || module.getBasedir().equals(canonical)) {
-          return module;
-        }
-      }
-    } else {
-      for (MavenProject module : modules) {
-        if (module.getFile().getCanonicalFile().equals(canonical)) {
-          return module;
-        }
+  /**
+   * Locates the projects declared as modules, resolving the canonical pom file of each project only once.
+   * When several projects match a module path, the first one in reactor order wins.
+   */
+  private static final class ModuleIndex {
+    private final Map<MavenProject, Integer> reactorOrder = new HashMap<>();
+    private final Map<File, List<MavenProject>> projectsByCanonicalPom = new HashMap<>();
+    private final Map<File, List<MavenProject>> projectsByBasedir = new HashMap<>();
+    private final FileProbes fileProbes;
+
+    private ModuleIndex(Collection<MavenProject> projects, FileProbes fileProbes) throws IOException {
+      this.fileProbes = fileProbes;
+      for (MavenProject project : projects) {
+        reactorOrder.put(project, reactorOrder.size());
+        projectsByCanonicalPom.computeIfAbsent(fileProbes.canonicalFile(project.getFile()), k -> new ArrayList<>()).add(project);
+        projectsByBasedir.computeIfAbsent(project.getBasedir(), k -> new ArrayList<>()).add(project);
       }
     }
 
-    return null;
+    @CheckForNull
+    private MavenProject find(File modulePath, Set<MavenProject> remainingProjects) throws IOException {
+      File canonical = fileProbes.canonicalFile(modulePath);
+      boolean directory = fileProbes.isDirectory(canonical);
+      List<MavenProject> candidates = new ArrayList<>(projectsByCanonicalPom.getOrDefault(directory ? new File(canonical, "pom.xml") : canonical,
+        Collections.emptyList()));
+      if (directory) {
+        candidates.addAll(projectsByBasedir.getOrDefault(canonical, Collections.emptyList()));
+      }
+      return candidates.stream()
+        .filter(remainingProjects::contains)
+        .min(Comparator.comparing(reactorOrder::get))
+        .orElse(null);
+    }
   }
 
   private Map<String, String> computeSonarQubeProperties(MavenProject pom) throws MojoExecutionException {
@@ -290,11 +387,12 @@ public class MavenProjectConverter {
       props.put(AnalysisProperties.PROJECT_DESCRIPTION, description);
     }
 
+    MavenPluginIndex plugins = MavenPluginIndex.of(pom);
     populateJavaAnalyzerProperties(pom, props);
     guessEncoding(pom, props);
     convertMavenLinksToProperties(props, pom);
-    synchronizeFileSystemAndOtherProps(pom, props);
-    findBugsExcludeFileMaven(pom, props);
+    synchronizeFileSystemAndOtherProps(pom, plugins, props);
+    findBugsExcludeFileMaven(pom, plugins, props);
     return props;
   }
 
@@ -343,7 +441,9 @@ public class MavenProjectConverter {
   }
 
   private void populateJavaAnalyzerProperties(MavenProject pom, Map<String, String> props) {
+    long start = metrics.start();
     Optional<MavenCompilerConfiguration> javaCompilerConfig = mavenCompilerResolver.extractConfiguration(pom);
+    metrics.stop(ScannerMetrics.Phase.COMPILER_PLAN, start);
     javaCompilerConfig.ifPresent(config -> {
       populateJavaAnalyzerSourceAndTarget(config, props);
       populateEnablePreview(config, props);
@@ -373,10 +473,10 @@ public class MavenProjectConverter {
     config.getEnablePreview().ifPresent(property -> props.put(JAVA_ENABLE_PREVIEW, property));
   }
 
-  private static void findBugsExcludeFileMaven(MavenProject pom, Map<String, String> props) {
-    String excludeFilterFile = MavenUtils.getPluginSetting(pom, MavenUtils.GROUP_ID_CODEHAUS_MOJO, ARTIFACTID_FINDBUGS_MAVEN_PLUGIN, "excludeFilterFile", null);
+  private void findBugsExcludeFileMaven(MavenProject pom, MavenPluginIndex plugins, Map<String, String> props) {
+    String excludeFilterFile = MavenUtils.getPluginSetting(plugins, MavenUtils.GROUP_ID_CODEHAUS_MOJO, ARTIFACTID_FINDBUGS_MAVEN_PLUGIN, "excludeFilterFile", null);
     File path = resolvePath(excludeFilterFile, pom.getBasedir());
-    if (path != null && path.exists()) {
+    if (path != null && exists(path)) {
       props.put(FINDBUGS_EXCLUDE_FILTERS, path.getAbsolutePath());
     }
   }
@@ -413,7 +513,7 @@ public class MavenProjectConverter {
     }
   }
 
-  private void synchronizeFileSystemAndOtherProps(MavenProject pom, Map<String, String> props)
+  private void synchronizeFileSystemAndOtherProps(MavenProject pom, MavenPluginIndex plugins, Map<String, String> props)
     throws MojoExecutionException {
     props.put(AnalysisProperties.PROJECT_BASEDIR, pom.getBasedir().getAbsolutePath());
     File buildDir = getBuildDir(pom);
@@ -421,12 +521,14 @@ public class MavenProjectConverter {
       props.put(PROPERTY_PROJECT_BUILDDIR, buildDir.getAbsolutePath());
       props.put(ScannerProperties.WORK_DIR, getSonarWorkDir(pom).getAbsolutePath());
     }
+    long start = metrics.start();
     populateBinaries(pom, props);
 
     populateLibraries(pom, props, false);
     populateLibraries(pom, props, true);
+    metrics.stop(ScannerMetrics.Phase.CLASSPATH_PROBING, start);
 
-    populateSurefireReportsPath(pom, props);
+    populateSurefireReportsPath(pom, plugins, props);
 
     // IMPORTANT NOTE : reference on properties from POM model must not be saved,
     // instead they should be copied explicitly - see SONAR-2896
@@ -442,7 +544,7 @@ public class MavenProjectConverter {
     // override all other
     MavenUtils.putAll(userProperties, props);
 
-    List<File> mainDirs = mainSources(pom);
+    List<File> mainDirs = mainSources(pom, plugins);
     props.put(AnalysisProperties.PROJECT_SOURCE_DIRS, MavenUtils.joinAsCsv(toPaths(mainDirs)));
     List<File> testDirs = testSources(pom);
     if (!testDirs.isEmpty()) {
@@ -452,17 +554,17 @@ public class MavenProjectConverter {
     }
   }
 
-  private static void populateSurefireReportsPath(MavenProject pom, Map<String, String> props) {
-    String surefireReportsPath = MavenUtils.getPluginSetting(pom, MavenUtils.GROUP_ID_APACHE_MAVEN, ARTIFACTID_MAVEN_SUREFIRE_PLUGIN, "reportsDirectory",
+  private void populateSurefireReportsPath(MavenProject pom, MavenPluginIndex plugins, Map<String, String> props) {
+    String surefireReportsPath = MavenUtils.getPluginSetting(plugins, MavenUtils.GROUP_ID_APACHE_MAVEN, ARTIFACTID_MAVEN_SUREFIRE_PLUGIN, "reportsDirectory",
       pom.getBuild().getDirectory() + File.separator + "surefire-reports");
     File path = resolvePath(surefireReportsPath, pom.getBasedir());
-    if (path != null && path.exists()) {
+    if (path != null && exists(path)) {
       props.put(SUREFIRE_REPORTS_PATH_DEPRECATED_PROPERTY, path.getAbsolutePath());
       props.put(SUREFIRE_REPORTS_PATH_PROPERTY, path.getAbsolutePath());
     }
   }
 
-  private static void populateLibraries(MavenProject pom, Map<String, String> props, boolean test) throws MojoExecutionException {
+  private void populateLibraries(MavenProject pom, Map<String, String> props, boolean test) throws MojoExecutionException {
     List<String> classpathElements;
     try {
       classpathElements = test ? pom.getTestClasspathElements() : pom.getCompileClasspathElements();
@@ -479,7 +581,7 @@ public class MavenProjectConverter {
         .map(cp -> Optional.ofNullable(resolvePath(cp, basedir)))
         .filter(Optional::isPresent)
         .map(Optional::get)
-        .filter(File::exists)
+        .filter(this::exists)
         .forEach(libraries::add);
     }
 
@@ -492,6 +594,7 @@ public class MavenProjectConverter {
       }
     }
 
+    metrics.add(ScannerMetrics.Counter.LIBRARIES, libraries.size());
     if (!libraries.isEmpty()) {
       String librariesValue = MavenUtils.joinAsCsv(toPaths(libraries));
       if (test) {
@@ -504,9 +607,9 @@ public class MavenProjectConverter {
     }
   }
 
-  private static void populateBinaries(MavenProject pom, Map<String, String> props) {
+  private void populateBinaries(MavenProject pom, Map<String, String> props) {
     File mainBinaryDir = resolvePath(pom.getBuild().getOutputDirectory(), pom.getBasedir());
-    if (mainBinaryDir != null && mainBinaryDir.exists()) {
+    if (mainBinaryDir != null && exists(mainBinaryDir)) {
       String binPath = mainBinaryDir.getAbsolutePath();
       // Populate both deprecated and new property for backward compatibility
       props.put(PROJECT_BINARY_DIRS, binPath);
@@ -514,7 +617,7 @@ public class MavenProjectConverter {
       props.put(GROOVY_PROJECT_MAIN_BINARY_DIRS, binPath);
     }
     File testBinaryDir = resolvePath(pom.getBuild().getTestOutputDirectory(), pom.getBasedir());
-    if (testBinaryDir != null && testBinaryDir.exists()) {
+    if (testBinaryDir != null && exists(testBinaryDir)) {
       String binPath = testBinaryDir.getAbsolutePath();
       props.put(JAVA_PROJECT_TEST_BINARY_DIRS, binPath);
     }
@@ -562,11 +665,11 @@ public class MavenProjectConverter {
     }).collect(Collectors.toList());
   }
 
-  private List<File> mainSources(MavenProject pom) throws MojoExecutionException {
+  private List<File> mainSources(MavenProject pom, MavenPluginIndex plugins) throws MojoExecutionException {
     Set<String> sources = new LinkedHashSet<>();
     if (MAVEN_PACKAGING_WAR.equals(pom.getModel().getPackaging())) {
       sources.add(MavenUtils.getPluginSetting(
-        pom,
+        plugins,
         MavenUtils.GROUP_ID_APACHE_MAVEN,
         ARTIFACTID_MAVEN_WAR_PLUGIN,
         "warSourceDirectory",
@@ -644,10 +747,10 @@ public class MavenProjectConverter {
     return prop;
   }
 
-  private static List<File> existingPathsOrFail(List<File> dirs, MavenProject pom, String propertyKey)
+  private List<File> existingPathsOrFail(List<File> dirs, MavenProject pom, String propertyKey)
     throws MojoExecutionException {
     for (File dir : dirs) {
-      if (!dir.exists()) {
+      if (!exists(dir)) {
         throw new MojoExecutionException(
           String.format("The directory '%s' does not exist for Maven module %s. Please check the property %s",
             dir.getAbsolutePath(), pom.getId(), propertyKey));
@@ -656,8 +759,12 @@ public class MavenProjectConverter {
     return dirs;
   }
 
-  private static List<File> keepExistingPaths(List<File> files) {
-    return files.stream().filter(f -> f != null && f.exists()).collect(Collectors.toList());
+  private List<File> keepExistingPaths(List<File> files) {
+    return files.stream().filter(f -> f != null && exists(f)).collect(Collectors.toList());
+  }
+
+  private boolean exists(File file) {
+    return fileProbes.exists(file);
   }
 
   private static List<File> removeNested(List<File> originalPaths) {
@@ -24,6 +24,18 @@ import com.google.common.annotations.Beta;
 @Beta
 final class MavenScannerProperties {
   public static final String PROJECT_SCAN_ALL_SOURCES = "sonar.maven.scanAll";
+  public static final String METRICS = "sonar.maven.metrics";
+  public static final String ENGINE_REUSE = "sonar.maven.engineReuse";
+  public static final String FORK = "sonar.maven.fork";
+  public static final String FORK_JVM_ARGS = "sonar.maven.fork.jvmArgs";
+  public static final String ANALYSIS_ROOTS = "sonar.maven.analysisRoots";
+  public static final String ANALYSIS_PARALLELISM = "sonar.maven.analysisParallelism";
+  public static final String REUSE_MAVEN_JRE = "sonar.maven.reuseMavenJre";
+  public static final String AUTO_TUNE = "sonar.maven.autoTune";
+  public static final String ENGINE_CDS = "sonar.maven.engineCds";
+  public static final String DEFER_QUALITY_GATE = "sonar.maven.deferQualityGate";
+  public static final String IO_CONCURRENCY = "sonar.maven.ioConcurrency";
+  public static final String WORK_DIR_ROOT = "sonar.maven.workDirRoot";
 
   private MavenScannerProperties() {
     /* This class only contains constants and is not meant to be instantiated */
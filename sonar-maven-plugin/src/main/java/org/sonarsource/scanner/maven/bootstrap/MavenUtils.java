@@ -20,7 +20,6 @@
 package org.sonarsource.scanner.maven.bootstrap;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -30,7 +29,6 @@ import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
@@ -43,6 +41,7 @@ import org.codehaus.plexus.component.configurator.ComponentConfigurationExceptio
 import org.codehaus.plexus.component.configurator.converters.basic.StringConverter;
 import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluator;
 import org.codehaus.plexus.configuration.PlexusConfiguration;
+import org.sonarsource.scanner.lib.ScannerProperties;
 
 /**
  * An utility class to manipulate Maven concepts
@@ -62,6 +61,8 @@ public final class MavenUtils {
    */
   private static final Pattern ENCRYPTED_VALUE = Pattern.compile("\\{(?:\\[[^]]++])?[a-zA-Z0-9+/=_-]{20,}}");
 
+  private static final List<String> SENSITIVE_NAME_PARTS = List.of("password", "passphrase", "token", "secret", "credentials");
+
   private MavenUtils() {
     // utility class with only static methods
   }
@@ -86,7 +87,11 @@ public final class MavenUtils {
    * @return the value of the option configured in the plugin configuration
    */
   public static String getPluginSetting(MavenProject project, String groupId, String artifactId, String optionName, @Nullable String defaultValue) {
-    MavenPlugin plugin = MavenPlugin.getPlugin(project, groupId, artifactId);
+    return getPluginSetting(MavenPluginIndex.of(project), groupId, artifactId, optionName, defaultValue);
+  }
+
+  static String getPluginSetting(MavenPluginIndex plugins, String groupId, String artifactId, String optionName, @Nullable String defaultValue) {
+    MavenPlugin plugin = plugins.getPlugin(groupId, artifactId);
     if (plugin != null) {
       return StringUtils.defaultIfEmpty(plugin.getParameter(optionName), defaultValue);
     }
@@ -129,6 +134,14 @@ public final class MavenUtils {
       && !name.toLowerCase(Locale.ROOT).contains("sonar");
   }
 
+  /**
+   * Whether the property may hold a secret, such as a token or a password, and must not be written or logged as is.
+   */
+  public static boolean isSensitive(String name) {
+    String lowerCaseName = name.toLowerCase(Locale.ROOT);
+    return SENSITIVE_NAME_PARTS.stream().anyMatch(lowerCaseName::contains) || ScannerProperties.SONAR_LOGIN.equals(name);
+  }
+
   /**
    * Joins a list of strings that may contain commas by wrapping those strings in double quotes, like in CSV format.
    * <p>
@@ -141,47 +154,15 @@ public final class MavenUtils {
    * and each single value that contains a comma wrapped in double quotes
    */
   public static String joinAsCsv(List<String> values) {
-    return values.stream()
-      .map(MavenUtils::escapeCommas)
-      .collect(Collectors.joining(","));
-  }
-
-  private static String escapeCommas(String value) {
-    // escape only when needed
-    return value.contains(",") ? ("\"" + value + "\"") : value;
+    return Csv.join(values);
   }
 
+  /**
+   * Splits a string joined by {@link #joinAsCsv(List)}. See {@link Csv} to read the values without collecting them.
+   */
   public static List<String> splitAsCsv(String joined) {
     List<String> collected = new ArrayList<>();
-    if (joined.indexOf('"') == -1) {
-      return Arrays.asList(joined.split(","));
-    }
-    int start = 0;
-    int end = joined.length() - 1;
-    while (start < end && end < joined.length()) {
-      if (joined.charAt(start) == '"') {
-        end = joined.indexOf('"', start + 1);
-        String value = joined.substring(start + 1, end);
-        collected.add(value);
-        int nextComma = joined.indexOf(",", end);
-        if (nextComma == -1) {
-          break;
-        }
-        start = nextComma + 1;
-      } else {
-        int nextComma = joined.indexOf(",", start);
-        if (nextComma == -1) {
-          end = joined.length();
-        } else {
-          end = nextComma;
-        }
-        String value = joined.substring(start, end);
-        collected.add(value);
-        start = end + 1;
-      }
-      end = start + 1;
-    }
-
+    Csv.forEach(joined, collected::add);
     return collected;
   }
 
@@ -0,0 +1,182 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.sonarsource.scanner.lib.AnalysisProperties;
+import org.sonarsource.scanner.lib.ScannerEngineFacade;
+
+/**
+ * Analysis of several SonarQube projects of the same reactor, each one rooted at a module listed in
+ * {@value MavenScannerProperties#ANALYSIS_ROOTS}, with a single engine.
+ * <p>
+ * The properties of the projects are computed one after the other, because the conversion of a module switches the
+ * current project of the Maven session. Only the analyses run concurrently.
+ * </p>
+ */
+class MultiProjectAnalysis {
+
+  static final int DEFAULT_PARALLELISM = 2;
+
+  private final Log log;
+  private final int parallelism;
+
+  MultiProjectAnalysis(Log log, int parallelism) {
+    this.log = log;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @param analysisRoots comma-separated list of modules, identified by {@code groupId:artifactId} or by {@code artifactId}.
+   *                      A root cannot be located in the directory of another root, its modules would be analyzed twice.
+   */
+  static List<MavenProject> resolveRoots(String analysisRoots, List<MavenProject> projects) throws MojoExecutionException {
+    List<MavenProject> roots = new ArrayList<>();
+    for (String id : MavenUtils.splitAsCsv(analysisRoots)) {
+      String trimmedId = id.trim();
+      List<MavenProject> matches = projects.stream()
+        .filter(project -> trimmedId.equals(project.getArtifactId()) || trimmedId.equals(project.getGroupId() + ":" + project.getArtifactId()))
+        .collect(Collectors.toList());
+      if (matches.size() != 1) {
+        throw new MojoExecutionException(String.format("The analysis root '%s' must match exactly one module of the reactor, found %d", trimmedId, matches.size()));
+      }
+      roots.add(matches.get(0));
+    }
+    checkDisjoint(roots);
+    return roots;
+  }
+
+  private static void checkDisjoint(List<MavenProject> roots) throws MojoExecutionException {
+    for (int i = 0; i < roots.size(); i++) {
+      Path dir = roots.get(i).getBasedir().toPath().toAbsolutePath().normalize();
+      for (int j = 0; j < roots.size(); j++) {
+        Path otherDir = roots.get(j).getBasedir().toPath().toAbsolutePath().normalize();
+        if (i != j && otherDir.startsWith(dir)) {
+          throw new MojoExecutionException(String.format("The analysis roots '%s' and '%s' overlap: the modules of '%s' would be analyzed twice",
+            id(roots.get(i)), id(roots.get(j)), id(roots.get(j))));
+        }
+      }
+    }
+  }
+
+  /**
+   * @param projectKeyByRoot the project key of each root, by root
+   */
+  static void checkDistinctProjectKeys(Map<String, String> projectKeyByRoot) throws MojoExecutionException {
+    Map<String, String> rootByProjectKey = new HashMap<>();
+    for (Map.Entry<String, String> entry : projectKeyByRoot.entrySet()) {
+      if (entry.getValue() == null) {
+        continue;
+      }
+      String otherRoot = rootByProjectKey.putIfAbsent(entry.getValue(), entry.getKey());
+      if (otherRoot != null) {
+        throw new MojoExecutionException(String.format("The analysis roots '%s' and '%s' have the same project key '%s', set a distinct %s in each root",
+          otherRoot, entry.getKey(), entry.getValue(), AnalysisProperties.PROJECT_KEY));
+      }
+    }
+  }
+
+  static String id(MavenProject project) {
+    return project.getGroupId() + ":" + project.getArtifactId();
+  }
+
+  /**
+   * The root and the modules located in its directory, in reactor order. Modules declared with a path outside of the
+   * directory of the root, like {@code ../other}, are not part of its analysis.
+   */
+  static List<MavenProject> modulesOf(MavenProject root, List<MavenProject> projects) {
+    Path rootDir = root.getBasedir().toPath().toAbsolutePath().normalize();
+    return projects.stream()
+      .filter(project -> project.getBasedir().toPath().toAbsolutePath().normalize().startsWith(rootDir))
+      .collect(Collectors.toList());
+  }
+
+  static int parseParallelism(String value) throws MojoExecutionException {
+    try {
+      int parallelism = Integer.parseInt(value.trim());
+      if (parallelism > 0) {
+        return parallelism;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new MojoExecutionException("The value of " + MavenScannerProperties.ANALYSIS_PARALLELISM + " must be a positive integer: " + value);
+  }
+
+  /**
+   * Runs all the analyses, even if some of them fail, then reports the failed ones.
+   */
+  void analyze(ScannerEngineFacade engineFacade, Map<String, Map<String, String>> propertiesByProject) throws MojoFailureException {
+    int threads = Math.min(parallelism, propertiesByProject.size());
+    log.info(String.format("Analyzing %d projects, %d at a time", propertiesByProject.size(), threads));
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "sonar-analysis-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    List<String> failedProjects = new ArrayList<>();
+    try {
+      Map<String, Future<Boolean>> results = new LinkedHashMap<>();
+      propertiesByProject.forEach((project, properties) -> results.put(project, executor.submit(() -> {
+        log.info("Analyzing project " + project);
+        return engineFacade.analyze(properties);
+      })));
+      for (Map.Entry<String, Future<Boolean>> result : results.entrySet()) {
+        if (!isSuccessful(result.getKey(), result.getValue())) {
+          failedProjects.add(result.getKey());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    if (!failedProjects.isEmpty()) {
+      throw new MojoFailureException("The scanner analysis has failed for " + String.join(", ", failedProjects) + "! See the logs for more details.");
+    }
+  }
+
+  private boolean isSuccessful(String project, Future<Boolean> result) {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      log.error("The analysis of project " + project + " has failed", e.getCause());
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("Interrupted while waiting for the analysis of project " + project);
+      return false;
+    }
+  }
+}
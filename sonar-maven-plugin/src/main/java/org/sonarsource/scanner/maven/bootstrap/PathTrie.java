@@ -0,0 +1,298 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * A set of paths stored as a tree of their name elements, so that the long prefixes shared by the paths of a reactor are
+ * only stored once. Besides exact lookups, it tells in a single descent whether a path is under any path of the set.
+ * <p>
+ * Name elements are compared as {@link Path}s, with the case sensitivity of their file system. Paths are iterated in
+ * depth-first order and rebuilt on the fly; the paths of a directory with many children are not in insertion order. Paths
+ * cannot be removed one by one, only {@link #clear() cleared}.
+ * </p>
+ */
+final class PathTrie extends AbstractSet<Path> {
+
+  private final Node root = new Node(null);
+  private int size;
+
+  PathTrie() {
+  }
+
+  PathTrie(Collection<Path> paths) {
+    addAll(paths);
+  }
+
+  /**
+   * @return the given set if it is already a trie, a trie of its paths otherwise
+   */
+  static PathTrie of(Set<Path> paths) {
+    return paths instanceof PathTrie ? (PathTrie) paths : new PathTrie(paths);
+  }
+
+  @Override
+  public boolean add(Path path) {
+    Node node = root.getOrAddChild(path.getRoot());
+    for (Path name : path) {
+      node = node.getOrAddChild(name);
+    }
+    if (node.isMember()) {
+      return false;
+    }
+    node.setMember();
+    size++;
+    return true;
+  }
+
+  @Override
+  public boolean contains(Object object) {
+    if (!(object instanceof Path)) {
+      return false;
+    }
+    Path path = (Path) object;
+    Node node = root.child(path.getRoot());
+    for (Iterator<Path> names = path.iterator(); node != null && names.hasNext(); ) {
+      node = node.child(names.next());
+    }
+    return node != null && node.isMember();
+  }
+
+  /**
+   * @return whether the path, or one of its ancestors, belongs to the set
+   */
+  boolean containsSelfOrAncestor(Path path) {
+    Node node = root.child(path.getRoot());
+    if (node == null) {
+      return false;
+    }
+    for (Path name : path) {
+      if (node.isMember()) {
+        return true;
+      }
+      node = node.child(name);
+      if (node == null) {
+        return false;
+      }
+    }
+    return node.isMember();
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    root.clear();
+    size = 0;
+  }
+
+  @Override
+  public Iterator<Path> iterator() {
+    return new PathIterator();
+  }
+
+  private static final class Node {
+    private static final int MAX_ARRAY_CHILDREN = 8;
+    private static final int MIN_TABLE_CAPACITY = 32;
+
+    @Nullable
+    private final Path name;
+    /**
+     * Whether the node is a path of the set in the lowest bit, and the number of children in the other bits.
+     */
+    private int state;
+    /**
+     * Up to {@value #MAX_ARRAY_CHILDREN} children in an array without empty slot, then an open addressing hash table,
+     * to avoid an entry object per child.
+     */
+    @Nullable
+    private Node[] children;
+
+    private Node(@Nullable Path name) {
+      this.name = name;
+    }
+
+    private boolean isMember() {
+      return (state & 1) != 0;
+    }
+
+    private void setMember() {
+      state |= 1;
+    }
+
+    private int childCount() {
+      return state >>> 1;
+    }
+
+    @CheckForNull
+    private Node child(@Nullable Path childName) {
+      if (children == null) {
+        return null;
+      }
+      if (children.length <= MAX_ARRAY_CHILDREN) {
+        for (Node child : children) {
+          if (Objects.equals(child.name, childName)) {
+            return child;
+          }
+        }
+        return null;
+      }
+      int mask = children.length - 1;
+      for (int i = slot(childName, mask); children[i] != null; i = (i + 1) & mask) {
+        if (Objects.equals(children[i].name, childName)) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    private Node getOrAddChild(@Nullable Path childName) {
+      Node child = child(childName);
+      if (child != null) {
+        return child;
+      }
+      child = new Node(childName);
+      int count = childCount();
+      if (children == null) {
+        children = new Node[] {child};
+      } else if (count < MAX_ARRAY_CHILDREN) {
+        children = Arrays.copyOf(children, count + 1);
+        children[count] = child;
+      } else {
+        if (children.length <= MAX_ARRAY_CHILDREN || (count + 1) * 4 > children.length * 3) {
+          rehash(Math.max(MIN_TABLE_CAPACITY, children.length * 2));
+        }
+        insert(children, child);
+      }
+      state += 2;
+      return child;
+    }
+
+    private void rehash(int capacity) {
+      Node[] table = new Node[capacity];
+      for (Node child : children) {
+        if (child != null) {
+          insert(table, child);
+        }
+      }
+      children = table;
+    }
+
+    private static void insert(Node[] table, Node child) {
+      int mask = table.length - 1;
+      int i = slot(child.name, mask);
+      while (table[i] != null) {
+        i = (i + 1) & mask;
+      }
+      table[i] = child;
+    }
+
+    private static int slot(@Nullable Path name, int mask) {
+      int hash = Objects.hashCode(name);
+      return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private Iterator<Node> childIterator() {
+      if (children == null) {
+        return Collections.emptyIterator();
+      }
+      return Arrays.stream(children).filter(Objects::nonNull).iterator();
+    }
+
+    private void clear() {
+      children = null;
+      state = 0;
+    }
+  }
+
+  /**
+   * Depth-first walk, keeping the path of each pending directory so that only the name of each child is resolved.
+   */
+  private final class PathIterator implements Iterator<Path> {
+    private final Deque<Frame> pending = new ArrayDeque<>();
+    @Nullable
+    private Path next;
+
+    private PathIterator() {
+      pending.push(new Frame(null, root.childIterator()));
+      advance();
+    }
+
+    private void advance() {
+      next = null;
+      while (next == null && !pending.isEmpty()) {
+        Frame frame = pending.peek();
+        if (!frame.children.hasNext()) {
+          pending.pop();
+          continue;
+        }
+        Node child = frame.children.next();
+        // Relative paths have no root, they start with their first name
+        Path path = frame.path == null ? child.name : frame.path.resolve(child.name);
+        pending.push(new Frame(path, child.childIterator()));
+        if (child.isMember()) {
+          next = path;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Path next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Path current = next;
+      advance();
+      return current;
+    }
+  }
+
+  private static final class Frame {
+    @Nullable
+    private final Path path;
+    private final Iterator<Node> children;
+
+    private Frame(@Nullable Path path, Iterator<Node> children) {
+      this.path = path;
+      this.children = children;
+    }
+  }
+}
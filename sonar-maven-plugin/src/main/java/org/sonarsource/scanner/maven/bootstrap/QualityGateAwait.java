@@ -0,0 +1,225 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.sonarsource.scanner.lib.ScannerProperties;
+import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+
+/**
+ * Waits for the server to process an analysis report, then enforces the quality gate of the analysis, like
+ * {@code sonar.qualitygate.wait} does, but from a later step of the build. The report is identified by the
+ * {@code report-task.txt} file written by the analysis in its working directory, or at {@code sonar.scanner.metadataFilePath}.
+ * <p>
+ * The server is called with the HTTP client of the scanner library, so with the same credentials, truststore, proxy
+ * and timeouts as the analysis.
+ * </p>
+ */
+public class QualityGateAwait {
+
+  public static final String REPORT_TASK_FILE_NAME = "report-task.txt";
+  static final String METADATA_FILE_PATH = "sonar.scanner.metadataFilePath";
+  static final String QUALITY_GATE_TIMEOUT = "sonar.qualitygate.timeout";
+  static final int DEFAULT_TIMEOUT_SECONDS = 300;
+  static final long INITIAL_POLL_INTERVAL_MILLIS = 500;
+  static final long MAX_POLL_INTERVAL_MILLIS = 10_000;
+
+  @FunctionalInterface
+  interface Sleeper {
+    void sleep(long millis) throws InterruptedException;
+  }
+
+  private final Log log;
+  private final Map<String, String> globalProperties;
+  private final Function<String, ScannerHttpClient> httpClients;
+  private final LongSupplier millisClock;
+  private final Sleeper sleeper;
+
+  /**
+   * @param httpClients HTTP client of the scanner library for the server URL of the analysis report
+   */
+  public QualityGateAwait(Log log, Map<String, String> globalProperties, Function<String, ScannerHttpClient> httpClients) {
+    this(log, globalProperties, httpClients, System::currentTimeMillis, Thread::sleep);
+  }
+
+  @VisibleForTesting
+  QualityGateAwait(Log log, Map<String, String> globalProperties, Function<String, ScannerHttpClient> httpClients, LongSupplier millisClock,
+    Sleeper sleeper) {
+    this.log = log;
+    this.globalProperties = globalProperties;
+    this.httpClients = httpClients;
+    this.millisClock = millisClock;
+    this.sleeper = sleeper;
+  }
+
+  /**
+   * @param defaultWorkDir working directory of the analysis when {@value ScannerProperties#WORK_DIR} is not set
+   * @return the file written by the analysis to reference its report
+   */
+  public static Path reportTaskFile(Map<String, String> globalProperties, Path defaultWorkDir) {
+    String metadataFilePath = globalProperties.get(METADATA_FILE_PATH);
+    if (metadataFilePath != null && !metadataFilePath.isEmpty()) {
+      return Paths.get(metadataFilePath);
+    }
+    String workDir = globalProperties.get(ScannerProperties.WORK_DIR);
+    return (workDir != null ? Paths.get(workDir) : defaultWorkDir).resolve(REPORT_TASK_FILE_NAME);
+  }
+
+  public void await(Path reportTaskFile) throws MojoExecutionException, MojoFailureException {
+    Properties reportTask = readReportTask(reportTaskFile);
+    String serverUrl = reportTask.getProperty("serverUrl", "").replaceAll("/+$", "");
+    String taskId = reportTask.getProperty("ceTaskId");
+    String dashboardUrl = reportTask.getProperty("dashboardUrl", serverUrl);
+    if (serverUrl.isEmpty() || taskId == null) {
+      throw new MojoExecutionException("The file " + reportTaskFile + " does not reference an analysis task");
+    }
+    long timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds());
+    log.info(String.format("Waiting for the analysis task %s to be processed by the server, for up to %d seconds", taskId, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis)));
+
+    ScannerHttpClient httpClient = httpClients.apply(serverUrl);
+    String analysisId = awaitAnalysis(httpClient, taskId, millisClock.getAsLong() + timeoutMillis);
+    String path = "/api/qualitygates/project_status?analysisId=" + encode(analysisId);
+    String status = string(object(get(httpClient, path), "projectStatus", path), "status", path);
+    if ("OK".equals(status)) {
+      log.info("QUALITY GATE STATUS: PASSED - View details on " + dashboardUrl);
+    } else if ("NONE".equals(status)) {
+      log.info("QUALITY GATE STATUS: NONE - No quality gate is associated to the project, view details on " + dashboardUrl);
+    } else {
+      throw new MojoFailureException("QUALITY GATE STATUS: FAILED - View details on " + dashboardUrl);
+    }
+  }
+
+  /**
+   * Polls the task with an exponential backoff until it is processed.
+   *
+   * @return the id of the analysis created by the task
+   */
+  private String awaitAnalysis(ScannerHttpClient httpClient, String taskId, long deadlineMillis) throws MojoExecutionException, MojoFailureException {
+    long interval = INITIAL_POLL_INTERVAL_MILLIS;
+    String path = "/api/ce/task?id=" + encode(taskId);
+    while (true) {
+      JsonObject task = object(get(httpClient, path), "task", path);
+      String status = string(task, "status", path);
+      switch (status) {
+        case "SUCCESS":
+          return string(task, "analysisId", path);
+        case "FAILED":
+        case "CANCELED":
+          JsonElement message = task.get("errorMessage");
+          throw new MojoFailureException("The analysis task " + taskId + " is " + status
+            + (message == null || !message.isJsonPrimitive() ? "" : (": " + message.getAsString())));
+        default:
+          long remaining = deadlineMillis - millisClock.getAsLong();
+          if (remaining <= 0) {
+            throw new MojoFailureException("The analysis task " + taskId + " was not processed in time, its status is " + status
+              + ". The timeout can be increased with " + QUALITY_GATE_TIMEOUT);
+          }
+          log.debug("The analysis task " + taskId + " is " + status);
+          sleep(Math.min(interval, remaining));
+          interval = Math.min(interval * 2, MAX_POLL_INTERVAL_MILLIS);
+      }
+    }
+  }
+
+  private void sleep(long millis) throws MojoExecutionException {
+    try {
+      sleeper.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while waiting for the quality gate", e);
+    }
+  }
+
+  private long timeoutSeconds() throws MojoExecutionException {
+    String timeout = globalProperties.get(QUALITY_GATE_TIMEOUT);
+    if (timeout == null) {
+      return DEFAULT_TIMEOUT_SECONDS;
+    }
+    try {
+      return Long.parseLong(timeout.trim());
+    } catch (NumberFormatException e) {
+      throw new MojoExecutionException("The value of " + QUALITY_GATE_TIMEOUT + " must be a number of seconds: " + timeout, e);
+    }
+  }
+
+  private static Properties readReportTask(Path reportTaskFile) throws MojoExecutionException {
+    if (!Files.isRegularFile(reportTaskFile)) {
+      throw new MojoExecutionException("The file " + reportTaskFile + " does not exist, the sonar goal must run before the await goal");
+    }
+    Properties reportTask = new Properties();
+    try (Reader reader = Files.newBufferedReader(reportTaskFile, StandardCharsets.UTF_8)) {
+      reportTask.load(reader);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to read " + reportTaskFile, e);
+    }
+    return reportTask;
+  }
+
+  private static JsonObject get(ScannerHttpClient httpClient, String path) throws MojoExecutionException {
+    try {
+      return JsonParser.parseString(httpClient.callWebApi(path)).getAsJsonObject();
+    } catch (JsonParseException | IllegalStateException e) {
+      // Also thrown by the HTTP client on I/O errors
+      throw new MojoExecutionException("Unable to get " + path + ": " + e.getMessage(), e);
+    } catch (RuntimeException e) {
+      // Error status of the server, like an expired token
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  private static JsonObject object(JsonObject response, String member, String path) throws MojoExecutionException {
+    JsonElement value = response.get(member);
+    if (value == null || !value.isJsonObject()) {
+      throw new MojoExecutionException("Unexpected response from " + path + ": no " + member + " object");
+    }
+    return value.getAsJsonObject();
+  }
+
+  private static String string(JsonObject object, String member, String path) throws MojoExecutionException {
+    JsonElement value = object.get(member);
+    if (value == null || !value.isJsonPrimitive()) {
+      throw new MojoExecutionException("Unexpected response from " + path + ": no " + member);
+    }
+    return value.getAsString();
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+}
@@ -20,17 +20,11 @@
 package org.sonarsource.scanner.maven.bootstrap;
 
 import com.google.common.annotations.VisibleForTesting;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.Set;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.apache.maven.artifact.versioning.ComparableVersion;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -41,34 +35,59 @@ import org.sonarsource.scanner.lib.AnalysisProperties;
 import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
 import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
 import org.sonarsource.scanner.lib.ScannerEngineFacade;
+import org.sonarsource.scanner.lib.ScannerProperties;
 
 /**
  * Configure properties and bootstrap using SonarQube scanner API
  */
 public class ScannerBootstrapper {
 
+  private static final String SQ_VERSION_FORKED_ENGINE = "10.6";
   static final String UNSUPPORTED_BELOW_SONARQUBE_56_MESSAGE = "With SonarQube server prior to 5.6, use sonar-maven-plugin <= 3.3";
-  private static final Pattern REPORT_PROPERTY_PATTERN = Pattern.compile("^sonar\\..*[rR]eportPaths?$");
 
   private final Log log;
   private final MavenSession session;
   private final ScannerEngineBootstrapper bootstrapper;
-  private final MavenProjectConverter mavenProjectConverter;
+  private final AnalysisPropertiesCollector propertiesCollector;
   private String serverVersion;
-  private final PropertyDecryptor propertyDecryptor;
+  private final ScannerMetrics metrics;
+  @Nullable
+  private final ScannerEngineCache.Key engineCacheKey;
 
   public ScannerBootstrapper(Log log, MavenSession session, ScannerEngineBootstrapper bootstrapper, MavenProjectConverter mavenProjectConverter,
     PropertyDecryptor propertyDecryptor) {
+    this(log, session, bootstrapper, mavenProjectConverter, propertyDecryptor, new ScannerMetrics());
+  }
+
+  public ScannerBootstrapper(Log log, MavenSession session, ScannerEngineBootstrapper bootstrapper, MavenProjectConverter mavenProjectConverter,
+    PropertyDecryptor propertyDecryptor, ScannerMetrics metrics) {
+    this(log, session, bootstrapper, new AnalysisPropertiesCollector(log, session, mavenProjectConverter, propertyDecryptor, metrics), metrics, null);
+  }
+
+  /**
+   * @param engineCacheKey if not null, the engine is leased from the {@link ScannerEngineCache} instead of being bootstrapped for this build only
+   */
+  public ScannerBootstrapper(Log log, MavenSession session, ScannerEngineBootstrapper bootstrapper, AnalysisPropertiesCollector propertiesCollector,
+    ScannerMetrics metrics, @Nullable ScannerEngineCache.Key engineCacheKey) {
     this.log = log;
+    this.engineCacheKey = engineCacheKey;
+    this.metrics = metrics;
     this.session = session;
     this.bootstrapper = bootstrapper;
-    this.mavenProjectConverter = mavenProjectConverter;
-    this.propertyDecryptor = propertyDecryptor;
+    this.propertiesCollector = propertiesCollector;
   }
 
   public void execute() throws MojoExecutionException {
-    logEnvironmentInformation();
-    try (ScannerEngineBootstrapResult bootstrapResult = bootstrapper.bootstrap()) {
+    logEnvironmentInformation(log);
+    String workDir = null;
+    WorkDirRelocation relocation = WorkDirRelocation.forAnalysis(log, propertiesCollector);
+    long bootstrapStart = metrics.start();
+    ScannerEvents.BootstrapEvent bootstrapEvent = new ScannerEvents.BootstrapEvent();
+    bootstrapEvent.begin();
+    try (ScannerEngineBootstrapResult bootstrapResult = bootstrapEngine()) {
+      metrics.stop(ScannerMetrics.Phase.BOOTSTRAP, bootstrapStart);
+      bootstrapEvent.successful = bootstrapResult.isSuccessful();
+      bootstrapEvent.commit();
       if (!bootstrapResult.isSuccessful()) {
         throw new MojoFailureException("The scanner bootstrapping has failed! See the logs for more details.");
       }
@@ -77,105 +96,104 @@ public class ScannerBootstrapper {
           serverVersion = engineFacade.getServerVersion();
           checkSQVersion();
         }
-        if (!engineFacade.analyze(collectProperties())) {
+        String analysisRoots = getProperty(MavenScannerProperties.ANALYSIS_ROOTS);
+        if (analysisRoots != null && !analysisRoots.isBlank()) {
+          workDir = analyzeRoots(engineFacade, analysisRoots, relocation);
+          return;
+        }
+        Map<String, String> properties = collectProperties();
+        relocation.relocate(properties);
+        workDir = properties.get(ScannerProperties.WORK_DIR);
+        if (Boolean.parseBoolean(getProperty(MavenScannerProperties.ENGINE_CDS)) && runsEngineInSeparateJvm(engineFacade)) {
+          addEngineJavaOpts(properties, engineFacade.getBootstrapProperties(),
+            new EngineClassDataSharing(log).javaOpts(engineFacade.getBootstrapProperties(), serverVersion));
+        }
+        long analyzeStart = metrics.start();
+        ScannerEvents.AnalyzeEvent analyzeEvent = new ScannerEvents.AnalyzeEvent();
+        analyzeEvent.begin();
+        boolean successful = engineFacade.analyze(properties);
+        metrics.stop(ScannerMetrics.Phase.ANALYZE, analyzeStart);
+        analyzeEvent.propertyCount = properties.size();
+        analyzeEvent.successful = successful;
+        analyzeEvent.commit();
+        if (!successful) {
           throw new MojoFailureException("The scanner analysis has failed! See the logs for more details.");
         }
       }
     } catch (Exception e) {
       throw new MojoExecutionException(e.getMessage(), e);
+    } finally {
+      relocation.close();
+      metrics.report(log, relocation.originalOf(workDir));
     }
   }
 
-  @VisibleForTesting
-  Map<String, String> collectProperties()
-    throws MojoExecutionException {
-    List<MavenProject> sortedProjects = session.getProjects();
-    MavenProject topLevelProject = null;
-    for (MavenProject project : sortedProjects) {
-      if (project.isExecutionRoot()) {
-        topLevelProject = project;
-        break;
-      }
+  /**
+   * Analyzes each root of {@value MavenScannerProperties#ANALYSIS_ROOTS} as a separate project, with the same engine.
+   * The analyses run one at a time with SonarQube Server prior to 10.6, whose engine runs in the Maven JVM.
+   *
+   * @return the working directory of the first project
+   */
+  private String analyzeRoots(ScannerEngineFacade engineFacade, String analysisRoots, WorkDirRelocation relocation)
+    throws MojoExecutionException, MojoFailureException {
+    if (session.getUserProperties().containsKey(AnalysisProperties.PROJECT_KEY)) {
+      throw new MojoExecutionException("Parameter " + AnalysisProperties.PROJECT_KEY + " cannot be set on the command line with " + MavenScannerProperties.ANALYSIS_ROOTS
+        + ", all the roots would have the same project key");
     }
-
-    if (topLevelProject == null) {
-      throw new IllegalStateException("Maven session does not declare a top level project");
+    List<MavenProject> projects = session.getProjects();
+    Map<String, Map<String, String>> propertiesByProject = new LinkedHashMap<>();
+    Map<String, String> projectKeyByRoot = new LinkedHashMap<>();
+    for (MavenProject root : MultiProjectAnalysis.resolveRoots(analysisRoots, projects)) {
+      Map<String, String> properties = propertiesCollector.collectProperties(MultiProjectAnalysis.modulesOf(root, projects), root);
+      relocation.relocate(properties);
+      propertiesByProject.put(MultiProjectAnalysis.id(root), properties);
+      projectKeyByRoot.put(MultiProjectAnalysis.id(root), properties.get(AnalysisProperties.PROJECT_KEY));
     }
-
-    Properties userProperties = new Properties();
-    MavenUtils.putRelevant(session.getUserProperties(), userProperties);
-    Map<String, String> props = mavenProjectConverter.configure(sortedProjects, topLevelProject, userProperties);
-    props.putAll(propertyDecryptor.decryptProperties(props));
-    if (shouldCollectAllSources(userProperties)) {
-      log.info("Parameter " + MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES + " is enabled. The scanner will attempt to collect additional sources.");
-      if (mavenProjectConverter.isSourceDirsOverridden()) {
-        log.warn(notCollectingAdditionalSourcesBecauseOf(AnalysisProperties.PROJECT_SOURCE_DIRS));
-      } else if (mavenProjectConverter.isTestDirsOverridden()) {
-        log.warn(notCollectingAdditionalSourcesBecauseOf(AnalysisProperties.PROJECT_TEST_DIRS));
-      } else {
-        boolean shouldCollectJavaAndKotlinSources = isUserDefinedJavaBinaries(userProperties);
-        collectAllSources(props, shouldCollectJavaAndKotlinSources);
-      }
+    MultiProjectAnalysis.checkDistinctProjectKeys(projectKeyByRoot);
+    String parallelismProperty = getProperty(MavenScannerProperties.ANALYSIS_PARALLELISM);
+    int parallelism = parallelismProperty == null ? MultiProjectAnalysis.DEFAULT_PARALLELISM : MultiProjectAnalysis.parseParallelism(parallelismProperty);
+    if (!runsEngineInSeparateJvm(engineFacade)) {
+      parallelism = 1;
     }
-
-    return props;
+    long analyzeStart = metrics.start();
+    try {
+      new MultiProjectAnalysis(log, parallelism).analyze(engineFacade, propertiesByProject);
+    } finally {
+      metrics.stop(ScannerMetrics.Phase.ANALYZE, analyzeStart);
+    }
+    return propertiesByProject.values().iterator().next().get(ScannerProperties.WORK_DIR);
   }
 
-  private static boolean shouldCollectAllSources(Properties userProperties) {
-    return Boolean.parseBoolean(userProperties.getProperty(MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES));
+  private boolean runsEngineInSeparateJvm(ScannerEngineFacade engineFacade) {
+    return engineFacade.isSonarQubeCloud() || !isVersionPriorTo(SQ_VERSION_FORKED_ENGINE);
   }
 
-  private static String notCollectingAdditionalSourcesBecauseOf(String overriddenProperty) {
-    return "Parameter " + MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES + " is enabled but " +
-      "the scanner will not collect additional sources because " + overriddenProperty + " has been overridden.";
+  /**
+   * Appends options to the JVM options of the engine, which may come from the bootstrap or the analysis properties.
+   */
+  private static void addEngineJavaOpts(Map<String, String> properties, Map<String, String> bootstrapProperties, @Nullable String javaOpts) {
+    if (javaOpts == null) {
+      return;
+    }
+    String current = properties.getOrDefault(ScannerProperties.SCANNER_JAVA_OPTS, bootstrapProperties.get(ScannerProperties.SCANNER_JAVA_OPTS));
+    properties.put(ScannerProperties.SCANNER_JAVA_OPTS, current == null || current.isBlank() ? javaOpts : (current.trim() + " " + javaOpts));
   }
 
-  private static Set<Path> excludedReportFiles(Map<String, String> props) {
-    return props.keySet().stream()
-      .filter(key -> REPORT_PROPERTY_PATTERN.matcher(key).matches())
-      .map(props::get)
-      .map(MavenUtils::splitAsCsv)
-      .flatMap(List::stream)
-      .map(Paths::get)
-      .map(Path::toAbsolutePath)
-      .map(Path::normalize)
-      .collect(Collectors.toSet());
+  @CheckForNull
+  private String getProperty(String key) {
+    return propertiesCollector.getProperty(key);
   }
 
-  @VisibleForTesting
-  void collectAllSources(Map<String, String> props, boolean shouldCollectJavaAndKotlinSources) {
-    String projectBasedir = props.get(AnalysisProperties.PROJECT_BASEDIR);
-    // Exclude the files and folders covered by sonar.sources and sonar.tests (and sonar.exclusions) as computed by the MavenConverter
-    // Combine all the sonar.sources at the top-level and by module
-    List<String> coveredSources = props.entrySet().stream()
-      .filter(k -> k.getKey().endsWith(AnalysisProperties.PROJECT_SOURCE_DIRS) || k.getKey().endsWith(AnalysisProperties.PROJECT_TEST_DIRS))
-      .map(Map.Entry::getValue)
-      .filter(value -> !value.isEmpty())
-      .flatMap(value -> MavenUtils.splitAsCsv(value).stream())
-      .collect(Collectors.toList());
-    // Crawl the FS for files we want
-    List<String> collectedSources;
-    try {
-      Set<Path> existingSources = coveredSources.stream()
-        .map(Paths::get)
-        .collect(Collectors.toSet());
-      SourceCollector visitor = new SourceCollector(existingSources, mavenProjectConverter.getSkippedBasedDirs(), excludedReportFiles(props), shouldCollectJavaAndKotlinSources);
-      Files.walkFileTree(Paths.get(projectBasedir), visitor);
-      collectedSources = visitor.getCollectedSources().stream()
-        .map(file -> file.toAbsolutePath().toString())
-        .collect(Collectors.toList());
-      List<String> mergedSources = new ArrayList<>();
-      mergedSources.addAll(MavenUtils.splitAsCsv(props.get(AnalysisProperties.PROJECT_SOURCE_DIRS)));
-      mergedSources.addAll(collectedSources);
-      props.put(AnalysisProperties.PROJECT_SOURCE_DIRS, MavenUtils.joinAsCsv(mergedSources));
-    } catch (IOException e) {
-      log.warn(e);
+  private ScannerEngineBootstrapResult bootstrapEngine() {
+    if (engineCacheKey == null) {
+      return bootstrapper.bootstrap();
     }
+    return ScannerEngineCache.getInstance().acquire(engineCacheKey, bootstrapper::bootstrap, log);
   }
 
-  private static boolean isUserDefinedJavaBinaries(Properties userProperties) {
-    return userProperties.containsKey(MavenProjectConverter.JAVA_PROJECT_MAIN_LIBRARIES) &&
-      userProperties.containsKey(MavenProjectConverter.JAVA_PROJECT_MAIN_BINARY_DIRS);
+  @VisibleForTesting
+  Map<String, String> collectProperties() throws MojoExecutionException {
+    return propertiesCollector.collectProperties();
   }
 
   private void checkSQVersion() {
@@ -191,7 +209,7 @@ public class ScannerBootstrapper {
     return new ComparableVersion(serverVersion).compareTo(new ComparableVersion(version)) < 0;
   }
 
-  private void logEnvironmentInformation() {
+  static void logEnvironmentInformation(Log log) {
     String vmInformation = String.format(
       "Java %s %s (%s-bit)",
       SystemWrapper.getProperty("java.version"),
@@ -19,21 +19,34 @@
  */
 package org.sonarsource.scanner.maven.bootstrap;
 
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.rtinfo.RuntimeInformation;
 import org.apache.maven.settings.Proxy;
 import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
+import org.sonarsource.scanner.lib.ScannerProperties;
+import org.sonarsource.scanner.lib.internal.InternalProperties;
+import org.sonarsource.scanner.lib.internal.endpoint.ScannerEndpoint;
+import org.sonarsource.scanner.lib.internal.endpoint.ScannerEndpointResolver;
+import org.sonarsource.scanner.lib.internal.http.HttpConfig;
+import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+import org.sonarsource.scanner.lib.internal.util.System2;
 
 public class ScannerBootstrapperFactory {
+  static final String SCANNER_APP = "ScannerMaven";
+  private static final String VERBOSE = "sonar.verbose";
   private static final String UNKNOWN_PROXY_PROTOCOL_MESSAGE = "Setting proxy properties:" +
     " one or multiple protocols of the active proxy (id: %s) are not supported (protocols: %s).";
 
@@ -43,10 +56,21 @@ public class ScannerBootstrapperFactory {
   private final Map<String, String> envProps;
   private final Log log;
   private final MojoExecution mojoExecution;
+  @Nullable
+  private final MavenCompilerResolver compilerResolver;
+  private String scannerJavaExecutable;
+  private boolean scannerJreSelected;
+  private boolean proxySystemPropertiesSet;
 
   public ScannerBootstrapperFactory(Log log, RuntimeInformation runtimeInformation, MojoExecution mojoExecution, MavenSession session,
     Map<String, String> envProps, PropertyDecryptor propertyDecryptor) {
+    this(log, runtimeInformation, mojoExecution, session, envProps, propertyDecryptor, null);
+  }
+
+  public ScannerBootstrapperFactory(Log log, RuntimeInformation runtimeInformation, MojoExecution mojoExecution, MavenSession session,
+    Map<String, String> envProps, PropertyDecryptor propertyDecryptor, @Nullable MavenCompilerResolver compilerResolver) {
     this.log = log;
+    this.compilerResolver = compilerResolver;
     this.runtimeInformation = runtimeInformation;
     this.mojoExecution = mojoExecution;
     this.session = session;
@@ -56,26 +80,126 @@ public class ScannerBootstrapperFactory {
 
   public ScannerEngineBootstrapper create() {
     setProxySystemProperties();
-    ScannerEngineBootstrapper scanner = createScannerEngineBootstrapper("ScannerMaven", mojoExecution.getVersion() + "/" + runtimeInformation.getMavenVersion());
-    scanner.addBootstrapProperties(createGlobalProperties());
+    ScannerEngineBootstrapper scanner = createScannerEngineBootstrapper(SCANNER_APP, scannerVersion());
+    scanner.addBootstrapProperties(withScannerJre(createGlobalProperties()));
     if (log.isDebugEnabled()) {
-      scanner.setBootstrapProperty("sonar.verbose", "true");
+      scanner.setBootstrapProperty(VERBOSE, "true");
     }
 
     return scanner;
   }
 
+  /**
+   * Key of the engine bootstrapped by {@link #create()} in the {@link ScannerEngineCache}, or null if the reuse of engines is not enabled.
+   */
+  @CheckForNull
+  public ScannerEngineCache.Key createEngineCacheKey(Map<String, String> globalProperties) {
+    if (!Boolean.parseBoolean(globalProperties.get(MavenScannerProperties.ENGINE_REUSE))) {
+      return null;
+    }
+    Map<String, String> bootstrapProperties = withScannerJre(globalProperties);
+    if (log.isDebugEnabled()) {
+      bootstrapProperties.put(VERBOSE, "true");
+    }
+    return ScannerEngineCache.Key.of(bootstrapProperties, SCANNER_APP + "/" + scannerVersion());
+  }
+
+  /**
+   * Analysis to run in a child JVM, or null if the fork mode is not enabled.
+   */
+  @CheckForNull
+  public ForkedAnalysis createForkedAnalysis(Map<String, String> globalProperties) {
+    // The forked JVM receives the proxy of the Maven settings through the forwarded system properties
+    setProxySystemProperties();
+    if (!Boolean.parseBoolean(globalProperties.get(MavenScannerProperties.FORK))) {
+      return null;
+    }
+    Map<String, String> bootstrapProperties = withScannerJre(globalProperties);
+    if (log.isDebugEnabled()) {
+      bootstrapProperties.put(VERBOSE, "true");
+    }
+    return new ForkedAnalysis(log, bootstrapProperties, SCANNER_APP, scannerVersion(), globalProperties.get(MavenScannerProperties.FORK_JVM_ARGS));
+  }
+
+  /**
+   * Copy of the properties with the Java executable selected to run the scanner engine, if any. The selection is
+   * done once per factory.
+   */
+  private Map<String, String> withScannerJre(Map<String, String> globalProperties) {
+    if (!scannerJreSelected) {
+      scannerJavaExecutable = new ScannerJreSelector(log, () -> serverVersion(globalProperties), path -> callRestApi(globalProperties, path))
+        .select(globalProperties, this::compilerJdkHome);
+      scannerJreSelected = true;
+    }
+    Map<String, String> properties = new HashMap<>(globalProperties);
+    if (scannerJavaExecutable != null) {
+      properties.put(ScannerProperties.JAVA_EXECUTABLE_PATH, scannerJavaExecutable);
+    }
+    return properties;
+  }
+
+  private Optional<Path> compilerJdkHome() {
+    return compilerResolver == null ? Optional.empty() : compilerResolver.getReactorJdkHome();
+  }
+
+  String callRestApi(Map<String, String> globalProperties, String path) {
+    return createHttpClient(globalProperties).callRestApi(path);
+  }
+
+  /**
+   * @return the version of SonarQube Server, or null for SonarQube Cloud
+   */
+  @CheckForNull
+  String serverVersion(Map<String, String> globalProperties) {
+    if (ScannerEndpointResolver.resolveEndpoint(new HashMap<>(globalProperties)).isSonarQubeCloud()) {
+      return null;
+    }
+    return createHttpClient(globalProperties).callWebApi("/api/server/version").trim();
+  }
+
+  /**
+   * HTTP client of the scanner library, configured like the one the scanner engine is bootstrapped with: server
+   * endpoint, credentials, truststore and keystore, timeouts, and the {@code sonar.scanner.proxy*} properties or else
+   * the active proxy of the Maven settings.
+   */
+  public ScannerHttpClient createHttpClient(Map<String, String> globalProperties) {
+    setProxySystemProperties();
+    return createHttpClient(globalProperties, SCANNER_APP, scannerVersion());
+  }
+
+  static ScannerHttpClient createHttpClient(Map<String, String> globalProperties, String app, String version) {
+    Map<String, String> properties = new HashMap<>(globalProperties);
+    ScannerEndpoint endpoint = ScannerEndpointResolver.resolveEndpoint(properties);
+    properties.put(ScannerProperties.HOST_URL, endpoint.getWebEndpoint());
+    properties.put(ScannerProperties.API_BASE_URL, endpoint.getApiEndpoint());
+    properties.putIfAbsent(InternalProperties.SCANNER_APP, app);
+    properties.putIfAbsent(InternalProperties.SCANNER_APP_VERSION, version);
+    String userHome = properties.get(ScannerProperties.SONAR_USER_HOME);
+    Path sonarUserHome = userHome != null ? Path.of(userHome) : Path.of(System.getProperty("user.home"), ".sonar");
+    ScannerHttpClient httpClient = new ScannerHttpClient();
+    httpClient.init(new HttpConfig(properties, sonarUserHome, new System2()));
+    return httpClient;
+  }
+
+  private String scannerVersion() {
+    return mojoExecution.getVersion() + "/" + runtimeInformation.getMavenVersion();
+  }
+
   ScannerEngineBootstrapper createScannerEngineBootstrapper(String app, String version) {
     return ScannerEngineBootstrapper.create(app, version);
   }
 
   public Map<String, String> createGlobalProperties() {
+    ScannerEvents.GlobalPropertiesEvent event = new ScannerEvents.GlobalPropertiesEvent();
+    event.begin();
     Map<String, String> p = new HashMap<>();
     MavenUtils.putRelevant(session.getCurrentProject().getProperties(), p);
     p.putAll(envProps);
     MavenUtils.putRelevant(session.getSystemProperties(), p);
     MavenUtils.putRelevant(session.getUserProperties(), p);
     p.putAll(propertyDecryptor.decryptProperties(p));
+    event.propertyCount = p.size();
+    event.commit();
     return p;
   }
 
@@ -83,6 +207,10 @@ public class ScannerBootstrapperFactory {
    * Set proxy properties from Maven settings
    */
   public void setProxySystemProperties() {
+    if (proxySystemPropertiesSet) {
+      return;
+    }
+    proxySystemPropertiesSet = true;
     Proxy activeProxy = session.getSettings().getActiveProxy();
     if (activeProxy == null) {
       log.debug("Skipping proxy settings: No active proxy detected.");
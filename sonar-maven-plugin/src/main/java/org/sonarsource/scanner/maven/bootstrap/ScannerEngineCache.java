@@ -0,0 +1,395 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.logging.Log;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
+import org.sonarsource.scanner.lib.ScannerEngineFacade;
+import org.sonarsource.scanner.lib.ScannerProperties;
+import org.sonarsource.scanner.lib.internal.http.ScannerHttpClient;
+
+/**
+ * JVM-wide cache of bootstrapped scanner engines, for builds running in a long-lived JVM such as the Maven daemon.
+ * <p>
+ * An engine is reused only when bootstrapped with exactly the same properties, for at most {@link #MAX_LIFETIME_MINUTES}
+ * and if it was used in the last {@link #IDLE_TIMEOUT_MINUTES}. Before being reused against SonarQube Server, the server
+ * version and installed plugins are checked against the ones probed when the engine was bootstrapped, to catch an upgrade
+ * of the server or of its plugins. The engine is downloaded from the server it is shipped with, so its checksum only
+ * changes with the server version. An engine is leased to a single build at a time: closing the lease releases the engine
+ * instead of closing it.
+ * </p>
+ */
+public final class ScannerEngineCache {
+
+  static final long MAX_LIFETIME_MINUTES = 60;
+  static final long IDLE_TIMEOUT_MINUTES = 15;
+  private static final String PROBE_TIMEOUT_SECONDS = "2";
+
+  private static final ScannerEngineCache INSTANCE = new ScannerEngineCache(System::nanoTime, ScannerEngineCache::probeServer,
+    TimeUnit.MINUTES.toNanos(MAX_LIFETIME_MINUTES), TimeUnit.MINUTES.toNanos(IDLE_TIMEOUT_MINUTES));
+
+  private final Map<Key, Entry> entries = new HashMap<>();
+  private final LongSupplier nanoClock;
+  private final ServerProbe serverProbe;
+  private final long maxLifetimeNanos;
+  private final long idleTimeoutNanos;
+  @Nullable
+  private ScheduledExecutorService evictor;
+
+  @VisibleForTesting
+  ScannerEngineCache(LongSupplier nanoClock, ServerProbe serverProbe, long maxLifetimeNanos, long idleTimeoutNanos) {
+    this.nanoClock = nanoClock;
+    this.serverProbe = serverProbe;
+    this.maxLifetimeNanos = maxLifetimeNanos;
+    this.idleTimeoutNanos = idleTimeoutNanos;
+  }
+
+  public static ScannerEngineCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Leases the engine cached for the given key if it is still valid, or bootstraps a new one.
+   * Unsuccessful bootstraps are not cached, nor engines bootstrapped while the cached one is leased to another build.
+   */
+  public ScannerEngineBootstrapResult acquire(Key key, Supplier<ScannerEngineBootstrapResult> bootstrap, Log log) {
+    Entry entry = lease(key);
+    if (entry != null) {
+      if (isServerUnchanged(entry, log)) {
+        log.info("Reusing the scanner engine bootstrapped " + TimeUnit.NANOSECONDS.toSeconds(nanoClock.getAsLong() - entry.createdAt) + "s ago");
+        return new Lease(entry);
+      }
+      evict(key, entry);
+    }
+    ScannerEngineBootstrapResult result = bootstrap.get();
+    if (!result.isSuccessful()) {
+      return result;
+    }
+    ScannerEngineFacade facade = result.getEngineFacade();
+    String serverState = facade.isSonarQubeCloud() ? null : probeServer(facade, log);
+    Entry created = new Entry(result, serverState, nanoClock.getAsLong());
+    synchronized (this) {
+      if (entries.containsKey(key)) {
+        return result;
+      }
+      entries.put(key, created);
+      startEvictor();
+    }
+    return new Lease(created);
+  }
+
+  @CheckForNull
+  private synchronized Entry lease(Key key) {
+    Entry entry = entries.get(key);
+    if (entry == null || entry.leased) {
+      return null;
+    }
+    if (isExpired(entry, nanoClock.getAsLong())) {
+      entries.remove(key);
+      closeQuietly(entry.result);
+      return null;
+    }
+    entry.leased = true;
+    return entry;
+  }
+
+  private boolean isServerUnchanged(Entry entry, Log log) {
+    ScannerEngineFacade facade = entry.result.getEngineFacade();
+    if (facade.isSonarQubeCloud()) {
+      return true;
+    }
+    String serverState = probeServer(facade, log);
+    if (serverState == null) {
+      return false;
+    }
+    if (serverState.equals(entry.serverState)) {
+      return true;
+    }
+    log.info("The cached scanner engine is outdated, bootstrapping a new one");
+    return false;
+  }
+
+  @CheckForNull
+  private String probeServer(ScannerEngineFacade facade, Log log) {
+    try {
+      return serverProbe.serverState(facade.getBootstrapProperties());
+    } catch (RuntimeException e) {
+      log.debug("Unable to probe the server of the scanner engine, it is not reused: " + e.getMessage());
+      return null;
+    }
+  }
+
+  private synchronized void release(Entry entry) {
+    entry.leased = false;
+    entry.lastUsed = nanoClock.getAsLong();
+    if (!entries.containsValue(entry)) {
+      closeQuietly(entry.result);
+    }
+  }
+
+  private synchronized void evict(Key key, Entry entry) {
+    entries.remove(key, entry);
+    closeQuietly(entry.result);
+  }
+
+  @VisibleForTesting
+  synchronized void evictExpired() {
+    long now = nanoClock.getAsLong();
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (!entry.leased && isExpired(entry, now)) {
+        iterator.remove();
+        closeQuietly(entry.result);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  synchronized void clear() {
+    List<Entry> all = new ArrayList<>(entries.values());
+    entries.clear();
+    all.stream().filter(entry -> !entry.leased).forEach(entry -> closeQuietly(entry.result));
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return entries.size();
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return now - entry.createdAt >= maxLifetimeNanos || now - entry.lastUsed >= idleTimeoutNanos;
+  }
+
+  private void startEvictor() {
+    if (evictor != null) {
+      return;
+    }
+    evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "sonar-scanner-engine-evictor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(idleTimeoutNanos) / 2);
+    evictor.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.SECONDS);
+    Runtime.getRuntime().addShutdownHook(new Thread(this::clear, "sonar-scanner-engine-cache-shutdown"));
+  }
+
+  private static void closeQuietly(AutoCloseable closeable) {
+    try {
+      closeable.close();
+    } catch (Exception e) {
+      // The engine is discarded anyway
+    }
+  }
+
+  /**
+   * Probes the server with the HTTP client of the scanner library, configured from the bootstrap properties of the engine
+   * like the one the engine was bootstrapped with, but with short timeouts.
+   */
+  static String probeServer(Map<String, String> bootstrapProperties) {
+    if (bootstrapProperties.get(ScannerProperties.HOST_URL) == null) {
+      throw new IllegalStateException("No server URL");
+    }
+    Map<String, String> properties = new HashMap<>(bootstrapProperties);
+    properties.put(ScannerProperties.SONAR_SCANNER_CONNECT_TIMEOUT, PROBE_TIMEOUT_SECONDS);
+    properties.put(ScannerProperties.SONAR_SCANNER_SOCKET_TIMEOUT, PROBE_TIMEOUT_SECONDS);
+    properties.put(ScannerProperties.SONAR_SCANNER_RESPONSE_TIMEOUT, PROBE_TIMEOUT_SECONDS);
+    ScannerHttpClient httpClient = ScannerBootstrapperFactory.createHttpClient(properties, ScannerBootstrapperFactory.SCANNER_APP, "");
+    String serverVersion = httpClient.callWebApi("/api/server/version").trim();
+    String installedPlugins = httpClient.callWebApi("/api/plugins/installed");
+    return serverVersion + "/" + Key.sha256(Map.of("plugins", installedPlugins));
+  }
+
+  @FunctionalInterface
+  interface ServerProbe {
+    /**
+     * @return the version of the server and a digest of its installed plugins
+     * @throws RuntimeException if the server can't be probed
+     */
+    String serverState(Map<String, String> bootstrapProperties);
+  }
+
+  /**
+   * Identifies the engines bootstrapped with the same server, credentials, bootstrap properties and scanner version.
+   * Credentials are only kept as a digest.
+   */
+  public static final class Key {
+    private static final List<String> CREDENTIALS = List.of(ScannerProperties.SONAR_TOKEN, ScannerProperties.SONAR_LOGIN, ScannerProperties.SONAR_PASSWORD);
+
+    private final String hostUrl;
+    private final String credentialsDigest;
+    private final String propertiesDigest;
+    private final String scannerVersion;
+
+    private Key(String hostUrl, String credentialsDigest, String propertiesDigest, String scannerVersion) {
+      this.hostUrl = hostUrl;
+      this.credentialsDigest = credentialsDigest;
+      this.propertiesDigest = propertiesDigest;
+      this.scannerVersion = scannerVersion;
+    }
+
+    public static Key of(Map<String, String> bootstrapProperties, String scannerVersion) {
+      Map<String, String> credentials = new TreeMap<>();
+      Map<String, String> others = new TreeMap<>();
+      bootstrapProperties.forEach((key, value) -> (CREDENTIALS.contains(key) ? credentials : others).put(key, value));
+      return new Key(Objects.toString(bootstrapProperties.get(ScannerProperties.HOST_URL), ""), sha256(credentials), sha256(others), scannerVersion);
+    }
+
+    static String sha256(Map<String, String> sortedProperties) {
+      try {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        sortedProperties.forEach((key, value) -> {
+          digest.update(key.getBytes(StandardCharsets.UTF_8));
+          digest.update((byte) 0);
+          digest.update(Objects.toString(value, "").getBytes(StandardCharsets.UTF_8));
+          digest.update((byte) 0);
+        });
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+          hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is not available", e);
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key other = (Key) o;
+      return hostUrl.equals(other.hostUrl) && credentialsDigest.equals(other.credentialsDigest) && propertiesDigest.equals(other.propertiesDigest)
+        && scannerVersion.equals(other.scannerVersion);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(hostUrl, credentialsDigest, propertiesDigest, scannerVersion);
+    }
+
+    @Override
+    public String toString() {
+      return hostUrl + " (" + scannerVersion + ")";
+    }
+  }
+
+  private static final class Entry {
+    private final ScannerEngineBootstrapResult result;
+    @Nullable
+    private final String serverState;
+    private final long createdAt;
+    private long lastUsed;
+    private boolean leased = true;
+
+    private Entry(ScannerEngineBootstrapResult result, @Nullable String serverState, long createdAt) {
+      this.result = result;
+      this.serverState = serverState;
+      this.createdAt = createdAt;
+      this.lastUsed = createdAt;
+    }
+  }
+
+  /**
+   * Result handed to a build: closing it, or its engine facade, releases the engine back to the cache.
+   */
+  private final class Lease implements ScannerEngineBootstrapResult {
+    private final Entry entry;
+    private boolean closed = false;
+
+    private Lease(Entry entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public boolean isSuccessful() {
+      return true;
+    }
+
+    @Override
+    public ScannerEngineFacade getEngineFacade() {
+      return new LeasedFacade(entry.result.getEngineFacade());
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        release(entry);
+      }
+    }
+  }
+
+  private static final class LeasedFacade implements ScannerEngineFacade {
+    private final ScannerEngineFacade delegate;
+
+    private LeasedFacade(ScannerEngineFacade delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Map<String, String> getBootstrapProperties() {
+      return delegate.getBootstrapProperties();
+    }
+
+    @Override
+    public String getServerVersion() {
+      return delegate.getServerVersion();
+    }
+
+    @Override
+    public boolean isSonarQubeCloud() {
+      return delegate.isSonarQubeCloud();
+    }
+
+    @Override
+    public boolean analyze(Map<String, String> analysisProperties) {
+      return delegate.analyze(analysisProperties);
+    }
+
+    @Override
+    public void close() {
+      // The engine stays open in the cache, it is released with the lease
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events of the scanner phases, to correlate them with GC, I/O or lock events of the same recording.
+ * <p>
+ * When no recording is running, {@link Event#begin()} and {@link Event#commit()} are no-ops, so callers only have to
+ * guard the computation of the event fields with {@link Event#shouldCommit()}.
+ * </p>
+ */
+final class ScannerEvents {
+
+  private static final String CATEGORY_ROOT = "SonarQube";
+  private static final String CATEGORY = "Scanner for Maven";
+  private static final String NAME_PREFIX = "org.sonarsource.scanner.maven.";
+
+  private ScannerEvents() {
+    /* This class only contains event types and is not meant to be instantiated */
+  }
+
+  @Name(NAME_PREFIX + "Bootstrap")
+  @Label("Scanner Engine Bootstrap")
+  @Description("Download and start of the scanner engine")
+  @Category({CATEGORY_ROOT, CATEGORY})
+  @StackTrace(false)
+  static final class BootstrapEvent extends Event {
+    @Label("Successful")
+    boolean successful;
+  }
+
+  @Name(NAME_PREFIX + "GlobalProperties")
+  @Label("Global Properties Resolution")
+  @Category({CATEGORY_ROOT, CATEGORY})
+  @StackTrace(false)
+  static final class GlobalPropertiesEvent extends Event {
+    @Label("Property Count")
+    int propertyCount;
+  }
+
+  @Name(NAME_PREFIX + "ModuleConversion")
+  @Label("Module Conversion")
+  @Description("Conversion of a Maven module to analysis properties")
+  @Category({CATEGORY_ROOT, CATEGORY})
+  @StackTrace(false)
+  static final class ModuleConversionEvent extends Event {
+    @Label("Module")
+    String moduleId;
+    @Label("Library Count")
+    long libraryCount;
+  }
+
+  @Name(NAME_PREFIX + "CompilerPlan")
+  @Label("Compiler Plan Calculation")
+  @Description("Reading of the maven-compiler-plugin configuration of a module, from its model or its execution plan")
+  @Category({CATEGORY_ROOT, CATEGORY})
+  @StackTrace(false)
+  static final class CompilerPlanEvent extends Event {
+    @Label("Module")
+    String moduleId;
+    @Label("Compiler Executions")
+    int compilerExecutions;
+    @Label("Read From Model")
+    boolean fromModel;
+  }
+
+  @Name(NAME_PREFIX + "Decryption")
+  @Label("Property Decryption")
+  @Category({CATEGORY_ROOT, CATEGORY})
+  @StackTrace(false)
+  static final class DecryptionEvent extends Event {
+    @Label("Property Count")
+    int propertyCount;
+  }
+
+  @Name(NAME_PREFIX + "ScanAll")
+  @Label("ScanAll Crawl")
+  @Description("Crawl of the project directory to collect additional sources")
+  @Category({CATEGORY_ROOT, CATEGORY})
+  @StackTrace(false)
+  static final class ScanAllEvent extends Event {
+    @Label("Files Visited")
+    long filesVisited;
+    @Label("Directories Visited")
+    long directoriesVisited;
+    @Label("Files Collected")
+    int filesCollected;
+  }
+
+  @Name(NAME_PREFIX + "Analyze")
+  @Label("Analysis")
+  @Category({CATEGORY_ROOT, CATEGORY})
+  @StackTrace(false)
+  static final class AnalyzeEvent extends Event {
+    @Label("Property Count")
+    int propertyCount;
+    @Label("Successful")
+    boolean successful;
+  }
+}
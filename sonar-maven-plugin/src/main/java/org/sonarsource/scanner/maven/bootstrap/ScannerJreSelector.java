@@ -0,0 +1,270 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.SystemUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Selects a Java runtime already installed on the machine to run the scanner engine, so that the scanner library does
+ * not download and unpack one before the analysis. The runtime of Maven is preferred, then the JDK the modules are
+ * compiled with. Disabled by setting {@value MavenScannerProperties#REUSE_MAVEN_JRE} to {@code false}.
+ * <p>
+ * The Java version the engine requires is the one of the JRE the server provisions, read from the same metadata as the
+ * scanner library. When it is unknown, nothing is selected and the scanner library provisions the JRE as usual. Servers
+ * older than {@value #JRE_PROVISIONING_MAJOR}.{@value #JRE_PROVISIONING_MINOR} run the engine in the Maven JVM, so
+ * their metadata isn't requested.
+ * </p>
+ */
+class ScannerJreSelector {
+
+  private static final String JRE_METADATA_PATH = "/analysis/jres?os=%s&arch=%s";
+  static final int JRE_PROVISIONING_MAJOR = 10;
+  static final int JRE_PROVISIONING_MINOR = 6;
+  private static final List<Path> OS_RELEASE_FILES = List.of(Path.of("/etc/os-release"), Path.of("/usr/lib/os-release"));
+  /**
+   * First version number of an archive or directory name, like 17.0.13 in OpenJDK17U-jre_x64_linux_hotspot_17.0.13_11.tar.gz
+   */
+  private static final Pattern VERSION_PATTERN = Pattern.compile("(?<![\\d.])(\\d+)\\.\\d+\\.\\d+");
+
+  private final Log log;
+  private final Supplier<String> serverVersion;
+  private final Function<String, String> restApi;
+  private final Path runtimeJavaHome;
+  private final int runtimeJavaVersion;
+
+  /**
+   * @param serverVersion version of SonarQube Server, or null for SonarQube Cloud
+   * @param restApi       response to a GET on a path of the REST API of the server
+   */
+  ScannerJreSelector(Log log, Supplier<String> serverVersion, Function<String, String> restApi) {
+    this(log, serverVersion, restApi, Path.of(System.getProperty("java.home")), Runtime.version().feature());
+  }
+
+  @VisibleForTesting
+  ScannerJreSelector(Log log, Supplier<String> serverVersion, Function<String, String> restApi, Path runtimeJavaHome, int runtimeJavaVersion) {
+    this.log = log;
+    this.serverVersion = serverVersion;
+    this.restApi = restApi;
+    this.runtimeJavaHome = runtimeJavaHome;
+    this.runtimeJavaVersion = runtimeJavaVersion;
+  }
+
+  /**
+   * @param compilerJdkHome JDK the modules are compiled with, only looked up when the runtime of Maven is too old
+   * @return the Java executable to use as {@value ScannerProperties#JAVA_EXECUTABLE_PATH}, or null to let the scanner library decide
+   */
+  @CheckForNull
+  String select(Map<String, String> properties, Supplier<Optional<Path>> compilerJdkHome) {
+    if ("false".equalsIgnoreCase(properties.get(MavenScannerProperties.REUSE_MAVEN_JRE))) {
+      log.debug("Reuse of the Maven JRE to run the scanner engine is disabled");
+      return null;
+    }
+    if (properties.containsKey(ScannerProperties.JAVA_EXECUTABLE_PATH) || Boolean.parseBoolean(properties.get(ScannerProperties.SKIP_JRE_PROVISIONING))) {
+      log.debug("The JRE of the scanner engine is configured, the Maven JRE is not reused");
+      return null;
+    }
+    if (!provisionsJre()) {
+      return null;
+    }
+    OptionalInt requiredJavaVersion = requiredJavaVersion(properties);
+    if (requiredJavaVersion.isEmpty()) {
+      log.debug("The Java version required by the scanner engine is unknown, the Maven JRE is not reused");
+      return null;
+    }
+    int minimumJavaVersion = requiredJavaVersion.getAsInt();
+    Path runtimeJava = javaExecutable(runtimeJavaHome);
+    if (runtimeJavaVersion >= minimumJavaVersion && Files.isRegularFile(runtimeJava)) {
+      log.info(String.format("Using the JRE of Maven (Java %d) to run the scanner engine: %s", runtimeJavaVersion, runtimeJava));
+      return runtimeJava.toString();
+    }
+    Optional<Path> compilerJdk = compilerJdkHome.get();
+    if (compilerJdk.isPresent()) {
+      OptionalInt compilerJavaVersion = javaVersion(compilerJdk.get());
+      Path compilerJava = javaExecutable(compilerJdk.get());
+      if (compilerJavaVersion.isPresent() && compilerJavaVersion.getAsInt() >= minimumJavaVersion && Files.isRegularFile(compilerJava)) {
+        log.info(String.format("Using the JDK of the maven-compiler-plugin (Java %d) to run the scanner engine: %s", compilerJavaVersion.getAsInt(), compilerJava));
+        return compilerJava.toString();
+      }
+    }
+    log.info(String.format("The JRE of Maven (Java %d) cannot run the scanner engine, which requires Java %d", runtimeJavaVersion, minimumJavaVersion));
+    return null;
+  }
+
+  private boolean provisionsJre() {
+    String version;
+    try {
+      version = serverVersion.get();
+    } catch (RuntimeException e) {
+      log.debug("Failed to read the version of the server: " + e.getMessage());
+      return false;
+    }
+    if (version != null && isPriorToJreProvisioning(version)) {
+      log.debug("SonarQube Server " + version + " does not provision the JRE of the scanner engine, the Maven JRE is not reused");
+      return false;
+    }
+    return true;
+  }
+
+  static boolean isPriorToJreProvisioning(String serverVersion) {
+    String[] parts = serverVersion.split("\\.");
+    try {
+      int major = Integer.parseInt(parts[0]);
+      int minor = parts.length > 1 ? Integer.parseInt(parts[1].replaceAll("\\D.*", "")) : 0;
+      return major < JRE_PROVISIONING_MAJOR || (major == JRE_PROVISIONING_MAJOR && minor < JRE_PROVISIONING_MINOR);
+    } catch (NumberFormatException e) {
+      return true;
+    }
+  }
+
+  /**
+   * Feature version of the JRE the server provisions for the operating system and architecture of the analysis. Once a
+   * Java executable is selected, the scanner library no longer requests this metadata, so only the version of the
+   * server is an additional call, which the scanner library makes again when bootstrapping.
+   */
+  private OptionalInt requiredJavaVersion(Map<String, String> properties) {
+    try {
+      String os = properties.get(ScannerProperties.SCANNER_OS);
+      if (os == null) {
+        os = operatingSystem(System.getProperty("os.name"), OS_RELEASE_FILES);
+      }
+      String arch = properties.get(ScannerProperties.SCANNER_ARCH);
+      if (arch == null) {
+        arch = architecture(System.getProperty("os.arch"));
+      }
+      for (JsonElement jre : JsonParser.parseString(restApi.apply(String.format(JRE_METADATA_PATH, os, arch))).getAsJsonArray()) {
+        OptionalInt version = jreVersion(jre.getAsJsonObject());
+        if (version.isPresent()) {
+          return version;
+        }
+      }
+      log.debug("No JRE is provisioned by the server for " + os + "/" + arch);
+    } catch (RuntimeException e) {
+      // Server without JRE provisioning, unreachable server, or unexpected metadata
+      log.debug("Failed to read the JRE metadata of the server: " + e.getMessage());
+    }
+    return OptionalInt.empty();
+  }
+
+  /**
+   * Same values as the operating system the scanner library requests the JRE for.
+   */
+  static String operatingSystem(@Nullable String osName, List<Path> osReleaseFiles) {
+    String name = osName == null ? "" : osName.toLowerCase(Locale.ENGLISH);
+    if (name.contains("mac") || name.contains("darwin")) {
+      return "macos";
+    } else if (name.contains("win")) {
+      return "windows";
+    } else if (name.contains("linux")) {
+      return isAlpine(osReleaseFiles) ? "alpine" : "linux";
+    } else if (name.contains("z/os")) {
+      return "zos";
+    }
+    throw new IllegalStateException("Unknown operating system: " + osName);
+  }
+
+  private static boolean isAlpine(List<Path> osReleaseFiles) {
+    for (Path osRelease : osReleaseFiles) {
+      try {
+        return Files.readAllLines(osRelease).stream().anyMatch(line -> line.equals("ID=alpine"));
+      } catch (IOException e) {
+        // Next file
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Architecture of the JVM, with the names the server provisions the JRE for.
+   */
+  static String architecture(String osArch) {
+    switch (osArch.toLowerCase(Locale.ENGLISH)) {
+      case "amd64":
+      case "x86_64":
+        return "x64";
+      case "arm64":
+        return "aarch64";
+      default:
+        return osArch;
+    }
+  }
+
+  private static OptionalInt jreVersion(JsonObject jre) {
+    for (String name : new String[] {"filename", "javaPath"}) {
+      JsonElement value = jre.get(name);
+      if (value != null && value.isJsonPrimitive()) {
+        Matcher matcher = VERSION_PATTERN.matcher(value.getAsString());
+        if (matcher.find()) {
+          return OptionalInt.of(Integer.parseInt(matcher.group(1)));
+        }
+      }
+    }
+    return OptionalInt.empty();
+  }
+
+  private static Path javaExecutable(Path javaHome) {
+    return javaHome.resolve("bin").resolve(SystemUtils.IS_OS_WINDOWS ? "java.exe" : "java");
+  }
+
+  /**
+   * Feature version of a Java installation, read from the {@code JAVA_VERSION} entry of its {@code release} file.
+   */
+  static OptionalInt javaVersion(Path javaHome) {
+    Path releaseFile = javaHome.resolve("release");
+    if (!Files.isRegularFile(releaseFile)) {
+      return OptionalInt.empty();
+    }
+    Properties release = new Properties();
+    try (InputStream input = Files.newInputStream(releaseFile)) {
+      release.load(input);
+    } catch (IOException e) {
+      return OptionalInt.empty();
+    }
+    String version = release.getProperty("JAVA_VERSION", "").replace("\"", "");
+    // 1.8.0_402 for Java 8, 17.0.10 since Java 9
+    String[] parts = version.startsWith("1.") ? version.substring(2).split("[._]") : version.split("[.+-]");
+    try {
+      return OptionalInt.of(Integer.parseInt(parts[0]));
+    } catch (NumberFormatException e) {
+      return OptionalInt.empty();
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Timings and counters of an execution of the sonar mojo.
+ * <p>
+ * Collecting them only costs a few clock reads and increments, so it is always on. The JSON report, written to the
+ * working directory of the root project, and the summary of the slowest modules are only produced when
+ * {@code sonar.maven.metrics} is enabled.
+ * </p>
+ */
+public class ScannerMetrics {
+
+  static final String REPORT_FILE_NAME = "scanner-maven-metrics.json";
+  static final int SLOWEST_MODULES_LOGGED = 10;
+
+  /**
+   * Phases can be nested: module conversion includes the compiler plan calculation and the classpath probing of the module.
+   */
+  public enum Phase {
+    ENV_LOADING,
+    GLOBAL_PROPERTIES,
+    BOOTSTRAP,
+    MODULE_CONVERSION,
+    COMPILER_PLAN,
+    CLASSPATH_PROBING,
+    DECRYPTION,
+    SCAN_ALL,
+    ANALYZE;
+
+    final String jsonKey = toJsonKey(name());
+  }
+
+  public enum Counter {
+    MODULES,
+    LIBRARIES,
+    STAT_CALLS,
+    FILES_CRAWLED,
+    DIRECTORIES_CRAWLED,
+    PROPERTIES,
+    /**
+     * Peak usage of the old generation of the Maven JVM during the collection of the analysis properties. The young
+     * generation is left out, as its usage only depends on when the next collection happens.
+     */
+    PEAK_HEAP_BYTES;
+
+    final String jsonKey = toJsonKey(name());
+  }
+
+  private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+  private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+  private final List<ModuleTiming> moduleTimings = new ArrayList<>();
+  private volatile boolean reportEnabled = false;
+
+  /**
+   * Enables the report if requested by the given properties.
+   */
+  public void configure(Map<String, String> properties) {
+    reportEnabled = Boolean.parseBoolean(properties.get(MavenScannerProperties.METRICS));
+  }
+
+  /**
+   * Starts measuring the peak heap usage, when the report is enabled: called before collecting the analysis properties,
+   * so that the scanner engine bootstrapped before is left out.
+   */
+  void startHeapSampling() {
+    if (reportEnabled) {
+      oldGenerationPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+  }
+
+  /**
+   * Records the peak heap usage since {@link #startHeapSampling()}, when the report is enabled: called once the analysis
+   * properties are collected, before the analysis runs.
+   */
+  void sampleHeap() {
+    if (reportEnabled) {
+      set(Counter.PEAK_HEAP_BYTES, oldGenerationPools().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum());
+    }
+  }
+
+  /**
+   * Heap pools of the old generation, or the single heap pool of the collectors without generations.
+   */
+  private static Stream<MemoryPoolMXBean> oldGenerationPools() {
+    return ManagementFactory.getMemoryPoolMXBeans().stream()
+      .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid())
+      .filter(pool -> !pool.getName().contains("Eden") && !pool.getName().contains("Survivor") && !pool.getName().contains("Young"));
+  }
+
+  boolean isReportEnabled() {
+    return reportEnabled;
+  }
+
+  public long start() {
+    return System.nanoTime();
+  }
+
+  public void stop(Phase phase, long start) {
+    phaseNanos.addAndGet(phase.ordinal(), System.nanoTime() - start);
+  }
+
+  void stopModule(String moduleId, long start) {
+    long nanos = System.nanoTime() - start;
+    phaseNanos.addAndGet(Phase.MODULE_CONVERSION.ordinal(), nanos);
+    counters.incrementAndGet(Counter.MODULES.ordinal());
+    synchronized (moduleTimings) {
+      moduleTimings.add(new ModuleTiming(moduleId, nanos));
+    }
+  }
+
+  void increment(Counter counter) {
+    counters.incrementAndGet(counter.ordinal());
+  }
+
+  void add(Counter counter, long value) {
+    counters.addAndGet(counter.ordinal(), value);
+  }
+
+  void set(Counter counter, long value) {
+    counters.set(counter.ordinal(), value);
+  }
+
+  long nanos(Phase phase) {
+    return phaseNanos.get(phase.ordinal());
+  }
+
+  long count(Counter counter) {
+    return counters.get(counter.ordinal());
+  }
+
+  List<ModuleTiming> slowestModules(int limit) {
+    synchronized (moduleTimings) {
+      return moduleTimings.stream()
+        .sorted(Comparator.comparingLong(ModuleTiming::getNanos).reversed())
+        .limit(limit)
+        .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Writes the JSON report to the given working directory and logs the slowest modules, if the report is enabled.
+   */
+  void report(Log log, @Nullable String workDir) {
+    if (!reportEnabled) {
+      return;
+    }
+    List<ModuleTiming> slowest = slowestModules(SLOWEST_MODULES_LOGGED);
+    if (!slowest.isEmpty()) {
+      log.info("Slowest modules to convert:");
+      slowest.forEach(module -> log.info(String.format(Locale.ROOT, "  %s: %d ms", module.getModuleId(), module.getNanos() / 1_000_000)));
+    }
+    if (workDir == null) {
+      log.warn("Unable to write the metrics report: no working directory");
+      return;
+    }
+    Path reportFile = Paths.get(workDir, REPORT_FILE_NAME);
+    try {
+      Files.createDirectories(reportFile.getParent());
+      Files.write(reportFile, toJson().getBytes(StandardCharsets.UTF_8));
+      log.info("Metrics report written to " + reportFile);
+    } catch (IOException e) {
+      log.warn("Unable to write the metrics report to " + reportFile, e);
+    }
+  }
+
+  String toJson() {
+    StringBuilder json = new StringBuilder("{\n  \"phases\": {");
+    Phase[] phases = Phase.values();
+    for (int i = 0; i < phases.length; i++) {
+      json.append(i == 0 ? "\n" : ",\n").append("    \"").append(phases[i].jsonKey).append("Ms\": ").append(millis(nanos(phases[i])));
+    }
+    json.append("\n  },\n  \"counters\": {");
+    Counter[] allCounters = Counter.values();
+    for (int i = 0; i < allCounters.length; i++) {
+      json.append(i == 0 ? "\n" : ",\n").append("    \"").append(allCounters[i].jsonKey).append("\": ").append(count(allCounters[i]));
+    }
+    json.append("\n  },\n  \"modules\": [");
+    List<ModuleTiming> modules = slowestModules(Integer.MAX_VALUE);
+    for (int i = 0; i < modules.size(); i++) {
+      json.append(i == 0 ? "\n" : ",\n")
+        .append("    {\"id\": \"").append(escape(modules.get(i).getModuleId())).append("\", \"conversionMs\": ").append(millis(modules.get(i).getNanos())).append('}');
+    }
+    return json.append(modules.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000d);
+  }
+
+  private static String escape(String value) {
+    StringBuilder escaped = new StringBuilder(value.length());
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < 0x20) {
+        escaped.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  private static String toJsonKey(String constantName) {
+    StringBuilder key = new StringBuilder();
+    for (String word : constantName.toLowerCase(Locale.ROOT).split("_")) {
+      key.append(key.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+    }
+    return key.toString();
+  }
+
+  static final class ModuleTiming {
+    private final String moduleId;
+    private final long nanos;
+
+    ModuleTiming(String moduleId, long nanos) {
+      this.moduleId = moduleId;
+      this.nanos = nanos;
+    }
+
+    String getModuleId() {
+      return moduleId;
+    }
+
+    long getNanos() {
+      return nanos;
+    }
+  }
+}
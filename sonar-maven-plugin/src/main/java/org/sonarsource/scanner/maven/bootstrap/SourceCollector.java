@@ -22,6 +22,7 @@ package org.sonarsource.scanner.maven.bootstrap;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
@@ -30,10 +31,9 @@ import java.util.Locale;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class SourceCollector implements FileVisitor<Path> {
-  private static final Set<String> EXCLUDED_DIRECTORIES = new HashSet<>(
+  static final Set<String> EXCLUDED_DIRECTORIES = new HashSet<>(
     Arrays.asList(
       "bin",
       "build",
@@ -81,26 +81,52 @@ public class SourceCollector implements FileVisitor<Path> {
     ".kt")).map(ext -> ext.toLowerCase(Locale.ROOT))
     .collect(Collectors.toSet());
 
-  private final Set<Path> existingSources;
-  private final Set<Path> directoriesToIgnore;
-  private final Set<Path> excludedFiles;
+  private final PathTrie existingSources;
+  private final PathTrie directoriesToIgnore;
+  private final PathTrie excludedFiles;
   private final Set<String> excludedExtensions;
+  private final ScannerMetrics metrics;
+  private long filesVisited = 0;
+  private long directoriesVisited = 0;
 
   public Set<Path> getCollectedSources() {
     return collectedSources;
   }
 
-  private final Set<Path> collectedSources = new HashSet<>();
+  private final Set<Path> collectedSources = new PathTrie();
 
   public SourceCollector(Set<Path> existingSources, Set<Path> directoriesToIgnore, Set<Path> excludedFiles, boolean shouldCollectJavaAndKotlinSources) {
-    this.existingSources = existingSources;
-    this.directoriesToIgnore = directoriesToIgnore;
-    this.excludedFiles = excludedFiles;
+    this(existingSources, directoriesToIgnore, excludedFiles, shouldCollectJavaAndKotlinSources, new ScannerMetrics());
+  }
+
+  public SourceCollector(Set<Path> existingSources, Set<Path> directoriesToIgnore, Set<Path> excludedFiles, boolean shouldCollectJavaAndKotlinSources,
+    ScannerMetrics metrics) {
+    this.metrics = metrics;
+    this.existingSources = PathTrie.of(existingSources);
+    this.directoriesToIgnore = PathTrie.of(directoriesToIgnore);
+    this.excludedFiles = PathTrie.of(excludedFiles);
     this.excludedExtensions = shouldCollectJavaAndKotlinSources ? EXCLUDED_EXTENSIONS_WITH_JAVA_AND_KOTLIN : EXCLUDED_EXTENSIONS_WITHOUT_JAVA_AND_KOTLIN;
   }
 
+  /**
+   * Walks the file tree from the given directory, see {@link #getCollectedSources()} for the result.
+   */
+  public void collect(Path basedir) throws IOException {
+    ScannerEvents.ScanAllEvent event = new ScannerEvents.ScanAllEvent();
+    event.begin();
+    Files.walkFileTree(basedir, this);
+    if (event.shouldCommit()) {
+      event.filesVisited = filesVisited;
+      event.directoriesVisited = directoriesVisited;
+      event.filesCollected = collectedSources.size();
+      event.commit();
+    }
+  }
+
   @Override
   public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes basicFileAttributes) {
+    directoriesVisited++;
+    metrics.increment(ScannerMetrics.Counter.DIRECTORIES_CRAWLED);
     if (
       isHidden(path) ||
       isExcludedDirectory(path) ||
@@ -112,22 +138,32 @@ public class SourceCollector implements FileVisitor<Path> {
   }
 
   private static boolean isHidden(Path path) {
-    return StreamSupport.stream(path.spliterator(), true)
-      .anyMatch(token -> token.toString().startsWith("."));
+    for (Path name : path) {
+      if (name.toString().startsWith(".")) {
+        return true;
+      }
+    }
+    return false;
   }
 
   private boolean isExcludedDirectory(Path path) {
     String pathAsString = path.getFileName().toString().toLowerCase(Locale.ROOT);
-    return EXCLUDED_DIRECTORIES.contains(pathAsString) || directoriesToIgnore.contains(path);
+    return EXCLUDED_DIRECTORIES.contains(pathAsString) || directoriesToIgnore.containsSelfOrAncestor(path);
   }
 
+  /**
+   * Whether the path is a source or test directory or file, or is nested in one, such as a directory of the crawl when the
+   * crawl starts inside a source directory.
+   */
   private boolean isCoveredByExistingSources(Path path) {
-    return existingSources.contains(path);
+    return existingSources.containsSelfOrAncestor(path);
   }
 
   @Override
   public FileVisitResult visitFile(Path path, BasicFileAttributes basicFileAttributes) {
-    if (!excludedFiles.contains(path) && existingSources.stream().noneMatch(path::equals)) {
+    filesVisited++;
+    metrics.increment(ScannerMetrics.Counter.FILES_CRAWLED);
+    if (!excludedFiles.contains(path) && !isCoveredByExistingSources(path)) {
       String lowerCaseFileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
       if (excludedExtensions.stream().noneMatch(lowerCaseFileName::endsWith)) {
         collectedSources.add(path);
@@ -20,11 +20,16 @@
 package org.sonarsource.scanner.maven.bootstrap;
 
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
-import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.execution.MavenSession;
 
 public interface ToolchainResolver {
 
-  Optional<Path> getJdkHomeFromToolchains(MojoExecution compilerExecution);
+  /**
+   * @param moduleSession session whose current project is the module of the compiler execution
+   * @param jdkToolchain the {@code jdkToolchain} requirements of the compiler execution, empty when it has none
+   */
+  Optional<Path> getJdkHomeFromToolchains(MavenSession moduleSession, Map<String, String> jdkToolchain);
 
 }
@@ -0,0 +1,182 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.maven.plugin.logging.Log;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+/**
+ * Moves the working directories of the analysis, {@code target/sonar} of each module by default, under the root given by
+ * {@value MavenScannerProperties#WORK_DIR_ROOT}, for instance a tmpfs so that the scratch files of the engine never hit
+ * the disk. With {@value #AUTO}, the root is {@code /dev/shm} when it exists and has enough free space.
+ * <p>
+ * Each working directory is moved to the same absolute path under a directory unique to the run, so that the modules
+ * keep distinct directories. When closed, the files at the top of each working directory, like
+ * {@value QualityGateAwait#REPORT_TASK_FILE_NAME}, are copied back to the original directory for the goals running
+ * afterwards, then the directory of the run is deleted.
+ * </p>
+ */
+final class WorkDirRelocation implements AutoCloseable {
+
+  static final String AUTO = "auto";
+  static final long MIN_USABLE_BYTES = 1024L * 1024 * 1024;
+  private static final Path SHARED_MEMORY = Paths.get("/dev/shm");
+  private static final String MODULE_WORK_DIR_SUFFIX = "." + ScannerProperties.WORK_DIR;
+
+  private final Log log;
+  @Nullable
+  private final Path runDir;
+  private final Map<String, Path> originalByRelocated = new LinkedHashMap<>();
+
+  private WorkDirRelocation(Log log, @Nullable Path runDir) {
+    this.log = log;
+    this.runDir = runDir;
+  }
+
+  /**
+   * A working directory set explicitly by the user is never moved.
+   */
+  static WorkDirRelocation forAnalysis(Log log, AnalysisPropertiesCollector propertiesCollector) {
+    String root = propertiesCollector.getProperty(MavenScannerProperties.WORK_DIR_ROOT);
+    if (root != null && propertiesCollector.getProperty(ScannerProperties.WORK_DIR) != null) {
+      log.info("The working directory is set by " + ScannerProperties.WORK_DIR + ", it is not relocated under " + root);
+      return create(log, null);
+    }
+    return create(log, root);
+  }
+
+  /**
+   * @param root value of {@value MavenScannerProperties#WORK_DIR_ROOT}, the working directories are not moved if null
+   */
+  static WorkDirRelocation create(Log log, @Nullable String root) {
+    return create(log, root, SHARED_MEMORY, MIN_USABLE_BYTES);
+  }
+
+  @VisibleForTesting
+  static WorkDirRelocation create(Log log, @Nullable String root, Path sharedMemory, long minUsableBytes) {
+    if (root == null || root.isBlank()) {
+      return new WorkDirRelocation(log, null);
+    }
+    Path rootDir;
+    if (AUTO.equalsIgnoreCase(root.trim())) {
+      if (!Files.isDirectory(sharedMemory) || !Files.isWritable(sharedMemory)) {
+        log.info("No writable shared memory file system at " + sharedMemory + ", the working directories are not relocated");
+        return new WorkDirRelocation(log, null);
+      }
+      rootDir = sharedMemory;
+    } else {
+      rootDir = Paths.get(root.trim()).toAbsolutePath();
+    }
+    try {
+      Files.createDirectories(rootDir);
+      long usableBytes = Files.getFileStore(rootDir).getUsableSpace();
+      if (usableBytes < minUsableBytes) {
+        log.warn(String.format("Only %d MB are available in %s, less than the %d MB required: the working directories are not relocated",
+          usableBytes >> 20, rootDir, minUsableBytes >> 20));
+        return new WorkDirRelocation(log, null);
+      }
+      Path runDir = Files.createTempDirectory(rootDir, "sonar-maven-");
+      log.info("Working directories relocated to " + runDir);
+      return new WorkDirRelocation(log, runDir);
+    } catch (IOException e) {
+      log.warn("Unable to relocate the working directories to " + rootDir + ": " + e.getMessage());
+      return new WorkDirRelocation(log, null);
+    }
+  }
+
+  boolean isEnabled() {
+    return runDir != null;
+  }
+
+  /**
+   * Moves the working directory of the project and the ones of its modules, whose keys are prefixed by the module id.
+   */
+  void relocate(Map<String, String> properties) {
+    if (runDir == null) {
+      return;
+    }
+    for (Map.Entry<String, String> entry : properties.entrySet()) {
+      String key = entry.getKey();
+      if (!key.equals(ScannerProperties.WORK_DIR) && !key.endsWith(MODULE_WORK_DIR_SUFFIX)) {
+        continue;
+      }
+      Path original = Paths.get(entry.getValue()).toAbsolutePath().normalize();
+      Path relocated = runDir;
+      for (Path name : original) {
+        relocated = relocated.resolve(name.toString());
+      }
+      originalByRelocated.put(relocated.toString(), original);
+      entry.setValue(relocated.toString());
+    }
+  }
+
+  /**
+   * @return the directory a relocated working directory is copied back to, the given directory if it was not relocated
+   */
+  @CheckForNull
+  String originalOf(@Nullable String workDir) {
+    Path original = workDir == null ? null : originalByRelocated.get(workDir);
+    return original == null ? workDir : original.toString();
+  }
+
+  @Override
+  public void close() {
+    if (runDir == null) {
+      return;
+    }
+    originalByRelocated.forEach(this::copyBack);
+    originalByRelocated.clear();
+    try (Stream<Path> files = Files.walk(runDir)) {
+      files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> path.toFile().delete());
+    } catch (IOException e) {
+      log.debug("Unable to list the content of " + runDir, e);
+    }
+    if (Files.exists(runDir)) {
+      log.warn("Unable to delete " + runDir + ", it has to be deleted manually");
+    }
+  }
+
+  private void copyBack(String relocated, Path original) {
+    Path relocatedDir = Paths.get(relocated);
+    if (!Files.isDirectory(relocatedDir)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(relocatedDir, Files::isRegularFile)) {
+      for (Path file : files) {
+        Files.createDirectories(original);
+        Files.copy(file, original.resolve(file.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      log.warn("Unable to copy the reports of " + relocatedDir + " back to " + original, e);
+    }
+  }
+}
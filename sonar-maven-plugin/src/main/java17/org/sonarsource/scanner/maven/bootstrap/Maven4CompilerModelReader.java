@@ -0,0 +1,271 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.maven.api.Project;
+import org.apache.maven.api.Session;
+import org.apache.maven.api.model.Plugin;
+import org.apache.maven.api.model.PluginExecution;
+import org.apache.maven.api.xml.XmlNode;
+import org.apache.maven.api.xml.XmlService;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.sonarsource.scanner.maven.bootstrap.MavenCompilerResolver.CompilerExecution;
+
+/**
+ * Reads the maven-compiler-plugin executions from the immutable effective model of the Maven 4 API. The model already
+ * contains the executions bound by the packaging, with the plugin configuration merged and interpolated, so nothing
+ * has to be calculated through the compat layer.
+ * <p>
+ * A parameter missing from the configuration is read from its {@code maven.compiler.*} property, like the expression of
+ * the plugin descriptor does. When it also falls back to a default value of the descriptor, this default is only known
+ * for the released 3.x versions of the plugin: for other versions, or any configuration the model can't evaluate, the
+ * module is left to the execution plan.
+ * </p>
+ */
+final class Maven4CompilerModelReader implements CompilerModelReader {
+
+  private static final String MAVEN_COMPILER_PLUGIN = "maven-compiler-plugin";
+  private static final Map<String, String> DEFAULT_PHASE_BY_GOAL = Map.of("compile", "compile", "testCompile", "test-compile");
+  private static final List<String> PHASES_UP_TO_TEST_COMPILE = List.of("validate", "initialize", "generate-sources", "process-sources",
+    "generate-resources", "process-resources", "compile", "process-classes", "generate-test-sources", "process-test-sources",
+    "generate-test-resources", "process-test-resources", "test-compile");
+  private static final List<String> PHASES_AFTER_TEST_COMPILE = List.of("none", "process-test-classes", "test", "prepare-package", "package",
+    "pre-integration-test", "integration-test", "post-integration-test", "verify", "install", "deploy");
+
+  private final Session session;
+  private final Map<Path, Project> projectsByPom;
+
+  private Maven4CompilerModelReader(Session session) {
+    this.session = session;
+    this.projectsByPom = session.getProjects().stream()
+      .collect(Collectors.toMap(project -> project.getPomPath().toAbsolutePath().normalize(), Function.identity(), (first, second) -> first));
+  }
+
+  /**
+   * @return the reader of the models of {@code mavenSession}, or null when it doesn't come from Maven 4
+   */
+  @CheckForNull
+  public static CompilerModelReader create(MavenSession mavenSession) {
+    try {
+      // MavenSession#getSession only exists in the compat layer of Maven 4
+      MethodHandle getSession = MethodHandles.publicLookup().findVirtual(MavenSession.class, "getSession", MethodType.methodType(Session.class));
+      return new Maven4CompilerModelReader((Session) getSession.invoke(mavenSession));
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
+      return null;
+    }
+  }
+
+  @Override
+  public Optional<List<CompilerExecution>> read(MavenProject pom) {
+    File pomFile = pom.getFile();
+    Project project = pomFile == null ? null : projectsByPom.get(pomFile.toPath().toAbsolutePath().normalize());
+    if (project == null) {
+      return Optional.empty();
+    }
+    Optional<Plugin> compiler = project.getBuild().getPlugins().stream()
+      .filter(Maven4CompilerModelReader::isMavenCompilerPlugin)
+      .findFirst();
+    if (compiler.isEmpty()) {
+      // Nothing bound, or a packaging whose bindings are only known to the execution plan
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(readExecutions(project, compiler.get()));
+    } catch (NotInModelException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static boolean isMavenCompilerPlugin(Plugin plugin) {
+    return MAVEN_COMPILER_PLUGIN.equals(plugin.getArtifactId())
+      && (plugin.getGroupId() == null || MavenUtils.GROUP_ID_APACHE_MAVEN.equals(plugin.getGroupId()));
+  }
+
+  private List<CompilerExecution> readExecutions(Project project, Plugin compiler) throws NotInModelException {
+    DescriptorDefaults defaults = DescriptorDefaults.of(compiler.getVersion());
+    List<PhasedExecution> executions = new ArrayList<>();
+    for (PluginExecution execution : compiler.getExecutions()) {
+      for (String goal : execution.getGoals()) {
+        if (!DEFAULT_PHASE_BY_GOAL.containsKey(goal)) {
+          continue;
+        }
+        String phase = execution.getPhase() != null ? execution.getPhase() : DEFAULT_PHASE_BY_GOAL.get(goal);
+        int phaseIndex = PHASES_UP_TO_TEST_COMPILE.indexOf(phase);
+        if (phaseIndex < 0) {
+          if (PHASES_AFTER_TEST_COMPILE.contains(phase)) {
+            continue;
+          }
+          // A phase of a custom lifecycle, or a before:/after: phase of Maven 4
+          throw new NotInModelException();
+        }
+        executions.add(new PhasedExecution(phaseIndex, readExecution(project, compiler, execution, goal, defaults)));
+      }
+    }
+    if (executions.isEmpty()) {
+      // The packaging may still bind executions which are not in the model
+      throw new NotInModelException();
+    }
+    // Stable sort: within a phase, executions keep the order of the model, as in the execution plan
+    return executions.stream()
+      .sorted(Comparator.comparingInt(PhasedExecution::phaseIndex))
+      .map(PhasedExecution::execution)
+      .collect(Collectors.toList());
+  }
+
+  private CompilerExecution readExecution(Project project, Plugin compiler, PluginExecution execution, String goal, DescriptorDefaults defaults)
+    throws NotInModelException {
+    Optional<String> enablePreview = defaults.hasEnablePreview()
+      ? readParameter(project, compiler, execution, "enablePreview", defaults.known() ? "false" : null)
+      : Optional.empty();
+    return new CompilerExecution(execution.getId(), goal,
+      readParameter(project, compiler, execution, "release", null),
+      readParameter(project, compiler, execution, "target", defaults.sourceAndTarget()),
+      readParameter(project, compiler, execution, "source", defaults.sourceAndTarget()),
+      enablePreview,
+      readParameter(project, compiler, execution, "executable", null),
+      readJdkToolchain(compiler, execution));
+  }
+
+  /**
+   * @param defaultValue default value of the parameter in the plugin descriptor, or null when the descriptor has none or
+   *                     when this version of the plugin is unknown
+   */
+  private Optional<String> readParameter(Project project, Plugin compiler, PluginExecution execution, String name, @Nullable String defaultValue)
+    throws NotInModelException {
+    XmlNode node = child(execution.getConfiguration(), name);
+    if (node == null) {
+      node = child(compiler.getConfiguration(), name);
+    }
+    if (node != null) {
+      return Optional.of(evaluated(node.value()));
+    }
+    // Same lookup order as the expression evaluator of the plugin parameters: the user properties override the system
+    // properties in the execution properties, which override the properties of the model
+    String property = "maven.compiler." + name;
+    String value = session.getUserProperties().get(property);
+    if (value == null) {
+      value = session.getSystemProperties().get(property);
+    }
+    if (value == null) {
+      value = project.getModel().getProperties().get(property);
+    }
+    if (value != null) {
+      return Optional.of(value);
+    }
+    if (defaultValue == null && DescriptorDefaults.hasDefault(name)) {
+      throw new NotInModelException();
+    }
+    return Optional.ofNullable(defaultValue);
+  }
+
+  private static Map<String, String> readJdkToolchain(Plugin compiler, PluginExecution execution) throws NotInModelException {
+    Map<String, String> requirements = new LinkedHashMap<>();
+    XmlNode fromExecution = child(execution.getConfiguration(), "jdkToolchain");
+    XmlNode fromPlugin = child(compiler.getConfiguration(), "jdkToolchain");
+    if (fromPlugin != null && (fromExecution == null
+      || !XmlService.SELF_COMBINATION_OVERRIDE.equals(fromExecution.attribute(XmlService.SELF_COMBINATION_MODE_ATTRIBUTE)))) {
+      for (XmlNode requirement : fromPlugin.children()) {
+        requirements.put(requirement.name(), evaluated(requirement.value()));
+      }
+    }
+    if (fromExecution != null) {
+      for (XmlNode requirement : fromExecution.children()) {
+        requirements.put(requirement.name(), evaluated(requirement.value()));
+      }
+    }
+    return requirements;
+  }
+
+  @CheckForNull
+  private static XmlNode child(@Nullable XmlNode configuration, String name) {
+    return configuration == null ? null : configuration.child(name);
+  }
+
+  /**
+   * The model is interpolated, so an expression left in a value refers to something only the execution plan can evaluate.
+   */
+  private static String evaluated(@Nullable String value) throws NotInModelException {
+    if (value == null || value.isBlank() || value.contains("${")) {
+      throw new NotInModelException();
+    }
+    return value;
+  }
+
+  private record PhasedExecution(int phaseIndex, CompilerExecution execution) {
+  }
+
+  /**
+   * Default values of the maven-compiler-plugin descriptor: source and target default to a version depending on the
+   * plugin version, enablePreview defaults to false since 3.10.1 and doesn't exist before.
+   */
+  private record DescriptorDefaults(boolean known, @Nullable String sourceAndTarget, boolean hasEnablePreview) {
+
+    private static final DescriptorDefaults UNKNOWN = new DescriptorDefaults(false, null, true);
+
+    static boolean hasDefault(String parameter) {
+      return "source".equals(parameter) || "target".equals(parameter) || "enablePreview".equals(parameter);
+    }
+
+    static DescriptorDefaults of(@Nullable String pluginVersion) {
+      if (pluginVersion == null || !pluginVersion.matches("3\\.\\d+\\.\\d+")) {
+        return UNKNOWN;
+      }
+      String[] parts = pluginVersion.split("\\.");
+      int minor = Integer.parseInt(parts[1]);
+      int patch = Integer.parseInt(parts[2]);
+      if (minor == 8) {
+        return new DescriptorDefaults(true, "1.6", false);
+      } else if (minor == 9 || minor == 10) {
+        return new DescriptorDefaults(true, "1.7", minor == 10 && patch >= 1);
+      } else if (minor >= 11 && minor <= 14) {
+        return new DescriptorDefaults(true, "1.8", true);
+      }
+      return UNKNOWN;
+    }
+  }
+
+  /**
+   * The configuration of the module can't be read from its model alone.
+   */
+  private static final class NotInModelException extends Exception {
+    NotInModelException() {
+      super(null, null, false, false);
+    }
+  }
+
+}
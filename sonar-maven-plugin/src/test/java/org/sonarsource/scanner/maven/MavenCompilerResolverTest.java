@@ -20,11 +20,33 @@
 package org.sonarsource.scanner.maven;
 
 
+import java.io.File;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.LifecycleExecutor;
+import org.apache.maven.lifecycle.internal.ExecutionPlanItem;
+import org.apache.maven.lifecycle.MavenExecutionPlan;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.junit.jupiter.api.Test;
+import org.sonarsource.scanner.maven.bootstrap.MavenCompilerResolver;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.sonarsource.scanner.maven.bootstrap.MavenCompilerResolver.MavenCompilerConfiguration;
@@ -59,4 +81,84 @@ class MavenCompilerResolverTest {
     assertThat(MavenCompilerConfiguration.same(conf1, conf2)).isTrue();
   }
 
+  @Test
+  void configuration_is_evaluated_for_the_module_without_switching_the_current_project_of_the_session() throws Exception {
+    MavenProject current = project("current", "8");
+    MavenProject module = project("module", "17");
+    MavenSession session = new MavenSession(null, null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+    session.setProjects(List.of(current, module));
+    session.setCurrentProject(current);
+
+    LifecycleExecutor lifecycleExecutor = mock(LifecycleExecutor.class);
+    AtomicReference<MavenProject> planProject = new AtomicReference<>();
+    when(lifecycleExecutor.calculateExecutionPlan(any(MavenSession.class), anyBoolean(), anyString())).thenAnswer(invocation -> {
+      MavenSession moduleSession = invocation.getArgument(0);
+      planProject.set(moduleSession.getCurrentProject());
+      return new MavenExecutionPlan(List.of(new ExecutionPlanItem(compilerExecution("${maven.compiler.release}"))), null);
+    });
+    MavenCompilerResolver resolver = new MavenCompilerResolver(session, lifecycleExecutor, mock(Log.class), (moduleSession, execution) -> Optional.empty());
+
+    Optional<MavenCompilerConfiguration> configuration = resolver.extractConfiguration(module);
+
+    assertThat(planProject.get()).isSameAs(module);
+    assertThat(configuration).isPresent();
+    assertThat(configuration.get().getRelease()).contains("17");
+    assertThat(session.getCurrentProject()).isSameAs(current);
+  }
+
+  @Test
+  void jdk_toolchain_requirements_are_evaluated_for_the_module() throws Exception {
+    MavenProject module = project("module", "17");
+    module.getProperties().setProperty("jdk.vendor", "temurin");
+    MavenSession session = new MavenSession(null, null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+    session.setProjects(List.of(module));
+
+    MojoExecution execution = compilerExecution("${maven.compiler.release}");
+    Xpp3Dom vendor = new Xpp3Dom("vendor");
+    vendor.setValue("${jdk.vendor}");
+    Xpp3Dom jdkToolchain = new Xpp3Dom("jdkToolchain");
+    jdkToolchain.addChild(vendor);
+    execution.getConfiguration().addChild(jdkToolchain);
+    LifecycleExecutor lifecycleExecutor = mock(LifecycleExecutor.class);
+    when(lifecycleExecutor.calculateExecutionPlan(any(MavenSession.class), anyBoolean(), anyString()))
+      .thenReturn(new MavenExecutionPlan(List.of(new ExecutionPlanItem(execution)), null));
+    AtomicReference<Map<String, String>> requirements = new AtomicReference<>();
+    MavenCompilerResolver resolver = new MavenCompilerResolver(session, lifecycleExecutor, mock(Log.class), (moduleSession, jdkToolchainRequirements) -> {
+      requirements.set(jdkToolchainRequirements);
+      return Optional.of(Path.of("/jdk17"));
+    });
+
+    Optional<MavenCompilerConfiguration> configuration = resolver.extractConfiguration(module);
+
+    assertThat(requirements.get()).containsExactly(Map.entry("vendor", "temurin"));
+    assertThat(configuration.get().getJdkHome()).contains(Path.of("/jdk17"));
+  }
+
+  private static MojoExecution compilerExecution(String release) {
+    PluginDescriptor plugin = new PluginDescriptor();
+    plugin.setGroupId("org.apache.maven.plugins");
+    plugin.setArtifactId("maven-compiler-plugin");
+    MojoDescriptor mojo = new MojoDescriptor();
+    mojo.setPluginDescriptor(plugin);
+    mojo.setGoal("compile");
+    Xpp3Dom releaseConfiguration = new Xpp3Dom("release");
+    releaseConfiguration.setValue(release);
+    Xpp3Dom configuration = new Xpp3Dom("configuration");
+    configuration.addChild(releaseConfiguration);
+    MojoExecution execution = new MojoExecution(mojo, "default-compile");
+    execution.setConfiguration(configuration);
+    return execution;
+  }
+
+  private static MavenProject project(String artifactId, String release) {
+    Model model = new Model();
+    model.setGroupId("com.acme");
+    model.setArtifactId(artifactId);
+    Properties properties = new Properties();
+    properties.setProperty("maven.compiler.release", release);
+    model.setProperties(properties);
+    MavenProject project = new MavenProject(model);
+    project.setFile(new File(artifactId, "pom.xml").getAbsoluteFile());
+    return project;
+  }
 }
@@ -0,0 +1,104 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven;
+
+import java.io.File;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.graph.GraphBuilder;
+import org.apache.maven.model.building.Result;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SonarPropertiesMojoTest {
+
+  @Rule
+  public MojoRule mojoRule = new MojoRule();
+
+  private final TestLog logger = new TestLog(TestLog.LogLevel.INFO);
+
+  @Test
+  public void properties_are_exported_sorted_and_redacted() throws Exception {
+    File baseDir = new File("src/test/projects/sample-project").getAbsoluteFile();
+    Path exported = baseDir.toPath().resolve("target/sonar/sonar-analysis.properties");
+    Files.deleteIfExists(exported);
+    File dump = new File("target/dump.properties");
+    dump.delete();
+
+    executeProject(baseDir, "sonar.token", "my-secret-token", "sonar.some.password", "my-password", "sonar.projectDescription", " a:b=c#d");
+
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(exported, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    assertThat(properties)
+      .containsEntry("sonar.projectKey", "org.codehaus.sonar:sample-project")
+      .containsEntry("sonar.host.url2", "http://myserver:9000")
+      .containsEntry("sonar.token", "<redacted>")
+      .containsEntry("sonar.some.password", "<redacted>")
+      .containsEntry("sonar.projectDescription", " a:b=c#d");
+    List<String> keys = Files.readAllLines(exported, StandardCharsets.UTF_8).stream()
+      .map(line -> line.substring(0, line.indexOf('=')))
+      .collect(Collectors.toList());
+    assertThat(keys).isSorted();
+    assertThat(new String(Files.readAllBytes(exported), StandardCharsets.UTF_8)).doesNotContain("my-secret-token", "my-password");
+    // Nothing was sent to the (simulated) engine
+    assertThat(dump).doesNotExist();
+    assertThat(logger.logs).anyMatch(log -> log.matches("\\[INFO\\] Computed \\d+ analysis properties of 1 module\\(s\\) in \\d+ ms, written to .*"));
+  }
+
+  @Test
+  public void should_skip() throws Exception {
+    File baseDir = new File("src/test/projects/sample-project").getAbsoluteFile();
+    Path exported = baseDir.toPath().resolve("target/sonar/sonar-analysis.properties");
+    Files.deleteIfExists(exported);
+
+    executeProject(baseDir, "sonar.scanner.skip", "true");
+
+    assertThat(exported).doesNotExist();
+  }
+
+  private void executeProject(File baseDir, String... properties) throws Exception {
+    SonarPropertiesMojo mojo = (SonarPropertiesMojo) mojoRule.lookupConfiguredMojo(baseDir, "properties");
+    mojo.getSession().getRequest().setGoals(Collections.singletonList("sonar:properties"));
+    mojo.getSession().getProjects().get(0).setExecutionRoot(true);
+    mojo.getSession().setAllProjects(mojo.getSession().getProjects());
+    Result<? extends ProjectDependencyGraph> result = mojoRule.lookup(GraphBuilder.class).build(mojo.getSession());
+    mojo.getSession().setProjectDependencyGraph(result.get());
+    mojo.setLog(logger);
+    for (int i = 0; i < properties.length; i += 2) {
+      mojo.getSession().getUserProperties().put(properties[i], properties[i + 1]);
+    }
+    mojo.environmentVariables.entrySet()
+      .removeIf(entry -> entry.getKey().startsWith("SONAR_") || entry.getKey().startsWith("SONARQUBE_"));
+
+    mojo.execute();
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.lib.AnalysisProperties;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalysisDiagnosticsTest {
+
+  private static final SecDispatcher securityDispatcher = s -> s;
+
+  @TempDir
+  Path baseDir;
+
+  private final Log log = mock(Log.class);
+  private final MavenSession session = mock(MavenSession.class);
+  private final MavenProjectConverter converter = mock(MavenProjectConverter.class);
+  private final MavenCompilerResolver compilerResolver = mock(MavenCompilerResolver.class);
+  private final Map<String, String> properties = new HashMap<>();
+
+  @BeforeEach
+  void setUp() throws MojoExecutionException {
+    MavenProject root = mock(MavenProject.class);
+    when(root.isExecutionRoot()).thenReturn(true);
+    when(root.getProperties()).thenReturn(new Properties());
+    when(session.getProjects()).thenReturn(Collections.singletonList(root));
+    when(session.getUserProperties()).thenReturn(new Properties());
+    when(converter.configure(any(), any(), any())).thenReturn(properties);
+    when(converter.getEnvProperties()).thenReturn(new HashMap<>());
+    when(converter.getMavenCompilerResolver()).thenReturn(compilerResolver);
+    when(compilerResolver.getHeterogeneousModules()).thenReturn(Collections.emptySet());
+    when(compilerResolver.getPlanNanosByModule()).thenReturn(Collections.emptyMap());
+    properties.put(AnalysisProperties.PROJECT_BASEDIR, baseDir.toString());
+  }
+
+  @Test
+  void reports_modules_libraries_and_source_files() throws Exception {
+    Path lib = Files.write(baseDir.resolve("lib.jar"), new byte[2048]);
+    Path sources = Files.createDirectories(baseDir.resolve("module/src/main/java"));
+    Files.createFile(sources.resolve("A.java"));
+    Files.createFile(sources.resolve("B.java"));
+    properties.put("sonar.moduleKey", "g:root");
+    properties.put("sonar.modules", "g:module");
+    properties.put("g:module.sonar.moduleKey", "g:module");
+    properties.put("g:module.sonar.java.libraries", lib + "," + lib);
+    properties.put("g:module.sonar.sources", sources.toString());
+
+    List<String> recommendations = diagnostics().diagnose();
+
+    assertThat(recommendations).isEmpty();
+    verify(log).info(matches("Computed the analysis properties of 2 module\\(s\\) in \\d+ ms, hierarchy depth: 1"));
+    verify(log).info("  g:module: 2 libraries (0 MB), 1 source root(s), 2 file(s)");
+    verify(log).info("No scaling hotspot detected");
+  }
+
+  @Test
+  void recommends_on_heterogeneous_compilers_and_slow_plans() throws Exception {
+    when(compilerResolver.getHeterogeneousModules()).thenReturn(Set.of("g:b"));
+    when(compilerResolver.getPlanNanosByModule()).thenReturn(Map.of("g:a", 2_000_000_000L, "g:b", 1_000_000L));
+
+    List<String> recommendations = diagnostics().diagnose();
+
+    verify(log).info("Heterogeneous compiler configurations: g:b");
+    verify(log).info("  g:a: 2000 ms");
+    assertThat(recommendations).hasSize(2);
+    assertThat(recommendations.get(0)).startsWith("1 module(s) have heterogeneous compiler configurations");
+    assertThat(recommendations.get(1)).startsWith("The execution plan of g:a takes more than 500 ms");
+  }
+
+  @Test
+  void recommends_on_crowded_directories_crawled_by_scan_all() throws Exception {
+    Path generated = Files.createDirectories(baseDir.resolve("generated"));
+    for (int i = 0; i <= AnalysisDiagnostics.CROWDED_DIRECTORY_FILES; i++) {
+      Files.createFile(generated.resolve(i + ".txt"));
+    }
+    Path pom = Files.createFile(baseDir.resolve("pom.xml"));
+    properties.put(AnalysisProperties.PROJECT_SOURCE_DIRS, pom.toString());
+    properties.put(AnalysisProperties.PROJECT_TEST_DIRS, pom.toString());
+    Properties userProperties = new Properties();
+    userProperties.put(MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES, "true");
+    when(session.getUserProperties()).thenReturn(userProperties);
+
+    List<String> recommendations = diagnostics().diagnose();
+
+    assertThat(recommendations).anyMatch(recommendation -> recommendation.startsWith(generated + " contains 5001 files"));
+  }
+
+  @Test
+  void does_not_recommend_to_exclude_crowded_source_directories() throws Exception {
+    Path sources = Files.createDirectories(baseDir.resolve("src/main/java/com/acme"));
+    for (int i = 0; i <= AnalysisDiagnostics.CROWDED_DIRECTORY_FILES; i++) {
+      Files.createFile(sources.resolve("A" + i + ".java"));
+    }
+    Files.createFile(baseDir.resolve("pom.xml"));
+    properties.put(AnalysisProperties.PROJECT_SOURCE_DIRS, baseDir.resolve("src/main/java").toString());
+    Properties userProperties = new Properties();
+    userProperties.put(MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES, "true");
+    when(session.getUserProperties()).thenReturn(userProperties);
+
+    List<String> recommendations = diagnostics().diagnose();
+
+    assertThat(recommendations).noneMatch(recommendation -> recommendation.contains(MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES));
+    assertThat(AnalysisDiagnostics.crawl(baseDir, Set.of(), Set.of(baseDir.resolve("src/main/java"))))
+      .containsOnly(Map.entry(baseDir, 1), Map.entry(baseDir.resolve("src"), 0), Map.entry(baseDir.resolve("src/main"), 0));
+  }
+
+  @Test
+  void crawl_skips_hidden_build_output_and_skipped_directories() throws IOException {
+    Files.createFile(Files.createDirectories(baseDir.resolve("src")).resolve("a.js"));
+    Files.createFile(Files.createDirectories(baseDir.resolve(".git")).resolve("HEAD"));
+    Files.createFile(Files.createDirectories(baseDir.resolve("target")).resolve("a.class"));
+    Path skipped = Files.createDirectories(baseDir.resolve("skipped"));
+    Files.createFile(skipped.resolve("a.js"));
+    Files.createFile(baseDir.resolve("pom.xml"));
+
+    Map<Path, Integer> filesByDirectory = AnalysisDiagnostics.crawl(baseDir, Set.of(skipped), Set.of());
+
+    assertThat(filesByDirectory).containsOnly(Map.entry(baseDir, 1), Map.entry(baseDir.resolve("src"), 1));
+  }
+
+  private AnalysisDiagnostics diagnostics() {
+    ScannerMetrics metrics = new ScannerMetrics();
+    return new AnalysisDiagnostics(log, new AnalysisPropertiesCollector(log, session, converter, new PropertyDecryptor(log, securityDispatcher), metrics), metrics);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncLogBridgeTest {
+
+  @Test
+  void messages_are_written_in_order_and_flushed_on_close() {
+    RecordingLog log = new RecordingLog();
+
+    try (AsyncLogBridge bridge = new AsyncLogBridge(log)) {
+      for (int i = 0; i < 1000; i++) {
+        bridge.info("info " + i);
+        bridge.debug("debug " + i);
+      }
+      bridge.warn("warn");
+      bridge.error("error");
+    }
+
+    assertThat(log.messages).hasSize(2002);
+    assertThat(log.messages.subList(0, 4)).containsExactly("INFO info 0", "DEBUG debug 0", "INFO info 1", "DEBUG debug 1");
+    assertThat(log.messages.subList(2000, 2002)).containsExactly("WARN warn", "ERROR error");
+  }
+
+  @Test
+  void only_debug_messages_are_dropped_when_the_ring_buffer_is_full() throws InterruptedException {
+    CountDownLatch firstMessageWritten = new CountDownLatch(1);
+    CountDownLatch consoleUnblocked = new CountDownLatch(1);
+    RecordingLog log = new RecordingLog() {
+      @Override
+      public void info(CharSequence content) {
+        super.info(content);
+        firstMessageWritten.countDown();
+        try {
+          consoleUnblocked.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+    long dropped;
+    try (AsyncLogBridge bridge = new AsyncLogBridge(log, 2)) {
+      bridge.info("blocking");
+      assertThat(firstMessageWritten.await(10, TimeUnit.SECONDS)).isTrue();
+      bridge.debug("kept 1");
+      bridge.debug("kept 2");
+      bridge.debug("dropped");
+      Thread warning = new Thread(() -> bridge.warn("never dropped"));
+      warning.start();
+      // The ring buffer is full: the warning waits for a free slot
+      while (warning.getState() != Thread.State.WAITING) {
+        Thread.onSpinWait();
+      }
+      dropped = bridge.getDropped();
+      consoleUnblocked.countDown();
+      warning.join();
+    }
+
+    assertThat(dropped).isEqualTo(1);
+    assertThat(log.messages).containsExactly("INFO blocking", "DEBUG kept 1", "DEBUG kept 2", "WARN never dropped",
+      "WARN 1 debug messages of the scanner engine were dropped because the Maven console could not keep up");
+  }
+
+  private static class RecordingLog extends SystemStreamLog {
+    final List<String> messages = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void debug(CharSequence content) {
+      messages.add("DEBUG " + content);
+    }
+
+    @Override
+    public void info(CharSequence content) {
+      messages.add("INFO " + content);
+    }
+
+    @Override
+    public void warn(CharSequence content) {
+      messages.add("WARN " + content);
+    }
+
+    @Override
+    public void error(CharSequence content) {
+      messages.add("ERROR " + content);
+    }
+  }
+}
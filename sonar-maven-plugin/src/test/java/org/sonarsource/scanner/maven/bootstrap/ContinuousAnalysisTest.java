@@ -0,0 +1,192 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.lib.AnalysisProperties;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
+import org.sonarsource.scanner.lib.ScannerEngineFacade;
+import org.sonarsource.scanner.lib.ScannerProperties;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ContinuousAnalysisTest {
+
+  @TempDir
+  Path baseDir;
+
+  private static final SecDispatcher securityDispatcher = s -> s;
+
+  private final Log log = mock(Log.class);
+
+  @Test
+  void watched_roots_are_the_directories_of_sources_tests_and_binaries() throws IOException {
+    Path main = Files.createDirectories(baseDir.resolve("src/main/java"));
+    Path test = Files.createDirectories(baseDir.resolve("module/src/test/java"));
+    Path classes = Files.createDirectories(baseDir.resolve("target/classes"));
+    Path pom = Files.createFile(baseDir.resolve("pom.xml"));
+
+    Map<String, String> properties = Map.of(
+      "sonar.sources", main + "," + pom,
+      "module.sonar.tests", test.toString(),
+      "sonar.java.binaries", classes + "," + baseDir.resolve("missing"),
+      "sonar.java.libraries", baseDir.resolve("lib").toString());
+
+    assertThat(ContinuousAnalysis.watchedRoots(properties)).containsExactlyInAnyOrder(main, test, classes);
+    assertThat(ContinuousAnalysis.watchedFiles(properties)).containsExactly(pom);
+  }
+
+  @Test
+  void working_and_build_directories_are_not_watched() throws IOException {
+    Path sources = Files.createDirectories(baseDir.resolve("src/main/java"));
+    Path classes = Files.createDirectories(baseDir.resolve("target/classes/org"));
+    Path workDir = Files.createDirectories(baseDir.resolve("target/sonar"));
+    Path moduleSources = Files.createDirectories(baseDir.resolve("module/src"));
+    Path moduleWorkDir = Files.createDirectories(baseDir.resolve("module/src/sonar-work"));
+    Files.createDirectories(baseDir.resolve("target/generated-sources"));
+    Map<String, String> properties = Map.of(
+      "sonar.sources", baseDir.toString(),
+      "sonar.java.binaries", classes.getParent().toString(),
+      ScannerProperties.WORK_DIR, workDir.toString(),
+      "module." + ScannerProperties.WORK_DIR, moduleWorkDir.toString());
+    MavenSession session = mock(MavenSession.class);
+    MavenProject project = mock(MavenProject.class);
+    Build build = new Build();
+    build.setDirectory(baseDir.resolve("target").toString());
+    when(project.getBuild()).thenReturn(build);
+    when(session.getProjects()).thenReturn(List.of(project));
+
+    ContinuousAnalysis continuousAnalysis = new ContinuousAnalysis(log, session, mock(ScannerEngineBootstrapper.class), mock(MavenProjectConverter.class),
+      new PropertyDecryptor(log, securityDispatcher), Duration.ofMillis(50));
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      continuousAnalysis.watch(watchService, properties);
+
+      assertThat(continuousAnalysis.getWatchedDirectories()).containsExactlyInAnyOrder(baseDir, sources.getParent().getParent(), sources.getParent(), sources,
+        baseDir.resolve("module"), moduleSources, classes.getParent(), classes);
+    }
+  }
+
+  @Test
+  void only_the_changes_of_the_watched_files_of_a_directory_are_collected() throws Exception {
+    Path sources = Files.createDirectories(baseDir.resolve("src"));
+    Path pom = Files.createFile(baseDir.resolve("pom.xml"));
+    MavenSession session = mock(MavenSession.class);
+    when(session.getProjects()).thenReturn(List.of());
+    ContinuousAnalysis continuousAnalysis = new ContinuousAnalysis(log, session, mock(ScannerEngineBootstrapper.class), mock(MavenProjectConverter.class),
+      new PropertyDecryptor(log, securityDispatcher), Duration.ofMillis(50));
+
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      continuousAnalysis.watch(watchService, Map.of("sonar.sources", sources + "," + pom));
+      assertThat(continuousAnalysis.getWatchedDirectories()).containsExactlyInAnyOrder(baseDir, sources);
+
+      Files.writeString(baseDir.resolve("build.log"), "ignored");
+      Files.createDirectories(baseDir.resolve("target"));
+      Files.writeString(pom, "<project/>");
+
+      assertThat(continuousAnalysis.awaitChanges(watchService)).containsExactly(pom);
+      assertThat(continuousAnalysis.getWatchedDirectories()).containsExactlyInAnyOrder(baseDir, sources);
+    }
+  }
+
+  @Test
+  void analyzes_again_on_changes_with_the_same_engine_until_interrupted() throws Exception {
+    Path sources = Files.createDirectories(baseDir.resolve("src"));
+    Path workDir = Files.createDirectories(sources.resolve("work"));
+    Map<String, String> properties = new HashMap<>();
+    properties.put(AnalysisProperties.PROJECT_BASEDIR, baseDir.toString());
+    properties.put(AnalysisProperties.PROJECT_SOURCE_DIRS, sources.toString());
+    properties.put(ScannerProperties.WORK_DIR, workDir.toString());
+
+    MavenSession session = mock(MavenSession.class);
+    MavenProject root = mock(MavenProject.class);
+    when(root.isExecutionRoot()).thenReturn(true);
+    when(root.getProperties()).thenReturn(new Properties());
+    when(session.getProjects()).thenReturn(Collections.singletonList(root));
+    when(session.getUserProperties()).thenReturn(new Properties());
+    MavenProjectConverter converter = mock(MavenProjectConverter.class);
+    when(converter.configure(any(), any(), any())).thenReturn(properties);
+    ScannerEngineBootstrapper bootstrapper = mock(ScannerEngineBootstrapper.class);
+    ScannerEngineBootstrapResult result = mock(ScannerEngineBootstrapResult.class);
+    ScannerEngineFacade facade = mock(ScannerEngineFacade.class);
+    when(bootstrapper.bootstrap()).thenReturn(result);
+    when(result.isSuccessful()).thenReturn(true);
+    when(result.getEngineFacade()).thenReturn(facade);
+    CountDownLatch twoAnalyses = new CountDownLatch(2);
+    when(facade.analyze(anyMap())).thenAnswer(invocation -> {
+      twoAnalyses.countDown();
+      // Written by the analysis, ignored
+      Files.writeString(workDir.resolve("report"), "report");
+      return true;
+    });
+
+    ContinuousAnalysis continuousAnalysis = new ContinuousAnalysis(log, session, bootstrapper, converter, new PropertyDecryptor(log, securityDispatcher),
+      Duration.ofMillis(50));
+    AtomicReference<Exception> failure = new AtomicReference<>();
+    Thread watcher = new Thread(() -> {
+      try {
+        continuousAnalysis.run();
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    watcher.start();
+
+    // Registration happens after the first analysis, so keep changing the file until it is noticed
+    for (int i = 0; i < 100 && twoAnalyses.getCount() > 0; i++) {
+      Files.writeString(sources.resolve("Foo.java"), "class Foo { int i = " + i + "; }");
+      twoAnalyses.await(100, TimeUnit.MILLISECONDS);
+    }
+    watcher.interrupt();
+    watcher.join(10_000);
+
+    assertThat(failure.get()).isNull();
+    assertThat(twoAnalyses.getCount()).isZero();
+    verify(bootstrapper, times(1)).bootstrap();
+    verify(converter, times(1)).configure(any(), any(), any());
+    verify(log).info("Stopped watching for changes");
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvTest {
+
+  private static final char[] ALPHABET = {'a', '/', ',', '"'};
+
+  @Test
+  void reads_exactly_like_the_former_split() {
+    for (int length = 0; length <= 7; length++) {
+      char[] chars = new char[length];
+      forEachString(chars, 0);
+    }
+  }
+
+  @Test
+  void reads_random_strings_exactly_like_the_former_split() {
+    Random random = new Random(47);
+    for (int i = 0; i < 100_000; i++) {
+      char[] chars = new char[random.nextInt(30)];
+      for (int j = 0; j < chars.length; j++) {
+        chars[j] = ALPHABET[random.nextInt(ALPHABET.length)];
+      }
+      assertSameValues(new String(chars));
+    }
+  }
+
+  @Test
+  void joins_exactly_like_the_former_join() {
+    Random random = new Random(47);
+    for (int i = 0; i < 10_000; i++) {
+      List<String> values = new ArrayList<>();
+      int size = random.nextInt(6);
+      for (int j = 0; j < size; j++) {
+        char[] chars = new char[random.nextInt(5)];
+        for (int k = 0; k < chars.length; k++) {
+          chars[k] = ALPHABET[random.nextInt(ALPHABET.length - 1)];
+        }
+        values.add(new String(chars));
+      }
+      assertThat(Csv.join(values)).as("%s", values).isEqualTo(formerJoin(values));
+    }
+  }
+
+  @Test
+  void values_with_commas_round_trip() {
+    List<String> values = Arrays.asList("/home/users/me/artifact-123,456.jar", "/opt/lib", "", ",", "/opt/lib,a,b");
+
+    String joined = Csv.join(values);
+
+    assertThat(joined).isEqualTo("\"/home/users/me/artifact-123,456.jar\",/opt/lib,,\",\",\"/opt/lib,a,b\"");
+    assertThat(MavenUtils.splitAsCsv(joined)).isEqualTo(values);
+    assertThat(Csv.count(joined)).isEqualTo(values.size());
+  }
+
+  @Test
+  void cursor_gives_the_bounds_of_each_value() {
+    String joined = "/opt/lib,\"a,b\",src";
+    Csv.Cursor cursor = new Csv.Cursor(joined);
+
+    assertThat(cursor.next()).isTrue();
+    assertThat(joined.substring(cursor.start(), cursor.end())).isEqualTo("/opt/lib");
+    assertThat(cursor.next()).isTrue();
+    assertThat(cursor.value()).isEqualTo("a,b");
+    assertThat(cursor.start()).isEqualTo(10);
+    assertThat(cursor.next()).isTrue();
+    assertThat(cursor.value()).isEqualTo("src");
+    assertThat(cursor.next()).isFalse();
+    assertThat(cursor.next()).isFalse();
+  }
+
+  @Test
+  void missing_closing_quote_fails() {
+    assertThatThrownBy(() -> Csv.count("a,\"b,c"))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Missing closing double quote at index 2 of: a,\"b,c");
+  }
+
+  private static void forEachString(char[] chars, int index) {
+    if (index == chars.length) {
+      assertSameValues(new String(chars));
+      return;
+    }
+    for (char c : ALPHABET) {
+      chars[index] = c;
+      forEachString(chars, index + 1);
+    }
+  }
+
+  private static void assertSameValues(String joined) {
+    List<String> expected;
+    try {
+      expected = formerSplit(joined);
+    } catch (StringIndexOutOfBoundsException e) {
+      assertThatThrownBy(() -> MavenUtils.splitAsCsv(joined)).as("'%s'", joined).isInstanceOf(IllegalArgumentException.class);
+      return;
+    }
+    assertThat(MavenUtils.splitAsCsv(joined)).as("'%s'", joined).isEqualTo(expected);
+    assertThat(Csv.count(joined)).as("'%s'", joined).isEqualTo(expected.size());
+  }
+
+  /**
+   * {@link MavenUtils#joinAsCsv(List)} before {@link Csv}.
+   */
+  private static String formerJoin(List<String> values) {
+    return values.stream()
+      .map(value -> value.contains(",") ? ("\"" + value + "\"") : value)
+      .collect(Collectors.joining(","));
+  }
+
+  /**
+   * {@link MavenUtils#splitAsCsv(String)} before {@link Csv}, which fails with {@link StringIndexOutOfBoundsException} on
+   * a missing closing quote.
+   */
+  private static List<String> formerSplit(String joined) {
+    List<String> collected = new ArrayList<>();
+    if (joined.indexOf('"') == -1) {
+      return Arrays.asList(joined.split(","));
+    }
+    int start = 0;
+    int end = joined.length() - 1;
+    while (start < end && end < joined.length()) {
+      if (joined.charAt(start) == '"') {
+        end = joined.indexOf('"', start + 1);
+        String value = joined.substring(start + 1, end);
+        collected.add(value);
+        int nextComma = joined.indexOf(",", end);
+        if (nextComma == -1) {
+          break;
+        }
+        start = nextComma + 1;
+      } else {
+        int nextComma = joined.indexOf(",", start);
+        if (nextComma == -1) {
+          end = joined.length();
+        } else {
+          end = nextComma;
+        }
+        String value = joined.substring(start, end);
+        collected.add(value);
+        start = end + 1;
+      }
+      end = start + 1;
+    }
+    return collected;
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class EngineAutoTuningTest {
+
+  @TempDir
+  Path cgroup;
+
+  private final Log log = mock(Log.class);
+
+  @Test
+  void reads_cgroup_v2_limits() throws IOException {
+    Files.writeString(cgroup.resolve("cpu.max"), "250000 100000\n");
+    Files.writeString(cgroup.resolve("memory.max"), "4294967296\n");
+
+    EngineAutoTuning.ContainerLimits limits = EngineAutoTuning.ContainerLimits.read(cgroup, 16);
+
+    assertThat(limits.processors).isEqualTo(3);
+    assertThat(limits.memoryBytes).isEqualTo(4L * 1024 * 1024 * 1024);
+  }
+
+  @Test
+  void reads_unlimited_cgroup_v2() throws IOException {
+    Files.writeString(cgroup.resolve("cpu.max"), "max 100000\n");
+    Files.writeString(cgroup.resolve("memory.max"), "max\n");
+
+    EngineAutoTuning.ContainerLimits limits = EngineAutoTuning.ContainerLimits.read(cgroup, 16);
+
+    assertThat(limits.processors).isEqualTo(16);
+    assertThat(limits.memoryBytes).isNull();
+  }
+
+  @Test
+  void reads_cgroup_v1_limits() throws IOException {
+    Files.createDirectories(cgroup.resolve("cpu"));
+    Files.createDirectories(cgroup.resolve("memory"));
+    Files.writeString(cgroup.resolve("cpu/cpu.cfs_quota_us"), "50000\n");
+    Files.writeString(cgroup.resolve("cpu/cpu.cfs_period_us"), "100000\n");
+    Files.writeString(cgroup.resolve("memory/memory.limit_in_bytes"), "9223372036854771712\n");
+
+    EngineAutoTuning.ContainerLimits limits = EngineAutoTuning.ContainerLimits.read(cgroup, 8);
+
+    assertThat(limits.processors).isEqualTo(1);
+    assertThat(limits.memoryBytes).isNull();
+  }
+
+  @Test
+  void reads_cgroup_v1_cpu_limit_of_the_joint_cpu_and_cpuacct_controllers() throws IOException {
+    Files.createDirectories(cgroup.resolve("cpu,cpuacct"));
+    Files.writeString(cgroup.resolve("cpu,cpuacct/cpu.cfs_quota_us"), "200000\n");
+    Files.writeString(cgroup.resolve("cpu,cpuacct/cpu.cfs_period_us"), "100000\n");
+
+    assertThat(EngineAutoTuning.ContainerLimits.read(cgroup, 8).processors).isEqualTo(2);
+  }
+
+  @Test
+  void no_cgroup() {
+    EngineAutoTuning.ContainerLimits limits = EngineAutoTuning.ContainerLimits.read(cgroup.resolve("missing"), 4);
+
+    assertThat(limits.processors).isEqualTo(4);
+    assertThat(limits.memoryBytes).isNull();
+  }
+
+  @Test
+  void small_reactor_gets_the_minimum_heap() {
+    EngineAutoTuning tuning = new EngineAutoTuning(log, new EngineAutoTuning.ContainerLimits(8, null));
+
+    assertThat(tuning.javaOpts(1, Map.of("sonar.sources", "src/main/java,pom.xml"))).isEqualTo("-Xmx512m -XX:ActiveProcessorCount=2");
+    verify(log).info("Auto-tuned the scanner engine for 1 modules, 2 source paths and 0 libraries (limits: 8 CPUs, no memory limit): -Xmx512m -XX:ActiveProcessorCount=2");
+  }
+
+  @Test
+  void large_reactor_is_capped_by_the_container_limits() {
+    Map<String, String> properties = new HashMap<>();
+    for (int i = 0; i < 200; i++) {
+      properties.put("module" + i + ".sonar.sources", "src/main/java,pom.xml");
+      properties.put("module" + i + ".sonar.java.libraries", IntStream.range(0, 50).mapToObj(lib -> "lib" + lib + ".jar").collect(Collectors.joining(",")));
+    }
+    properties.put("module0.sonar.java.test.libraries", "junit.jar");
+
+    assertThat(new EngineAutoTuning(log, new EngineAutoTuning.ContainerLimits(64, null)).javaOpts(200, properties))
+      // 384 + 200 * 4 + 4 * 16 + 1 * 32
+      .isEqualTo("-Xmx1280m -XX:ActiveProcessorCount=50");
+    assertThat(new EngineAutoTuning(log, new EngineAutoTuning.ContainerLimits(4, 2048L * 1024 * 1024)).javaOpts(200, properties))
+      .isEqualTo("-Xmx1024m -XX:ActiveProcessorCount=4");
+  }
+
+  @Test
+  void heap_is_never_below_the_minimum_in_a_small_container() {
+    EngineAutoTuning tuning = new EngineAutoTuning(log, new EngineAutoTuning.ContainerLimits(2, 768L * 1024 * 1024));
+
+    assertThat(tuning.javaOpts(1, Map.of("sonar.sources", "src/main/java"))).isEqualTo("-Xmx512m -XX:ActiveProcessorCount=2");
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class EngineClassDataSharingTest {
+
+  @TempDir
+  Path temp;
+
+  private final Log log = mock(Log.class);
+  private final EngineClassDataSharing cds = new EngineClassDataSharing(log);
+
+  @Test
+  void jvm_creates_and_validates_the_archive_with_java_19_and_later() throws IOException {
+    String javaOpts = cds.javaOpts(bootstrapProperties(java("21.0.2")), "10.7");
+
+    assertThat(javaOpts).matches("-XX:SharedArchiveFile=.*[/\\\\]cache[/\\\\]appcds[/\\\\][0-9a-f]{16}\\.jsa -XX:\\+AutoCreateSharedArchive");
+    assertThat(temp.resolve("home/cache/appcds")).isDirectory();
+  }
+
+  @Test
+  void archive_is_dumped_at_exit_then_reused_with_older_java() throws IOException {
+    Map<String, String> properties = bootstrapProperties(java("17.0.10"));
+
+    String dump = cds.javaOpts(properties, "10.7");
+    assertThat(dump).startsWith("-XX:ArchiveClassesAtExit=");
+    Path archive = Path.of(dump.substring("-XX:ArchiveClassesAtExit=".length()));
+    writeArchive(archive, 0xf00baba8);
+
+    assertThat(cds.javaOpts(properties, "10.7")).isEqualTo("-XX:SharedArchiveFile=" + archive);
+    assertThat(cds.javaOpts(properties, "10.8")).startsWith("-XX:ArchiveClassesAtExit=").isNotEqualTo(dump);
+  }
+
+  @Test
+  void corrupt_or_stale_archives_are_regenerated() throws IOException {
+    Map<String, String> properties = bootstrapProperties(null);
+    String dump = cds.javaOpts(properties, null);
+    Path archive = Path.of(dump.substring("-XX:ArchiveClassesAtExit=".length()));
+
+    Files.writeString(archive, "garbage");
+    assertThat(cds.javaOpts(properties, null)).isEqualTo(dump);
+    assertThat(archive).doesNotExist();
+    verify(log).warn("The class-data sharing archive " + archive + " is corrupt, it is regenerated");
+
+    writeArchive(archive, 0xf00baba8);
+    Clock later = Clock.fixed(Instant.now().plus(Duration.ofDays(EngineClassDataSharing.MAX_AGE_DAYS + 1)), ZoneOffset.UTC);
+    assertThat(new EngineClassDataSharing(log, later).javaOpts(properties, null)).isEqualTo(dump);
+  }
+
+  @Test
+  void disabled_with_old_java_or_unknown_user_home() throws IOException {
+    assertThat(cds.javaOpts(bootstrapProperties(java("11.0.22")), "10.7")).isNull();
+    verify(log).info(startsWith("Class-data sharing of the scanner engine is disabled: Java 13+ is required"));
+
+    assertThat(cds.javaOpts(Map.of(), "10.7")).isNull();
+  }
+
+  private Map<String, String> bootstrapProperties(String javaExecutable) {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("sonar.userHome", temp.resolve("home").toString());
+    properties.put("sonar.host.url", "http://localhost:9000");
+    if (javaExecutable != null) {
+      properties.put("sonar.scanner.javaExePath", javaExecutable);
+    }
+    return properties;
+  }
+
+  private String java(String version) throws IOException {
+    Path home = temp.resolve("jdk-" + version);
+    Files.createDirectories(home.resolve("bin"));
+    Files.writeString(home.resolve("release"), "JAVA_VERSION=\"" + version + "\"\n");
+    return home.resolve("bin").resolve("java").toString();
+  }
+
+  private static void writeArchive(Path archive, int magic) throws IOException {
+    Files.write(archive, ByteBuffer.allocate(64).order(ByteOrder.nativeOrder()).putInt(magic).array());
+  }
+}
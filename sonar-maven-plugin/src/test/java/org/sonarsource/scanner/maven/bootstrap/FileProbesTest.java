@@ -0,0 +1,160 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileProbesTest {
+
+  private final ScannerMetrics metrics = new ScannerMetrics();
+
+  @Test
+  void each_path_is_checked_once() {
+    AtomicInteger checks = new AtomicInteger();
+    List<File> files = Arrays.asList(new File("/a"), new File("/b"), new File("/a"), new File("/c"));
+    try (FileProbes probes = new FileProbes(4, metrics, file -> {
+      checks.incrementAndGet();
+      return !file.getName().equals("b");
+    })) {
+      probes.prefetch(files);
+      probes.prefetch(files);
+
+      assertThat(probes.exists(new File("/a"))).isTrue();
+      assertThat(probes.exists(new File("/b"))).isFalse();
+      assertThat(probes.exists(new File("/d"))).isTrue();
+    }
+    assertThat(checks.get()).isEqualTo(4);
+    assertThat(metrics.count(ScannerMetrics.Counter.STAT_CALLS)).isEqualTo(4);
+  }
+
+  @Test
+  void each_path_is_canonicalized_once() throws Exception {
+    AtomicInteger canonicalizations = new AtomicInteger();
+    List<File> files = Arrays.asList(new File("/a/../b"), new File("/c"), new File("/a/../b"));
+    try (FileProbes probes = new FileProbes(4, metrics, file -> true, file -> {
+      canonicalizations.incrementAndGet();
+      return file.toPath().normalize().toFile();
+    })) {
+      probes.prefetchCanonicalFiles(files);
+      probes.prefetchCanonicalFiles(files);
+
+      assertThat(probes.canonicalFile(new File("/a/../b"))).isEqualTo(new File("/b"));
+      assertThat(probes.canonicalFile(new File("/c"))).isEqualTo(new File("/c"));
+    }
+    assertThat(canonicalizations.get()).isEqualTo(2);
+    // Each canonical path is also checked for being a directory
+    assertThat(metrics.count(ScannerMetrics.Counter.STAT_CALLS)).isEqualTo(4);
+  }
+
+  @Test
+  void failed_canonicalization_is_reported_when_needed() {
+    try (FileProbes probes = new FileProbes(4, metrics, file -> true, file -> {
+      throw new IOException("Invalid path");
+    })) {
+      probes.prefetchCanonicalFiles(Arrays.asList(new File("/a")));
+
+      assertThatThrownBy(() -> probes.canonicalFile(new File("/a")))
+        .isInstanceOf(IOException.class)
+        .hasMessage("Invalid path");
+    }
+  }
+
+  @Test
+  void concurrency_of_one_checks_paths_when_needed() {
+    AtomicInteger checks = new AtomicInteger();
+    try (FileProbes probes = new FileProbes(1, metrics, file -> checks.incrementAndGet() > 0)) {
+      probes.prefetch(Arrays.asList(new File("/a"), new File("/b")));
+      assertThat(checks.get()).isZero();
+
+      assertThat(probes.exists(new File("/a"))).isTrue();
+    }
+    assertThat(checks.get()).isEqualTo(1);
+  }
+
+  @Test
+  void checks_run_concurrently_within_the_bound() {
+    int concurrency = 3;
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch allStarted = new CountDownLatch(concurrency);
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      files.add(new File("/file-" + i));
+    }
+    try (FileProbes probes = new FileProbes(concurrency, metrics, file -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      allStarted.countDown();
+      try {
+        // The first checks only complete once the bound is reached
+        allStarted.await(10, TimeUnit.SECONDS);
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      running.decrementAndGet();
+      return true;
+    })) {
+      probes.prefetch(files);
+    }
+    assertThat(maxRunning.get()).isEqualTo(concurrency);
+    assertThat(metrics.count(ScannerMetrics.Counter.STAT_CALLS)).isEqualTo(30);
+  }
+
+  @Test
+  void checks_run_on_virtual_threads_when_available() throws Exception {
+    ExecutorService executor = FileProbes.newExecutor(2);
+    try {
+      Thread thread = executor.submit(Thread::currentThread).get();
+      if (FileProbes.supportsVirtualThreads()) {
+        assertThat(FileProbes.defaultConcurrency()).isEqualTo(FileProbes.DEFAULT_VIRTUAL_THREAD_CONCURRENCY);
+        assertThat(Thread.class.getMethod("isVirtual").invoke(thread)).isEqualTo(true);
+      } else {
+        assertThat(FileProbes.defaultConcurrency()).isEqualTo(FileProbes.DEFAULT_PLATFORM_THREAD_CONCURRENCY);
+        assertThat(thread.getName()).startsWith("sonar-file-probe-");
+        assertThat(thread.isDaemon()).isTrue();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void concurrency_must_be_a_positive_integer() throws MojoExecutionException {
+    assertThat(FileProbes.parseConcurrency(" 16 ")).isEqualTo(16);
+    assertThatThrownBy(() -> FileProbes.parseConcurrency("0"))
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("The value of sonar.maven.ioConcurrency must be a positive integer: 0");
+    assertThatThrownBy(() -> FileProbes.parseConcurrency("many"))
+      .isInstanceOf(MojoExecutionException.class);
+  }
+}
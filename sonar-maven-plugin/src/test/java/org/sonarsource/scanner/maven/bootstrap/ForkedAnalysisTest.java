@@ -0,0 +1,249 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
+import org.sonarsource.scanner.lib.ScannerEngineFacade;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ForkedAnalysisTest {
+
+  @TempDir
+  Path workDir;
+
+  private final Log log = mock(Log.class);
+
+  @Test
+  void analysis_runs_in_a_child_jvm_with_its_own_arguments() throws Exception {
+    ForkedAnalysis forkedAnalysis = new ForkedAnalysis(log, Map.of("sonar.token", "secret"), "ScannerMaven", "1.0", " -Dfork.test=\"forked JVM\"  -Xmx64m ",
+      FakeMain.class.getName());
+
+    forkedAnalysis.analyze(Map.of("sonar.projectKey", "my:project", "exit", "0"), workDir.toString());
+
+    verify(log).info("projectKey=my:project");
+    verify(log).info("token=secret");
+    verify(log).info("app=ScannerMaven/1.0");
+    verify(log).warn("jvmArg=forked JVM");
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      verify(log).debug("permissions=rw-------");
+    }
+    assertThat(workDir).isEmptyDirectory();
+  }
+
+  @Test
+  void properties_are_not_written_when_their_file_cannot_be_made_private() throws Exception {
+    // The zip file system supports neither POSIX permissions nor ACLs
+    URI zip = URI.create("jar:" + workDir.resolve("exchange.zip").toUri());
+    try (FileSystem fileSystem = FileSystems.newFileSystem(zip, Map.of("create", "true"))) {
+      Path file = fileSystem.getPath("bootstrap.properties");
+
+      assertThatThrownBy(() -> ForkedAnalysis.createPrivateFile(file))
+        .isInstanceOf(IOException.class)
+        .hasMessage("The access to bootstrap.properties can't be restricted to the current user");
+      assertThat(file).doesNotExist();
+    }
+  }
+
+  @Test
+  void jvm_arguments_are_split_on_whitespaces_out_of_quotes() throws MojoExecutionException {
+    assertThat(ForkedAnalysis.splitArguments(null)).isEmpty();
+    assertThat(ForkedAnalysis.splitArguments("  ")).isEmpty();
+    assertThat(ForkedAnalysis.splitArguments(" -Xmx1g\t-Da=b ")).containsExactly("-Xmx1g", "-Da=b");
+    assertThat(ForkedAnalysis.splitArguments("-Dpath=\"/my dir/lib\" '-Dmessage=say \"hi\"' -Dempty=\"\" \"\""))
+      .containsExactly("-Dpath=/my dir/lib", "-Dmessage=say \"hi\"", "-Dempty=", "");
+    assertThatThrownBy(() -> ForkedAnalysis.splitArguments("-Dpath=\"/my dir"))
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("Missing closing quote in sonar.maven.fork.jvmArgs: -Dpath=\"/my dir");
+  }
+
+  @Test
+  void analysis_roots_are_not_supported() {
+    AnalysisPropertiesCollector collector = mock(AnalysisPropertiesCollector.class);
+    when(collector.getProperty(MavenScannerProperties.ANALYSIS_ROOTS)).thenReturn("module-a");
+    ForkedAnalysis forkedAnalysis = new ForkedAnalysis(log, Map.of(), "ScannerMaven", "1.0", null, FakeMain.class.getName());
+
+    assertThatThrownBy(() -> forkedAnalysis.execute(collector, new ScannerMetrics()))
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("Parameter sonar.maven.analysisRoots is not supported with sonar.maven.fork");
+  }
+
+  @Test
+  void engine_parameters_are_ignored() throws Exception {
+    AnalysisPropertiesCollector collector = mock(AnalysisPropertiesCollector.class);
+    when(collector.getProperty(MavenScannerProperties.ENGINE_CDS)).thenReturn("true");
+    when(collector.getProperty(MavenScannerProperties.ENGINE_REUSE)).thenReturn("true");
+    when(collector.collectProperties()).thenReturn(new HashMap<>(Map.of("sonar.working.directory", workDir.toString(), "exit", "0")));
+    ForkedAnalysis forkedAnalysis = new ForkedAnalysis(log, Map.of(), "ScannerMaven", "1.0", null, FakeMain.class.getName());
+
+    forkedAnalysis.execute(collector, new ScannerMetrics());
+
+    verify(log).warn("Parameter sonar.maven.engineCds is ignored with sonar.maven.fork, the engine is bootstrapped by the child JVM");
+    verify(log).warn("Parameter sonar.maven.engineReuse is ignored with sonar.maven.fork, the engine is bootstrapped by the child JVM");
+  }
+
+  @Test
+  void exit_codes_are_mapped_to_failures() {
+    assertThatThrownBy(() -> fork(ForkedAnalysisMain.ANALYSIS_FAILED))
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("The scanner analysis has failed! See the logs for more details.");
+    assertThatThrownBy(() -> fork(ForkedAnalysisMain.BOOTSTRAP_FAILED))
+      .hasMessage("The scanner bootstrapping has failed! See the logs for more details.");
+    assertThatThrownBy(() -> fork(ForkedAnalysisMain.UNSUPPORTED_SERVER))
+      .hasMessage(ScannerBootstrapper.UNSUPPORTED_BELOW_SONARQUBE_56_MESSAGE);
+    assertThatThrownBy(() -> fork(42))
+      .hasMessage("The forked analysis exited with code 42. See the logs for more details.");
+    verify(log).error("exiting with 42");
+    assertThat(workDir).isEmptyDirectory();
+  }
+
+  @Test
+  void log_lines_are_mapped_to_maven_levels() {
+    try (AsyncLogBridge bridge = new AsyncLogBridge(log)) {
+      ForkedAnalysis.logLine(bridge, "[DEBUG] debug");
+      ForkedAnalysis.logLine(bridge, "[INFO] info");
+      ForkedAnalysis.logLine(bridge, "[WARN] warn");
+      ForkedAnalysis.logLine(bridge, "[WARNING] warning");
+      ForkedAnalysis.logLine(bridge, "[ERROR] error");
+      ForkedAnalysis.logLine(bridge, "\tat some.Stack(Trace.java)");
+    }
+
+    verify(log).debug("debug");
+    verify(log).info("info");
+    verify(log).warn("warn");
+    verify(log).warn("warning");
+    verify(log).error("error");
+    verify(log).info("\tat some.Stack(Trace.java)");
+  }
+
+  @Test
+  void main_bootstraps_and_analyzes() throws Exception {
+    ScannerEngineBootstrapper bootstrapper = mock(ScannerEngineBootstrapper.class);
+    ScannerEngineBootstrapResult result = mock(ScannerEngineBootstrapResult.class);
+    ScannerEngineFacade facade = mock(ScannerEngineFacade.class);
+    when(bootstrapper.addBootstrapProperties(anyMap())).thenReturn(bootstrapper);
+    when(bootstrapper.bootstrap()).thenReturn(result);
+    when(result.isSuccessful()).thenReturn(true);
+    when(result.getEngineFacade()).thenReturn(facade);
+    when(facade.getServerVersion()).thenReturn("10.7.0.1234");
+    when(facade.analyze(anyMap())).thenReturn(true);
+    String[] args = args(Map.of("sonar.host.url", "http://localhost"), Map.of("sonar.projectKey", "key"));
+
+    assertThat(ForkedAnalysisMain.run(args, (app, version) -> bootstrapper)).isEqualTo(ForkedAnalysisMain.SUCCESS);
+    verify(bootstrapper).addBootstrapProperties(Map.of("sonar.host.url", "http://localhost"));
+    verify(facade).analyze(Map.of("sonar.projectKey", "key"));
+    assertThat(System.getProperty("forked.system.property")).isEqualTo("value");
+
+    when(facade.analyze(anyMap())).thenReturn(false);
+    assertThat(ForkedAnalysisMain.run(args, (app, version) -> bootstrapper)).isEqualTo(ForkedAnalysisMain.ANALYSIS_FAILED);
+    when(facade.getServerVersion()).thenReturn("5.1");
+    assertThat(ForkedAnalysisMain.run(args, (app, version) -> bootstrapper)).isEqualTo(ForkedAnalysisMain.UNSUPPORTED_SERVER);
+    when(result.isSuccessful()).thenReturn(false);
+    assertThat(ForkedAnalysisMain.run(args, (app, version) -> bootstrapper)).isEqualTo(ForkedAnalysisMain.BOOTSTRAP_FAILED);
+    assertThat(ForkedAnalysisMain.run(new String[0], (app, version) -> bootstrapper)).isEqualTo(ForkedAnalysisMain.ERROR);
+    System.clearProperty("forked.system.property");
+  }
+
+  @Test
+  void server_versions_prior_to_5_6() {
+    assertThat(ForkedAnalysisMain.isPriorTo56(null)).isTrue();
+    assertThat(ForkedAnalysisMain.isPriorTo56("5.1")).isTrue();
+    assertThat(ForkedAnalysisMain.isPriorTo56("4.5.7")).isTrue();
+    assertThat(ForkedAnalysisMain.isPriorTo56("5.6")).isFalse();
+    assertThat(ForkedAnalysisMain.isPriorTo56("10.0-SNAPSHOT")).isFalse();
+    assertThat(ForkedAnalysisMain.isPriorTo56("2025.1.0.102418")).isFalse();
+  }
+
+  private void fork(int exitCode) throws MojoExecutionException {
+    new ForkedAnalysis(log, Map.of(), "ScannerMaven", "1.0", null, FakeMain.class.getName())
+      .analyze(Map.of("exit", String.valueOf(exitCode)), workDir.toString());
+  }
+
+  private String[] args(Map<String, String> bootstrap, Map<String, String> analysis) throws IOException {
+    return new String[] {
+      store("bootstrap", bootstrap),
+      store("analysis", analysis),
+      store("system", Map.of("forked.system.property", "value")),
+      "ScannerMaven",
+      "1.0"
+    };
+  }
+
+  private String store(String name, Map<String, String> properties) throws IOException {
+    Properties props = new Properties();
+    props.putAll(properties);
+    Path file = workDir.resolve(name + ".properties");
+    try (var out = Files.newOutputStream(file)) {
+      props.store(out, null);
+    }
+    return file.toString();
+  }
+
+  public static class FakeMain {
+    public static void main(String[] args) throws IOException {
+      Map<String, String> bootstrap = load(args[0]);
+      Map<String, String> analysis = load(args[1]);
+      System.out.println("[INFO] projectKey=" + analysis.get("sonar.projectKey"));
+      System.out.println("[INFO] token=" + bootstrap.get("sonar.token"));
+      System.out.println("[INFO] app=" + args[3] + "/" + args[4]);
+      System.out.println("[WARN] jvmArg=" + System.getProperty("fork.test"));
+      if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+        System.out.println("[DEBUG] permissions=" + PosixFilePermissions.toString(Files.getPosixFilePermissions(Paths.get(args[0]))));
+      }
+      int exit = Integer.parseInt(analysis.get("exit"));
+      if (exit != 0) {
+        System.err.println("[ERROR] exiting with " + exit);
+      }
+      System.exit(exit);
+    }
+
+    private static Map<String, String> load(String file) throws IOException {
+      Properties props = new Properties();
+      try (InputStream in = Files.newInputStream(Paths.get(file))) {
+        props.load(in);
+      }
+      Map<String, String> map = new HashMap<>();
+      props.stringPropertyNames().forEach(key -> map.put(key, props.getProperty(key)));
+      return map;
+    }
+  }
+}
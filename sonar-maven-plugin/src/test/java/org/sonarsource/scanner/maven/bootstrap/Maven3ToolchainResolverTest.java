@@ -0,0 +1,83 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.toolchain.Toolchain;
+import org.apache.maven.toolchain.ToolchainManager;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class Maven3ToolchainResolverTest {
+
+  private final MavenSession session = mock(MavenSession.class);
+  private final ToolchainManager toolchainManager = mock(ToolchainManager.class);
+  private final Maven3ToolchainResolver resolver = new Maven3ToolchainResolver(toolchainManager);
+
+  @Test
+  void matching_toolchains_and_jdk_homes_are_resolved_once() {
+    Toolchain jdk11 = toolchain("/jdk11/bin/javac");
+    when(toolchainManager.getToolchains(eq(session), eq("jdk"), anyMap())).thenReturn(List.of(jdk11));
+
+    assertThat(resolver.getJdkHomeFromToolchains(session, Map.of("version", "11"))).contains(Path.of("/jdk11").toAbsolutePath());
+    assertThat(resolver.getJdkHomeFromToolchains(session, Map.of("version", "11"))).contains(Path.of("/jdk11").toAbsolutePath());
+
+    verify(toolchainManager, times(1)).getToolchains(session, "jdk", Map.of("version", "11"));
+    verify(jdk11, times(1)).findTool("javac");
+
+    resolver.getJdkHomeFromToolchains(session, Map.of("version", "17"));
+    verify(toolchainManager, times(1)).getToolchains(session, "jdk", Map.of("version", "17"));
+  }
+
+  @Test
+  void build_context_toolchain_is_resolved_per_call_but_probed_once() {
+    Toolchain global = toolchain("/global/bin/javac");
+    when(toolchainManager.getToolchainFromBuildContext("jdk", session)).thenReturn(global);
+
+    assertThat(resolver.getJdkHomeFromToolchains(session, Map.of())).contains(Path.of("/global").toAbsolutePath());
+    assertThat(resolver.getJdkHomeFromToolchains(session, Map.of())).contains(Path.of("/global").toAbsolutePath());
+
+    verify(toolchainManager, times(2)).getToolchainFromBuildContext("jdk", session);
+    verify(global, times(1)).findTool("javac");
+    verify(toolchainManager, times(0)).getToolchains(any(), any(), any());
+  }
+
+  @Test
+  void no_toolchain() {
+    assertThat(resolver.getJdkHomeFromToolchains(session, Map.of())).isEmpty();
+  }
+
+  private static Toolchain toolchain(String javac) {
+    Toolchain toolchain = mock(Toolchain.class);
+    when(toolchain.findTool("javac")).thenReturn(javac);
+    return toolchain;
+  }
+}
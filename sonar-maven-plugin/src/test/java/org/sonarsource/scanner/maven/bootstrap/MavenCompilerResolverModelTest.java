@@ -0,0 +1,130 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.LifecycleExecutor;
+import org.apache.maven.lifecycle.MavenExecutionPlan;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.scanner.maven.bootstrap.MavenCompilerResolver.CompilerExecution;
+import org.sonarsource.scanner.maven.bootstrap.MavenCompilerResolver.MavenCompilerConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MavenCompilerResolverModelTest {
+
+  private final MavenSession session = new MavenSession(null, null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+  private final LifecycleExecutor lifecycleExecutor = mock(LifecycleExecutor.class);
+  private final Log log = mock(Log.class);
+
+  @Test
+  void configuration_is_read_from_the_model_without_calculating_the_execution_plan() throws Exception {
+    CompilerModelReader modelReader = pom -> Optional.of(List.of(
+      execution("java9-compile", "compile", "9"),
+      execution("default-testCompile", "testCompile", "17"),
+      execution("default-compile", "compile", "17")));
+    MavenCompilerResolver resolver = new MavenCompilerResolver(session, lifecycleExecutor, log, (moduleSession, jdkToolchain) -> Optional.empty(), modelReader);
+
+    Optional<MavenCompilerConfiguration> configuration = resolver.extractConfiguration(project());
+
+    assertThat(configuration).isPresent();
+    assertThat(configuration.get().getExecutionId()).isEqualTo("default-compile");
+    assertThat(configuration.get().getRelease()).contains("17");
+    assertThat(configuration.get().getJdkHome()).contains(Path.of("/jdk17"));
+    assertThat(resolver.getHeterogeneousModules()).containsExactly("com.acme:module");
+    verify(lifecycleExecutor, never()).calculateExecutionPlan(any(MavenSession.class), anyBoolean(), anyString());
+  }
+
+  @Test
+  void execution_plan_is_calculated_when_the_model_is_not_enough() throws Exception {
+    when(lifecycleExecutor.calculateExecutionPlan(any(MavenSession.class), anyBoolean(), anyString())).thenReturn(new MavenExecutionPlan(List.of(), null));
+    MavenCompilerResolver resolver = new MavenCompilerResolver(session, lifecycleExecutor, log, (moduleSession, jdkToolchain) -> Optional.empty(), pom -> Optional.empty());
+
+    assertThat(resolver.extractConfiguration(project())).isEmpty();
+    verify(lifecycleExecutor).calculateExecutionPlan(any(MavenSession.class), anyBoolean(), anyString());
+  }
+
+  @Test
+  void execution_plan_is_calculated_when_the_model_api_is_not_linked() throws Exception {
+    when(lifecycleExecutor.calculateExecutionPlan(any(MavenSession.class), anyBoolean(), anyString())).thenReturn(new MavenExecutionPlan(List.of(), null));
+    CompilerModelReader modelReader = pom -> {
+      throw new NoSuchMethodError("org.apache.maven.api.xml.XmlNode.value()");
+    };
+    MavenCompilerResolver resolver = new MavenCompilerResolver(session, lifecycleExecutor, log, (moduleSession, jdkToolchain) -> Optional.empty(), modelReader);
+
+    assertThat(resolver.extractConfiguration(project())).isEmpty();
+    verify(lifecycleExecutor).calculateExecutionPlan(any(MavenSession.class), anyBoolean(), anyString());
+  }
+
+  @Test
+  void configuration_is_resolved_once_per_module() {
+    AtomicInteger reads = new AtomicInteger();
+    CompilerModelReader modelReader = pom -> {
+      reads.incrementAndGet();
+      return Optional.of(List.of(execution("default-compile", "compile", "17")));
+    };
+    MavenProject aggregator = project();
+    aggregator.setPackaging("pom");
+    MavenProject module = project();
+    session.setProjects(List.of(aggregator, module));
+    MavenCompilerResolver resolver = new MavenCompilerResolver(session, lifecycleExecutor, log, (moduleSession, jdkToolchain) -> Optional.empty(), modelReader);
+
+    assertThat(resolver.getReactorJdkHome()).contains(Path.of("/jdk17"));
+    assertThat(resolver.extractConfiguration(module)).isPresent();
+    assertThat(reads).hasValue(1);
+  }
+
+  @Test
+  void no_model_reader_under_maven_3() {
+    assertThat(CompilerModelReader.forSession(session)).isEmpty();
+  }
+
+  private static CompilerExecution execution(String executionId, String goal, String release) {
+    return new CompilerExecution(executionId, goal, Optional.of(release), Optional.empty(), Optional.empty(), Optional.empty(),
+      Optional.of("/jdk" + release + "/bin/javac"), Map.of());
+  }
+
+  private static MavenProject project() {
+    Model model = new Model();
+    model.setGroupId("com.acme");
+    model.setArtifactId("module");
+    MavenProject project = new MavenProject(model);
+    project.setFile(new File("module", "pom.xml").getAbsoluteFile());
+    return project;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.model.ReportPlugin;
+import org.apache.maven.model.Reporting;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MavenPluginIndexTest {
+
+  private static final String GROUP_ID = "org.apache.maven.plugins";
+  private static final String ARTIFACT_ID = "maven-surefire-plugin";
+
+  @Test
+  void merges_plugin_management_without_mutating_the_model() {
+    Xpp3Dom buildConfiguration = configuration("reportsDirectory", "build-reports");
+    Xpp3Dom managedConfiguration = configuration("reportsDirectory", "managed-reports");
+    managedConfiguration.addChild(node("forkCount", "2"));
+    MavenProject project = project(plugin(buildConfiguration), plugin(managedConfiguration));
+
+    MavenPlugin plugin = MavenPluginIndex.of(project).getPlugin(GROUP_ID, ARTIFACT_ID);
+
+    assertThat(plugin).isNotNull();
+    assertThat(plugin.getParameter("reportsDirectory")).isEqualTo("build-reports");
+    assertThat(plugin.getParameter("forkCount")).isEqualTo("2");
+    assertThat(buildConfiguration.getChildCount()).isEqualTo(1);
+    assertThat(buildConfiguration.getChild("forkCount")).isNull();
+    assertThat(managedConfiguration.getChildCount()).isEqualTo(2);
+  }
+
+  @Test
+  void falls_back_to_reporting_then_plugin_management() {
+    ReportPlugin reportPlugin = new ReportPlugin();
+    reportPlugin.setGroupId(GROUP_ID);
+    reportPlugin.setArtifactId(ARTIFACT_ID);
+    reportPlugin.setConfiguration(configuration("reportsDirectory", "reporting"));
+    MavenProject project = project(null, null);
+    Reporting reporting = new Reporting();
+    reporting.addPlugin(reportPlugin);
+    project.getModel().setReporting(reporting);
+
+    assertThat(MavenPluginIndex.of(project).getPlugin(GROUP_ID, ARTIFACT_ID).getParameter("reportsDirectory")).isEqualTo("reporting");
+
+    MavenProject managedOnly = project(null, plugin(configuration("reportsDirectory", "managed")));
+    assertThat(MavenPluginIndex.of(managedOnly).getPlugin(GROUP_ID, ARTIFACT_ID).getParameter("reportsDirectory")).isEqualTo("managed");
+  }
+
+  @Test
+  void first_declaration_wins_and_lookups_are_reused() {
+    MavenProject project = project(plugin(configuration("reportsDirectory", "first")), null);
+    project.getBuild().addPlugin(plugin(configuration("reportsDirectory", "second")));
+
+    MavenPluginIndex index = MavenPluginIndex.of(project);
+
+    assertThat(index.getPlugin(GROUP_ID, ARTIFACT_ID).getParameter("reportsDirectory")).isEqualTo("first");
+    assertThat(index.getPlugin(GROUP_ID, ARTIFACT_ID)).isSameAs(index.getPlugin(GROUP_ID, ARTIFACT_ID));
+    assertThat(index.getPlugin(GROUP_ID, "unknown")).isNull();
+    assertThat(MavenUtils.getPluginSetting(index, GROUP_ID, "unknown", "reportsDirectory", "default")).isEqualTo("default");
+  }
+
+  @Test
+  void resolves_indexed_key_paths() {
+    Xpp3Dom configuration = new Xpp3Dom("configuration");
+    Xpp3Dom excludes = new Xpp3Dom("excludes");
+    excludes.addChild(node("exclude", "a"));
+    excludes.addChild(node("exclude", "b"));
+    configuration.addChild(excludes);
+    MavenPlugin plugin = MavenPluginIndex.of(project(plugin(configuration), null)).getPlugin(GROUP_ID, ARTIFACT_ID);
+
+    assertThat(plugin.getParameter("excludes/exclude")).isEqualTo("a");
+    assertThat(plugin.getParameter("excludes/exclude[0]")).isEqualTo("a");
+    assertThat(plugin.getParameter("excludes/exclude[1]")).isEqualTo("b");
+    assertThat(plugin.getParameter("excludes/exclude[2]")).isNull();
+    assertThat(plugin.getParameter("excludes[0]/exclude[1]")).isEqualTo("b");
+    // not an index: falls back to the first element, as before
+    assertThat(plugin.getParameter("excludes/exclude[]")).isEqualTo("a");
+    assertThat(plugin.getParameter("missing/exclude")).isNull();
+  }
+
+  private static MavenProject project(Plugin buildPlugin, Plugin managedPlugin) {
+    Model model = new Model();
+    Build build = new Build();
+    if (buildPlugin != null) {
+      build.addPlugin(buildPlugin);
+    }
+    if (managedPlugin != null) {
+      PluginManagement pluginManagement = new PluginManagement();
+      pluginManagement.addPlugin(managedPlugin);
+      build.setPluginManagement(pluginManagement);
+    }
+    model.setBuild(build);
+    return new MavenProject(model);
+  }
+
+  private static Plugin plugin(Xpp3Dom configuration) {
+    Plugin plugin = new Plugin();
+    plugin.setGroupId(GROUP_ID);
+    plugin.setArtifactId(ARTIFACT_ID);
+    plugin.setConfiguration(configuration);
+    return plugin;
+  }
+
+  private static Xpp3Dom configuration(String name, String value) {
+    Xpp3Dom configuration = new Xpp3Dom("configuration");
+    configuration.addChild(node(name, value));
+    return configuration;
+  }
+
+  private static Xpp3Dom node(String name, String value) {
+    Xpp3Dom node = new Xpp3Dom(name);
+    node.setValue(value);
+    return node;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.lib.AnalysisProperties;
+import org.sonarsource.scanner.maven.TestLog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Guards against super-linear regressions in the conversion of large reactors. Ratios are compared per module between
+ * a small and a ten times larger reactor, with generous margins: a quadratic step would show up as a ten-fold increase.
+ */
+class MavenProjectConverterScalabilityTest {
+
+  private static final int RUNS = 3;
+
+  @TempDir
+  Path temp;
+
+  private final TestLog log = new TestLog(TestLog.LogLevel.INFO);
+
+  @Test
+  void fixture_reactor_is_fully_converted() throws Exception {
+    ReactorFixture reactor = ReactorFixture.builder(temp).width(4).depth(2).libraries(3).sharedParent().pluginManagement().warModules(5).pomModules(7).shuffled(1).build();
+
+    Map<String, String> props = reactor.newCollector(log, new Properties()).collectProperties();
+
+    assertThat(reactor.leafModules()).isEqualTo(16);
+    assertThat(props.get("sonar.modules").split(",")).hasSize(5);
+    String war = ReactorFixture.GROUP_ID + ":root-0." + ReactorFixture.GROUP_ID + ":root-0-0.";
+    assertThat(props.get(war + AnalysisProperties.PROJECT_SOURCE_DIRS)).contains("src" + File.separator + "main" + File.separator + "webapp");
+    assertThat(props.get(war + "sonar.junit.reportPaths")).endsWith("surefire-reports");
+    assertThat(props.get(war + "sonar.java.libraries").split(",")).hasSize(3);
+    assertThat(props.keySet().stream().filter(key -> key.endsWith(AnalysisProperties.PROJECT_BASEDIR))).hasSize(reactor.projects().size());
+  }
+
+  @Test
+  void conversion_allocations_grow_linearly_with_module_count() throws Exception {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    ReactorFixture small = reactor("small", 10);
+    ReactorFixture large = reactor("large", 32);
+    // warm up
+    measure(small, threads);
+
+    long smallAllocated = measure(small, threads);
+    long largeAllocated = measure(large, threads);
+
+    double modulesRatio = (double) large.projects().size() / small.projects().size();
+    assertThat(modulesRatio).isGreaterThan(9);
+    // The conversion time is measured by MavenProjectConverterBenchmark, a wall clock assertion would depend on the load of the machine
+    assertThat(largeAllocated / modulesRatio)
+      .as("allocated bytes, small reactor: %s, large reactor: %s", smallAllocated, largeAllocated)
+      .isLessThan(smallAllocated * 1.5);
+  }
+
+  private ReactorFixture reactor(String name, int width) throws Exception {
+    return ReactorFixture.builder(temp.resolve(name)).width(width).depth(2).libraries(20).sharedParent().pluginManagement().warModules(10).shuffled(42).build();
+  }
+
+  /**
+   * Fewest allocated bytes of a few runs, to be less sensitive to JIT compilation.
+   */
+  private long measure(ReactorFixture reactor, com.sun.management.ThreadMXBean threads) throws MojoExecutionException {
+    long threadId = Thread.currentThread().getId();
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < RUNS; i++) {
+      MavenProjectConverter converter = reactor.newConverter(log);
+      long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+      Map<String, String> props = converter.configure(reactor.projects(), reactor.root(), ReactorFixture.withSequentialProbes(new Properties()));
+      long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+      assertThat(props).isNotEmpty();
+      best = Math.min(best, allocated);
+    }
+    return best;
+  }
+}
@@ -76,6 +76,21 @@ class MavenProjectConverterTest {
       .containsEntry("sonar.projectVersion", "2.1");
   }
 
+  @Test
+  void convertWithSequentialFileProbes() throws Exception {
+    MavenProject project = createProject(new Properties(), "jar");
+    Properties userProperties = new Properties();
+    userProperties.setProperty("sonar.maven.ioConcurrency", "1");
+
+    Map<String, String> props = projectConverter.configure(Collections.singletonList(project), project, userProperties);
+    assertThat(props).containsEntry("sonar.sources", temp.toAbsolutePath().resolve("pom.xml").toAbsolutePath().toString());
+
+    userProperties.setProperty("sonar.maven.ioConcurrency", "-1");
+    assertThatThrownBy(() -> projectConverter.configure(Collections.singletonList(project), project, userProperties))
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("The value of sonar.maven.ioConcurrency must be a positive integer: -1");
+  }
+
   // MSONAR-104
   @Test
   void convertSingleModuleProjectAvoidNestedFolders() throws Exception {
@@ -302,6 +317,8 @@ class MavenProjectConverterTest {
       .containsEntry(module2Key + ".sonar.projectBaseDir", module2BaseDir.getAbsolutePath());
 
     assertThat(projectConverter.getSkippedBasedDirs()).containsOnly(module11BaseDir.toPath());
+    assertThatThrownBy(() -> projectConverter.getSkippedBasedDirs().remove(module11BaseDir.toPath()))
+      .isInstanceOf(UnsupportedOperationException.class);
 
     verify(log).info("Module MavenProject: com.foo:module11:2.1 @ "
       + new File(module11BaseDir, "pom.xml").getAbsolutePath()
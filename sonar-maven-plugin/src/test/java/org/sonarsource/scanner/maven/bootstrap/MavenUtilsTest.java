@@ -126,4 +126,17 @@ class MavenUtilsTest {
       .as("Should be true when suffixed with text")
       .isTrue();
   }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"sonar.token", "sonar.login", "sonar.password", "sonar.scanner.proxyPassword", "sonar.scanner.keystorePassword", "my.client.secret",
+    "sonar.auth.credentials", "SONAR_TOKEN"})
+  void sensitive_properties(String name) {
+    assertThat(MavenUtils.isSensitive(name)).isTrue();
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"sonar.host.url", "sonar.projectKey", "sonar.login.url", "sonar.sources"})
+  void not_sensitive_properties(String name) {
+    assertThat(MavenUtils.isSensitive(name)).isFalse();
+  }
 }
@@ -0,0 +1,118 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PathTrieTest {
+
+  private final Path root = Paths.get("/").toAbsolutePath().getRoot();
+
+  @Test
+  void behaves_like_a_set() {
+    PathTrie trie = new PathTrie();
+    Path sources = root.resolve("work").resolve("project").resolve("src");
+
+    assertThat(trie.add(sources)).isTrue();
+    assertThat(trie.add(sources.resolve("main"))).isTrue();
+    assertThat(trie.add(root.resolve("work").resolve("project").resolve("src"))).isFalse();
+
+    assertThat(trie).hasSize(2).containsExactly(sources, sources.resolve("main"));
+    assertThat(trie.contains(sources.getParent())).isFalse();
+    assertThat(trie.contains(sources.resolve("test"))).isFalse();
+    assertThat(trie.contains("not a path")).isFalse();
+    assertThat(trie).isEqualTo(new HashSet<>(Arrays.asList(sources.resolve("main"), sources)));
+  }
+
+  @Test
+  void finds_ancestors() {
+    Path module = root.resolve("work").resolve("module");
+    PathTrie trie = new PathTrie(Arrays.asList(module.resolve("src"), module.resolve("pom.xml")));
+
+    assertThat(trie.containsSelfOrAncestor(module.resolve("src"))).isTrue();
+    assertThat(trie.containsSelfOrAncestor(module.resolve("src").resolve("main").resolve("App.java"))).isTrue();
+    assertThat(trie.containsSelfOrAncestor(module.resolve("pom.xml"))).isTrue();
+    assertThat(trie.containsSelfOrAncestor(module)).isFalse();
+    assertThat(trie.containsSelfOrAncestor(module.resolve("srcs"))).isFalse();
+    assertThat(trie.containsSelfOrAncestor(Paths.get("src", "main"))).isFalse();
+  }
+
+  @Test
+  void keeps_relative_and_absolute_paths_apart() {
+    Path relative = Paths.get("src", "main", "java");
+    PathTrie trie = new PathTrie(Arrays.asList(relative, relative.toAbsolutePath()));
+
+    assertThat(trie).containsExactlyInAnyOrder(relative, relative.toAbsolutePath());
+    assertThat(trie.containsSelfOrAncestor(relative.resolve("App.java"))).isTrue();
+    assertThat(trie.contains(Paths.get("src"))).isFalse();
+  }
+
+  @Test
+  void stores_directories_with_many_children() {
+    Path dir = root.resolve("work").resolve("generated");
+    List<Path> files = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      files.add(dir.resolve("File" + i + ".java"));
+    }
+    PathTrie trie = new PathTrie(files);
+
+    assertThat(trie).hasSize(1000).containsExactlyInAnyOrderElementsOf(files);
+    assertThat(trie.contains(dir.resolve("File999.java"))).isTrue();
+    assertThat(trie.contains(dir.resolve("File1000.java"))).isFalse();
+    assertThat(trie.containsSelfOrAncestor(dir)).isFalse();
+  }
+
+  @Test
+  void can_be_cleared() {
+    PathTrie trie = new PathTrie(Arrays.asList(root.resolve("a"), root.resolve("b")));
+
+    trie.clear();
+
+    assertThat(trie).isEmpty();
+    assertThat(trie.contains(root.resolve("a"))).isFalse();
+    Iterator<Path> iterator = trie.iterator();
+    assertThat(iterator.hasNext()).isFalse();
+    assertThatThrownBy(iterator::next).isInstanceOf(NoSuchElementException.class);
+    assertThat(trie.add(root.resolve("a"))).isTrue();
+    assertThat(trie).containsExactly(root.resolve("a"));
+  }
+
+  @Test
+  void reuses_tries() {
+    PathTrie trie = new PathTrie();
+    Set<Path> set = new HashSet<>(Arrays.asList(root.resolve("a"), root));
+
+    assertThat(PathTrie.of(trie)).isSameAs(trie);
+    assertThat(PathTrie.of(set)).containsExactlyInAnyOrderElementsOf(set);
+    assertThat(PathTrie.of(set).containsSelfOrAncestor(root.resolve("b"))).isTrue();
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.maven.TestLog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Memory budgets of {@link ScannerBootstrapper#collectProperties()} on a synthetic reactor: bytes allocated per module by
+ * the whole pipeline, from the conversion to the decryption and scanAll, and retained size of the final map per module.
+ * Budgets are about twice the current figures: an additional copy of the properties fails, JDK or fixture changes do not.
+ */
+class PropertyPipelineMemoryTest {
+
+  private static final long ALLOCATED_BYTES_PER_MODULE_BUDGET = 100_000;
+  private static final long SCAN_ALL_ALLOCATED_BYTES_PER_MODULE_BUDGET = 200_000;
+  private static final long RETAINED_BYTES_PER_MODULE_BUDGET = 16_000;
+  private static final double RETAINED_TO_PAYLOAD_RATIO_BUDGET = 2;
+  private static final int RUNS = 3;
+
+  @TempDir
+  static Path temp;
+
+  private static ReactorFixture reactor;
+
+  private final TestLog log = new TestLog(TestLog.LogLevel.INFO);
+  private com.sun.management.ThreadMXBean threads;
+
+  @BeforeAll
+  static void createReactor() throws Exception {
+    reactor = ReactorFixture.builder(temp).width(16).depth(2).libraries(20).sharedParent().pluginManagement().warModules(10).shuffled(7).build();
+  }
+
+  @BeforeEach
+  void enableAllocationCounters() {
+    threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @Test
+  void allocations_per_module_stay_within_budget() throws MojoExecutionException {
+    long perModule = allocatedBytes(new Properties()) / reactor.projects().size();
+
+    assertThat(perModule)
+      .withFailMessage("collectProperties allocated %d bytes per module, more than the budget of %d bytes", perModule, ALLOCATED_BYTES_PER_MODULE_BUDGET)
+      .isLessThan(ALLOCATED_BYTES_PER_MODULE_BUDGET);
+  }
+
+  @Test
+  void allocations_per_module_with_scan_all_stay_within_budget() throws MojoExecutionException {
+    Properties userProperties = new Properties();
+    userProperties.setProperty(MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES, "true");
+
+    long perModule = allocatedBytes(userProperties) / reactor.projects().size();
+
+    assertThat(perModule)
+      .withFailMessage("collectProperties with scanAll allocated %d bytes per module, more than the budget of %d bytes", perModule, SCAN_ALL_ALLOCATED_BYTES_PER_MODULE_BUDGET)
+      .isLessThan(SCAN_ALL_ALLOCATED_BYTES_PER_MODULE_BUDGET);
+  }
+
+  @Test
+  void retained_size_of_properties_stays_within_budget() throws MojoExecutionException {
+    Map<String, String> props = reactor.newCollector(log, new Properties()).collectProperties();
+    long retained = RetainedSize.of(props);
+    long payload = 0;
+    for (Map.Entry<String, String> entry : props.entrySet()) {
+      payload += entry.getKey().length() + entry.getValue().length();
+    }
+
+    long perModule = retained / reactor.projects().size();
+    assertThat(perModule)
+      .withFailMessage("The properties retain %d bytes per module, more than the budget of %d bytes", perModule, RETAINED_BYTES_PER_MODULE_BUDGET)
+      .isLessThan(RETAINED_BYTES_PER_MODULE_BUDGET);
+    // Identical values shared between modules or properties are only counted once
+    assertThat((double) retained / payload)
+      .withFailMessage("The properties retain %d bytes for %d characters of keys and values", retained, payload)
+      .isLessThan(RETAINED_TO_PAYLOAD_RATIO_BUDGET);
+  }
+
+  @Test
+  void retained_size_counts_shared_strings_once() {
+    String value = "a,b,c";
+    long single = RetainedSize.of(Collections.singletonMap("key", value));
+    Map<String, String> shared = new HashMap<>();
+    shared.put("key1", value);
+    shared.put("key2", value);
+
+    assertThat(RetainedSize.of(shared)).isLessThan(2 * single);
+    assertThat(RetainedSize.of(Collections.emptyMap())).isZero();
+  }
+
+  /**
+   * Least allocations of a few runs, summed over all threads since scanAll crawls directories in parallel.
+   */
+  private long allocatedBytes(Properties userProperties) throws MojoExecutionException {
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i <= RUNS; i++) {
+      AnalysisPropertiesCollector collector = reactor.newCollector(log, ReactorFixture.withSequentialProbes(userProperties));
+      long before = totalAllocatedBytes();
+      Map<String, String> props = collector.collectProperties();
+      long allocated = totalAllocatedBytes() - before;
+      assertThat(props).isNotEmpty();
+      // The first run warms up
+      if (i > 0) {
+        best = Math.min(best, allocated);
+      }
+    }
+    return best;
+  }
+
+  private long totalAllocatedBytes() {
+    long total = 0;
+    for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+      // -1 for threads which terminated in between
+      total += Math.max(0, allocated);
+    }
+    return total;
+  }
+
+  /**
+   * Estimates the retained size of a map of strings, with the layout of a {@link java.util.HashMap} on a 64-bit JVM with
+   * compressed references: 12 bytes of object header, 4 bytes per reference, objects aligned on 8 bytes. Strings are
+   * counted once however many entries reference them, as the map is what keeps them alive.
+   */
+  static final class RetainedSize {
+
+    private static final int MAP = 48;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int NODE = 32;
+    private static final int STRING = 24;
+
+    private RetainedSize() {
+    }
+
+    static long of(Map<String, String> map) {
+      if (map.isEmpty()) {
+        return 0;
+      }
+      int tableSize = Integer.highestOneBit(Math.max(1, (int) (map.size() / 0.75f)) * 2 - 1);
+      long size = MAP + align(ARRAY_HEADER + (long) REFERENCE * tableSize) + (long) NODE * map.size();
+      Set<String> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        size += string(entry.getKey(), counted) + string(entry.getValue(), counted);
+      }
+      return size;
+    }
+
+    private static long string(String value, Set<String> counted) {
+      if (!counted.add(value)) {
+        return 0;
+      }
+      // Compact strings: one byte per character unless some character is not Latin-1
+      boolean latin1 = StandardCharsets.ISO_8859_1.newEncoder().canEncode(value);
+      return STRING + align(ARRAY_HEADER + (long) value.length() * (latin1 ? 1 : 2));
+    }
+
+    private static long align(long bytes) {
+      return (bytes + 7) & ~7L;
+    }
+  }
+}
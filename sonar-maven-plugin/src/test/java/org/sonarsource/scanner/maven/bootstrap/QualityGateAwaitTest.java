@@ -0,0 +1,196 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class QualityGateAwaitTest {
+
+  @TempDir
+  Path workDir;
+
+  private final Log log = mock(Log.class);
+  private final Deque<String> taskStatuses = new ConcurrentLinkedDeque<>();
+  private final List<String> authorizations = new CopyOnWriteArrayList<>();
+  private final List<Long> sleeps = new ArrayList<>();
+  private final AtomicLong clock = new AtomicLong();
+  private volatile String gateStatus = "OK";
+  private HttpServer server;
+  private String serverUrl;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/api/ce/task", exchange -> {
+      authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+      String status = taskStatuses.size() > 1 ? taskStatuses.poll() : taskStatuses.peek();
+      respond(exchange, "{\"task\":{\"id\":\"AX1\",\"status\":\"" + status + "\",\"analysisId\":\"AN1\",\"errorMessage\":\"Boom\"}}");
+    });
+    server.createContext("/api/qualitygates/project_status", exchange -> {
+      assertThat(exchange.getRequestURI().getQuery()).isEqualTo("analysisId=AN1");
+      respond(exchange, "{\"projectStatus\":{\"status\":\"" + gateStatus + "\"}}");
+    });
+    server.start();
+    serverUrl = "http://localhost:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void polls_the_task_with_backoff_then_passes_the_quality_gate() throws Exception {
+    taskStatuses.addAll(List.of("PENDING", "IN_PROGRESS", "IN_PROGRESS", "SUCCESS"));
+
+    newAwait(Map.of("sonar.token", "squ_token")).await(reportTask());
+
+    assertThat(sleeps).containsExactly(500L, 1000L, 2000L);
+    assertThat(authorizations).containsOnly("Bearer squ_token");
+    verify(log).info("QUALITY GATE STATUS: PASSED - View details on " + serverUrl + "/dashboard?id=my%3Aproject");
+  }
+
+  @Test
+  void failed_quality_gate_fails_the_build() throws Exception {
+    taskStatuses.add("SUCCESS");
+    gateStatus = "ERROR";
+
+    assertThatThrownBy(() -> newAwait(Map.of("sonar.login", "admin", "sonar.password", "secret")).await(reportTask()))
+      .isInstanceOf(MojoFailureException.class)
+      .hasMessage("QUALITY GATE STATUS: FAILED - View details on " + serverUrl + "/dashboard?id=my%3Aproject");
+    assertThat(authorizations).containsOnly("Basic YWRtaW46c2VjcmV0");
+  }
+
+  @Test
+  void failed_task_fails_the_build() throws Exception {
+    taskStatuses.add("FAILED");
+
+    assertThatThrownBy(() -> newAwait(Map.of()).await(reportTask()))
+      .isInstanceOf(MojoFailureException.class)
+      .hasMessage("The analysis task AX1 is FAILED: Boom");
+  }
+
+  @Test
+  void gives_up_after_the_timeout() throws Exception {
+    taskStatuses.add("PENDING");
+
+    assertThatThrownBy(() -> newAwait(Map.of("sonar.qualitygate.timeout", "30")).await(reportTask()))
+      .isInstanceOf(MojoFailureException.class)
+      .hasMessage("The analysis task AX1 was not processed in time, its status is PENDING. The timeout can be increased with sonar.qualitygate.timeout");
+    assertThat(sleeps).containsExactly(500L, 1000L, 2000L, 4000L, 8000L, 10000L, 4500L);
+  }
+
+  @Test
+  void unexpected_response_fails_the_execution() throws Exception {
+    server.removeContext("/api/ce/task");
+    server.createContext("/api/ce/task", exchange -> respond(exchange, "{\"errors\":[{\"msg\":\"Unknown\"}]}"));
+
+    assertThatThrownBy(() -> newAwait(Map.of()).await(reportTask()))
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("Unexpected response from /api/ce/task?id=AX1: no task object");
+  }
+
+  @Test
+  void error_status_fails_the_execution() throws Exception {
+    server.removeContext("/api/ce/task");
+    server.createContext("/api/ce/task", exchange -> {
+      exchange.sendResponseHeaders(401, -1);
+      exchange.close();
+    });
+
+    assertThatThrownBy(() -> newAwait(Map.of("sonar.token", "expired")).await(reportTask()))
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessageContaining("401");
+  }
+
+  @Test
+  void report_task_file_is_in_the_working_directory_unless_a_metadata_file_path_is_set() {
+    Path defaultWorkDir = workDir.resolve("target/sonar");
+
+    assertThat(QualityGateAwait.reportTaskFile(Map.of(), defaultWorkDir)).isEqualTo(defaultWorkDir.resolve("report-task.txt"));
+    assertThat(QualityGateAwait.reportTaskFile(Map.of("sonar.working.directory", "/work"), defaultWorkDir)).isEqualTo(Path.of("/work", "report-task.txt"));
+    assertThat(QualityGateAwait.reportTaskFile(Map.of("sonar.working.directory", "/work", "sonar.scanner.metadataFilePath", "/tmp/metadata.txt"), defaultWorkDir))
+      .isEqualTo(Path.of("/tmp/metadata.txt"));
+  }
+
+  @Test
+  void missing_report_task() {
+    assertThatThrownBy(() -> newAwait(Map.of()).await(workDir.resolve("report-task.txt")))
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessageContaining("the sonar goal must run before the await goal");
+  }
+
+  private QualityGateAwait newAwait(Map<String, String> globalProperties) {
+    return new QualityGateAwait(log, globalProperties, url -> {
+      Map<String, String> httpProperties = new HashMap<>(globalProperties);
+      httpProperties.put("sonar.host.url", url);
+      httpProperties.put("sonar.userHome", workDir.resolve("sonar-home").toString());
+      return ScannerBootstrapperFactory.createHttpClient(httpProperties, "ScannerMaven", "test");
+    }, clock::get, millis -> {
+      sleeps.add(millis);
+      clock.addAndGet(millis);
+    });
+  }
+
+  private Path reportTask() throws IOException {
+    Path file = workDir.resolve("report-task.txt");
+    Files.writeString(file, "projectKey=my:project\n"
+      + "serverUrl=" + serverUrl + "/\n"
+      + "dashboardUrl=" + serverUrl + "/dashboard?id=my%3Aproject\n"
+      + "ceTaskId=AX1\n"
+      + "ceTaskUrl=" + serverUrl + "/api/ce/task?id=AX1\n");
+    return file;
+  }
+
+  private static void respond(HttpExchange exchange, String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+}
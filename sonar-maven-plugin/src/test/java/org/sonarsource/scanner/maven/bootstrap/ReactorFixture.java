@@ -0,0 +1,350 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.LifecycleExecutor;
+import org.apache.maven.lifecycle.MavenExecutionPlan;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Generates reactors of arbitrary size to exercise {@link MavenProjectConverter} and {@link ScannerBootstrapper} at scale.
+ * <p>
+ * Projects only live in memory, but their directories, pom files and libraries are created on disk, since the converter
+ * resolves canonical paths and keeps existing paths only. The root aggregator declares {@code width} modules, and each
+ * aggregator of the next level does the same, {@code depth} levels deep: there are {@code width^depth} leaf modules.
+ * </p>
+ */
+final class ReactorFixture {
+
+  static final String GROUP_ID = "org.example.reactor";
+
+  private final MavenProject root;
+  private final List<MavenProject> projects;
+  private final int leafModules;
+
+  private ReactorFixture(MavenProject root, List<MavenProject> projects, int leafModules) {
+    this.root = root;
+    this.projects = projects;
+    this.leafModules = leafModules;
+  }
+
+  static Builder builder(Path baseDir) {
+    return new Builder(baseDir);
+  }
+
+  MavenProject root() {
+    return root;
+  }
+
+  /**
+   * All projects, aggregators included, in reactor order: the root first, then parents before their modules unless shuffled.
+   */
+  List<MavenProject> projects() {
+    return projects;
+  }
+
+  int leafModules() {
+    return leafModules;
+  }
+
+  /**
+   * A converter whose compiler resolution finds no compiler execution, without relying on mocks so that allocations
+   * measured around it are the converter's own.
+   */
+  MavenProjectConverter newConverter(Log log) {
+    MavenSession session = newSession(new Properties());
+    LifecycleExecutor lifecycleExecutor = (LifecycleExecutor) Proxy.newProxyInstance(ReactorFixture.class.getClassLoader(), new Class<?>[] {LifecycleExecutor.class},
+      (proxy, method, args) -> {
+        if ("calculateExecutionPlan".equals(method.getName())) {
+          return new MavenExecutionPlan(Collections.emptyList(), null);
+        }
+        throw new UnsupportedOperationException(method.getName());
+      });
+    MavenCompilerResolver compilerResolver = new MavenCompilerResolver(session, lifecycleExecutor, log, (moduleSession, execution) -> Optional.empty());
+    return new MavenProjectConverter(log, compilerResolver, Collections.emptyMap());
+  }
+
+  MavenSession newSession(Properties userProperties) {
+    MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+    request.setUserProperties(userProperties);
+    MavenSession session = new MavenSession(null, null, request, new DefaultMavenExecutionResult());
+    session.setProjects(projects);
+    return session;
+  }
+
+  /**
+   * Copy of the user properties with the paths probed in the calling thread: the allocation budgets would miss the
+   * allocations of the threads of the file probes, which are gone once measured, and never reported when virtual.
+   */
+  static Properties withSequentialProbes(Properties userProperties) {
+    Properties properties = new Properties();
+    properties.putAll(userProperties);
+    properties.setProperty(MavenScannerProperties.IO_CONCURRENCY, "1");
+    return properties;
+  }
+
+  /**
+   * A collector of the properties of the whole reactor.
+   */
+  AnalysisPropertiesCollector newCollector(Log log, Properties userProperties) {
+    return new AnalysisPropertiesCollector(log, newSession(userProperties), newConverter(log), new PropertyDecryptor(log, value -> value), new ScannerMetrics());
+  }
+
+  static final class Builder {
+    private final Path baseDir;
+    private int width = 10;
+    private int depth = 1;
+    private int libraries = 0;
+    private boolean sharedParent = false;
+    private boolean pluginManagement = false;
+    private int warModulesEvery = 0;
+    private int pomModulesEvery = 0;
+    private Random reactorOrder = null;
+
+    private Builder(Path baseDir) {
+      this.baseDir = baseDir;
+    }
+
+    /**
+     * Number of modules declared by each aggregator.
+     */
+    Builder width(int width) {
+      this.width = width;
+      return this;
+    }
+
+    /**
+     * Number of aggregation levels below the root.
+     */
+    Builder depth(int depth) {
+      this.depth = depth;
+      return this;
+    }
+
+    /**
+     * Number of jars, shared by all modules, on the compile and test classpaths of each module.
+     */
+    Builder libraries(int libraries) {
+      this.libraries = libraries;
+      return this;
+    }
+
+    /**
+     * Adds a parent pom to the reactor, inherited by every other project.
+     */
+    Builder sharedParent() {
+      this.sharedParent = true;
+      return this;
+    }
+
+    /**
+     * Declares surefire and compiler settings in the pluginManagement of every project, with surefire also used in the build section.
+     */
+    Builder pluginManagement() {
+      this.pluginManagement = true;
+      return this;
+    }
+
+    /**
+     * Turns one leaf module out of {@code every} into a war module.
+     */
+    Builder warModules(int every) {
+      this.warModulesEvery = every;
+      return this;
+    }
+
+    /**
+     * Turns one leaf module out of {@code every} into a pom module, which is neither an aggregator nor compiled.
+     */
+    Builder pomModules(int every) {
+      this.pomModulesEvery = every;
+      return this;
+    }
+
+    /**
+     * Shuffles the reactor order, like dependencies between modules do, instead of following declaration order.
+     * The root project stays first.
+     */
+    Builder shuffled(long seed) {
+      this.reactorOrder = new Random(seed);
+      return this;
+    }
+
+    ReactorFixture build() throws IOException {
+      List<File> jars = createLibraries(baseDir.resolve("repository"));
+      List<MavenProject> projects = new ArrayList<>();
+      MavenProject root = project(baseDir.resolve("root"), "root", "pom", null, jars);
+      root.setExecutionRoot(true);
+      projects.add(root);
+      MavenProject parent = null;
+      if (sharedParent) {
+        parent = project(baseDir.resolve("root/parent"), "parent", "pom", null, jars);
+        root.getModules().add("parent");
+        root.setParent(parent);
+        projects.add(parent);
+      }
+      int[] leafCounter = {0};
+      addModules(root, parent, 1, jars, projects, leafCounter);
+      if (reactorOrder != null) {
+        Collections.shuffle(projects.subList(1, projects.size()), reactorOrder);
+      }
+      return new ReactorFixture(root, projects, leafCounter[0]);
+    }
+
+    private void addModules(MavenProject aggregator, MavenProject parent, int level, List<File> jars, List<MavenProject> projects, int[] leafCounter)
+      throws IOException {
+      for (int i = 0; i < width; i++) {
+        String name = aggregator.getArtifactId() + "-" + i;
+        Path basedir = aggregator.getBasedir().toPath().resolve(name);
+        aggregator.getModules().add(name);
+        if (level < depth) {
+          MavenProject child = project(basedir, name, "pom", parent, jars);
+          projects.add(child);
+          addModules(child, parent, level + 1, jars, projects, leafCounter);
+        } else {
+          int leaf = leafCounter[0]++;
+          projects.add(project(basedir, name, leafPackaging(leaf), parent, jars));
+        }
+      }
+    }
+
+    private String leafPackaging(int leaf) {
+      if (warModulesEvery > 0 && leaf % warModulesEvery == 0) {
+        return "war";
+      }
+      if (pomModulesEvery > 0 && leaf % pomModulesEvery == pomModulesEvery - 1) {
+        return "pom";
+      }
+      return "jar";
+    }
+
+    private List<File> createLibraries(Path repository) throws IOException {
+      List<File> jars = new ArrayList<>();
+      for (int i = 0; i < libraries; i++) {
+        Path jar = repository.resolve("org/example/library-" + i + "/1.0/library-" + i + "-1.0.jar");
+        Files.createDirectories(jar.getParent());
+        jars.add(Files.createFile(jar).toFile());
+      }
+      return jars;
+    }
+
+    private MavenProject project(Path basedir, String artifactId, String packaging, MavenProject parent, List<File> jars) throws IOException {
+      Path target = basedir.resolve("target");
+      Files.createDirectories(target.resolve("classes"));
+      Files.createDirectories(target.resolve("test-classes"));
+      Files.createDirectories(target.resolve("surefire-reports"));
+      Path pomFile = Files.createFile(basedir.resolve("pom.xml"));
+
+      Model model = new Model();
+      model.setGroupId(GROUP_ID);
+      model.setArtifactId(artifactId);
+      model.setVersion("1.0-SNAPSHOT");
+      model.setName(artifactId);
+      model.setPackaging(packaging);
+      model.setProperties(new Properties());
+      Build build = new Build();
+      build.setDirectory(target.toString());
+      build.setOutputDirectory(target.resolve("classes").toString());
+      build.setTestOutputDirectory(target.resolve("test-classes").toString());
+      if (pluginManagement) {
+        build.setPluginManagement(managedPlugins());
+        build.addPlugin(plugin("maven-surefire-plugin", null, null));
+      }
+      if ("war".equals(packaging)) {
+        Files.createDirectories(basedir.resolve("src/main/webapp"));
+        build.addPlugin(plugin("maven-war-plugin", "warSourceDirectory", basedir.resolve("src/main/webapp").toString()));
+      }
+      model.setBuild(build);
+
+      MavenProject project = new MavenProject(model);
+      project.setFile(pomFile.toFile());
+      project.setParent(parent);
+      if (!"pom".equals(packaging)) {
+        Files.createDirectories(basedir.resolve("src/main/java"));
+        Files.createDirectories(basedir.resolve("src/test/java"));
+        project.addCompileSourceRoot(basedir.resolve("src/main/java").toString());
+        project.addTestCompileSourceRoot(basedir.resolve("src/test/java").toString());
+        project.setArtifacts(artifacts(jars));
+      }
+      return project;
+    }
+
+    private static PluginManagement managedPlugins() {
+      PluginManagement pluginManagement = new PluginManagement();
+      pluginManagement.addPlugin(plugin("maven-surefire-plugin", "reportsDirectory", "target/surefire-reports"));
+      pluginManagement.addPlugin(plugin("maven-compiler-plugin", "release", "11"));
+      return pluginManagement;
+    }
+
+    private static Plugin plugin(String artifactId, String setting, String value) {
+      Plugin plugin = new Plugin();
+      plugin.setGroupId(MavenUtils.GROUP_ID_APACHE_MAVEN);
+      plugin.setArtifactId(artifactId);
+      if (setting != null) {
+        Xpp3Dom node = new Xpp3Dom(setting);
+        node.setValue(value);
+        Xpp3Dom configuration = new Xpp3Dom("configuration");
+        configuration.addChild(node);
+        plugin.setConfiguration(configuration);
+      }
+      return plugin;
+    }
+
+    private static Set<Artifact> artifacts(List<File> jars) {
+      DefaultArtifactHandler handler = new DefaultArtifactHandler("jar");
+      handler.setAddedToClasspath(true);
+      Set<Artifact> artifacts = new LinkedHashSet<>();
+      for (File jar : jars) {
+        String artifactId = jar.getParentFile().getParentFile().getName();
+        DefaultArtifact artifact = new DefaultArtifact("org.example", artifactId, "1.0", Artifact.SCOPE_COMPILE, "jar", null, handler);
+        artifact.setFile(jar);
+        artifact.setResolved(true);
+        artifacts.add(artifact);
+      }
+      return artifacts;
+    }
+  }
+}
@@ -42,7 +42,11 @@ import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -59,7 +63,7 @@ class ScannerBootstrapperFactoryTest {
   private final Map<String, String> envProps = new HashMap<>();
 
   private final Log log = mock(Log.class);
-  private final ScannerBootstrapperFactory underTest = spy(new ScannerBootstrapperFactory(log, runtimeInformation, mojoExecution, mavenSession, envProps, propertyDecryptor));
+  private final ScannerBootstrapperFactory underTest = withoutServer(log);
   private final ScannerEngineBootstrapper mockBootstrapper = mock(ScannerEngineBootstrapper.class);
 
   private Proxy httpsProxy;
@@ -95,6 +99,16 @@ class ScannerBootstrapperFactoryTest {
     httpsProxy.setNonProxyHosts("sonarcloud.io|*.sonarsource.com");
   }
 
+  /**
+   * Factory whose calls to the server fail, so that the scanner library provisions the JRE of the engine.
+   */
+  private ScannerBootstrapperFactory withoutServer(Log factoryLog) {
+    ScannerBootstrapperFactory factory = spy(new ScannerBootstrapperFactory(factoryLog, runtimeInformation, mojoExecution, mavenSession, envProps, propertyDecryptor));
+    doThrow(new IllegalStateException("No server")).when(factory).serverVersion(anyMap());
+    doThrow(new IllegalStateException("No server")).when(factory).callRestApi(anyMap(), anyString());
+    return factory;
+  }
+
   @AfterEach
   void tearDown() {
     clearProxyProperties();
@@ -167,7 +181,7 @@ class ScannerBootstrapperFactoryTest {
     when(mavenSession.getSettings()).thenReturn(settings);
 
     Log specificLog = spy(new DefaultLog(new ConsoleLogger(ConsoleLogger.LEVEL_DEBUG, "unrecognizable-protocol")));
-    var specificUnderTest = spy(new ScannerBootstrapperFactory(specificLog, runtimeInformation, mojoExecution, mavenSession, envProps, propertyDecryptor));
+    var specificUnderTest = withoutServer(specificLog);
     specificUnderTest.create();
 
     assertProxySettingsAreNotSet();
@@ -186,7 +200,7 @@ class ScannerBootstrapperFactoryTest {
     when(mavenSession.getSettings()).thenReturn(settings);
 
     Log specificLog = spy(new DefaultLog(new ConsoleLogger(ConsoleLogger.LEVEL_DEBUG, "null-protocol-proxy")));
-    ScannerBootstrapperFactory specificUnderTest = spy(new ScannerBootstrapperFactory(specificLog, runtimeInformation, mojoExecution, mavenSession, envProps, propertyDecryptor));
+    ScannerBootstrapperFactory specificUnderTest = withoutServer(specificLog);
     specificUnderTest.create();
 
     assertProxySettingsAreNotSet();
@@ -205,7 +219,7 @@ class ScannerBootstrapperFactoryTest {
     when(mavenSession.getSettings()).thenReturn(settings);
 
     Log specificLog = spy(new DefaultLog(new ConsoleLogger(ConsoleLogger.LEVEL_DEBUG, "unrecognizable-protocol")));
-    var specificUnderTest = spy(new ScannerBootstrapperFactory(specificLog, runtimeInformation, mojoExecution, mavenSession, envProps, propertyDecryptor));
+    var specificUnderTest = withoutServer(specificLog);
     specificUnderTest.create();
 
     assertProxySettingsAreNotSet();
@@ -223,7 +237,7 @@ class ScannerBootstrapperFactoryTest {
     when(mavenSession.getSettings()).thenReturn(settings);
 
     Log specificLog = spy(new DefaultLog(new ConsoleLogger(ConsoleLogger.LEVEL_DEBUG, "unrecognizable-protocol")));
-    var specificUnderTest = spy(new ScannerBootstrapperFactory(specificLog, runtimeInformation, mojoExecution, mavenSession, envProps, propertyDecryptor));
+    var specificUnderTest = withoutServer(specificLog);
     specificUnderTest.create();
 
     assertThat(System.getProperty("https.proxyHost")).isEqualTo("myhost");
@@ -275,4 +289,61 @@ class ScannerBootstrapperFactoryTest {
     assertThat(System.getProperty("http.proxyHost")).isNull();
     assertThat(System.getProperty("http.proxyPort")).isNull();
   }
+
+  @Test
+  void maven_runtime_runs_the_engine_when_recent_enough_for_the_provisioned_jre() {
+    doReturn("10.7.0.96327").when(underTest).serverVersion(anyMap());
+    doReturn("[{\"filename\":\"OpenJDK11U-jre_x64_linux_hotspot_11.0.25_9.tar.gz\"}]").when(underTest).callRestApi(anyMap(), anyString());
+
+    underTest.create();
+
+    ArgumentCaptor<Map<String, String>> captor = ArgumentCaptor.forClass(Map.class);
+    verify(mockBootstrapper).addBootstrapProperties(captor.capture());
+    assertThat(captor.getValue()).containsKey("sonar.scanner.javaExePath");
+    verify(underTest).callRestApi(anyMap(), startsWith("/analysis/jres?os="));
+  }
+
+  @Test
+  void engine_cache_key_only_when_reuse_is_enabled() {
+    Map<String, String> globalProperties = new HashMap<>();
+    globalProperties.put("sonar.host.url", "http://localhost:9000");
+
+    assertThat(underTest.createEngineCacheKey(globalProperties)).isNull();
+
+    globalProperties.put(MavenScannerProperties.ENGINE_REUSE, "true");
+    ScannerEngineCache.Key key = underTest.createEngineCacheKey(globalProperties);
+    assertThat(key).isEqualTo(underTest.createEngineCacheKey(new HashMap<>(globalProperties)));
+    assertThat(key).hasToString("http://localhost:9000 (ScannerMaven/2.0/1.0)");
+
+    when(log.isDebugEnabled()).thenReturn(true);
+    assertThat(underTest.createEngineCacheKey(globalProperties)).isNotEqualTo(key);
+  }
+
+  @Test
+  void forked_analysis_receives_the_maven_proxy_without_calling_the_server() {
+    Settings settings = new Settings();
+    settings.setProxies(Collections.singletonList(httpsProxy));
+    when(mavenSession.getSettings()).thenReturn(settings);
+    Map<String, String> globalProperties = new HashMap<>();
+    globalProperties.put(MavenScannerProperties.FORK, "true");
+    globalProperties.put(MavenScannerProperties.REUSE_MAVEN_JRE, "false");
+
+    assertThat(underTest.createForkedAnalysis(globalProperties)).isNotNull();
+
+    verify(underTest, never()).callRestApi(anyMap(), anyString());
+    assertThat(System.getProperty("https.proxyHost")).isEqualTo("myhost");
+    assertThat(System.getProperty("https.proxyPort")).isEqualTo("443");
+    assertThat(System.getProperty("http.proxyUser")).isEqualTo("toto");
+  }
+
+  @Test
+  void forked_analysis_only_when_fork_is_enabled() {
+    Map<String, String> globalProperties = new HashMap<>();
+
+    assertThat(underTest.createForkedAnalysis(globalProperties)).isNull();
+
+    globalProperties.put(MavenScannerProperties.FORK, "true");
+    globalProperties.put(MavenScannerProperties.FORK_JVM_ARGS, "-Xmx2g");
+    assertThat(underTest.createForkedAnalysis(globalProperties)).isNotNull();
+  }
 }
@@ -28,6 +28,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -47,11 +49,13 @@ import org.sonarsource.scanner.lib.AnalysisProperties;
 import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
 import org.sonarsource.scanner.lib.ScannerEngineBootstrapper;
 import org.sonarsource.scanner.lib.ScannerEngineFacade;
+import org.sonarsource.scanner.lib.ScannerProperties;
 import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
@@ -170,6 +174,33 @@ class ScannerBootstrapperTest {
       .hasMessage("The scanner analysis has failed! See the logs for more details.");
   }
 
+  @Test
+  void metrics_report_is_written_to_the_work_dir_even_when_analyze_fails() {
+    Path workDir = tmpFolder.resolve("sonar-work");
+    projectProperties.put(ScannerProperties.WORK_DIR, workDir.toString());
+    when(scannerEngineFacade.analyze(any())).thenReturn(false);
+    when(scannerEngineFacade.isSonarQubeCloud()).thenReturn(true);
+    ScannerMetrics metrics = new ScannerMetrics();
+    metrics.configure(Map.of(MavenScannerProperties.METRICS, "true"));
+    scannerBootstrapper = new ScannerBootstrapper(log, session, scannerEngineBootstrapper, mavenProjectConverter, new PropertyDecryptor(log, securityDispatcher), metrics);
+
+    assertThatThrownBy(() -> scannerBootstrapper.execute()).isInstanceOf(MojoExecutionException.class);
+
+    assertThat(workDir.resolve(ScannerMetrics.REPORT_FILE_NAME)).exists();
+    assertThat(metrics.count(ScannerMetrics.Counter.PROPERTIES)).isEqualTo(projectProperties.size());
+  }
+
+  @Test
+  void metrics_report_is_not_written_by_default() throws MojoExecutionException {
+    Path workDir = tmpFolder.resolve("sonar-work");
+    projectProperties.put(ScannerProperties.WORK_DIR, workDir.toString());
+    when(scannerEngineFacade.isSonarQubeCloud()).thenReturn(true);
+
+    scannerBootstrapper.execute();
+
+    assertThat(workDir.resolve(ScannerMetrics.REPORT_FILE_NAME)).doesNotExist();
+  }
+
   @Test
   void testVersionComparisonWithBuildNumber() throws MojoExecutionException {
     when(scannerEngineFacade.isSonarQubeCloud()).thenReturn(false);
@@ -298,6 +329,200 @@ class ScannerBootstrapperTest {
     assertThat(values).hasSize(4);
   }
 
+  @Test
+  void engine_java_options_are_auto_tuned_unless_set_by_the_user() throws MojoExecutionException {
+    Properties userProperties = new Properties();
+    userProperties.put("sonar.maven.autoTune", "true");
+    when(session.getUserProperties()).thenReturn(userProperties);
+
+    assertThat(scannerBootstrapper.collectProperties().get(ScannerProperties.SCANNER_JAVA_OPTS)).startsWith("-Xmx");
+
+    projectProperties.remove(ScannerProperties.SCANNER_JAVA_OPTS);
+    userProperties.put(ScannerProperties.SCANNER_JAVA_OPTS, "-Xmx4g");
+    assertThat(scannerBootstrapper.collectProperties()).doesNotContainKey(ScannerProperties.SCANNER_JAVA_OPTS);
+    verify(log).info("Parameter sonar.maven.autoTune is enabled but sonar.scanner.javaOpts is set, the scanner engine is not auto-tuned.");
+  }
+
+  @Test
+  void engine_class_data_sharing_archive_is_added_to_the_engine_java_options() throws MojoExecutionException {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.6");
+    when(scannerEngineFacade.getBootstrapProperties()).thenReturn(Map.of(
+      ScannerProperties.SONAR_USER_HOME, tmpFolder.resolve("home").toString(),
+      ScannerProperties.SCANNER_JAVA_OPTS, "-Xmx1g"));
+    Properties userProperties = new Properties();
+    userProperties.put("sonar.maven.engineCds", "true");
+    when(session.getUserProperties()).thenReturn(userProperties);
+
+    scannerBootstrapper.execute();
+
+    verify(scannerEngineFacade).analyze(argThat(properties -> properties.get(ScannerProperties.SCANNER_JAVA_OPTS).startsWith("-Xmx1g -XX:ArchiveClassesAtExit=")));
+  }
+
+  @Test
+  void explicit_working_directory_is_not_relocated() throws MojoExecutionException {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.6");
+    String workDir = tmpFolder.resolve("work").toString();
+    projectProperties.put(ScannerProperties.WORK_DIR, workDir);
+    Properties userProperties = new Properties();
+    userProperties.put(ScannerProperties.WORK_DIR, workDir);
+    userProperties.put("sonar.maven.workDirRoot", tmpFolder.resolve("root").toString());
+    when(session.getUserProperties()).thenReturn(userProperties);
+
+    scannerBootstrapper.execute();
+
+    verify(scannerEngineFacade).analyze(argThat(properties -> workDir.equals(properties.get(ScannerProperties.WORK_DIR))));
+    verify(log).info(contains("it is not relocated"));
+    assertThat(tmpFolder.resolve("root")).doesNotExist();
+  }
+
+  @Test
+  void quality_gate_is_not_awaited_when_deferred() throws MojoExecutionException {
+    projectProperties.put("sonar.qualitygate.wait", "true");
+    Properties userProperties = new Properties();
+    userProperties.put("sonar.maven.deferQualityGate", "true");
+    when(session.getUserProperties()).thenReturn(userProperties);
+
+    assertThat(scannerBootstrapper.collectProperties()).containsEntry("sonar.qualitygate.wait", "false");
+    verify(log).info("The quality gate is not awaited by the analysis, run the sonar:await goal to enforce it");
+  }
+
+  @Test
+  void analyzes_each_analysis_root_concurrently_with_the_same_engine() throws Exception {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.6");
+    setUpAnalysisRoots("module-b, com.acme:module-c");
+    CountDownLatch bothAnalysesStarted = new CountDownLatch(2);
+    when(scannerEngineFacade.analyze(any())).thenAnswer(invocation -> {
+      bothAnalysesStarted.countDown();
+      return bothAnalysesStarted.await(10, TimeUnit.SECONDS);
+    });
+
+    scannerBootstrapper.execute();
+
+    verify(scannerEngineBootstrapper, times(1)).bootstrap();
+    verify(scannerEngineFacade, times(2)).analyze(any());
+    verify(log).info("Analyzing 2 projects, 2 at a time");
+    verify(log).info("Analyzing project com.acme:module-b");
+    verify(log).info("Analyzing project com.acme:module-c");
+  }
+
+  @Test
+  void analyzes_analysis_roots_one_at_a_time_when_the_engine_runs_in_the_maven_jvm() throws Exception {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.5");
+    setUpAnalysisRoots("module-b,module-c");
+
+    scannerBootstrapper.execute();
+
+    verify(scannerEngineFacade, times(2)).analyze(any());
+    verify(log).info("Analyzing 2 projects, 1 at a time");
+  }
+
+  @Test
+  void reports_all_failed_analysis_roots() {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.6");
+    setUpAnalysisRoots("module-b,module-c");
+    when(scannerEngineFacade.analyze(any())).thenReturn(false);
+
+    assertThatThrownBy(scannerBootstrapper::execute)
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("The scanner analysis has failed for com.acme:module-b, com.acme:module-c! See the logs for more details.");
+  }
+
+  @Test
+  void fails_when_an_analysis_root_is_not_in_the_reactor() {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.6");
+    setUpAnalysisRoots("module-b,unknown");
+
+    assertThatThrownBy(scannerBootstrapper::execute)
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("The analysis root 'unknown' must match exactly one module of the reactor, found 0");
+    verify(scannerEngineFacade, never()).analyze(any());
+  }
+
+  @Test
+  void fails_when_analysis_roots_overlap() {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.6");
+    setUpAnalysisRoots("module-b,parent");
+
+    assertThatThrownBy(scannerBootstrapper::execute)
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("The analysis roots 'com.acme:parent' and 'com.acme:module-b' overlap: the modules of 'com.acme:module-b' would be analyzed twice");
+    verify(scannerEngineFacade, never()).analyze(any());
+  }
+
+  @Test
+  void fails_when_an_analysis_root_is_listed_twice() {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.6");
+    setUpAnalysisRoots("module-b,com.acme:module-b");
+
+    assertThatThrownBy(scannerBootstrapper::execute)
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessageStartingWith("The analysis roots 'com.acme:module-b' and 'com.acme:module-b' overlap");
+  }
+
+  @Test
+  void fails_when_the_project_key_is_set_on_the_command_line_with_analysis_roots() {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.6");
+    setUpAnalysisRoots("module-b,module-c").put(AnalysisProperties.PROJECT_KEY, "my-key");
+
+    assertThatThrownBy(scannerBootstrapper::execute)
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("Parameter sonar.projectKey cannot be set on the command line with sonar.maven.analysisRoots, all the roots would have the same project key");
+    verify(scannerEngineFacade, never()).analyze(any());
+  }
+
+  @Test
+  void fails_when_analysis_roots_have_the_same_project_key() {
+    when(scannerEngineFacade.getServerVersion()).thenReturn("10.6");
+    setUpAnalysisRoots("module-b,module-c");
+    projectProperties.put(AnalysisProperties.PROJECT_KEY, "inherited-key");
+
+    assertThatThrownBy(scannerBootstrapper::execute)
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("The analysis roots 'com.acme:module-b' and 'com.acme:module-c' have the same project key 'inherited-key', set a distinct sonar.projectKey in each root");
+    verify(scannerEngineFacade, never()).analyze(any());
+  }
+
+  @Test
+  void modules_of_an_analysis_root_are_the_ones_located_in_its_directory() {
+    MavenProject parent = mockProject("parent", tmpFolder);
+    MavenProject b = mockProject("module-b", tmpFolder.resolve("module-b"));
+    MavenProject nested = mockProject("nested", tmpFolder.resolve("module-b").resolve("nested"));
+    MavenProject sibling = mockProject("module-b-sibling", tmpFolder.resolve("module-b-sibling"));
+
+    assertThat(MultiProjectAnalysis.modulesOf(b, List.of(parent, b, nested, sibling))).containsExactly(b, nested);
+  }
+
+  @Test
+  void analysis_parallelism_must_be_a_positive_integer() throws MojoExecutionException {
+    assertThat(MultiProjectAnalysis.parseParallelism(" 3 ")).isEqualTo(3);
+    assertThatThrownBy(() -> MultiProjectAnalysis.parseParallelism("0"))
+      .isInstanceOf(MojoExecutionException.class)
+      .hasMessage("The value of sonar.maven.analysisParallelism must be a positive integer: 0");
+    assertThatThrownBy(() -> MultiProjectAnalysis.parseParallelism("many"))
+      .isInstanceOf(MojoExecutionException.class);
+  }
+
+  private Properties setUpAnalysisRoots(String analysisRoots) {
+    MavenProject parent = mockProject("parent", tmpFolder);
+    when(parent.isExecutionRoot()).thenReturn(true);
+    MavenProject b = mockProject("module-b", tmpFolder.resolve("module-b"));
+    MavenProject c = mockProject("module-c", tmpFolder.resolve("module-c"));
+    when(session.getProjects()).thenReturn(List.of(parent, b, c));
+    Properties userProperties = new Properties();
+    userProperties.put(MavenScannerProperties.ANALYSIS_ROOTS, analysisRoots);
+    when(session.getUserProperties()).thenReturn(userProperties);
+    return userProperties;
+  }
+
+  private static MavenProject mockProject(String artifactId, Path basedir) {
+    MavenProject project = mock(MavenProject.class);
+    when(project.getGroupId()).thenReturn("com.acme");
+    when(project.getArtifactId()).thenReturn(artifactId);
+    when(project.getBasedir()).thenReturn(basedir.toFile());
+    when(project.getProperties()).thenReturn(new Properties());
+    return project;
+  }
+
   @Nested
   class EnvironmentInformation {
     MockedStatic<SystemWrapper> mockedSystem;
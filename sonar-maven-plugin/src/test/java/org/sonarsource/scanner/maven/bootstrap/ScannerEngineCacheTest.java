@@ -0,0 +1,254 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.scanner.lib.ScannerEngineBootstrapResult;
+import org.sonarsource.scanner.lib.ScannerEngineFacade;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScannerEngineCacheTest {
+
+  private static final long LIFETIME = TimeUnit.MINUTES.toNanos(60);
+  private static final long IDLE = TimeUnit.MINUTES.toNanos(15);
+
+  private final AtomicLong clock = new AtomicLong(1_000);
+  private final AtomicReference<String> serverState = new AtomicReference<>();
+  private final Log log = mock(Log.class);
+  private final ScannerEngineCache cache = new ScannerEngineCache(clock::get, bootstrapProperties -> {
+    String state = serverState.get();
+    if (state == null) {
+      throw new IllegalStateException("Server unreachable");
+    }
+    return state;
+  }, LIFETIME, IDLE);
+  private final ScannerEngineCache.Key key = ScannerEngineCache.Key.of(Map.of("sonar.host.url", "http://localhost:9000", "sonar.token", "secret"), "ScannerMaven/1.0");
+
+  private final AtomicInteger bootstraps = new AtomicInteger();
+  private ScannerEngineBootstrapResult lastBootstrapped;
+  private final Supplier<ScannerEngineBootstrapResult> bootstrap = () -> {
+    bootstraps.incrementAndGet();
+    lastBootstrapped = newResult(true);
+    return lastBootstrapped;
+  };
+
+  @BeforeEach
+  void setUp() {
+    serverState.set("10.7/plugins");
+  }
+
+  @Test
+  void engine_is_reused_and_not_closed_by_the_build() throws Exception {
+    ScannerEngineBootstrapResult first = cache.acquire(key, bootstrap, log);
+    ScannerEngineBootstrapResult cached = lastBootstrapped;
+    try (first; ScannerEngineFacade facade = first.getEngineFacade()) {
+      facade.analyze(Map.of());
+    }
+    clock.addAndGet(TimeUnit.MINUTES.toNanos(5));
+    try (ScannerEngineBootstrapResult second = cache.acquire(key, bootstrap, log)) {
+      second.getEngineFacade().analyze(Map.of());
+    }
+
+    assertThat(bootstraps).hasValue(1);
+    verify(cached, never()).close();
+    verify(cached.getEngineFacade(), never()).close();
+    verify(cached.getEngineFacade(), times(2)).analyze(anyMap());
+    verify(log).info("Reusing the scanner engine bootstrapped 300s ago");
+  }
+
+  @Test
+  void engine_is_not_shared_between_concurrent_builds() throws Exception {
+    try (ScannerEngineBootstrapResult first = cache.acquire(key, bootstrap, log)) {
+      ScannerEngineBootstrapResult second = cache.acquire(key, bootstrap, log);
+      assertThat(second).isSameAs(lastBootstrapped);
+      second.close();
+      verify(lastBootstrapped).close();
+    }
+    assertThat(bootstraps).hasValue(2);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  void different_credentials_or_properties_do_not_share_engines() {
+    ScannerEngineCache.Key otherToken = ScannerEngineCache.Key.of(Map.of("sonar.host.url", "http://localhost:9000", "sonar.token", "other"), "ScannerMaven/1.0");
+    ScannerEngineCache.Key otherProperty = ScannerEngineCache.Key.of(Map.of("sonar.host.url", "http://localhost:9000", "sonar.token", "secret", "sonar.verbose", "true"),
+      "ScannerMaven/1.0");
+    ScannerEngineCache.Key otherVersion = ScannerEngineCache.Key.of(Map.of("sonar.host.url", "http://localhost:9000", "sonar.token", "secret"), "ScannerMaven/2.0");
+
+    assertThat(otherToken).isNotEqualTo(key).doesNotHaveToString("secret");
+    assertThat(otherProperty).isNotEqualTo(key);
+    assertThat(otherVersion).isNotEqualTo(key);
+    assertThat(key.toString()).doesNotContain("secret");
+  }
+
+  @Test
+  void unsuccessful_bootstrap_is_not_cached() {
+    ScannerEngineBootstrapResult failed = newResult(false);
+
+    assertThat(cache.acquire(key, () -> failed, log)).isSameAs(failed);
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void idle_engine_is_evicted_and_closed() throws Exception {
+    cache.acquire(key, bootstrap, log).close();
+    ScannerEngineBootstrapResult cached = lastBootstrapped;
+
+    clock.addAndGet(IDLE);
+    cache.evictExpired();
+
+    assertThat(cache.size()).isZero();
+    verify(cached).close();
+  }
+
+  @Test
+  void engine_is_replaced_after_its_lifetime() throws Exception {
+    for (int i = 0; i < 6; i++) {
+      cache.acquire(key, bootstrap, log).close();
+      clock.addAndGet(IDLE - 1);
+    }
+
+    assertThat(bootstraps).hasValue(2);
+  }
+
+  @Test
+  void leased_engine_is_not_evicted() throws Exception {
+    ScannerEngineBootstrapResult lease = cache.acquire(key, bootstrap, log);
+    clock.addAndGet(LIFETIME);
+    cache.evictExpired();
+
+    assertThat(cache.size()).isEqualTo(1);
+    lease.close();
+    cache.evictExpired();
+    assertThat(cache.size()).isZero();
+    verify(lastBootstrapped).close();
+  }
+
+  @Test
+  void engine_is_replaced_when_server_or_plugins_changed_or_server_is_unreachable() throws Exception {
+    cache.acquire(key, bootstrap, log).close();
+    ScannerEngineBootstrapResult first = lastBootstrapped;
+    serverState.set("10.8/plugins");
+    cache.acquire(key, bootstrap, log).close();
+    ScannerEngineBootstrapResult second = lastBootstrapped;
+    serverState.set("10.8/other-plugins");
+    cache.acquire(key, bootstrap, log).close();
+    ScannerEngineBootstrapResult third = lastBootstrapped;
+    serverState.set(null);
+    cache.acquire(key, bootstrap, log).close();
+
+    assertThat(bootstraps).hasValue(4);
+    verify(first).close();
+    verify(second).close();
+    verify(third).close();
+    verify(log, times(2)).info("The cached scanner engine is outdated, bootstrapping a new one");
+    verify(log, times(2)).debug("Unable to probe the server of the scanner engine, it is not reused: Server unreachable");
+  }
+
+  @Test
+  void server_version_is_not_checked_for_sonarqube_cloud() throws Exception {
+    cache.acquire(key, () -> {
+      bootstraps.incrementAndGet();
+      ScannerEngineBootstrapResult result = newResult(true);
+      when(result.getEngineFacade().isSonarQubeCloud()).thenReturn(true);
+      return result;
+    }, log).close();
+    serverState.set(null);
+
+    cache.acquire(key, bootstrap, log).close();
+
+    assertThat(bootstraps).hasValue(1);
+  }
+
+  @Test
+  void clear_closes_released_engines() throws Exception {
+    cache.acquire(key, bootstrap, log).close();
+
+    cache.clear();
+
+    verify(lastBootstrapped).close();
+  }
+
+  @Test
+  void server_version_and_plugins_are_probed_with_the_scanner_http_client() throws Exception {
+    AtomicReference<String> plugins = new AtomicReference<>("{\"plugins\":[{\"key\":\"java\",\"hash\":\"a\"}]}");
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/api/server/version", exchange -> respond(exchange, "10.7.0.96327\n"));
+    server.createContext("/api/plugins/installed", exchange -> respond(exchange, plugins.get()));
+    server.start();
+    try {
+      String hostUrl = "http://localhost:" + server.getAddress().getPort();
+
+      String state = ScannerEngineCache.probeServer(Map.of("sonar.host.url", hostUrl + "/"));
+      assertThat(state).startsWith("10.7.0.96327/").isEqualTo(ScannerEngineCache.probeServer(Map.of("sonar.host.url", hostUrl)));
+      plugins.set("{\"plugins\":[{\"key\":\"java\",\"hash\":\"b\"}]}");
+      assertThat(ScannerEngineCache.probeServer(Map.of("sonar.host.url", hostUrl))).isNotEqualTo(state);
+      assertThatThrownBy(() -> ScannerEngineCache.probeServer(Map.of("sonar.host.url", hostUrl + "/sonarqube")))
+        .isInstanceOf(RuntimeException.class);
+    } finally {
+      server.stop(0);
+    }
+    assertThatThrownBy(() -> ScannerEngineCache.probeServer(Map.of()))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("No server URL");
+  }
+
+  private static void respond(HttpExchange exchange, String content) throws IOException {
+    byte[] body = content.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+
+  private static ScannerEngineBootstrapResult newResult(boolean successful) {
+    ScannerEngineBootstrapResult result = mock(ScannerEngineBootstrapResult.class);
+    ScannerEngineFacade facade = mock(ScannerEngineFacade.class);
+    Map<String, String> bootstrapProperties = new HashMap<>();
+    bootstrapProperties.put("sonar.host.url", "http://localhost:9000");
+    when(facade.getBootstrapProperties()).thenReturn(bootstrapProperties);
+    when(facade.getServerVersion()).thenReturn("10.7");
+    when(result.isSuccessful()).thenReturn(successful);
+    when(result.getEngineFacade()).thenReturn(facade);
+    return result;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.maven.TestLog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScannerEventsTest {
+
+  private static final String PREFIX = "org.sonarsource.scanner.maven.";
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void phases_are_recorded_as_jfr_events() throws Exception {
+    ReactorFixture reactor = ReactorFixture.builder(temp.resolve("reactor")).width(2).depth(1).libraries(2).build();
+    Properties userProperties = new Properties();
+    userProperties.put(MavenScannerProperties.PROJECT_SCAN_ALL_SOURCES, "true");
+    Path dump = temp.resolve("recording.jfr");
+
+    try (Recording recording = new Recording()) {
+      for (String name : List.of("ModuleConversion", "CompilerPlan", "Decryption", "ScanAll")) {
+        recording.enable(PREFIX + name).withoutThreshold();
+      }
+      recording.start();
+      reactor.newCollector(new TestLog(TestLog.LogLevel.INFO), userProperties).collectProperties();
+      recording.stop();
+      recording.dump(dump);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    List<RecordedEvent> conversions = ofType(events, "ModuleConversion");
+    assertThat(conversions).hasSize(reactor.projects().size());
+    assertThat(conversions).extracting(event -> event.getString("moduleId")).contains(ReactorFixture.GROUP_ID + ":root-0");
+    assertThat(conversions).extracting(event -> event.getLong("libraryCount")).anySatisfy(count -> assertThat(count).isPositive());
+    assertThat(ofType(events, "CompilerPlan")).hasSize(reactor.projects().size());
+    assertThat(ofType(events, "Decryption")).hasSize(1);
+    assertThat(ofType(events, "ScanAll")).singleElement()
+      .satisfies(event -> assertThat(event.getLong("filesVisited")).isPositive());
+  }
+
+  @Test
+  void events_are_not_committed_without_recording() {
+    ScannerEvents.ModuleConversionEvent event = new ScannerEvents.ModuleConversionEvent();
+    event.begin();
+
+    assertThat(event.isEnabled()).isFalse();
+    assertThat(event.shouldCommit()).isFalse();
+  }
+
+  private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+    return events.stream().filter(event -> event.getEventType().getName().equals(PREFIX + name)).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.SystemUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ScannerJreSelectorTest {
+
+  private static final String JRE_17_METADATA = "[{\"id\":\"1\",\"filename\":\"OpenJDK17U-jre_x64_linux_hotspot_17.0.13_11.tar.gz\","
+    + "\"javaPath\":\"jdk-17.0.13+11-jre/bin/java\",\"os\":\"linux\",\"arch\":\"x64\"}]";
+  private static final Map<String, String> LINUX_X64 = Map.of("sonar.scanner.os", "linux", "sonar.scanner.arch", "x64");
+  private static final Supplier<String> SERVER_10_7 = () -> "10.7.0.96327";
+
+  @TempDir
+  Path temp;
+
+  private final Log log = mock(Log.class);
+  private final List<String> requestedPaths = new ArrayList<>();
+
+  @Test
+  void maven_runtime_is_selected_when_recent_enough() throws IOException {
+    Path runtime = javaHome("runtime", "21.0.2");
+
+    String selected = new ScannerJreSelector(log, SERVER_10_7, server(JRE_17_METADATA), runtime, 21).select(LINUX_X64, Optional::empty);
+
+    assertThat(selected).isEqualTo(java(runtime).toString());
+    assertThat(requestedPaths).containsExactly("/analysis/jres?os=linux&arch=x64");
+    verify(log).info("Using the JRE of Maven (Java 21) to run the scanner engine: " + java(runtime));
+  }
+
+  @Test
+  void compiler_jdk_is_selected_when_maven_runtime_is_too_old() throws IOException {
+    Path runtime = javaHome("runtime", "11.0.22");
+    Path compilerJdk = javaHome("compiler", "17.0.10");
+
+    String selected = new ScannerJreSelector(log, SERVER_10_7, server(JRE_17_METADATA), runtime, 11).select(LINUX_X64, () -> Optional.of(compilerJdk));
+
+    assertThat(selected).isEqualTo(java(compilerJdk).toString());
+    verify(log).info("Using the JDK of the maven-compiler-plugin (Java 17) to run the scanner engine: " + java(compilerJdk));
+  }
+
+  @Test
+  void nothing_is_selected_without_compatible_runtime() throws IOException {
+    Path runtime = javaHome("runtime", "11.0.22");
+    Path compilerJdk = javaHome("compiler", "1.8.0_402");
+
+    assertThat(new ScannerJreSelector(log, SERVER_10_7, server(JRE_17_METADATA), runtime, 11).select(LINUX_X64, () -> Optional.of(compilerJdk))).isNull();
+    verify(log).info("The JRE of Maven (Java 11) cannot run the scanner engine, which requires Java 17");
+  }
+
+  @Test
+  void required_version_is_the_one_of_the_provisioned_jre() throws IOException {
+    Path runtime = javaHome("runtime", "17.0.10");
+    String jre21 = "[{\"filename\":\"OpenJDK21U-jre_x64_linux_hotspot_21.0.5_11.tar.gz\"}]";
+
+    assertThat(new ScannerJreSelector(log, SERVER_10_7, server(jre21), runtime, 17).select(LINUX_X64, Optional::empty)).isNull();
+    verify(log).info("The JRE of Maven (Java 17) cannot run the scanner engine, which requires Java 21");
+  }
+
+  @Test
+  void scanner_library_provisions_the_jre_when_the_required_version_is_unknown() throws IOException {
+    Path runtime = javaHome("runtime", "21.0.2");
+    Function<String, String> noProvisioning = path -> {
+      throw new IllegalStateException("Error status returned by url [http://localhost:9000/api/v2/analysis/jres]: 404");
+    };
+
+    assertThat(new ScannerJreSelector(log, SERVER_10_7, noProvisioning, runtime, 21).select(LINUX_X64, Optional::empty)).isNull();
+    assertThat(new ScannerJreSelector(log, SERVER_10_7, server("[]"), runtime, 21).select(LINUX_X64, Optional::empty)).isNull();
+    assertThat(new ScannerJreSelector(log, SERVER_10_7, server("[{\"filename\":\"jre.tar.gz\"}]"), runtime, 21).select(LINUX_X64, Optional::empty)).isNull();
+    assertThat(new ScannerJreSelector(log, SERVER_10_7, server("{\"errors\":[]}"), runtime, 21).select(LINUX_X64, Optional::empty)).isNull();
+    verify(log, times(4)).debug("The Java version required by the scanner engine is unknown, the Maven JRE is not reused");
+  }
+
+  @Test
+  void jre_metadata_is_not_requested_from_servers_without_jre_provisioning() throws IOException {
+    Path runtime = javaHome("runtime", "21.0.2");
+
+    assertThat(new ScannerJreSelector(log, () -> "10.5.1.90531", server(JRE_17_METADATA), runtime, 21).select(LINUX_X64, Optional::empty)).isNull();
+    assertThat(new ScannerJreSelector(log, () -> {
+      throw new IllegalStateException("Connection refused");
+    }, server(JRE_17_METADATA), runtime, 21).select(LINUX_X64, Optional::empty)).isNull();
+
+    assertThat(requestedPaths).isEmpty();
+    verify(log).debug("SonarQube Server 10.5.1.90531 does not provision the JRE of the scanner engine, the Maven JRE is not reused");
+    verify(log).debug("Failed to read the version of the server: Connection refused");
+  }
+
+  @Test
+  void jre_metadata_is_requested_from_recent_servers_and_sonarqube_cloud() throws IOException {
+    Path runtime = javaHome("runtime", "21.0.2");
+
+    assertThat(new ScannerJreSelector(log, () -> "2025.1.0.102418", server(JRE_17_METADATA), runtime, 21).select(LINUX_X64, Optional::empty)).isNotNull();
+    assertThat(new ScannerJreSelector(log, () -> null, server(JRE_17_METADATA), runtime, 21).select(LINUX_X64, Optional::empty)).isNotNull();
+
+    assertThat(requestedPaths).hasSize(2);
+    assertThat(ScannerJreSelector.isPriorToJreProvisioning("10.6.0.92116")).isFalse();
+    assertThat(ScannerJreSelector.isPriorToJreProvisioning("9.9")).isTrue();
+    assertThat(ScannerJreSelector.isPriorToJreProvisioning("unknown")).isTrue();
+  }
+
+  @Test
+  void operating_system_and_architecture_are_named_like_the_scanner_library() throws IOException {
+    Path alpine = Files.writeString(temp.resolve("os-release"), "NAME=\"Alpine Linux\"\nID=alpine\n");
+    Path missing = temp.resolve("missing");
+
+    assertThat(ScannerJreSelector.operatingSystem("Linux", List.of(missing, alpine))).isEqualTo("alpine");
+    assertThat(ScannerJreSelector.operatingSystem("Linux", List.of(missing))).isEqualTo("linux");
+    assertThat(ScannerJreSelector.operatingSystem("Mac OS X", List.of())).isEqualTo("macos");
+    assertThat(ScannerJreSelector.operatingSystem("Windows 11", List.of())).isEqualTo("windows");
+    assertThat(ScannerJreSelector.operatingSystem("z/OS", List.of())).isEqualTo("zos");
+    assertThatThrownBy(() -> ScannerJreSelector.operatingSystem("Plan 9", List.of())).hasMessage("Unknown operating system: Plan 9");
+    assertThat(ScannerJreSelector.architecture("amd64")).isEqualTo("x64");
+    assertThat(ScannerJreSelector.architecture("x86_64")).isEqualTo("x64");
+    assertThat(ScannerJreSelector.architecture("aarch64")).isEqualTo("aarch64");
+    assertThat(ScannerJreSelector.architecture("arm64")).isEqualTo("aarch64");
+    assertThat(ScannerJreSelector.architecture("s390x")).isEqualTo("s390x");
+  }
+
+  @Test
+  void nothing_is_selected_when_disabled_or_configured_by_the_user() throws IOException {
+    ScannerJreSelector selector = new ScannerJreSelector(log, SERVER_10_7, server(JRE_17_METADATA), javaHome("runtime", "21"), 21);
+
+    assertThat(selector.select(Map.of("sonar.maven.reuseMavenJre", "false"), Optional::empty)).isNull();
+    assertThat(selector.select(Map.of("sonar.scanner.javaExePath", "/opt/java/bin/java"), Optional::empty)).isNull();
+    assertThat(selector.select(Map.of("sonar.scanner.skipJreProvisioning", "true"), Optional::empty)).isNull();
+    assertThat(requestedPaths).isEmpty();
+  }
+
+  @Test
+  void java_version_is_read_from_the_release_file() throws IOException {
+    assertThat(ScannerJreSelector.javaVersion(javaHome("a", "17.0.10"))).hasValue(17);
+    assertThat(ScannerJreSelector.javaVersion(javaHome("b", "21"))).hasValue(21);
+    assertThat(ScannerJreSelector.javaVersion(javaHome("c", "1.8.0_402"))).hasValue(8);
+    assertThat(ScannerJreSelector.javaVersion(javaHome("d", "unknown"))).isEmpty();
+    assertThat(ScannerJreSelector.javaVersion(temp.resolve("missing"))).isEmpty();
+  }
+
+  private Function<String, String> server(String jreMetadata) {
+    return path -> {
+      requestedPaths.add(path);
+      return jreMetadata;
+    };
+  }
+
+  private Path javaHome(String name, String version) throws IOException {
+    Path home = temp.resolve(name);
+    Files.createDirectories(home.resolve("bin"));
+    Files.createFile(java(home));
+    Files.writeString(home.resolve("release"), "JAVA_VERSION=\"" + version + "\"\n");
+    return home;
+  }
+
+  private static Path java(Path home) {
+    return home.resolve("bin").resolve(SystemUtils.IS_OS_WINDOWS ? "java.exe" : "java");
+  }
+}
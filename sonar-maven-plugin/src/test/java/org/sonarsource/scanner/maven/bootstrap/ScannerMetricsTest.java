@@ -0,0 +1,149 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ScannerMetricsTest {
+
+  @TempDir
+  Path workDir;
+
+  @Test
+  void phases_and_counters_accumulate() {
+    ScannerMetrics metrics = new ScannerMetrics();
+    metrics.stop(ScannerMetrics.Phase.DECRYPTION, metrics.start() - 2_000_000);
+    metrics.stop(ScannerMetrics.Phase.DECRYPTION, metrics.start() - 1_000_000);
+    metrics.increment(ScannerMetrics.Counter.STAT_CALLS);
+    metrics.add(ScannerMetrics.Counter.STAT_CALLS, 4);
+    metrics.set(ScannerMetrics.Counter.PROPERTIES, 12);
+    metrics.set(ScannerMetrics.Counter.PROPERTIES, 7);
+
+    assertThat(metrics.nanos(ScannerMetrics.Phase.DECRYPTION)).isGreaterThanOrEqualTo(3_000_000);
+    assertThat(metrics.nanos(ScannerMetrics.Phase.ANALYZE)).isZero();
+    assertThat(metrics.count(ScannerMetrics.Counter.STAT_CALLS)).isEqualTo(5);
+    assertThat(metrics.count(ScannerMetrics.Counter.PROPERTIES)).isEqualTo(7);
+  }
+
+  @Test
+  void modules_are_counted_and_sorted_from_the_slowest() {
+    ScannerMetrics metrics = new ScannerMetrics();
+    long now = metrics.start();
+    metrics.stopModule("org.example:fast", now - 1_000_000);
+    metrics.stopModule("org.example:slow", now - 50_000_000);
+    metrics.stopModule("org.example:medium", now - 10_000_000);
+
+    assertThat(metrics.count(ScannerMetrics.Counter.MODULES)).isEqualTo(3);
+    assertThat(metrics.nanos(ScannerMetrics.Phase.MODULE_CONVERSION)).isGreaterThanOrEqualTo(61_000_000);
+    assertThat(metrics.slowestModules(2)).extracting(ScannerMetrics.ModuleTiming::getModuleId)
+      .containsExactly("org.example:slow", "org.example:medium");
+  }
+
+  @Test
+  void json_report_uses_camel_case_keys_and_escapes_module_ids() {
+    ScannerMetrics metrics = new ScannerMetrics();
+    metrics.stopModule("org.example:\"quoted\"\\", metrics.start());
+    metrics.add(ScannerMetrics.Counter.FILES_CRAWLED, 42);
+
+    String json = metrics.toJson();
+
+    assertThat(json)
+      .contains("\"envLoadingMs\": ")
+      .contains("\"classpathProbingMs\": ")
+      .contains("\"filesCrawled\": 42")
+      .contains("\"directoriesCrawled\": 0")
+      .contains("\"modules\": 1")
+      .contains("{\"id\": \"org.example:\\\"quoted\\\"\\\\\", \"conversionMs\": ");
+  }
+
+  @Test
+  void json_report_without_modules() {
+    assertThat(new ScannerMetrics().toJson()).endsWith("\"modules\": []\n}\n");
+  }
+
+  @Test
+  void report_is_disabled_by_default() {
+    Log log = mock(Log.class);
+    ScannerMetrics metrics = new ScannerMetrics();
+    metrics.stopModule("org.example:module", metrics.start());
+
+    metrics.report(log, workDir.toString());
+
+    assertThat(workDir.resolve(ScannerMetrics.REPORT_FILE_NAME)).doesNotExist();
+    verify(log, never()).info(anyString());
+  }
+
+  @Test
+  void report_is_written_and_slowest_modules_logged_when_enabled() throws IOException {
+    Log log = mock(Log.class);
+    ScannerMetrics metrics = new ScannerMetrics();
+    metrics.configure(Map.of(MavenScannerProperties.METRICS, "true"));
+    metrics.stopModule("org.example:module", metrics.start());
+
+    metrics.report(log, workDir.resolve("nested").toString());
+
+    Path report = workDir.resolve("nested").resolve(ScannerMetrics.REPORT_FILE_NAME);
+    assertThat(new String(Files.readAllBytes(report), StandardCharsets.UTF_8)).isEqualTo(metrics.toJson());
+    verify(log).info("Slowest modules to convert:");
+    verify(log).info(startsWith("  org.example:module: "));
+  }
+
+  @Test
+  void peak_heap_is_sampled_around_the_collection_of_the_properties_when_enabled() {
+    ScannerMetrics metrics = new ScannerMetrics();
+    metrics.startHeapSampling();
+    metrics.sampleHeap();
+    assertThat(metrics.count(ScannerMetrics.Counter.PEAK_HEAP_BYTES)).isZero();
+
+    metrics.configure(Map.of(MavenScannerProperties.METRICS, "true"));
+    metrics.startHeapSampling();
+    // Large enough to be allocated directly in the old generation
+    byte[] collected = new byte[32 * 1024 * 1024];
+    metrics.sampleHeap();
+
+    assertThat(metrics.count(ScannerMetrics.Counter.PEAK_HEAP_BYTES)).isGreaterThanOrEqualTo(collected.length);
+  }
+
+  @Test
+  void report_without_work_dir_only_logs() {
+    Log log = mock(Log.class);
+    ScannerMetrics metrics = new ScannerMetrics();
+    metrics.configure(Collections.singletonMap(MavenScannerProperties.METRICS, "true"));
+
+    metrics.report(log, null);
+
+    verify(log).warn("Unable to write the metrics report: no working directory");
+  }
+}
@@ -129,4 +129,22 @@ class SourceCollectorTest {
       .doesNotContain(rootJavaFile)
       .doesNotContain(rootKotlinFile);
   }
+
+  @Test
+  void visitorIgnoresFilesNestedInExistingSources() throws IOException {
+    Path sources = emptyProjectBasedir.resolve("src");
+    Path scripts = Files.createDirectories(sources.resolve("main").resolve("scripts"));
+    Path script = Files.createFile(scripts.resolve("build.sh"));
+    Path readme = Files.createFile(emptyProjectBasedir.resolve("README.md"));
+
+    // The crawl starts inside the existing sources
+    SourceCollector visitor = new SourceCollector(Collections.singleton(sources), Collections.emptySet(), Collections.emptySet(), false);
+    Files.walkFileTree(scripts, visitor);
+    assertThat(visitor.getCollectedSources()).isEmpty();
+    assertThat(visitor.visitFile(script, null)).isEqualTo(FileVisitResult.CONTINUE);
+    assertThat(visitor.getCollectedSources()).isEmpty();
+
+    Files.walkFileTree(emptyProjectBasedir, visitor);
+    assertThat(visitor.getCollectedSources()).containsOnly(readme);
+  }
 }
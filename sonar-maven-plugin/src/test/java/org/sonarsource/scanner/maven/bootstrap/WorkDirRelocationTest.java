@@ -0,0 +1,130 @@
+/*
+ * SonarQube Scanner for Maven
+ * Copyright (C) SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.scanner.maven.bootstrap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonarsource.scanner.lib.ScannerProperties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class WorkDirRelocationTest {
+
+  private final Log log = mock(Log.class);
+
+  @TempDir
+  Path tmp;
+
+  @Test
+  void nothing_is_relocated_without_root() {
+    Map<String, String> properties = workDirs();
+    try (WorkDirRelocation relocation = WorkDirRelocation.create(log, null)) {
+      relocation.relocate(properties);
+
+      assertThat(relocation.isEnabled()).isFalse();
+      assertThat(relocation.originalOf(properties.get(ScannerProperties.WORK_DIR))).isEqualTo(properties.get(ScannerProperties.WORK_DIR));
+    }
+    assertThat(properties).isEqualTo(workDirs());
+  }
+
+  @Test
+  void work_dirs_of_the_modules_are_relocated_to_distinct_directories() {
+    Path root = tmp.resolve("root");
+    Map<String, String> properties = workDirs();
+    try (WorkDirRelocation relocation = WorkDirRelocation.create(log, root.toString(), tmp.resolve("shm"), 0)) {
+      relocation.relocate(properties);
+
+      String workDir = properties.get(ScannerProperties.WORK_DIR);
+      String moduleWorkDir = properties.get("module." + ScannerProperties.WORK_DIR);
+      assertThat(workDir).startsWith(root.toString());
+      assertThat(Path.of(workDir).endsWith(Path.of("project", "target", "sonar"))).isTrue();
+      assertThat(moduleWorkDir).startsWith(root.toString()).isNotEqualTo(workDir);
+      assertThat(Path.of(moduleWorkDir).getParent().getParent()).isEqualTo(Path.of(workDir).getParent().getParent().resolve("module"));
+      assertThat(properties).containsEntry("sonar.projectBaseDir", tmp.resolve("project").toString());
+      assertThat(relocation.originalOf(workDir)).isEqualTo(tmp.resolve("project/target/sonar").toString());
+    }
+  }
+
+  @Test
+  void files_of_the_work_dirs_are_copied_back_and_the_run_directory_deleted() throws IOException {
+    Path root = tmp.resolve("root");
+    Map<String, String> properties = workDirs();
+    try (WorkDirRelocation relocation = WorkDirRelocation.create(log, root.toString(), tmp.resolve("shm"), 0)) {
+      relocation.relocate(properties);
+      Path workDir = Path.of(properties.get(ScannerProperties.WORK_DIR));
+      Files.createDirectories(workDir.resolve(".sonartmp"));
+      Files.write(workDir.resolve(".sonartmp/scratch.bin"), new byte[16]);
+      Files.write(workDir.resolve(QualityGateAwait.REPORT_TASK_FILE_NAME), "ceTaskId=42\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    Path original = tmp.resolve("project/target/sonar");
+    assertThat(original.resolve(QualityGateAwait.REPORT_TASK_FILE_NAME)).hasContent("ceTaskId=42");
+    assertThat(original.resolve(".sonartmp")).doesNotExist();
+    assertThat(tmp.resolve("project/module/target/sonar")).doesNotExist();
+    assertThat(root).isEmptyDirectory();
+  }
+
+  @Test
+  void auto_uses_the_shared_memory_directory() throws IOException {
+    Path sharedMemory = Files.createDirectory(tmp.resolve("shm"));
+    Map<String, String> properties = workDirs();
+    try (WorkDirRelocation relocation = WorkDirRelocation.create(log, "auto", sharedMemory, 0)) {
+      relocation.relocate(properties);
+
+      assertThat(relocation.isEnabled()).isTrue();
+      assertThat(properties.get(ScannerProperties.WORK_DIR)).startsWith(sharedMemory.toString());
+    }
+  }
+
+  @Test
+  void auto_does_not_relocate_without_shared_memory() {
+    try (WorkDirRelocation relocation = WorkDirRelocation.create(log, "auto", tmp.resolve("missing"), 0)) {
+      assertThat(relocation.isEnabled()).isFalse();
+    }
+    verify(log).info(contains("No writable shared memory file system"));
+  }
+
+  @Test
+  void nothing_is_relocated_without_enough_free_space() {
+    Path root = tmp.resolve("root");
+    try (WorkDirRelocation relocation = WorkDirRelocation.create(log, root.toString(), tmp.resolve("shm"), Long.MAX_VALUE)) {
+      assertThat(relocation.isEnabled()).isFalse();
+    }
+    verify(log).warn(contains("the working directories are not relocated"));
+  }
+
+  private Map<String, String> workDirs() {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("sonar.projectBaseDir", tmp.resolve("project").toString());
+    properties.put(ScannerProperties.WORK_DIR, tmp.resolve("project/target/sonar").toString());
+    properties.put("module." + ScannerProperties.WORK_DIR, tmp.resolve("project/module/target/sonar").toString());
+    return properties;
+  }
+}